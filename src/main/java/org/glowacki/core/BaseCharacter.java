@@ -420,7 +420,7 @@ public abstract class BaseCharacter
         map.moveDirection(this, dir);
         sendEvent(new MoveEvent(this, fromX, fromY, x, y));
 
-        return subtractMoveCost(map, dir);
+        return subtractMoveCost(map.tryGetTerrain(x, y), dir);
     }
 
     /**
@@ -473,14 +473,27 @@ public abstract class BaseCharacter
     int subtractMoveCost(IMap map, Direction dir)
         throws MapException
     {
-        Terrain terrain = map.getTerrain(getX(), getY());
+        return subtractMoveCost(map.getTerrain(getX(), getY()), dir);
+    }
 
+    /**
+     * Subtract the cost of moving onto the specified terrain from the
+     * character's time.
+     *
+     * @param terrain terrain at the character's new position
+     *                (<tt>null</tt> is treated as impassable)
+     * @param dir direction
+     *
+     * @return movement cost
+     */
+    private int subtractMoveCost(Terrain terrain, Direction dir)
+    {
         final boolean diagonal =
             (dir == Direction.LEFT_UP || dir == Direction.LEFT_DOWN ||
              dir == Direction.RIGHT_UP || dir == Direction.RIGHT_DOWN);
 
         final double cost;
-        if (!terrain.isMovable()) {
+        if (terrain == null || !terrain.isMovable()) {
             cost = Integer.MAX_VALUE;
         } else if (!diagonal) {
             cost = 10.0 * terrain.getCost();
@@ -533,6 +546,34 @@ public abstract class BaseCharacter
         }
     }
 
+    /**
+     * Try to move one square in the specified direction.
+     *
+     * @param dir direction
+     *
+     * @return number of turns, or -1 if the character could not move
+     */
+    public int tryMove(Direction dir)
+    {
+        if (level == null || dir == Direction.CLIMB ||
+            dir == Direction.DESCEND || dir == Direction.UNKNOWN)
+        {
+            return -1;
+        }
+
+        IMap map = level.getMap();
+
+        final int fromX = x;
+        final int fromY = y;
+        if (map.tryMoveDirection(this, dir) != MoveStatus.OK) {
+            return -1;
+        }
+
+        sendEvent(new MoveEvent(this, fromX, fromY, x, y));
+
+        return subtractMoveCost(map.tryGetTerrain(x, y), dir);
+    }
+
     /**
      * Wield a weapon.
      *
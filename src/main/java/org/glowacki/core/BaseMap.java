@@ -0,0 +1,758 @@
+package org.glowacki.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Occupancy and movement shared by all map implementations.
+ *
+ * Subclasses supply the terrain storage; occupants are kept in a sparse
+ * table indexed by cell.
+ */
+public abstract class BaseMap
+    implements IMap
+{
+    static final Terrain[] TERRAIN = Terrain.values();
+
+    private int width;
+    private int height;
+
+    private IntHashMap<IMapObject> occupants =
+        new IntHashMap<IMapObject>();
+
+    private List<IMapListener> listeners = new ArrayList<IMapListener>();
+
+    /**
+     * Create the base map.
+     *
+     * @param width map width
+     * @param height map height
+     *
+     * @throws MapException if the dimensions are not valid
+     */
+    BaseMap(int width, int height)
+        throws MapException
+    {
+        if (width <= 0 || height <= 0) {
+            throw new MapException("Bad map size " + width + "x" + height);
+        } else if ((long) width * (long) height > Integer.MAX_VALUE) {
+            throw new MapException("Map " + width + "x" + height +
+                                   " is too large");
+        }
+
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Add a listener which will be told about changes to this map.
+     *
+     * @param listener map listener
+     */
+    public void addListener(IMapListener listener)
+    {
+        listeners.add(listener);
+    }
+
+    private MapEntry createEntry(int x, int y)
+    {
+        return new MapEntry(x, y, getCellTerrain(x, y),
+                            occupants.get(y * width + x));
+    }
+
+    private IMapPoint enter(IMapObject obj, Terrain t, String name)
+        throws MapException
+    {
+        MapEntry entry = find(t);
+        if (entry == null) {
+            throw new MapException("Map has no " + name + " staircase");
+        }
+
+        final int x = entry.getX();
+        final int y = entry.getY();
+        if (occupants.containsKey(y * width + x)) {
+            throw new OccupiedException(Character.toUpperCase(name.charAt(0)) +
+                                        name.substring(1) +
+                                        " staircase is occupied");
+        }
+
+        occupants.put(y * width + x, obj);
+        occupantAdded(x, y);
+        obj.setPosition(x, y);
+
+        fireInserted(obj, x, y);
+
+        return new MapEntry(x, y, t, obj);
+    }
+
+    /**
+     * Add this object to the map at the up staircase.
+     *
+     * @param obj object
+     *
+     * @return location of up staircase
+     *
+     * @throws MapException if there is a problem
+     */
+    public IMapPoint enterDown(IMapObject obj)
+        throws MapException
+    {
+        return enter(obj, Terrain.UPSTAIRS, "up");
+    }
+
+    /**
+     * Add this object to the map at the down staircase.
+     *
+     * @param obj object
+     *
+     * @return location of down staircase
+     *
+     * @throws MapException if there is a problem
+     */
+    public IMapPoint enterUp(IMapObject obj)
+        throws MapException
+    {
+        return enter(obj, Terrain.DOWNSTAIRS, "down");
+    }
+
+    /**
+     * Find the first occurrence of the specified terrain.
+     *
+     * The base implementation scans the map in row-major order.
+     *
+     * @param t terrain to find
+     *
+     * @return null if the terrain cannot be found on this level
+     */
+    public MapEntry find(Terrain t)
+    {
+        Iterator<MapEntry> iter = findAll(t).iterator();
+        if (!iter.hasNext()) {
+            return null;
+        }
+
+        return iter.next();
+    }
+
+    /**
+     * Iterate through all occurrences of the specified terrain,
+     * in row-major order.
+     *
+     * The base implementation scans the map.
+     *
+     * @param t terrain to find
+     *
+     * @return iterator of matching entries
+     */
+    public Iterable<MapEntry> findAll(Terrain t)
+    {
+        return new ScanIterable(t);
+    }
+
+    private void fireInserted(IMapObject obj, int x, int y)
+    {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).objectInserted(obj, x, y);
+        }
+    }
+
+    private void fireMoved(IMapObject obj, int oldX, int oldY)
+    {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).objectMoved(obj, oldX, oldY);
+        }
+    }
+
+    private void fireRemoved(IMapObject obj, int x, int y)
+    {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).objectRemoved(obj, x, y);
+        }
+    }
+
+    /**
+     * Tell listeners that the terrain at the specified point has changed.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    void fireTerrainChanged(int x, int y)
+    {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).terrainChanged(x, y);
+        }
+    }
+
+    /**
+     * Get the terrain for a cell which is known to be inside the map.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return terrain
+     */
+    abstract Terrain getCellTerrain(int x, int y);
+
+    /**
+     * Iterate through all map entries (used for path-finding).
+     *
+     * @return entry iterator
+     */
+    public Iterable<MapEntry> getEntries()
+    {
+        return new ScanIterable(null);
+    }
+
+    /**
+     * Get the cell index for the specified coordinates.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return cell index
+     *
+     * @throws MapException if the point is not valid
+     */
+    int getIndex(int x, int y)
+        throws MapException
+    {
+        if (y < 0 || y >= height) {
+            throw new MapException("Bad Y coordinate in (" + x + "," +
+                                   y + "), max is " + getMaxY());
+        } else if (x < 0 || x >= width) {
+            throw new MapException("Bad X coordinate in (" + x + "," +
+                                   y + "), max is " + getMaxX());
+        }
+
+        return y * width + x;
+    }
+
+    /**
+     * Get maximum X coordinate for this level.
+     *
+     * @return maximum addressable X coordinate
+     */
+    public int getMaxX()
+    {
+        return width - 1;
+    }
+
+    /**
+     * Get maximum Y coordinate for this level.
+     *
+     * @return maximum addressable Y coordinate
+     */
+    public int getMaxY()
+    {
+        return height - 1;
+    }
+
+    /**
+     * Get the movable neighbors of the specified point.  Bit <tt>N</tt>
+     * is set if the neighbor in the compass direction whose ordinal is
+     * <tt>N</tt> is inside the map and its terrain is movable.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return neighbor mask (0 if the point is outside the map)
+     */
+    public int getNeighborMask(int x, int y)
+    {
+        if (!isInBounds(x, y)) {
+            return 0;
+        }
+
+        int mask = 0;
+        for (int bit = 0; bit < Direction.NUM_COMPASS; bit++) {
+            final int nx = x + Direction.getDx(bit);
+            final int ny = y + Direction.getDy(bit);
+            if (isInBounds(nx, ny) && getCellTerrain(nx, ny).isMovable()) {
+                mask |= 1 << bit;
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * Get the object which occupies the specified position
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>null</tt> if no object is at the specified position
+     */
+    public IMapObject getOccupant(int x, int y)
+        throws MapException
+    {
+        return occupants.get(getIndex(x, y));
+    }
+
+    /**
+     * Get a graphic representation of this level.
+     *
+     * @return string representation of level with embedded newlines
+     */
+    public String getPicture()
+    {
+        StringBuilder buf = new StringBuilder(height * (width + 1));
+
+        for (int y = 0; y < height; y++) {
+            if (y > 0) {
+                buf.append('\n');
+            }
+
+            for (int x = 0; x < width; x++) {
+                Terrain t = getCellTerrain(x, y);
+
+                char ch;
+                if (t != Terrain.WALL) {
+                    ch = MapCharRepresentation.getCharacter(t);
+                } else if ((x > 0 &&
+                            getCellTerrain(x - 1, y) == Terrain.WALL) ||
+                           (x < width - 1 &&
+                            getCellTerrain(x + 1, y) == Terrain.WALL))
+                {
+                    ch = '-';
+                } else {
+                    ch = '|';
+                }
+
+                buf.append(ch);
+            }
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * Get the terrain found at the specified coordinates.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return terrain at the specified point
+     *
+     * @throws MapException if the point is not valid
+     */
+    public Terrain getTerrain(int x, int y)
+        throws MapException
+    {
+        getIndex(x, y);
+
+        return getCellTerrain(x, y);
+    }
+
+    /**
+     * Insert this object into the map.
+     *
+     * @param obj object to add
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @throws MapException if there is a problem
+     */
+    public void insertObject(IMapObject obj, int x, int y)
+        throws MapException
+    {
+        if (!isInBounds(x, y)) {
+            final String msg =
+                String.format("Bad insert position [%d,%d] for %s", x, y,
+                              obj.getName());
+            throw new MapException(msg);
+        }
+
+        final int idx = y * width + x;
+
+        IMapObject occupant = occupants.get(idx);
+        if (occupant != null) {
+            final String msg =
+                String.format("%s is at [%d, %d]", occupant, x, y);
+            throw new OccupiedException(msg);
+        }
+
+        Terrain t = getCellTerrain(x, y);
+        if (!t.isMovable()) {
+            final String msg =
+                String.format("Terrain %s at [%d,%d] is not movable", t, x, y);
+            throw new MapException(msg);
+        }
+
+        occupants.put(idx, obj);
+        occupantAdded(x, y);
+        obj.setPosition(x, y);
+
+        fireInserted(obj, x, y);
+    }
+
+    /**
+     * Is the specified point inside the map?
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>true</tt> if the point is inside the map
+     */
+    public boolean isInBounds(int x, int y)
+    {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Is the specified point occupied?
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>true</tt> if this point is occupied
+     *
+     * @throws MapException if there is a problem
+     */
+    public boolean isOccupied(int x, int y)
+        throws MapException
+    {
+        return getOccupant(x, y) != null;
+    }
+
+    /**
+     * Move object in the specified direction.
+     *
+     * @param obj object being moved
+     * @param dir direction
+     *
+     * @throws MapException if there is a problem
+     */
+    public void moveDirection(IMapObject obj, Direction dir)
+        throws MapException
+    {
+        MoveStatus status = tryMoveDirection(obj, dir);
+        if (status == MoveStatus.OUT_OF_BOUNDS) {
+            throw new MapException(String.format("Cannot move %s to %s",
+                                                 obj.getName(), dir));
+        } else if (status != MoveStatus.OK) {
+            throw moveError(obj, obj.getX() + dir.getDx(),
+                            obj.getY() + dir.getDy(), status);
+        }
+    }
+
+    /**
+     * Build the exception describing a failed move.
+     *
+     * @param obj object being moved
+     * @param x target X coordinate
+     * @param y target Y coordinate
+     * @param status reason the move failed
+     *
+     * @return exception
+     */
+    private MapException moveError(IMapObject obj, int x, int y,
+                                   MoveStatus status)
+    {
+        final String msg;
+        switch (status) {
+        case NOT_ON_MAP:
+            return new MapException(removeError(obj));
+        case OCCUPIED:
+            msg = String.format("%s is at [%d, %d]",
+                                occupants.get(y * width + x), x, y);
+            return new OccupiedException(msg);
+        case BLOCKED:
+            msg = String.format("Terrain %s at [%d,%d] is not movable",
+                                getCellTerrain(x, y), x, y);
+            return new MapException(msg);
+        default:
+            msg = String.format("Bad insert position [%d,%d] for %s", x, y,
+                                obj.getName());
+            return new MapException(msg);
+        }
+    }
+
+    /**
+     * Move the object to the specified position.
+     *
+     * @param obj object
+     * @param x X position
+     * @param y Y position
+     *
+     * @throws MapException if there is a problem
+     */
+    public void moveTo(IMapObject obj, int x, int y)
+        throws MapException
+    {
+        MoveStatus status = tryMoveTo(obj, x, y);
+        if (status != MoveStatus.OK) {
+            throw moveError(obj, x, y, status);
+        }
+    }
+
+    /**
+     * Called after an object is added to the specified cell.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    void occupantAdded(int x, int y)
+    {
+        // subclasses may override this
+    }
+
+    /**
+     * Called after an object is removed from the specified cell.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    void occupantRemoved(int x, int y)
+    {
+        // subclasses may override this
+    }
+
+    /**
+     * Explain why this object cannot be removed from the map.
+     *
+     * @param obj object to remove
+     *
+     * @return <tt>null</tt> if the object can be removed
+     */
+    private String removeError(IMapObject obj)
+    {
+        if (!isInBounds(obj.getX(), obj.getY())) {
+            return String.format("Bad current position [%d,%d] for %s",
+                                 obj.getX(), obj.getY(), obj.getName());
+        }
+
+        IMapObject occupant = occupants.get(obj.getY() * width + obj.getX());
+        if (occupant == null) {
+            return String.format("Entry [%d, %d] does not contain %s",
+                                 obj.getX(), obj.getY(), obj.getName());
+        } else if (!occupant.equals(obj)) {
+            return String.format("Entry [%d, %d] contains %s, not %s",
+                                 obj.getX(), obj.getY(), occupant.getName(),
+                                 obj.getName());
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove a map listener.
+     *
+     * @param listener map listener
+     */
+    public void removeListener(IMapListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Remove this object from the map.
+     *
+     * @param obj object to remove
+     *
+     * @throws MapException if there is a problem
+     */
+    public void removeObject(IMapObject obj)
+        throws MapException
+    {
+        final String errMsg = removeError(obj);
+        if (errMsg != null) {
+            throw new MapException(errMsg);
+        }
+
+        final int x = obj.getX();
+        final int y = obj.getY();
+
+        occupants.remove(y * width + x);
+        occupantRemoved(x, y);
+
+        obj.clearPosition();
+
+        fireRemoved(obj, x, y);
+    }
+
+    /**
+     * Get the object which occupies the specified position.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>null</tt> if the point is empty or outside the map
+     */
+    public IMapObject tryGetOccupant(int x, int y)
+    {
+        if (!isInBounds(x, y)) {
+            return null;
+        }
+
+        return occupants.get(y * width + x);
+    }
+
+    /**
+     * Get the terrain found at the specified coordinates.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>null</tt> if the point is outside the map
+     */
+    public Terrain tryGetTerrain(int x, int y)
+    {
+        if (!isInBounds(x, y)) {
+            return null;
+        }
+
+        return getCellTerrain(x, y);
+    }
+
+    /**
+     * Try to move an object in the specified direction.
+     *
+     * @param obj object being moved
+     * @param dir direction
+     *
+     * @return <tt>MoveStatus.OK</tt> if the object was moved
+     */
+    public MoveStatus tryMoveDirection(IMapObject obj, Direction dir)
+    {
+        final int newX = obj.getX() + dir.getDx();
+        final int newY = obj.getY() + dir.getDy();
+
+        if (!isInBounds(newX, newY)) {
+            return MoveStatus.OUT_OF_BOUNDS;
+        }
+
+        return tryMoveTo(obj, newX, newY);
+    }
+
+    /**
+     * Try to move an object to the specified position.
+     *
+     * @param obj object being moved
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>MoveStatus.OK</tt> if the object was moved
+     */
+    public MoveStatus tryMoveTo(IMapObject obj, int x, int y)
+    {
+        final int oldX = obj.getX();
+        final int oldY = obj.getY();
+
+        // only try to remove object if position is valid
+        final boolean onMap = oldX >= 0 && oldY >= 0;
+        if (onMap && removeError(obj) != null) {
+            return MoveStatus.NOT_ON_MAP;
+        }
+
+        if (!isInBounds(x, y)) {
+            return MoveStatus.OUT_OF_BOUNDS;
+        }
+
+        final int idx = y * width + x;
+
+        IMapObject occupant = occupants.get(idx);
+        if (occupant != null && occupant != obj) {
+            return MoveStatus.OCCUPIED;
+        }
+
+        if (!getCellTerrain(x, y).isMovable()) {
+            return MoveStatus.BLOCKED;
+        }
+
+        if (onMap) {
+            occupants.remove(oldY * width + oldX);
+            occupantRemoved(oldX, oldY);
+        }
+
+        occupants.put(idx, obj);
+        occupantAdded(x, y);
+        obj.setPosition(x, y);
+
+        if (onMap) {
+            fireMoved(obj, oldX, oldY);
+        } else {
+            fireInserted(obj, x, y);
+        }
+
+        return MoveStatus.OK;
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("%dx%d", width, height);
+    }
+
+    /**
+     * Row-major iterator over all cells, or over all cells containing
+     * a single terrain type.
+     */
+    class ScanIterable
+        implements Iterable<MapEntry>, Iterator<MapEntry>
+    {
+        private Terrain terrain;
+        private int x;
+        private int y;
+
+        ScanIterable(Terrain terrain)
+        {
+            this.terrain = terrain;
+
+            if (terrain != null) {
+                advance();
+            }
+        }
+
+        private void advance()
+        {
+            while (y < height && getCellTerrain(x, y) != terrain) {
+                if (++x == width) {
+                    x = 0;
+                    y++;
+                }
+            }
+        }
+
+        public boolean hasNext()
+        {
+            return y < height;
+        }
+
+        public Iterator<MapEntry> iterator()
+        {
+            return this;
+        }
+
+        public MapEntry next()
+        {
+            if (!hasNext()) {
+                return null;
+            }
+
+            MapEntry entry = createEntry(x, y);
+
+            if (++x == width) {
+                x = 0;
+                y++;
+            }
+            if (terrain != null) {
+                advance();
+            }
+
+            return entry;
+        }
+
+        public  void remove()
+        {
+            throw new UnimplementedError();
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.glowacki.core;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Set of characters indexed by id.
+ *
+ * Players and nonplayers are kept in separate lists, in the order they
+ * were added.  Iterating over all characters returns the players first.
+ * The iterators are live views rather than copies, and a character may
+ * be removed at any time (even the current one) without disturbing an
+ * iteration in progress.  Characters added during an iteration may or
+ * may not be returned by it.
+ */
+public class CharacterRegistry
+    implements Iterable<ICharacter>
+{
+    private IntHashMap<Entry> entries = new IntHashMap<Entry>();
+    private EntryList players = new EntryList();
+    private EntryList nonplayers = new EntryList();
+
+    /**
+     * Add a character.
+     *
+     * @param ch character
+     *
+     * @return <tt>false</tt> if the character's id is already registered
+     */
+    public boolean add(ICharacter ch)
+    {
+        if (entries.containsKey(ch.getId())) {
+            return false;
+        }
+
+        Entry entry = new Entry(ch);
+        entries.put(ch.getId(), entry);
+        if (ch.isPlayer()) {
+            players.add(entry);
+        } else {
+            nonplayers.add(entry);
+        }
+
+        return true;
+    }
+
+    /**
+     * Is this character registered?
+     *
+     * @param ch character
+     *
+     * @return <tt>true</tt> if the character is registered
+     */
+    public boolean contains(ICharacter ch)
+    {
+        Entry entry = entries.get(ch.getId());
+        return entry != null && entry.character == ch;
+    }
+
+    /**
+     * Get the character with the specified id.
+     *
+     * @param id character id
+     *
+     * @return <tt>null</tt> if there is no such character
+     */
+    public ICharacter get(int id)
+    {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+
+        return entry.character;
+    }
+
+    /**
+     * Get the number of nonplayer characters.
+     *
+     * @return number of nonplayers
+     */
+    public int getNumberOfNonplayers()
+    {
+        return nonplayers.size;
+    }
+
+    /**
+     * Get the number of player characters.
+     *
+     * @return number of players
+     */
+    public int getNumberOfPlayers()
+    {
+        return players.size;
+    }
+
+    /**
+     * Iterate over all characters.
+     *
+     * @return character iterator
+     */
+    public Iterator<ICharacter> iterator()
+    {
+        return new EntryIterator(players.head, nonplayers);
+    }
+
+    /**
+     * Get a view of the nonplayer characters.
+     *
+     * @return nonplayers
+     */
+    public Iterable<ICharacter> listNonplayers()
+    {
+        return nonplayers;
+    }
+
+    /**
+     * Get a view of the player characters.
+     *
+     * @return players
+     */
+    public Iterable<ICharacter> listPlayers()
+    {
+        return players;
+    }
+
+    /**
+     * Remove a character.
+     *
+     * @param ch character
+     *
+     * @return <tt>false</tt> if the character was not registered
+     */
+    public boolean remove(ICharacter ch)
+    {
+        Entry entry = entries.get(ch.getId());
+        if (entry == null || entry.character != ch) {
+            return false;
+        }
+
+        entries.remove(ch.getId());
+        if (ch.isPlayer()) {
+            players.remove(entry);
+        } else {
+            nonplayers.remove(entry);
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the total number of characters.
+     *
+     * @return number of characters
+     */
+    public int size()
+    {
+        return players.size + nonplayers.size;
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("CharacterRegistry[%d players, %d nonplayers]",
+                             players.size, nonplayers.size);
+    }
+
+    /**
+     * A registered character.
+     */
+    static class Entry
+    {
+        ICharacter character;
+        boolean removed;
+
+        Entry prev;
+        Entry next;
+
+        Entry(ICharacter character)
+        {
+            this.character = character;
+        }
+    }
+
+    /**
+     * Iterator which skips entries removed after it reached them.
+     */
+    static class EntryIterator
+        implements Iterator<ICharacter>
+    {
+        private Entry nextEntry;
+        private EntryList nextList;
+
+        EntryIterator(Entry first, EntryList nextList)
+        {
+            this.nextEntry = first;
+            this.nextList = nextList;
+        }
+
+        public boolean hasNext()
+        {
+            while (true) {
+                while (nextEntry != null && nextEntry.removed) {
+                    nextEntry = nextEntry.next;
+                }
+
+                if (nextEntry != null || nextList == null) {
+                    return nextEntry != null;
+                }
+
+                nextEntry = nextList.head;
+                nextList = null;
+            }
+        }
+
+        public ICharacter next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            ICharacter ch = nextEntry.character;
+            nextEntry = nextEntry.next;
+            return ch;
+        }
+
+        public void remove()
+        {
+            throw new UnimplementedError();
+        }
+    }
+
+    /**
+     * Linked list of entries.  Removed entries keep their <tt>next</tt>
+     * link so iterators which are sitting on them can carry on.
+     */
+    static class EntryList
+        implements Iterable<ICharacter>
+    {
+        Entry head;
+        Entry tail;
+        int size;
+
+        void add(Entry entry)
+        {
+            entry.prev = tail;
+            if (tail == null) {
+                head = entry;
+            } else {
+                tail.next = entry;
+            }
+            tail = entry;
+            size++;
+        }
+
+        public Iterator<ICharacter> iterator()
+        {
+            return new EntryIterator(head, null);
+        }
+
+        void remove(Entry entry)
+        {
+            if (entry.prev == null) {
+                head = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+
+            if (entry.next == null) {
+                tail = entry.prev;
+            } else {
+                entry.next.prev = entry.prev;
+            }
+
+            entry.removed = true;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package org.glowacki.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Map whose terrain is split into square chunks which are created on
+ * first access from an <tt>IChunkSource</tt>.
+ *
+ * At most <tt>maxChunks</tt> chunks are kept in memory; when another
+ * chunk is needed, the least recently used chunk which has no occupants
+ * and no terrain changes is discarded and will be rebuilt from the
+ * source if it is needed again.
+ *
+ * Each chunk also records which terrain types it contains the first time
+ * it is loaded, so <tt>find</tt> and <tt>findAll</tt> only load chunks
+ * which may hold the terrain (or which have never been seen).  Other
+ * operations which look at every cell (<tt>getEntries</tt>,
+ * <tt>getPicture</tt>) work, but load every chunk in turn.
+ */
+public class ChunkedMap
+    extends BaseMap
+{
+    /** Default chunk width and height */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    private int chunkShift;
+    private int chunkMask;
+    private int chunksAcross;
+    private int chunksDown;
+    private int maxChunks;
+    private IChunkSource source;
+
+    private IntHashMap<Chunk> chunks = new IntHashMap<Chunk>();
+    // most recently used chunk
+    private Chunk head;
+    // least recently used chunk
+    private Chunk tail;
+
+    // bit N is set if a chunk may contain the terrain with ordinal N;
+    // zero until the chunk has been loaded
+    private int[] chunkTerrain;
+
+    // scratch buffer passed to the chunk source
+    private Terrain[] fillBuffer;
+
+    private int loads;
+    private int evictions;
+
+    /**
+     * Create a chunked map using the default chunk size.
+     *
+     * @param width map width
+     * @param height map height
+     * @param maxChunks maximum number of idle chunks kept in memory
+     * @param source terrain source
+     *
+     * @throws MapException if there is a problem
+     */
+    public ChunkedMap(int width, int height, int maxChunks,
+                      IChunkSource source)
+        throws MapException
+    {
+        this(width, height, DEFAULT_CHUNK_SIZE, maxChunks, source);
+    }
+
+    /**
+     * Create a chunked map.
+     *
+     * @param width map width
+     * @param height map height
+     * @param chunkSize chunk width and height (must be a power of two)
+     * @param maxChunks maximum number of idle chunks kept in memory
+     * @param source terrain source
+     *
+     * @throws MapException if there is a problem
+     */
+    public ChunkedMap(int width, int height, int chunkSize, int maxChunks,
+                      IChunkSource source)
+        throws MapException
+    {
+        super(width, height);
+
+        if (chunkSize <= 0 || (chunkSize & (chunkSize - 1)) != 0) {
+            throw new MapException("Chunk size " + chunkSize +
+                                   " is not a power of two");
+        } else if (maxChunks <= 0) {
+            throw new MapException("Bad maximum number of chunks " +
+                                   maxChunks);
+        } else if (source == null) {
+            throw new MapException("Chunk source cannot be null");
+        }
+
+        chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        chunkMask = chunkSize - 1;
+        chunksAcross = (width + chunkMask) >> chunkShift;
+        chunksDown = (height + chunkMask) >> chunkShift;
+        this.maxChunks = maxChunks;
+        this.source = source;
+
+        fillBuffer = new Terrain[chunkSize * chunkSize];
+
+        chunkTerrain = new int[chunksAcross * chunksDown];
+    }
+
+    /**
+     * Discard idle chunks until the number of loaded chunks is within
+     * the budget.  The most recently used chunk is never discarded.
+     */
+    private void evict()
+    {
+        Chunk chunk = tail;
+        while (chunks.size() > maxChunks && chunk != null && chunk != head) {
+            Chunk prev = chunk.prev;
+            if (chunk.isIdle()) {
+                unlink(chunk);
+                chunks.remove(chunk.key);
+                evictions++;
+            }
+            chunk = prev;
+        }
+    }
+
+    /**
+     * Iterate through all occurrences of the specified terrain, in
+     * row-major order.  Chunks which are known not to contain the
+     * terrain are skipped without being loaded.
+     *
+     * @param t terrain to find
+     *
+     * @return iterator of matching entries
+     */
+    public Iterable<MapEntry> findAll(Terrain t)
+    {
+        return new IndexedIterable(t);
+    }
+
+    Terrain getCellTerrain(int x, int y)
+    {
+        Chunk chunk = getChunk(x, y);
+        return TERRAIN[chunk.terrain[(y & chunkMask) * chunk.width +
+                                     (x & chunkMask)]];
+    }
+
+    /**
+     * Get the chunk containing the specified point, loading it if necessary.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return chunk
+     */
+    private Chunk getChunk(int x, int y)
+    {
+        final int key = (y >> chunkShift) * chunksAcross + (x >> chunkShift);
+        if (head != null && head.key == key) {
+            return head;
+        }
+
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = loadChunk(key, x & ~chunkMask, y & ~chunkMask);
+            chunks.put(key, chunk);
+            linkFirst(chunk);
+            evict();
+        } else {
+            unlink(chunk);
+            linkFirst(chunk);
+        }
+
+        return chunk;
+    }
+
+    /**
+     * Get the number of chunks which have been evicted.
+     *
+     * @return number of evictions
+     */
+    public int getEvictionCount()
+    {
+        return evictions;
+    }
+
+    /**
+     * Get the number of chunks which have been loaded from the source.
+     *
+     * @return number of loads
+     */
+    public int getLoadCount()
+    {
+        return loads;
+    }
+
+    /**
+     * Get the number of chunks currently in memory.
+     *
+     * @return number of resident chunks
+     */
+    public int getResidentChunks()
+    {
+        return chunks.size();
+    }
+
+    private void linkFirst(Chunk chunk)
+    {
+        chunk.prev = null;
+        chunk.next = head;
+        if (head != null) {
+            head.prev = chunk;
+        }
+        head = chunk;
+        if (tail == null) {
+            tail = chunk;
+        }
+    }
+
+    private Chunk loadChunk(int key, int left, int top)
+    {
+        final int w = Math.min(chunkMask + 1, getMaxX() + 1 - left);
+        final int h = Math.min(chunkMask + 1, getMaxY() + 1 - top);
+
+        source.fillChunk(left, top, w, h, fillBuffer);
+
+        int mask = 0;
+
+        byte[] cells = new byte[w * h];
+        for (int i = 0; i < cells.length; i++) {
+            Terrain t = fillBuffer[i];
+            cells[i] = (byte) (t == null ? Terrain.UNKNOWN : t).ordinal();
+            mask |= 1 << cells[i];
+        }
+
+        // sources return the same terrain every time, so a reloaded
+        // chunk always produces the same mask
+        chunkTerrain[key] = mask;
+
+        loads++;
+
+        return new Chunk(key, w, cells);
+    }
+
+    void occupantAdded(int x, int y)
+    {
+        getChunk(x, y).occupants++;
+    }
+
+    void occupantRemoved(int x, int y)
+    {
+        getChunk(x, y).occupants--;
+    }
+
+    /**
+     * Change the terrain at the specified point.  The changed chunk
+     * will stay in memory for the life of this map.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param t new terrain
+     *
+     * @throws MapException if the point is not valid or an occupant
+     *                      would be left on immovable terrain
+     */
+    public void setTerrain(int x, int y, Terrain t)
+        throws MapException
+    {
+        getIndex(x, y);
+
+        IMapObject occupant = tryGetOccupant(x, y);
+        if (!t.isMovable() && occupant != null) {
+            final String msg =
+                String.format("Cannot change [%d,%d] to %s; occupied by %s",
+                              x, y, t, occupant.getName());
+            throw new OccupiedException(msg);
+        }
+
+        Chunk chunk = getChunk(x, y);
+        chunk.terrain[(y & chunkMask) * chunk.width + (x & chunkMask)] =
+            (byte) t.ordinal();
+        chunk.modified = true;
+
+        // the old terrain's bit is left set, which only costs a wasted
+        // look at this (resident) chunk
+        chunkTerrain[chunk.key] |= 1 << t.ordinal();
+
+        fireTerrainChanged(x, y);
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return super.toString() + "/" + (chunkMask + 1) + "[" +
+            chunks.size() + " chunks]";
+    }
+
+    private void unlink(Chunk chunk)
+    {
+        if (chunk.prev == null) {
+            head = chunk.next;
+        } else {
+            chunk.prev.next = chunk.next;
+        }
+
+        if (chunk.next == null) {
+            tail = chunk.prev;
+        } else {
+            chunk.next.prev = chunk.prev;
+        }
+
+        chunk.prev = null;
+        chunk.next = null;
+    }
+
+    /**
+     * Row-major iterator over the cells containing a single terrain
+     * type.  Matches are gathered one row of chunks at a time, loading
+     * only the chunks whose terrain mask allows a match.
+     */
+    class IndexedIterable
+        implements Iterable<MapEntry>, Iterator<MapEntry>
+    {
+        private Terrain terrain;
+        private int bit;
+
+        private int chunkRow;
+        private int[] found = new int[16];
+        private int numFound;
+        private int next;
+
+        IndexedIterable(Terrain terrain)
+        {
+            this.terrain = terrain;
+            bit = 1 << terrain.ordinal();
+
+            fill();
+        }
+
+        private void add(int cell)
+        {
+            if (numFound == found.length) {
+                found = Arrays.copyOf(found, numFound * 2);
+            }
+            found[numFound++] = cell;
+        }
+
+        /**
+         * Gather matches from the next row of chunks which has any.
+         */
+        private void fill()
+        {
+            final int width = getMaxX() + 1;
+
+            numFound = 0;
+            next = 0;
+            while (numFound == 0 && chunkRow < chunksDown) {
+                final int top = chunkRow << chunkShift;
+                for (int cx = 0; cx < chunksAcross; cx++) {
+                    final int key = chunkRow * chunksAcross + cx;
+                    if (chunkTerrain[key] != 0 &&
+                        (chunkTerrain[key] & bit) == 0)
+                    {
+                        continue;
+                    }
+
+                    final int left = cx << chunkShift;
+
+                    Chunk chunk = getChunk(left, top);
+                    if ((chunkTerrain[key] & bit) == 0) {
+                        continue;
+                    }
+
+                    final byte ord = (byte) terrain.ordinal();
+                    for (int i = 0; i < chunk.terrain.length; i++) {
+                        if (chunk.terrain[i] == ord) {
+                            add((top + i / chunk.width) * width + left +
+                                i % chunk.width);
+                        }
+                    }
+                }
+
+                chunkRow++;
+            }
+
+            // chunks were scanned left to right, so put the matches
+            // back into row-major order
+            Arrays.sort(found, 0, numFound);
+        }
+
+        public boolean hasNext()
+        {
+            return next < numFound;
+        }
+
+        public Iterator<MapEntry> iterator()
+        {
+            return this;
+        }
+
+        public MapEntry next()
+        {
+            if (!hasNext()) {
+                return null;
+            }
+
+            final int width = getMaxX() + 1;
+            final int x = found[next] % width;
+            final int y = found[next] / width;
+
+            next++;
+            if (next == numFound) {
+                fill();
+            }
+
+            return new MapEntry(x, y, terrain, tryGetOccupant(x, y));
+        }
+
+        public void remove()
+        {
+            throw new UnimplementedError();
+        }
+    }
+
+    /**
+     * A resident chunk of terrain.
+     */
+    static class Chunk
+    {
+        int key;
+        int width;
+        byte[] terrain;
+
+        int occupants;
+        boolean modified;
+
+        Chunk prev;
+        Chunk next;
+
+        Chunk(int key, int width, byte[] terrain)
+        {
+            this.key = key;
+            this.width = width;
+            this.terrain = terrain;
+        }
+
+        /**
+         * Can this chunk be discarded?
+         *
+         * @return <tt>true</tt> if the chunk has no occupants or changes
+         */
+        boolean isIdle()
+        {
+            return occupants == 0 && !modified;
+        }
+    }
+}
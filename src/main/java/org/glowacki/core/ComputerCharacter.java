@@ -1,5 +1,10 @@
 package org.glowacki.core;
 
+import java.util.List;
+
+import org.glowacki.core.astar.CooperativePathFinder;
+import org.glowacki.core.astar.DistanceField;
+import org.glowacki.core.astar.PathException;
 import org.glowacki.core.event.StateEvent;
 import org.glowacki.core.util.IRandom;
 
@@ -10,10 +15,18 @@ public class ComputerCharacter
     extends BaseCharacter
 {
     private static final int MAX_ATTEMPTS = 20;
+    /** Give up the chase when this many sight distances from a player */
+    private static final int LOST_TRAIL = 2;
+    /** Replan the chase after following a plan for this many turns */
+    private static final int REPLAN_TURNS = 4;
 
     private IRandom random;
     private State state;
 
+    // cooperative plan for the chase, starting at turn planTurn
+    private List<IMapPoint> plan;
+    private int planTurn;
+
     /**
      * Create a computer character.
      *
@@ -51,6 +64,13 @@ public class ComputerCharacter
         throw new UnimplementedError();
     }
 
+    private void changeState(State newState)
+    {
+        final State oldState = state;
+        state = newState;
+        sendEvent(new StateEvent(this, oldState, state));
+    }
+
     /**
      * Clear the stored path.
      */
@@ -69,6 +89,87 @@ public class ComputerCharacter
         return "XXX#" + getId();
     }
 
+    private void dropPlan(ILevel lvl)
+    {
+        if (plan != null) {
+            lvl.getCooperativePathFinder().release(this);
+            plan = null;
+        }
+    }
+
+    /**
+     * Find the closest player the chase could still be following.
+     *
+     * @param lvl current level
+     *
+     * @return closest player, or <tt>null</tt> if there are none nearby
+     */
+    private ICharacter findNearestPlayer(ILevel lvl)
+    {
+        final int range = getSightDistance() * LOST_TRAIL;
+
+        ICharacter nearest = null;
+        int best = Integer.MAX_VALUE;
+        for (ICharacter ch : lvl.charactersInRect(getX() - range,
+                                                  getY() - range,
+                                                  getX() + range,
+                                                  getY() + range))
+        {
+            if (!ch.isPlayer()) {
+                continue;
+            }
+
+            final int dist = Math.max(Math.abs(ch.getX() - getX()),
+                                      Math.abs(ch.getY() - getY()));
+            if (dist < best) {
+                nearest = ch;
+                best = dist;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * Get this turn's step from the cooperative plan, replanning first
+     * if the plan has run out or is getting stale.
+     *
+     * @param lvl current level
+     *
+     * @return planned point (the current position if the plan is to
+     *         wait), or <tt>null</tt> if there is no plan
+     */
+    private IMapPoint getPlannedStep(ILevel lvl)
+    {
+        CooperativePathFinder finder = lvl.getCooperativePathFinder();
+
+        final int turn = finder.getReservations().getTurn();
+        if (plan == null || turn - planTurn >= plan.size() ||
+            turn - planTurn >= REPLAN_TURNS)
+        {
+            ICharacter target = findNearestPlayer(lvl);
+            if (target == null) {
+                dropPlan(lvl);
+                return null;
+            }
+
+            try {
+                plan = finder.findPath(this, target);
+            } catch (PathException pe) {
+                // release the old plan's reservations
+                dropPlan(lvl);
+            }
+            planTurn = turn;
+
+            if (plan == null || plan.isEmpty()) {
+                dropPlan(lvl);
+                return null;
+            }
+        }
+
+        return plan.get(turn - planTurn);
+    }
+
     /**
      * Get the boolean array indicating which cells in the current level
      * have been seen.
@@ -95,9 +196,7 @@ public class ComputerCharacter
         double pct = random.nextDouble();
         if (pct < 0.05) {
             // 5% chance of waking up
-            final State oldState = state;
-            state = State.MEANDER;
-            sendEvent(new StateEvent(this, oldState, state));
+            changeState(State.MEANDER);
         }
     }
 
@@ -106,29 +205,79 @@ public class ComputerCharacter
         double pct = random.nextDouble();
         if (pct >= 0.99) {
             // 1% chance of falling asleep
-            final State oldState = state;
-            state = State.ASLEEP;
-            sendEvent(new StateEvent(this, oldState, state));
+            changeState(State.ASLEEP);
         } else {
-            final Direction startDir =
-                Direction.getDirection(random.nextInt(8));
+            ILevel lvl = getLevel();
+            if (lvl == null) {
+                return;
+            }
 
-            Direction dir = startDir;
-            do {
-                try {
-                    move(dir);
+            if (isPlayerNearby(lvl)) {
+                changeState(State.IN_PURSUIT);
+                return;
+            }
+
+            // only try directions whose terrain can be entered,
+            // starting from a random one and working clockwise
+            final int mask = lvl.getMap().getNeighborMask(getX(), getY());
+            final int start = random.nextInt(Direction.NUM_COMPASS);
+
+            int rotated = (mask >>> start) |
+                ((mask << (Direction.NUM_COMPASS - start)) & 0xff);
+            while (rotated != 0) {
+                final int bit = Integer.numberOfTrailingZeros(rotated);
+                rotated &= rotated - 1;
+
+                if (tryMove(Direction.getDirection(start + bit)) >= 0) {
                     return;
-                } catch (CoreException ce) {
-                    // not that way!
                 }
-                dir = dir.next();
-            } while (dir != startDir);
+            }
         }
     }
 
     private void handleInPursuitTurn()
     {
-        throw new UnimplementedError();
+        ILevel lvl = getLevel();
+        if (lvl == null) {
+            return;
+        }
+
+        // every nonplayer chasing the level's players shares one field,
+        // so checking the trail costs the same however many are chasing
+        DistanceField field = lvl.getPlayerDistanceField();
+        if (field.getDistance(getX(), getY()) >
+            getSightDistance() * LOST_TRAIL)
+        {
+            dropPlan(lvl);
+            changeState(State.MEANDER);
+            return;
+        }
+
+        // chasers plan around each other's reservations so they spread
+        // out rather than queue up; the field covers any gaps in the plan
+        Direction dir = Direction.UNKNOWN;
+
+        IMapPoint step = getPlannedStep(lvl);
+        if (step != null) {
+            if (step.getX() == getX() && step.getY() == getY()) {
+                // the plan is to wait
+                return;
+            }
+
+            dir = Direction.fromOffset(step.getX() - getX(),
+                                       step.getY() - getY());
+        }
+
+        if (dir == Direction.UNKNOWN) {
+            dropPlan(lvl);
+            dir = field.getNextStep(getX(), getY());
+        }
+
+        // if the way is blocked or a player is already adjacent,
+        // the move fails and this character waits
+        if (tryMove(dir) < 0) {
+            dropPlan(lvl);
+        }
     }
 
     /**
@@ -141,6 +290,40 @@ public class ComputerCharacter
         return false;
     }
 
+    /**
+     * Is a player within sight distance, both across the map and by the
+     * shortest walk?  Nearby characters are checked first, so the
+     * level's player distance field is only used (and rebuilt) when a
+     * player might be close.
+     *
+     * @param lvl current level
+     *
+     * @return <tt>true</tt> if a player is close by
+     */
+    private boolean isPlayerNearby(ILevel lvl)
+    {
+        final int sight = getSightDistance();
+
+        boolean found = false;
+        for (ICharacter ch : lvl.charactersInRect(getX() - sight,
+                                                  getY() - sight,
+                                                  getX() + sight,
+                                                  getY() + sight))
+        {
+            if (ch.isPlayer()) {
+                found = true;
+                break;
+            }
+        }
+
+        if (!found) {
+            return false;
+        }
+
+        DistanceField field = lvl.getPlayerDistanceField();
+        return field.getDistance(getX(), getY()) <= sight;
+    }
+
     /**
      * Is this character a player?
      *
@@ -0,0 +1,47 @@
+package org.glowacki.core;
+
+import java.util.Arrays;
+
+/**
+ * Chunk source which fills every cell with the same terrain.
+ */
+public class ConstantChunkSource
+    implements IChunkSource
+{
+    private Terrain terrain;
+
+    /**
+     * Create a constant chunk source.
+     *
+     * @param terrain terrain used for every cell
+     */
+    public ConstantChunkSource(Terrain terrain)
+    {
+        this.terrain = terrain;
+    }
+
+    /**
+     * Fill in the terrain for a rectangular chunk of the map.
+     *
+     * @param left X coordinate of the leftmost column
+     * @param top Y coordinate of the top row
+     * @param width number of columns
+     * @param height number of rows
+     * @param cells row-major array of terrain cells to be filled
+     */
+    public void fillChunk(int left, int top, int width, int height,
+                          Terrain[] cells)
+    {
+        Arrays.fill(cells, 0, width * height, terrain);
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return "Constant[" + terrain + "]";
+    }
+}
@@ -5,46 +5,101 @@ import java.util.Collections;
 import java.util.List;
 
 /**
- * Directions
+ * Directions.
+ *
+ * The first eight values are the compass directions, in clockwise order
+ * starting from <tt>LEFT</tt>, so a direction's ordinal doubles as its bit
+ * index in a neighbor mask (see <tt>IMap.getNeighborMask()</tt>) and the
+ * opposite direction is four steps away.
  */
 public enum Direction
 {
     /** left */
-    LEFT,
+    LEFT(-1, 0),
     /** upper left */
-    LEFT_UP,
+    LEFT_UP(-1, -1),
     /** up */
-    UP,
+    UP(0, -1),
     /** upper right */
-    RIGHT_UP,
+    RIGHT_UP(1, -1),
     /** right */
-    RIGHT,
+    RIGHT(1, 0),
     /** lower right */
-    RIGHT_DOWN,
+    RIGHT_DOWN(1, 1),
     /** down */
-    DOWN,
+    DOWN(0, 1),
     /** lower left */
-    LEFT_DOWN,
+    LEFT_DOWN(-1, 1),
     /** climb */
-    CLIMB,
+    CLIMB(0, 0),
     /** descend */
-    DESCEND,
+    DESCEND(0, 0),
     /** unknown */
-    UNKNOWN;
+    UNKNOWN(0, 0);
+
+    /** Number of compass directions */
+    public static final int NUM_COMPASS = 8;
 
     private static final List<Direction> VALUES =
         Collections.unmodifiableList(Arrays.asList(values()));
     private static final int SIZE = VALUES.size();
 
+    /** X offset for each compass bit */
+    private static final int[] DX = new int[NUM_COMPASS];
+    /** Y offset for each compass bit */
+    private static final int[] DY = new int[NUM_COMPASS];
+    /** Compass direction for each (dy + 1) * 3 + (dx + 1) */
+    private static final Direction[] BY_OFFSET = new Direction[9];
+
+    static {
+        Arrays.fill(BY_OFFSET, UNKNOWN);
+        for (int i = 0; i < NUM_COMPASS; i++) {
+            Direction dir = VALUES.get(i);
+            DX[i] = dir.dx;
+            DY[i] = dir.dy;
+            BY_OFFSET[(dir.dy + 1) * 3 + dir.dx + 1] = dir;
+        }
+    }
+
+    private int dx;
+    private int dy;
+
+    Direction(int dx, int dy)
+    {
+        this.dx = dx;
+        this.dy = dy;
+    }
+
     /**
-     * Get the next cardinal direction
+     * Get the compass direction for a one-step offset
      *
-     * @return cardinal direction
+     * @param dx X offset
+     * @param dy Y offset
+     *
+     * @return compass direction, or <tt>UNKNOWN</tt> if the offset is not
+     *         a single step
      */
-    public Direction next()
+    public static Direction fromOffset(int dx, int dy)
     {
-        Direction[] vals = values();
-        return vals[(ordinal() + 1) % 8];
+        if (dx < -1 || dx > 1 || dy < -1 || dy > 1) {
+            return UNKNOWN;
+        }
+
+        return BY_OFFSET[(dy + 1) * 3 + dx + 1];
+    }
+
+    /**
+     * Get this direction's bit in a neighbor mask
+     *
+     * @return single bit, or 0 if this is not a compass direction
+     */
+    public int getBit()
+    {
+        if (ordinal() >= NUM_COMPASS) {
+            return 0;
+        }
+
+        return 1 << ordinal();
     }
 
     /**
@@ -60,6 +115,76 @@ public enum Direction
             throw new Error("Direction cannot be negative");
         }
 
-        return VALUES.get(val % 8);
+        return VALUES.get(val % NUM_COMPASS);
+    }
+
+    /**
+     * Get the X offset of this direction
+     *
+     * @return -1, 0 or 1
+     */
+    public int getDx()
+    {
+        return dx;
+    }
+
+    /**
+     * Get the X offset of the compass direction with the specified bit index
+     *
+     * @param bit bit index (0-7)
+     *
+     * @return -1, 0 or 1
+     */
+    public static int getDx(int bit)
+    {
+        return DX[bit];
+    }
+
+    /**
+     * Get the Y offset of this direction
+     *
+     * @return -1, 0 or 1
+     */
+    public int getDy()
+    {
+        return dy;
+    }
+
+    /**
+     * Get the Y offset of the compass direction with the specified bit index
+     *
+     * @param bit bit index (0-7)
+     *
+     * @return -1, 0 or 1
+     */
+    public static int getDy(int bit)
+    {
+        return DY[bit];
+    }
+
+    /**
+     * Get the next cardinal direction
+     *
+     * @return cardinal direction
+     */
+    public Direction next()
+    {
+        Direction[] vals = values();
+        return vals[(ordinal() + 1) % NUM_COMPASS];
+    }
+
+    /**
+     * Get the opposite cardinal direction
+     *
+     * @return opposite direction (or this direction if it is not a
+     *         compass direction)
+     */
+    public Direction opposite()
+    {
+        if (ordinal() >= NUM_COMPASS) {
+            return this;
+        }
+
+        return VALUES.get((ordinal() + NUM_COMPASS / 2) % NUM_COMPASS);
     }
 }
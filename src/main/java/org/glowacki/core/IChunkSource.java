@@ -0,0 +1,23 @@
+package org.glowacki.core;
+
+/**
+ * Supplier of terrain for a <tt>ChunkedMap</tt>.
+ *
+ * A chunk may be requested again after it has been evicted, so sources
+ * must return the same terrain each time for the same chunk.
+ */
+public interface IChunkSource
+{
+    /**
+     * Fill in the terrain for a rectangular chunk of the map.
+     *
+     * @param left X coordinate of the leftmost column
+     * @param top Y coordinate of the top row
+     * @param width number of columns
+     * @param height number of rows
+     * @param terrain row-major array of <tt>width * height</tt>
+     *                terrain cells to be filled
+     */
+    void fillChunk(int left, int top, int width, int height,
+                   Terrain[] terrain);
+}
@@ -2,6 +2,12 @@ package org.glowacki.core;
 
 import java.util.List;
 
+import org.glowacki.core.astar.ConnectedComponents;
+import org.glowacki.core.astar.CooperativePathFinder;
+import org.glowacki.core.astar.DistanceField;
+import org.glowacki.core.astar.HierarchicalPathFinder;
+import org.glowacki.core.astar.PathCache;
+
 /**
  * Level methods
  */
@@ -19,6 +25,35 @@ public interface ILevel
     void addNonplayer(ComputerCharacter ch, int x, int y)
         throws CoreException;
 
+    /**
+     * Get the characters inside a rectangle.
+     *
+     * @param minX leftmost column
+     * @param minY top row
+     * @param maxX rightmost column
+     * @param maxY bottom row
+     *
+     * @return list of characters
+     */
+    List<ICharacter> charactersInRect(int minX, int minY, int maxX, int maxY);
+
+    /**
+     * Get the characters no more than <tt>radius</tt> cells from a point.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param radius maximum (Euclidean) distance
+     *
+     * @return list of characters
+     */
+    List<ICharacter> charactersWithin(int x, int y, int radius);
+
+    /**
+     * Finish the current turn, moving the cooperative path finder's
+     * reservations on to the next one.
+     */
+    void endTurn();
+
     /**
      * This character is entering this level from above.
      *
@@ -53,6 +88,27 @@ public interface ILevel
     void exit(ICharacter ch)
         throws CoreException;
 
+    /**
+     * Get the connected regions of the level's map.
+     *
+     * @return component labels
+     */
+    ConnectedComponents getComponents();
+
+    /**
+     * Get the level's shared path finder for groups of characters.
+     *
+     * @return cooperative path finder
+     */
+    CooperativePathFinder getCooperativePathFinder();
+
+    /**
+     * Get the level's shared long-distance path finder.
+     *
+     * @return hierarchical path finder
+     */
+    HierarchicalPathFinder getHierarchicalPathFinder();
+
     /**
      * Get the map of this level.
      *
@@ -102,6 +158,20 @@ public interface ILevel
      */
     int getNumberOfPlayerCharacters();
 
+    /**
+     * Get the level's shared path cache.
+     *
+     * @return path cache
+     */
+    PathCache getPathCache();
+
+    /**
+     * Get the level's shared distance field toward its player characters.
+     *
+     * @return player distance field
+     */
+    DistanceField getPlayerDistanceField();
+
     /**
      * Get the previous level.
      *
@@ -122,6 +192,16 @@ public interface ILevel
     Terrain getTerrain(int x, int y)
         throws MapException;
 
+    /**
+     * Is the specified point inside the level?
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>true</tt> if the point is inside the level
+     */
+    boolean isInBounds(int x, int y);
+
     /**
      * Is the specified point occupied?
      *
@@ -142,6 +222,20 @@ public interface ILevel
      */
     Iterable<ICharacter> listCharacters();
 
+    /**
+     * Get a list of nonplayer characters on this level.
+     *
+     * @return list of nonplayer characters
+     */
+    Iterable<ICharacter> listNonplayers();
+
+    /**
+     * Get a list of player characters on this level.
+     *
+     * @return list of player characters
+     */
+    Iterable<ICharacter> listPlayers();
+
     /**
      * Move the character to the specified point.
      *
@@ -153,4 +247,14 @@ public interface ILevel
      */
     void moveTo(ICharacter ch, int x, int y)
         throws MapException;
+
+    /**
+     * Get the terrain at the specified point.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>null</tt> if the point is outside the level
+     */
+    Terrain tryGetTerrain(int x, int y);
 }
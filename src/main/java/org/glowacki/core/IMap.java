@@ -5,6 +5,13 @@ package org.glowacki.core;
  */
 public interface IMap
 {
+    /**
+     * Add a listener which will be told about changes to this map.
+     *
+     * @param listener map listener
+     */
+    void addListener(IMapListener listener);
+
     /**
      * Add this object to the map at the up staircase.
      *
@@ -38,6 +45,15 @@ public interface IMap
      */
     MapEntry find(Terrain t);
 
+    /**
+     * Iterate through all occurrences of the specified terrain.
+     *
+     * @param t terrain to find
+     *
+     * @return iterator of matching entries
+     */
+    Iterable<MapEntry> findAll(Terrain t);
+
     /**
      * Iterate through all map entries (used for path-finding).
      *
@@ -59,6 +75,19 @@ public interface IMap
      */
     int getMaxY();
 
+    /**
+     * Get the movable neighbors of the specified point.  Bit <tt>N</tt>
+     * is set if the neighbor in the compass direction whose ordinal is
+     * <tt>N</tt> is inside the map and its terrain is movable.  Occupants
+     * are not considered.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return neighbor mask (0 if the point is outside the map)
+     */
+    int getNeighborMask(int x, int y);
+
     /**
      * Get the object which occupies the specified position
      *
@@ -102,6 +131,16 @@ public interface IMap
     void insertObject(IMapObject obj, int x, int y)
         throws MapException;
 
+    /**
+     * Is the specified point inside the map?
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>true</tt> if the point is inside the map
+     */
+    boolean isInBounds(int x, int y);
+
     /**
      * Is the specified point occupied?
      *
@@ -138,6 +177,13 @@ public interface IMap
     void moveTo(IMapObject obj, int x, int y)
         throws MapException;
 
+    /**
+     * Remove a map listener.
+     *
+     * @param listener map listener
+     */
+    void removeListener(IMapListener listener);
+
     /**
      * Remove this object from the map.
      *
@@ -147,4 +193,45 @@ public interface IMap
      */
     void removeObject(IMapObject obj)
         throws MapException;
+
+    /**
+     * Get the object which occupies the specified position.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>null</tt> if the point is empty or outside the map
+     */
+    IMapObject tryGetOccupant(int x, int y);
+
+    /**
+     * Get the terrain at the specified point.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>null</tt> if the point is outside the map
+     */
+    Terrain tryGetTerrain(int x, int y);
+
+    /**
+     * Try to move an object in the specified direction.
+     *
+     * @param obj object being moved
+     * @param dir direction
+     *
+     * @return <tt>MoveStatus.OK</tt> if the object was moved
+     */
+    MoveStatus tryMoveDirection(IMapObject obj, Direction dir);
+
+    /**
+     * Try to move an object to the specified point.
+     *
+     * @param obj object being moved
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>MoveStatus.OK</tt> if the object was moved
+     */
+    MoveStatus tryMoveTo(IMapObject obj, int x, int y);
 }
@@ -0,0 +1,42 @@
+package org.glowacki.core;
+
+/**
+ * Receive notification of changes to a map.
+ */
+public interface IMapListener
+{
+    /**
+     * An object was added to the map.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    void objectInserted(IMapObject obj, int x, int y);
+
+    /**
+     * An object was moved to a new position.
+     *
+     * @param obj object (already at its new position)
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    void objectMoved(IMapObject obj, int oldX, int oldY);
+
+    /**
+     * An object was removed from the map.
+     *
+     * @param obj object
+     * @param x X coordinate of the position it was removed from
+     * @param y Y coordinate of the position it was removed from
+     */
+    void objectRemoved(IMapObject obj, int x, int y);
+
+    /**
+     * The terrain at the specified position changed.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    void terrainChanged(int x, int y);
+}
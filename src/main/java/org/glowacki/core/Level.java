@@ -1,8 +1,15 @@
 package org.glowacki.core;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.glowacki.core.astar.ConnectedComponents;
+import org.glowacki.core.astar.CooperativePathFinder;
+import org.glowacki.core.astar.DistanceField;
+import org.glowacki.core.astar.HierarchicalPathFinder;
+import org.glowacki.core.astar.PathCache;
+
 /**
  * Level
  */
@@ -15,8 +22,18 @@ public class Level
     private ILevel prevLevel;
     private ILevel nextLevel;
 
-    private List<ICharacter> players = new ArrayList<ICharacter>();
-    private List<ICharacter> nonplayers = new ArrayList<ICharacter>();
+    private CharacterRegistry characters = new CharacterRegistry();
+    private SpatialHash nearby;
+    // created when the first path or region is requested
+    private ConnectedComponents components;
+    // created when the first group of paths is requested
+    private CooperativePathFinder groupFinder;
+    // created when the first long path is requested
+    private HierarchicalPathFinder pathFinder;
+    // created when the first nonplayer starts chasing a player
+    private DistanceField playerField;
+    // created when the first short path is requested
+    private PathCache pathCache;
 
     /**
      * Create a level.
@@ -28,6 +45,9 @@ public class Level
     {
         this.name = name;
         this.map = map;
+
+        nearby = new SpatialHash(map.getMaxX() + 1, map.getMaxY() + 1);
+        map.addListener(nearby);
     }
 
     /**
@@ -66,8 +86,10 @@ public class Level
     public void addNonplayer(ComputerCharacter ch, int x, int y)
         throws CoreException
     {
+        checkId(ch);
+
         map.insertObject(ch, x, y);
-        nonplayers.add(ch);
+        characters.add(ch);
     }
 
     /**
@@ -94,6 +116,68 @@ public class Level
         lvl.nextLevel = this;
     }
 
+    /**
+     * Get the characters inside a rectangle.
+     *
+     * @param minX leftmost column
+     * @param minY top row
+     * @param maxX rightmost column
+     * @param maxY bottom row
+     *
+     * @return list of characters
+     */
+    public List<ICharacter> charactersInRect(int minX, int minY, int maxX,
+                                             int maxY)
+    {
+        ArrayList<IMapObject> found = new ArrayList<IMapObject>();
+        nearby.findInRect(minX, minY, maxX, maxY, found);
+        return toCharacters(found);
+    }
+
+    /**
+     * Get the characters no more than <tt>radius</tt> cells from a point.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param radius maximum (Euclidean) distance
+     *
+     * @return list of characters
+     */
+    public List<ICharacter> charactersWithin(int x, int y, int radius)
+    {
+        ArrayList<IMapObject> found = new ArrayList<IMapObject>();
+        nearby.findWithin(x, y, radius, found);
+        return toCharacters(found);
+    }
+
+    /**
+     * Make sure no other character on this level has the same id.
+     *
+     * @param ch new character
+     *
+     * @throws LevelException if the id is already in use
+     */
+    private void checkId(ICharacter ch)
+        throws LevelException
+    {
+        if (characters.get(ch.getId()) != null) {
+            throw new LevelException("Level " + name +
+                                     " already contains a character with id " +
+                                     ch.getId());
+        }
+    }
+
+    /**
+     * Finish the current turn, moving the cooperative path finder's
+     * reservations on to the next one.
+     */
+    public void endTurn()
+    {
+        if (groupFinder != null) {
+            groupFinder.advance();
+        }
+    }
+
     /**
      * This character is entering this level from above.
      *
@@ -112,12 +196,13 @@ public class Level
                                      " and " + name);
         }
 
+        checkId(ch);
+
         IMapPoint p = map.enterDown(ch);
 
-        if (ch.isPlayer()) {
-            players.add(ch);
-        } else {
-            nonplayers.add(ch);
+        characters.add(ch);
+        if (playerField != null && ch.isPlayer()) {
+            playerField.addGoal(ch);
         }
 
         ch.setLevel(this);
@@ -143,12 +228,13 @@ public class Level
                                      " and " + name);
         }
 
+        checkId(ch);
+
         IMapPoint p = map.enterUp(ch);
 
-        if (ch.isPlayer()) {
-            players.add(ch);
-        } else {
-            nonplayers.add(ch);
+        characters.add(ch);
+        if (playerField != null && ch.isPlayer()) {
+            playerField.addGoal(ch);
         }
 
         ch.setLevel(this);
@@ -174,16 +260,67 @@ public class Level
         map.removeObject(ch);
         ch.setLevel(null);
 
-        boolean result;
-        if (ch.isPlayer()) {
-            result = players.remove(ch);
-        } else {
-            result = nonplayers.remove(ch);
+        if (!characters.remove(ch)) {
+            throw new LevelException(ch.getName() + " was not on this level");
         }
 
-        if (!result) {
-            throw new LevelException(ch.getName() + " was not on this level");
+        if (playerField != null) {
+            playerField.removeGoal(ch);
+        }
+    }
+
+    /**
+     * Get the connected regions of the level's map.  The labels are
+     * built the first time they are requested and kept up to date as
+     * the map's terrain changes.
+     *
+     * @return component labels
+     */
+    public ConnectedComponents getComponents()
+    {
+        if (components == null) {
+            components = new ConnectedComponents(map);
+            map.addListener(components);
+        }
+
+        return components;
+    }
+
+    /**
+     * Get the level's shared path finder for groups of characters.  It
+     * is created the first time it is requested, and its reservations
+     * are dropped as characters leave the map or stray from their
+     * paths.  Whoever runs the turns must call <tt>endTurn()</tt> once
+     * per turn to keep it in step.
+     *
+     * @return cooperative path finder
+     */
+    public CooperativePathFinder getCooperativePathFinder()
+    {
+        if (groupFinder == null) {
+            groupFinder = new CooperativePathFinder(map);
+            map.addListener(groupFinder);
+        }
+
+        return groupFinder;
+    }
+
+    /**
+     * Get the level's shared long-distance path finder.  It is built
+     * the first time it is requested and kept up to date as the map's
+     * terrain changes.
+     *
+     * @return hierarchical path finder
+     */
+    public HierarchicalPathFinder getHierarchicalPathFinder()
+    {
+        if (pathFinder == null) {
+            pathFinder = new HierarchicalPathFinder(map);
+            pathFinder.setComponents(getComponents());
+            map.addListener(pathFinder);
         }
+
+        return pathFinder;
     }
 
     /**
@@ -243,7 +380,7 @@ public class Level
      */
     public int getNumberOfNonPlayerCharacters()
     {
-        return nonplayers.size();
+        return characters.getNumberOfNonplayers();
     }
 
     /**
@@ -253,7 +390,24 @@ public class Level
      */
     public int getNumberOfPlayerCharacters()
     {
-        return players.size();
+        return characters.getNumberOfPlayers();
+    }
+
+    /**
+     * Get the level's shared path cache.  It is created the first time
+     * it is requested and drops paths as the map changes.
+     *
+     * @return path cache
+     */
+    public PathCache getPathCache()
+    {
+        if (pathCache == null) {
+            pathCache = new PathCache(map);
+            pathCache.setComponents(getComponents());
+            map.addListener(pathCache);
+        }
+
+        return pathCache;
     }
 
     /**
@@ -266,6 +420,26 @@ public class Level
         return map.getPicture();
     }
 
+    /**
+     * Get the level's shared distance field toward its player characters.
+     * It is built the first time it is requested, and follows players
+     * as they move, enter and leave the level.
+     *
+     * @return player distance field
+     */
+    public DistanceField getPlayerDistanceField()
+    {
+        if (playerField == null) {
+            playerField = new DistanceField(map);
+            for (ICharacter ch : characters.listPlayers()) {
+                playerField.addGoal(ch);
+            }
+            map.addListener(playerField);
+        }
+
+        return playerField;
+    }
+
     /**
      * Get the previous level.
      *
@@ -292,6 +466,19 @@ public class Level
         return map.getTerrain(x, y);
     }
 
+    /**
+     * Is the specified point inside the level?
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>true</tt> if the point is inside the level
+     */
+    public boolean isInBounds(int x, int y)
+    {
+        return map.isInBounds(x, y);
+    }
+
     /**
      * Is the specified point occupied?
      *
@@ -309,18 +496,56 @@ public class Level
     }
 
     /**
-     * Get a list of characters on this level.
+     * Get a list of characters on this level.  This is a live view,
+     * and characters may leave the level while it is being iterated.
      *
      * @return list of characters
      */
     public Iterable<ICharacter> listCharacters()
     {
-        List<ICharacter> characters =
-            new ArrayList<ICharacter>(players);
-        characters.addAll(nonplayers);
         return characters;
     }
 
+    /**
+     * Get a list of nonplayer characters on this level.
+     *
+     * @return list of nonplayer characters
+     */
+    public Iterable<ICharacter> listNonplayers()
+    {
+        return characters.listNonplayers();
+    }
+
+    /**
+     * Get a list of player characters on this level.
+     *
+     * @return list of player characters
+     */
+    public Iterable<ICharacter> listPlayers()
+    {
+        return characters.listPlayers();
+    }
+
+    /**
+     * Read a level from a stream in the binary level format.
+     *
+     * @param in input stream
+     *
+     * @return new level
+     *
+     * @throws MapException if there is a problem
+     */
+    public static Level load(InputStream in)
+        throws MapException
+    {
+        Level lvl = new LevelReader(in).readLevel();
+        if (lvl == null) {
+            throw new MapException("No level found");
+        }
+
+        return lvl;
+    }
+
     /**
      * Move the character to the specified point.
      *
@@ -336,6 +561,30 @@ public class Level
         map.moveTo(ch, x, y);
     }
 
+    /**
+     * Get the terrain at the specified point.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>null</tt> if the point is outside the level
+     */
+    public Terrain tryGetTerrain(int x, int y)
+    {
+        return map.tryGetTerrain(x, y);
+    }
+
+    private static List<ICharacter> toCharacters(List<IMapObject> objects)
+    {
+        List<ICharacter> list = new ArrayList<ICharacter>(objects.size());
+        for (IMapObject obj : objects) {
+            if (obj instanceof ICharacter) {
+                list.add((ICharacter) obj);
+            }
+        }
+        return list;
+    }
+
     /**
      * Return a debugging string.
      *
@@ -344,17 +593,17 @@ public class Level
     public String toString()
     {
         String pStr;
-        if (players.size() == 0) {
+        if (characters.getNumberOfPlayers() == 0) {
             pStr = "";
         } else {
-            pStr = " p*" + players.size();
+            pStr = " p*" + characters.getNumberOfPlayers();
         }
 
         String nStr;
-        if (nonplayers.size() == 0) {
+        if (characters.getNumberOfNonplayers() == 0) {
             nStr = "";
         } else {
-            nStr = " n*" + nonplayers.size();
+            nStr = " n*" + characters.getNumberOfNonplayers();
         }
 
         return name + "|" + map + "|" + pStr + nStr;
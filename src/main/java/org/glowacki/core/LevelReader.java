@@ -0,0 +1,281 @@
+package org.glowacki.core;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Read levels written by <tt>LevelWriter</tt>.
+ *
+ * Terrain runs are copied straight into the new map's terrain array,
+ * so no intermediate strings are created.  Input is buffered, so the
+ * stream should not be used by anything else after it is handed to
+ * the reader.
+ */
+public class LevelReader
+{
+    private static final int MAX_PALETTE = 256;
+
+    private DataInputStream in;
+
+    private String name;
+    private Properties metadata;
+    private IMapPoint[] upStairs;
+    private IMapPoint[] downStairs;
+
+    /**
+     * Create a level reader.
+     *
+     * @param in input stream
+     */
+    public LevelReader(InputStream in)
+    {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+    }
+
+    /**
+     * Close the underlying stream.
+     *
+     * @throws MapException if there is a problem
+     */
+    public void close()
+        throws MapException
+    {
+        try {
+            in.close();
+        } catch (IOException ioe) {
+            throw new MapException("Cannot close level stream", ioe);
+        }
+    }
+
+    /**
+     * Get the down staircases of the most recently read level.
+     *
+     * @return down staircase positions
+     */
+    public IMapPoint[] getDownStairs()
+    {
+        return downStairs;
+    }
+
+    /**
+     * Get the metadata for the most recently read level.
+     *
+     * @return level metadata
+     */
+    public Properties getMetadata()
+    {
+        return metadata;
+    }
+
+    /**
+     * Get the name of the most recently read level.
+     *
+     * @return level name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Get the up staircases of the most recently read level.
+     *
+     * @return up staircase positions
+     */
+    public IMapPoint[] getUpStairs()
+    {
+        return upStairs;
+    }
+
+    /**
+     * Read the next level.
+     *
+     * @return <tt>null</tt> if there are no more levels
+     *
+     * @throws MapException if there is a problem
+     */
+    public Level readLevel()
+        throws MapException
+    {
+        Map map = readMap();
+        if (map == null) {
+            return null;
+        }
+
+        return new Level(name, map);
+    }
+
+    /**
+     * Read the next level's map.  The level name, metadata and staircase
+     * positions are available from this reader afterward.
+     *
+     * @return <tt>null</tt> if there are no more levels
+     *
+     * @throws MapException if there is a problem
+     */
+    public Map readMap()
+        throws MapException
+    {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException eof) {
+            return null;
+        } catch (IOException ioe) {
+            throw new MapException("Cannot read level", ioe);
+        }
+
+        if (magic != LevelWriter.MAGIC) {
+            throw new MapException(String.format("Bad level magic number %x",
+                                                 magic));
+        }
+
+        try {
+            return readRecord();
+        } catch (EOFException eof) {
+            throw new MapException("Level " + name + " is truncated", eof);
+        } catch (IOException ioe) {
+            throw new MapException("Cannot read level " + name, ioe);
+        }
+    }
+
+    private Map readRecord()
+        throws IOException, MapException
+    {
+        name = null;
+        metadata = null;
+        upStairs = null;
+        downStairs = null;
+
+        final int version = in.readShort();
+        if (version != LevelWriter.VERSION) {
+            throw new MapException("Unsupported level version " + version);
+        }
+
+        name = in.readUTF();
+
+        final int width = in.readInt();
+        final int height = in.readInt();
+        if (width <= 0 || height <= 0 ||
+            (long) width * (long) height > Integer.MAX_VALUE)
+        {
+            throw new MapException(String.format("Bad size %dx%d for level" +
+                                                 " %s", width, height, name));
+        }
+
+        final int paletteSize = in.readUnsignedByte();
+        byte[] palette = new byte[MAX_PALETTE];
+        for (int i = 0; i < paletteSize; i++) {
+            final String tname = in.readUTF();
+            try {
+                palette[i] = (byte) Terrain.valueOf(tname).ordinal();
+            } catch (IllegalArgumentException iae) {
+                throw new MapException("Unknown terrain \"" + tname +
+                                       "\" in level " + name);
+            }
+        }
+
+        int[] upPos = readPositions();
+        int[] downPos = readPositions();
+
+        metadata = new Properties();
+        final int numMeta = readVarInt();
+        for (int i = 0; i < numMeta; i++) {
+            final String key = in.readUTF();
+            metadata.setProperty(key, in.readUTF());
+        }
+
+        byte[] terrain = new byte[width * height];
+
+        int idx = 0;
+        for (int y = 0; y < height; y++) {
+            final int end = idx + width;
+            while (idx < end) {
+                final int p = in.readUnsignedByte();
+                final int run = readVarInt();
+                if (p >= paletteSize || run <= 0 || idx + run > end) {
+                    throw new MapException("Bad terrain run in row " + y +
+                                           " of level " + name);
+                }
+
+                Arrays.fill(terrain, idx, idx + run, palette[p]);
+                idx += run;
+            }
+        }
+
+        Map map = new Map(width, height, terrain);
+
+        upStairs = toPoints(map, upPos, Terrain.UPSTAIRS);
+        downStairs = toPoints(map, downPos, Terrain.DOWNSTAIRS);
+
+        return map;
+    }
+
+    private int[] readPositions()
+        throws IOException
+    {
+        int[] pos = new int[readVarInt() * 2];
+        for (int i = 0; i < pos.length; i++) {
+            pos[i] = readVarInt();
+        }
+        return pos;
+    }
+
+    /**
+     * Read a non-negative integer written 7 bits per byte.
+     *
+     * @return value
+     *
+     * @throws IOException if there is a problem
+     */
+    private int readVarInt()
+        throws IOException
+    {
+        int val = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final int b = in.readUnsignedByte();
+            val |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return val;
+            }
+        }
+
+        throw new IOException("Malformed integer");
+    }
+
+    /**
+     * Convert staircase positions to points, checking that each position
+     * holds the expected terrain.
+     *
+     * @param map level map
+     * @param pos X/Y coordinate pairs
+     * @param t expected terrain
+     *
+     * @return points
+     *
+     * @throws MapException if a position is not valid
+     */
+    private IMapPoint[] toPoints(Map map, int[] pos, Terrain t)
+        throws MapException
+    {
+        IMapPoint[] points = new IMapPoint[pos.length / 2];
+        for (int i = 0; i < points.length; i++) {
+            final int x = pos[i * 2];
+            final int y = pos[i * 2 + 1];
+            if (map.tryGetTerrain(x, y) != t) {
+                throw new MapException(String.format("Level %s has no %s" +
+                                                     " at [%d,%d]", name, t,
+                                                     x, y));
+            }
+
+            points[i] = new MapEntry(x, y, t);
+        }
+
+        return points;
+    }
+}
@@ -0,0 +1,214 @@
+package org.glowacki.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Write levels in the binary level format.
+ *
+ * Each level record holds:
+ * <ul>
+ * <li>magic number and format version</li>
+ * <li>level name</li>
+ * <li>width and height</li>
+ * <li>terrain palette (the <tt>Terrain</tt> names used by the level)</li>
+ * <li>up and down staircase positions</li>
+ * <li>metadata key/value pairs</li>
+ * <li>terrain rows, run-length encoded as palette index and run length</li>
+ * </ul>
+ *
+ * Any number of records may be written to the same stream.  Output is
+ * buffered and flushed after each record.
+ */
+public class LevelWriter
+{
+    /** Level record identifier ("RPGL") */
+    public static final int MAGIC = 0x5250474c;
+    /** Current format version */
+    public static final int VERSION = 1;
+
+    private DataOutputStream out;
+
+    /**
+     * Create a level writer.
+     *
+     * @param out output stream
+     */
+    public LevelWriter(OutputStream out)
+    {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Close the underlying stream.
+     *
+     * @throws MapException if there is a problem
+     */
+    public void close()
+        throws MapException
+    {
+        try {
+            out.close();
+        } catch (IOException ioe) {
+            throw new MapException("Cannot close level stream", ioe);
+        }
+    }
+
+    /**
+     * Flush the underlying stream.
+     *
+     * @throws MapException if there is a problem
+     */
+    public void flush()
+        throws MapException
+    {
+        try {
+            out.flush();
+        } catch (IOException ioe) {
+            throw new MapException("Cannot flush level stream", ioe);
+        }
+    }
+
+    /**
+     * Write a level.
+     *
+     * @param lvl level
+     *
+     * @throws MapException if there is a problem
+     */
+    public void write(ILevel lvl)
+        throws MapException
+    {
+        write(lvl.getName(), lvl.getMap(), null);
+    }
+
+    /**
+     * Write a map.
+     *
+     * @param name level name
+     * @param map map
+     * @param metadata optional level metadata (may be <tt>null</tt>)
+     *
+     * @throws MapException if there is a problem
+     */
+    public void write(String name, IMap map, Properties metadata)
+        throws MapException
+    {
+        try {
+            writeRecord(name, map, metadata);
+            out.flush();
+        } catch (IOException ioe) {
+            throw new MapException("Cannot write level " + name, ioe);
+        }
+    }
+
+    private void writeRecord(String name, IMap map, Properties metadata)
+        throws IOException
+    {
+        final int width = map.getMaxX() + 1;
+        final int height = map.getMaxY() + 1;
+
+        // build the palette and note the staircases
+        int[] paletteIndex = new int[Terrain.values().length];
+        for (int i = 0; i < paletteIndex.length; i++) {
+            paletteIndex[i] = -1;
+        }
+
+        List<Terrain> palette = new ArrayList<Terrain>();
+        List<int[]> upStairs = new ArrayList<int[]>();
+        List<int[]> downStairs = new ArrayList<int[]>();
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Terrain t = map.tryGetTerrain(x, y);
+                if (paletteIndex[t.ordinal()] < 0) {
+                    paletteIndex[t.ordinal()] = palette.size();
+                    palette.add(t);
+                }
+
+                if (t == Terrain.UPSTAIRS) {
+                    upStairs.add(new int[] { x, y });
+                } else if (t == Terrain.DOWNSTAIRS) {
+                    downStairs.add(new int[] { x, y });
+                }
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeUTF(name == null ? "" : name);
+        out.writeInt(width);
+        out.writeInt(height);
+
+        out.writeByte(palette.size());
+        for (Terrain t : palette) {
+            out.writeUTF(t.name());
+        }
+
+        writePoints(upStairs);
+        writePoints(downStairs);
+
+        if (metadata == null) {
+            writeVarInt(0);
+        } else {
+            Set<String> keys = metadata.stringPropertyNames();
+            writeVarInt(keys.size());
+            for (String key : keys) {
+                out.writeUTF(key);
+                out.writeUTF(metadata.getProperty(key));
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            Terrain prev = map.tryGetTerrain(0, y);
+            int run = 1;
+            for (int x = 1; x < width; x++) {
+                Terrain t = map.tryGetTerrain(x, y);
+                if (t == prev) {
+                    run++;
+                } else {
+                    out.writeByte(paletteIndex[prev.ordinal()]);
+                    writeVarInt(run);
+                    prev = t;
+                    run = 1;
+                }
+            }
+
+            out.writeByte(paletteIndex[prev.ordinal()]);
+            writeVarInt(run);
+        }
+    }
+
+    private void writePoints(List<int[]> points)
+        throws IOException
+    {
+        writeVarInt(points.size());
+        for (int[] pt : points) {
+            writeVarInt(pt[0]);
+            writeVarInt(pt[1]);
+        }
+    }
+
+    /**
+     * Write a non-negative integer using 7 bits per byte.
+     *
+     * @param val value
+     *
+     * @throws IOException if there is a problem
+     */
+    private void writeVarInt(int val)
+        throws IOException
+    {
+        while ((val & ~0x7f) != 0) {
+            out.writeByte((val & 0x7f) | 0x80);
+            val >>>= 7;
+        }
+        out.writeByte(val);
+    }
+}
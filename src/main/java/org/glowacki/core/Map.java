@@ -1,26 +1,56 @@
 package org.glowacki.core;
 
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Iterator;
 
-/**
- * Exception returned if a position is occupied
- */
-class OccupiedException
-    extends MapException
-{
-    OccupiedException(String msg)
-    {
-        super(msg);
-    }
-}
-
 /**
  * Map.
+ *
+ * Terrain is stored as a row-major array of <tt>Terrain</tt> ordinals
+ * and occupants are kept in a sparse table indexed by cell, so
+ * <tt>IMapPoint</tt> views are only created when a caller asks for them.
+ *
+ * Each sparse terrain type also keeps a sorted list of the cells it covers
+ * so staircases, doors, etc. can be found without scanning the grid.
+ *
+ * Every cell also caches a mask of its movable neighbors (see
+ * <tt>getNeighborMask()</tt>) which is patched whenever terrain changes.
  */
 public class Map
-    implements IMap
+    extends BaseMap
 {
-    private MapEntry[][] map;
+    /** Maps with fewer cells than this index every terrain type */
+    private static final int SMALL_MAP = 4096;
+    /** Terrain covering more than 1/DENSE_FRACTION of a map isn't indexed */
+    private static final int DENSE_FRACTION = 4;
+
+    /** Character used to draw each terrain type */
+    private static final char[] GLYPHS = new char[TERRAIN.length];
+
+    static {
+        for (int i = 0; i < TERRAIN.length; i++) {
+            GLYPHS[i] = MapCharRepresentation.getCharacter(TERRAIN[i]);
+        }
+    }
+
+    private int width;
+    private int height;
+    private byte[] terrain;
+    // movable-neighbor mask for each cell
+    private byte[] neighbors;
+
+    // number of cells covered by each terrain type
+    private int[] terrainCount = new int[TERRAIN.length];
+    // sorted cell indices for each indexed terrain type (null if unindexed)
+    private int[][] terrainCells = new int[TERRAIN.length][];
+
+    // cached picture (null if it must be rebuilt)
+    private String picture;
+    // rendered glyphs, with newlines between rows
+    private char[] glyphs;
+    // rows whose glyphs are out of date
+    private boolean[] dirtyRows;
 
     /**
      * Create a map.
@@ -32,90 +62,188 @@ public class Map
     public Map(String[] template)
         throws MapException
     {
-        if (template == null) {
-            throw new MapException("Map template cannot be null");
-        }
+        super(getTemplateWidth(template), template.length);
 
-        int maxLen = 0;
-        for (int y = 0; y < template.length; y++) {
-            if (template[y] != null && template[y].length() > maxLen) {
-                maxLen = template[y].length();
-            }
-        }
+        width = getMaxX() + 1;
+        height = getMaxY() + 1;
+        terrain = new byte[width * height];
 
-        if (maxLen == 0) {
-            throw new MapException("Map template cannot be empty");
-        }
+        final byte unknown = (byte) Terrain.UNKNOWN.ordinal();
 
-        map = new MapEntry[template.length][maxLen];
-
-        for (int y = 0; y < template.length; y++) {
+        int idx = 0;
+        for (int y = 0; y < height; y++) {
             int x;
             for (x = 0; template[y] != null && x < template[y].length();
                  x++)
             {
                 Terrain t =
                     MapCharRepresentation.getTerrain(template[y].charAt(x));
-                map[y][x] = new MapEntry(x, y, t);
+                terrain[idx++] = (byte) t.ordinal();
             }
-            for ( ; x < maxLen; x++) {
-                map[y][x] = new MapEntry(x, y, Terrain.UNKNOWN);
+            for ( ; x < width; x++) {
+                terrain[idx++] = unknown;
             }
         }
+
+        buildIndex();
+        buildNeighbors();
     }
 
     /**
-     * Add this object to the map at the up staircase.
+     * Create a map from an array of terrain ordinals.
      *
-     * @param obj object
-     *
-     * @return location of up staircase
+     * @param width map width
+     * @param height map height
+     * @param terrain row-major terrain ordinals (owned by the new map)
      *
      * @throws MapException if there is a problem
      */
-    public IMapPoint enterDown(IMapObject obj)
+    Map(int width, int height, byte[] terrain)
         throws MapException
     {
-        MapEntry entry = find(Terrain.UPSTAIRS);
-        if (entry == null) {
-            throw new MapException("Map has no up staircase");
+        super(width, height);
+
+        if (terrain.length != width * height) {
+            throw new MapException("Expected " + (width * height) +
+                                   " terrain cells, not " + terrain.length);
         }
 
-        if (entry.getObject() != null) {
-            throw new OccupiedException("Up staircase is occupied");
+        this.width = width;
+        this.height = height;
+        this.terrain = terrain;
+
+        buildIndex();
+        buildNeighbors();
+    }
+
+    private void addToIndex(int t, int idx)
+    {
+        int[] cells = terrainCells[t];
+        if (cells != null) {
+            final int num = terrainCount[t];
+            if (num == cells.length) {
+                cells = Arrays.copyOf(cells, num < 4 ? 8 : num * 2);
+                terrainCells[t] = cells;
+            }
+
+            int pos = Arrays.binarySearch(cells, 0, num, idx);
+            if (pos < 0) {
+                pos = -(pos + 1);
+            }
+            System.arraycopy(cells, pos, cells, pos + 1, num - pos);
+            cells[pos] = idx;
         }
 
-        entry.setObject(obj);
-        obj.setPosition(entry.getX(), entry.getY());
+        terrainCount[t]++;
+    }
 
-        return entry;
+    /**
+     * Build the terrain-location index.
+     */
+    private void buildIndex()
+    {
+        Arrays.fill(terrainCount, 0);
+        for (int i = 0; i < terrain.length; i++) {
+            terrainCount[terrain[i]]++;
+        }
+
+        int[] next = new int[TERRAIN.length];
+        for (int t = 0; t < TERRAIN.length; t++) {
+            if (terrain.length <= SMALL_MAP ||
+                terrainCount[t] <= terrain.length / DENSE_FRACTION)
+            {
+                terrainCells[t] = new int[terrainCount[t]];
+            } else {
+                terrainCells[t] = null;
+            }
+        }
+
+        for (int i = 0; i < terrain.length; i++) {
+            final int t = terrain[i];
+            if (terrainCells[t] != null) {
+                terrainCells[t][next[t]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Build the movable-neighbor masks.
+     */
+    private void buildNeighbors()
+    {
+        neighbors = new byte[terrain.length];
+
+        int idx = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, idx++) {
+                int mask = 0;
+                for (int bit = 0; bit < Direction.NUM_COMPASS; bit++) {
+                    final int nx = x + Direction.getDx(bit);
+                    final int ny = y + Direction.getDy(bit);
+                    if (nx >= 0 && nx < width && ny >= 0 && ny < height &&
+                        TERRAIN[terrain[ny * width + nx]].isMovable())
+                    {
+                        mask |= 1 << bit;
+                    }
+                }
+                neighbors[idx] = (byte) mask;
+            }
+        }
     }
 
     /**
-     * Add this object to the map at the down staircase.
+     * Create a map holding a copy of another map's terrain.  Occupants
+     * and listeners are not copied.
      *
-     * @param obj object
+     * @param source map to copy
      *
-     * @return location of down staircase
+     * @return new map
      *
      * @throws MapException if there is a problem
      */
-    public IMapPoint enterUp(IMapObject obj)
+    public static Map copyOf(IMap source)
         throws MapException
     {
-        MapEntry entry = find(Terrain.DOWNSTAIRS);
-        if (entry == null) {
-            throw new MapException("Map has no down staircase");
-        }
+        return new Map(source.getMaxX() + 1, source.getMaxY() + 1,
+                       copyTerrain(source));
+    }
 
-        if (entry.getObject() != null) {
-            throw new OccupiedException("Down staircase is occupied");
+    /**
+     * Read every cell of a map, a square tile at a time so maps which
+     * load their terrain in chunks don't keep reloading them.
+     */
+    private static byte[] copyTerrain(IMap source)
+    {
+        final int tile = 32;
+
+        final int w = source.getMaxX() + 1;
+        final int h = source.getMaxY() + 1;
+        final byte unknown = (byte) Terrain.UNKNOWN.ordinal();
+
+        byte[] cells = new byte[w * h];
+        for (int top = 0; top < h; top += tile) {
+            for (int left = 0; left < w; left += tile) {
+                final int bottom = Math.min(top + tile, h);
+                final int right = Math.min(left + tile, w);
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        final Terrain t = source.tryGetTerrain(x, y);
+                        cells[y * w + x] =
+                            t == null ? unknown : (byte) t.ordinal();
+                    }
+                }
+            }
         }
 
-        entry.setObject(obj);
-        obj.setPosition(entry.getX(), entry.getY());
+        return cells;
+    }
+
+    private MapEntry createEntry(int idx)
+    {
+        final int x = idx % width;
+        final int y = idx / width;
 
-        return entry;
+        return new MapEntry(x, y, TERRAIN[terrain[idx]], tryGetOccupant(x, y));
     }
 
     /**
@@ -127,303 +255,313 @@ public class Map
      */
     public MapEntry find(Terrain t)
     {
-        for (int y = 0; y < map.length; y++) {
-            for (int x = 0; x < map[y].length; x++) {
-                if (map[y][x].getTerrain() == t) {
-                    return map[y][x];
-                }
-            }
+        final int idx = findIndex(t);
+        if (idx < 0) {
+            return null;
         }
 
-        return null;
+        return createEntry(idx);
     }
 
     /**
-     * Iterate through all map entries (used for path-finding).
+     * Iterate through all occurrences of the specified terrain,
+     * in row-major order.
      *
-     * @return entry iterator
+     * @param t terrain to find
+     *
+     * @return iterator of matching entries
      */
-    public Iterable<MapEntry> getEntries()
+    public Iterable<MapEntry> findAll(Terrain t)
     {
-        return new EntryIterable();
+        return new TerrainIterable(t.ordinal());
     }
 
-    /**
-     * Get maximum X coordinate for this level.
-     *
-     * @return maximum addressable X coordinate
-     */
-    public int getMaxX()
+    private int findIndex(Terrain t)
     {
-        return map[0].length - 1;
+        final int ord = t.ordinal();
+        if (terrainCount[ord] == 0) {
+            return -1;
+        } else if (terrainCells[ord] != null) {
+            return terrainCells[ord][0];
+        }
+
+        return scanFrom(ord, 0);
     }
 
-    /**
-     * Get maximum Y coordinate for this level.
-     *
-     * @return maximum addressable Y coordinate
-     */
-    public int getMaxY()
+    Terrain getCellTerrain(int x, int y)
     {
-        return map.length - 1;
+        return TERRAIN[terrain[y * width + x]];
     }
 
     /**
-     * Get the object which occupies the specified position
+     * Get the movable neighbors of the specified point.  Bit <tt>N</tt>
+     * is set if the neighbor in the compass direction whose ordinal is
+     * <tt>N</tt> is inside the map and its terrain is movable.
      *
      * @param x X coordinate
      * @param y Y coordinate
      *
-     * @return <tt>null</tt> if no object is at the specified position
+     * @return neighbor mask (0 if the point is outside the map)
      */
-    public IMapObject getOccupant(int x, int y)
-        throws MapException
+    public int getNeighborMask(int x, int y)
     {
-        if (y < 0 || y >= map.length) {
-            throw new MapException("Bad Y coordinate in (" + x + "," +
-                                   y + "), max is " + getMaxY());
-        } else if (x < 0 || x >= map[y].length) {
-            throw new MapException("Bad X coordinate in (" + x + "," +
-                                   y + "), max is " + getMaxX());
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return 0;
         }
 
-        return map[y][x].getObject();
+        return neighbors[y * width + x] & 0xff;
     }
 
     /**
      * Get a graphic representation of this level.
      *
+     * The rendered glyphs are cached and only rows whose terrain has
+     * changed since the previous call are redrawn.
+     *
      * @return string representation of level with embedded newlines
      */
     public String getPicture()
     {
-        StringBuilder buf = new StringBuilder();
-
-        for (int y = 0; y < map.length; y++) {
-            if (y > 0) {
-                buf.append('\n');
-            }
-
-            for (int x = 0; x < map[y].length; x++) {
-                char ch;
-                if (map[y][x].getTerrain() != Terrain.WALL) {
-                    Terrain t = map[y][x].getTerrain();
-                    ch = MapCharRepresentation.getCharacter(t);
-                } else {
-                    if ((x > 0 &&
-                         map[y][x - 1].getTerrain() == Terrain.WALL) ||
-                        (x < map[y].length - 1 &&
-                         map[y][x + 1].getTerrain() == Terrain.WALL))
-                    {
-                        ch = '-';
-                    } else {
-                        ch = '|';
+        if (picture == null) {
+            if (glyphs == null) {
+                glyphs = new char[height * (width + 1) - 1];
+                dirtyRows = new boolean[height];
+                for (int y = 0; y < height; y++) {
+                    renderRow(y);
+                    if (y > 0) {
+                        glyphs[y * (width + 1) - 1] = '\n';
+                    }
+                }
+            } else {
+                for (int y = 0; y < height; y++) {
+                    if (dirtyRows[y]) {
+                        renderRow(y);
+                        dirtyRows[y] = false;
                     }
                 }
-
-                buf.append(ch);
             }
-        }
-
-        return buf.toString();
-    }
 
-    /**
-     * Get the terrain found at the specified coordinates.
-     *
-     * @param x X coordinate
-     * @param y Y coordinate
-     *
-     * @return terrain at the specified point
-     *
-     * @throws MapException if the point is not valid
-     */
-    public Terrain getTerrain(int x, int y)
-        throws MapException
-    {
-        if (y < 0 || y >= map.length) {
-            throw new MapException("Bad Y coordinate in (" + x + "," +
-                                   y + "), max is " + getMaxY());
-        } else if (x < 0 || x >= map[y].length) {
-            throw new MapException("Bad X coordinate in (" + x + "," +
-                                   y + "), max is " + getMaxX());
+            picture = new String(glyphs);
         }
 
-        return map[y][x].getTerrain();
+        return picture;
     }
 
-    /**
-     * Insert this object into the map.
-     *
-     * @param obj object to add
-     * @param x X coordinate
-     * @param y Y coordinate
-     *
-     * @throws MapException if there is a problem
-     */
-    public void insertObject(IMapObject obj, int x, int y)
+    private static int getTemplateWidth(String[] template)
         throws MapException
     {
-        if (y < 0 || y >= map.length || x < 0 || x >= map[0].length) {
-            final String msg =
-                String.format("Bad insert position [%d,%d] for %s", x, y,
-                              obj.getName());
-            throw new MapException(msg);
+        if (template == null) {
+            throw new MapException("Map template cannot be null");
         }
 
-        MapEntry entry = map[y][x];
-        if (entry.getObject() != null) {
-            final String msg =
-                String.format("%s is at [%d, %d]", entry.getObject(), x, y);
-            throw new OccupiedException(msg);
+        int maxLen = 0;
+        for (int y = 0; y < template.length; y++) {
+            if (template[y] != null && template[y].length() > maxLen) {
+                maxLen = template[y].length();
+            }
         }
 
-        Terrain t = entry.getTerrain();
-        if (!t.isMovable()) {
-            final String msg =
-                String.format("Terrain %s at [%d,%d] is not movable", t, x, y);
-            throw new MapException(msg);
+        if (maxLen == 0) {
+            throw new MapException("Map template cannot be empty");
         }
 
-        entry.setObject(obj);
+        return maxLen;
     }
 
     /**
-     * Is the specified point occupied?
-     *
-     * @param x X coordinate
-     * @param y Y coordinate
+     * Get the number of cells covered by the specified terrain.
      *
-     * @return <tt>true</tt> if this point is occupied
+     * @param t terrain
      *
-     * @throws MapException if there is a problem
+     * @return number of cells
      */
-    public boolean isOccupied(int x, int y)
-        throws MapException
+    public int getTerrainCount(Terrain t)
     {
-        return getOccupant(x, y) != null;
+        return terrainCount[t.ordinal()];
     }
 
     /**
-     * Move object in the specified direction.
+     * Read a map from a stream in the binary level format.
      *
-     * @param obj object being moved
-     * @param dir direction
+     * @param in input stream
+     *
+     * @return new map
      *
      * @throws MapException if there is a problem
      */
-    public void moveDirection(IMapObject obj, Direction dir)
+    public static Map load(InputStream in)
         throws MapException
     {
-        int newX = obj.getX();
-        int newY = obj.getY();
-
-        boolean moved = true;
-        if (dir == Direction.LEFT_UP || dir == Direction.LEFT ||
-            dir == Direction.LEFT_DOWN)
-        {
-            newX -= 1;
-            moved &= (newX >= 0);
-        } else if (dir == Direction.RIGHT_UP || dir == Direction.RIGHT ||
-                   dir == Direction.RIGHT_DOWN)
-        {
-            newX += 1;
-            moved &= (newX <= getMaxX());
+        Map map = new LevelReader(in).readMap();
+        if (map == null) {
+            throw new MapException("No level found");
         }
 
-        if (dir == Direction.LEFT_UP || dir == Direction.UP ||
-            dir == Direction.RIGHT_UP)
-        {
-            newY -= 1;
-            moved &= (newY >= 0);
-        } else if (dir == Direction.LEFT_DOWN || dir == Direction.DOWN ||
-                   dir == Direction.RIGHT_DOWN)
-        {
-            newY += 1;
-            moved &= (newY <= getMaxY());
-        }
+        return map;
+    }
 
-        if (!moved) {
-            throw new MapException(String.format("Cannot move %s to %s",
-                                                 obj.getName(), dir));
+    private void removeFromIndex(int t, int idx)
+    {
+        final int[] cells = terrainCells[t];
+        if (cells != null) {
+            final int num = terrainCount[t];
+            final int pos = Arrays.binarySearch(cells, 0, num, idx);
+            if (pos >= 0) {
+                System.arraycopy(cells, pos + 1, cells, pos, num - pos - 1);
+            }
         }
 
-        moveTo(obj, newX, newY);
+        terrainCount[t]--;
     }
 
     /**
-     * Move the object to the specified position.
-     *
-     * @param obj object
-     * @param x X position
-     * @param y Y position
+     * Redraw one row of the cached picture.
      *
-     * @throws MapException if there is a problem
+     * @param y row
      */
-    public void moveTo(IMapObject obj, int x, int y)
-        throws MapException
+    private void renderRow(int y)
     {
-        final int oldX = obj.getX();
-        final int oldY = obj.getY();
+        final byte wall = (byte) Terrain.WALL.ordinal();
+
+        final int row = y * width;
+        int pos = y * (width + 1);
+        for (int x = 0; x < width; x++) {
+            final int idx = row + x;
+
+            char ch;
+            if (terrain[idx] != wall) {
+                ch = GLYPHS[terrain[idx]];
+            } else if ((x > 0 && terrain[idx - 1] == wall) ||
+                       (x < width - 1 && terrain[idx + 1] == wall))
+            {
+                ch = '-';
+            } else {
+                ch = '|';
+            }
 
-        // only try to remove object if position is valid
-        if (oldX >= 0 && oldY >= 0) {
-            removeObject(obj);
+            glyphs[pos++] = ch;
         }
+    }
 
-        try {
-            insertObject(obj, x, y);
-        } catch (MapException me) {
-            insertObject(obj, oldX, oldY);
-            throw me;
+    /**
+     * Find the next cell at or after <tt>idx</tt> containing the
+     * (unindexed) terrain type.
+     *
+     * @param t terrain ordinal
+     * @param idx starting index
+     *
+     * @return cell index, or -1 if there are no more matching cells
+     */
+    private int scanFrom(int t, int idx)
+    {
+        for (int i = idx; i < terrain.length; i++) {
+            if (terrain[i] == t) {
+                return i;
+            }
         }
+
+        return -1;
     }
 
     /**
-     * Remove this object from the map.
+     * Change the terrain at the specified point.
      *
-     * @param obj object to remove
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param t new terrain
      *
-     * @throws MapException if there is a problem
+     * @throws MapException if the point is not valid or an occupant
+     *                      would be left on immovable terrain
      */
-    public void removeObject(IMapObject obj)
+    public void setTerrain(int x, int y, Terrain t)
         throws MapException
     {
-        if (obj.getY() < 0 || obj.getY() >= map.length ||
-            obj.getX() < 0 || obj.getX() >= map[0].length)
-        {
+        final int idx = getIndex(x, y);
+
+        final int oldT = terrain[idx];
+        final int newT = t.ordinal();
+        if (oldT == newT) {
+            return;
+        }
+
+        IMapObject occupant = tryGetOccupant(x, y);
+        if (!t.isMovable() && occupant != null) {
             final String msg =
-                String.format("Bad current position [%d,%d] for %s",
-                              obj.getX(), obj.getY(), obj.getName());
-            throw new MapException(msg);
+                String.format("Cannot change [%d,%d] to %s; occupied by %s",
+                              x, y, t, occupant.getName());
+            throw new OccupiedException(msg);
         }
 
-        MapEntry entry = map[obj.getY()][obj.getX()];
-        entry.clearObject(obj);
+        terrain[idx] = (byte) newT;
+
+        if (glyphs != null) {
+            dirtyRows[y] = true;
+            picture = null;
+        }
+
+        removeFromIndex(oldT, idx);
+        addToIndex(newT, idx);
+
+        if (TERRAIN[oldT].isMovable() != t.isMovable()) {
+            updateNeighbors(x, y, t.isMovable());
+        }
+
+        fireTerrainChanged(x, y);
     }
 
     /**
-     * Return a debugging string.
+     * Tell the neighbors of a cell whether it can be entered.
      *
-     * @return debugging string
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param movable <tt>true</tt> if the cell's terrain is now movable
      */
-    public String toString()
+    private void updateNeighbors(int x, int y, boolean movable)
     {
-        return String.format("%dx%d", map[0].length, map.length);
+        for (int bit = 0; bit < Direction.NUM_COMPASS; bit++) {
+            final int nx = x + Direction.getDx(bit);
+            final int ny = y + Direction.getDy(bit);
+            if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+                continue;
+            }
+
+            // this cell is in the opposite direction from the neighbor
+            final int back = 1 << ((bit + Direction.NUM_COMPASS / 2) %
+                                   Direction.NUM_COMPASS);
+
+            final int idx = ny * width + nx;
+            if (movable) {
+                neighbors[idx] |= back;
+            } else {
+                neighbors[idx] &= ~back;
+            }
+        }
     }
 
     /**
-     * MapEntry iterator.
+     * Iterator for all cells containing a single terrain type.
      */
-    class EntryIterable
+    class TerrainIterable
         implements Iterable<MapEntry>, Iterator<MapEntry>
     {
-        private int x;
-        private int y;
+        private int t;
+        private int pos;
+        private int nextIdx;
+
+        TerrainIterable(int t)
+        {
+            this.t = t;
+
+            if (terrainCells[t] != null) {
+                nextIdx = (terrainCount[t] == 0 ? -1 : terrainCells[t][0]);
+            } else {
+                nextIdx = scanFrom(t, 0);
+            }
+        }
 
         public boolean hasNext()
         {
-            return y < map.length && x < map[y].length;
+            return nextIdx >= 0;
         }
 
         public Iterator<MapEntry> iterator()
@@ -437,11 +575,13 @@ public class Map
                 return null;
             }
 
-            MapEntry entry = map[y][x++];
+            MapEntry entry = createEntry(nextIdx);
 
-            if (x >= map[y].length) {
-                x = 0;
-                y++;
+            if (terrainCells[t] != null) {
+                pos++;
+                nextIdx = (pos < terrainCount[t] ? terrainCells[t][pos] : -1);
+            } else {
+                nextIdx = scanFrom(t, nextIdx + 1);
             }
 
             return entry;
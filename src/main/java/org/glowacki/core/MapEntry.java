@@ -25,6 +25,21 @@ public class MapEntry
         this.terrain = t;
     }
 
+    /**
+     * Create a view of a map cell.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param t terrain
+     * @param obj object occupying this cell (may be <tt>null</tt>)
+     */
+    MapEntry(int x, int y, Terrain t, IMapObject obj)
+    {
+        this(x, y, t);
+
+        this.object = obj;
+    }
+
     /**
      * Remove the object from this position.
      *
@@ -23,4 +23,15 @@ public class MapException
     {
         super(msg);
     }
+
+    /**
+     * Create a map exception.
+     *
+     * @param msg error message
+     * @param thr cause
+     */
+    public MapException(String msg, Throwable thr)
+    {
+        super(msg, thr);
+    }
 }
@@ -0,0 +1,90 @@
+package org.glowacki.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map whose terrain is read directly from a memory-mapped
+ * <tt>TerrainFile</tt>.
+ *
+ * The terrain cannot be changed; occupants are kept on the heap.
+ * Staircases and other sparse terrain are found through the file's
+ * terrain index, so entering a level never scans the whole file.
+ */
+public class MappedMap
+    extends BaseMap
+{
+    private TerrainFile file;
+
+    /**
+     * Create a map from a terrain file.
+     *
+     * @param path terrain file
+     *
+     * @throws MapException if the file cannot be read
+     */
+    public MappedMap(File path)
+        throws MapException
+    {
+        this(new TerrainFile(path));
+    }
+
+    /**
+     * Create a map from an open terrain file.
+     *
+     * @param file terrain file
+     *
+     * @throws MapException if there is a problem
+     */
+    public MappedMap(TerrainFile file)
+        throws MapException
+    {
+        super(file.getWidth(), file.getHeight());
+
+        this.file = file;
+    }
+
+    /**
+     * Iterate through all occurrences of the specified terrain, in
+     * row-major order.  Sparse terrain comes straight from the file's
+     * index; anything else is found by scanning the map.
+     *
+     * @param t terrain to find
+     *
+     * @return iterator of matching entries
+     */
+    public Iterable<MapEntry> findAll(Terrain t)
+    {
+        final int[] cells = file.getIndexedCells(t);
+        if (cells == null) {
+            return super.findAll(t);
+        }
+
+        final int width = getMaxX() + 1;
+
+        List<MapEntry> list = new ArrayList<MapEntry>(cells.length);
+        for (int i = 0; i < cells.length; i++) {
+            final int x = cells[i] % width;
+            final int y = cells[i] / width;
+            list.add(new MapEntry(x, y, t, tryGetOccupant(x, y)));
+        }
+
+        return list;
+    }
+
+    Terrain getCellTerrain(int x, int y)
+    {
+        return file.getTerrain(x, y);
+    }
+
+    /**
+     * Get the terrain file.
+     *
+     * @return terrain file
+     */
+    public TerrainFile getTerrainFile()
+    {
+        return file;
+    }
+}
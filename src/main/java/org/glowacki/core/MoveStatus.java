@@ -0,0 +1,18 @@
+package org.glowacki.core;
+
+/**
+ * Result of a non-throwing move attempt.
+ */
+public enum MoveStatus
+{
+    /** Object was moved */
+    OK,
+    /** Target point is outside the map */
+    OUT_OF_BOUNDS,
+    /** Target point is occupied by another object */
+    OCCUPIED,
+    /** Target terrain cannot be moved onto */
+    BLOCKED,
+    /** Object is not at its recorded position on the map */
+    NOT_ON_MAP;
+}
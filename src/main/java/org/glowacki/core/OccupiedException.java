@@ -0,0 +1,13 @@
+package org.glowacki.core;
+
+/**
+ * Exception returned if a position is occupied
+ */
+class OccupiedException
+    extends MapException
+{
+    OccupiedException(String msg)
+    {
+        super(msg);
+    }
+}
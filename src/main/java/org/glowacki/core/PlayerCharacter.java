@@ -2,9 +2,12 @@ package org.glowacki.core;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 
-import org.glowacki.core.astar.MapPathFinder;
+import org.glowacki.core.astar.DStarLitePathFinder;
+import org.glowacki.core.astar.DirectionPath;
+import org.glowacki.core.astar.HierarchicalPathFinder;
+import org.glowacki.core.astar.ReplanningPath;
 import org.glowacki.core.event.ChangeLevelEvent;
 
 /**
@@ -25,9 +28,16 @@ class PlayerException
 public class PlayerCharacter
     extends BaseCharacter
 {
+    /** Paths at least this many steps long use the level's HPA* finder */
+    private static final int LONG_PATH =
+        2 * HierarchicalPathFinder.DEFAULT_CLUSTER_SIZE;
+
     private String name;
 
-    private List<IMapPoint> path;
+    private ReplanningPath path;
+    // steers around occupants; reused for every path on the same map
+    private DStarLitePathFinder replanner;
+    private IMap replanMap;
 
     private HashMap<ILevel, boolean[][]> seenMap;
 
@@ -74,8 +84,36 @@ public class PlayerCharacter
             throw new PlayerException(msg);
         }
 
-        MapPathFinder pathFinder = new MapPathFinder(map);
-        path = pathFinder.findBestPath(this, goal);
+        Iterator<IMapPoint> route = null;
+
+        final int dist = Math.max(Math.abs(goal.getX() - getX()),
+                                  Math.abs(goal.getY() - getY()));
+        if (dist >= LONG_PATH) {
+            // only the first part of a long path is worked out up front
+            route = level.getHierarchicalPathFinder().findPath(this, goal);
+        }
+
+        if (route == null) {
+            DirectionPath best = level.getPathCache().findPath(this, goal);
+            if (best == null) {
+                path = null;
+                return;
+            }
+
+            route = best.iterator();
+        }
+
+        if (replanner == null || replanMap != map) {
+            if (replanner != null) {
+                replanMap.removeListener(replanner);
+            }
+
+            replanner = new DStarLitePathFinder(map);
+            replanMap = map;
+            map.addListener(replanner);
+        }
+
+        path = new ReplanningPath(map, this, goal, route, replanner);
     }
 
     /**
@@ -156,48 +194,6 @@ public class PlayerCharacter
         return subtractMoveCost(level.getMap(), Direction.DESCEND);
     }
 
-    private Direction findDirection(IMapPoint goal)
-        throws PlayerException
-    {
-        final int x = goal.getX() - getX();
-        final int y = goal.getY() - getY();
-
-        if (x == -1) {
-            if (y == -1) {
-                return Direction.LEFT_UP;
-            } else if (y == 0) {
-                return Direction.LEFT;
-            } else if (y == 1) {
-                return Direction.LEFT_DOWN;
-            }
-        } else if (x == 0) {
-            if (y == -1) {
-                return Direction.UP;
-            } else if (y == 1) {
-                return Direction.DOWN;
-            } else if (y == 0) {
-                final String msg =
-                    String.format("Goal [%d,%d] is current position of %s",
-                                  goal.getX(), goal.getY(), name);
-                throw new PlayerException(msg);
-            }
-        } else if (x == 1) {
-            if (y == -1) {
-                return Direction.RIGHT_UP;
-            } else if (y == 0) {
-                return Direction.RIGHT;
-            } else if (y == 1) {
-                return Direction.RIGHT_DOWN;
-            }
-        }
-
-        final String msg =
-            String.format("Goal [%d,%d] for %s is more than one square" +
-                          " from [%d,%d]", goal.getX(), goal.getY(), name,
-                          getX(), getY());
-        throw new PlayerException(msg);
-    }
-
     /**
      * Return character's name.
      *
@@ -241,7 +237,7 @@ public class PlayerCharacter
      */
     public boolean hasPath()
     {
-        return path != null && path.size() > 0;
+        return path != null && path.hasNext();
     }
 
     /**
@@ -285,8 +281,14 @@ public class PlayerCharacter
             throw new PlayerException("Level has not been set for " + name);
         }
 
+        final int dist = getSightDistance();
+
         ArrayList<ICharacter> visible = new ArrayList<ICharacter>();
-        for (ICharacter ch : level.listCharacters()) {
+        for (ICharacter ch : level.charactersInRect(getX() - dist,
+                                                    getY() - dist,
+                                                    getX() + dist,
+                                                    getY() + dist))
+        {
             if (isVisible(ch.getX(), ch.getY())) {
                 visible.add(ch);
             }
@@ -341,12 +343,19 @@ public class PlayerCharacter
     public int movePath()
         throws CoreException
     {
-        if (path == null || path.size() == 0) {
+        if (path == null || !path.hasNext()) {
             throw new PlayerException("No current path");
         }
 
-        IMapPoint nextPt = path.remove(0);
-        Direction dir = findDirection(nextPt);
+        Direction dir = path.nextDirection();
+        if (dir == Direction.UNKNOWN) {
+            path = null;
+
+            final String msg =
+                String.format("Next step for %s is more than one square" +
+                              " from [%d,%d]", name, getX(), getY());
+            throw new PlayerException(msg);
+        }
 
         int rtnval;
         try {
@@ -371,12 +380,7 @@ public class PlayerCharacter
             return false;
         }
 
-        Terrain t;
-        try {
-            t = level.getTerrain(getX(), getY());
-        } catch (MapException me) {
-            return false;
-        }
+        Terrain t = level.tryGetTerrain(getX(), getY());
 
         return t == Terrain.UPSTAIRS || t == Terrain.DOWNSTAIRS;
     }
@@ -391,6 +395,13 @@ public class PlayerCharacter
     {
         super.setLevel(lvl);
         clearPath();
+
+        // don't leave the old map holding the replanner's state
+        if (replanner != null) {
+            replanMap.removeListener(replanner);
+            replanner = null;
+            replanMap = null;
+        }
     }
 
     /**
@@ -0,0 +1,316 @@
+package org.glowacki.core;
+
+import java.util.Collection;
+
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Uniform grid of the objects on a map, kept up to date by listening
+ * to the map.
+ *
+ * Queries only look at the grid cells which overlap the requested area,
+ * so their cost depends on the number of nearby objects rather than the
+ * number of objects on the map.
+ */
+public class SpatialHash
+    implements IMapListener
+{
+    /** Default width and height of a grid cell */
+    public static final int DEFAULT_CELL_SIZE = 8;
+
+    private int cellSize;
+    private int cellsAcross;
+    private int cellsDown;
+
+    private IntHashMap<Bucket> buckets = new IntHashMap<Bucket>();
+    private int size;
+
+    /**
+     * Create a spatial hash with the default cell size.
+     *
+     * @param width map width
+     * @param height map height
+     */
+    public SpatialHash(int width, int height)
+    {
+        this(width, height, DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Create a spatial hash.
+     *
+     * @param width map width
+     * @param height map height
+     * @param cellSize width and height of a grid cell
+     */
+    public SpatialHash(int width, int height, int cellSize)
+    {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Bad cell size " + cellSize);
+        }
+
+        this.cellSize = cellSize;
+        this.cellsAcross = (width + cellSize - 1) / cellSize;
+        this.cellsDown = (height + cellSize - 1) / cellSize;
+    }
+
+    /**
+     * Add an object.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void add(IMapObject obj, int x, int y)
+    {
+        final int key = getKey(x, y);
+
+        Bucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(key, bucket);
+        }
+
+        bucket.add(obj);
+        size++;
+    }
+
+    private int find(int minX, int minY, int maxX, int maxY, int maxDist2,
+                     int cx, int cy, Collection<? super IMapObject> results)
+    {
+        if (minX > maxX || minY > maxY || size == 0) {
+            return 0;
+        }
+
+        final int minCol = Math.max(0, minX) / cellSize;
+        final int maxCol = Math.min(Math.max(0, maxX) / cellSize,
+                                    cellsAcross - 1);
+        final int minRow = Math.max(0, minY) / cellSize;
+        final int maxRow = Math.min(Math.max(0, maxY) / cellSize,
+                                    cellsDown - 1);
+
+        int found = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                Bucket bucket = buckets.get(row * cellsAcross + col);
+                if (bucket == null) {
+                    continue;
+                }
+
+                for (int i = 0; i < bucket.count; i++) {
+                    IMapObject obj = bucket.objects[i];
+
+                    final int ox = obj.getX();
+                    final int oy = obj.getY();
+                    if (ox < minX || ox > maxX || oy < minY || oy > maxY) {
+                        continue;
+                    }
+
+                    if (maxDist2 >= 0) {
+                        final int dx = ox - cx;
+                        final int dy = oy - cy;
+                        if (dx * dx + dy * dy > maxDist2) {
+                            continue;
+                        }
+                    }
+
+                    results.add(obj);
+                    found++;
+                }
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Add all objects inside the rectangle to the collection.
+     *
+     * @param minX leftmost column
+     * @param minY top row
+     * @param maxX rightmost column
+     * @param maxY bottom row
+     * @param results collection of objects found
+     *
+     * @return number of objects added
+     */
+    public int findInRect(int minX, int minY, int maxX, int maxY,
+                          Collection<? super IMapObject> results)
+    {
+        return find(minX, minY, maxX, maxY, -1, 0, 0, results);
+    }
+
+    /**
+     * Add all objects whose distance from the point is no more than
+     * <tt>radius</tt> to the collection.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param radius maximum (Euclidean) distance
+     * @param results collection of objects found
+     *
+     * @return number of objects added
+     */
+    public int findWithin(int x, int y, int radius,
+                          Collection<? super IMapObject> results)
+    {
+        if (radius < 0) {
+            return 0;
+        }
+
+        return find(x - radius, y - radius, x + radius, y + radius,
+                    radius * radius, x, y, results);
+    }
+
+    private int getKey(int x, int y)
+    {
+        return (y / cellSize) * cellsAcross + (x / cellSize);
+    }
+
+    /**
+     * Move an object which has already been given its new position.
+     *
+     * @param obj object
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void move(IMapObject obj, int oldX, int oldY)
+    {
+        final int oldKey = getKey(oldX, oldY);
+        final int newKey = getKey(obj.getX(), obj.getY());
+        if (oldKey != newKey) {
+            removeFromBucket(obj, oldKey);
+            add(obj, obj.getX(), obj.getY());
+        }
+    }
+
+    /**
+     * An object was added to the map.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        add(obj, x, y);
+    }
+
+    /**
+     * An object was moved to a new position.
+     *
+     * @param obj object (already at its new position)
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        move(obj, oldX, oldY);
+    }
+
+    /**
+     * An object was removed from the map.
+     *
+     * @param obj object
+     * @param x X coordinate of the position it was removed from
+     * @param y Y coordinate of the position it was removed from
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        remove(obj, x, y);
+    }
+
+    /**
+     * Remove an object.
+     *
+     * @param obj object
+     * @param x X coordinate where the object was added
+     * @param y Y coordinate where the object was added
+     *
+     * @return <tt>false</tt> if the object was not found
+     */
+    public boolean remove(IMapObject obj, int x, int y)
+    {
+        return removeFromBucket(obj, getKey(x, y));
+    }
+
+    private boolean removeFromBucket(IMapObject obj, int key)
+    {
+        Bucket bucket = buckets.get(key);
+        if (bucket == null || !bucket.remove(obj)) {
+            return false;
+        }
+
+        if (bucket.count == 0) {
+            buckets.remove(key);
+        }
+
+        size--;
+        return true;
+    }
+
+    /**
+     * Get the number of objects.
+     *
+     * @return number of objects
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * The terrain changed; this is ignored.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        // terrain doesn't affect object positions
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("SpatialHash[%d objects in %d cells]", size,
+                             buckets.size());
+    }
+
+    /**
+     * Objects in one grid cell.
+     */
+    static class Bucket
+    {
+        IMapObject[] objects = new IMapObject[4];
+        int count;
+
+        void add(IMapObject obj)
+        {
+            if (count == objects.length) {
+                IMapObject[] tmp = new IMapObject[count * 2];
+                System.arraycopy(objects, 0, tmp, 0, count);
+                objects = tmp;
+            }
+
+            objects[count++] = obj;
+        }
+
+        boolean remove(IMapObject obj)
+        {
+            for (int i = 0; i < count; i++) {
+                if (objects[i] == obj) {
+                    objects[i] = objects[--count];
+                    objects[count] = null;
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.glowacki.core;
+
+/**
+ * Chunk source which reads terrain from a <tt>String[]</tt> template
+ * (such as the output of a <tt>dungen</tt> generator).
+ *
+ * Cells outside the template are <tt>Terrain.UNKNOWN</tt>.
+ */
+public class TemplateChunkSource
+    implements IChunkSource
+{
+    private String[] template;
+
+    /**
+     * Create a template chunk source.
+     *
+     * @param template map template
+     */
+    public TemplateChunkSource(String[] template)
+    {
+        this.template = template;
+    }
+
+    /**
+     * Fill in the terrain for a rectangular chunk of the map.
+     *
+     * @param left X coordinate of the leftmost column
+     * @param top Y coordinate of the top row
+     * @param width number of columns
+     * @param height number of rows
+     * @param terrain row-major array of terrain cells to be filled
+     */
+    public void fillChunk(int left, int top, int width, int height,
+                          Terrain[] terrain)
+    {
+        int idx = 0;
+        for (int y = top; y < top + height; y++) {
+            String row = (y < template.length ? template[y] : null);
+            for (int x = left; x < left + width; x++) {
+                if (row == null || x >= row.length()) {
+                    terrain[idx++] = Terrain.UNKNOWN;
+                } else {
+                    terrain[idx++] =
+                        MapCharRepresentation.getTerrain(row.charAt(x));
+                }
+            }
+        }
+    }
+}
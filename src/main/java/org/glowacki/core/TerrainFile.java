@@ -0,0 +1,413 @@
+package org.glowacki.core;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Read-only binary terrain file.
+ *
+ * The file is a 16-byte header (magic number, format version, width and
+ * height, all big-endian ints), a terrain index, and then one
+ * <tt>Terrain</tt> ordinal byte per cell in row-major order.  The body is
+ * memory-mapped, so opening a file costs the same whatever its size and
+ * the pages are shared with any other process which maps the same file.
+ *
+ * The index holds the number of terrain types, the number of cells
+ * covered by each type, and then (for each type covering no more than
+ * <tt>MAX_INDEXED</tt> cells) the row-major numbers of those cells.
+ * Staircases can then be found without touching the body.  Version 1
+ * files have no index.
+ */
+public class TerrainFile
+    implements IChunkSource
+{
+    /** File format identifier ("RPGT") */
+    public static final int MAGIC = 0x52504754;
+    /** Current file format version */
+    public static final int VERSION = 2;
+
+    /** Terrain types covering more cells than this are only counted */
+    public static final int MAX_INDEXED = 256;
+
+    private static final int HEADER_BYTES = 16;
+
+    private static final Terrain[] TERRAIN = Terrain.values();
+
+    private File file;
+    private int width;
+    private int height;
+    private MappedByteBuffer cells;
+
+    // cells covered by each sparse terrain type, or null if the file
+    // has no usable index
+    private int[][] indexed;
+
+    /**
+     * Open a terrain file.
+     *
+     * @param file terrain file
+     *
+     * @throws MapException if the file cannot be read
+     */
+    public TerrainFile(File file)
+        throws MapException
+    {
+        this.file = file;
+
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "r");
+        } catch (IOException ioe) {
+            throw new MapException("Cannot open " + file, ioe);
+        }
+
+        try {
+            if (raf.length() < HEADER_BYTES) {
+                throw new MapException(file + " is not a terrain file");
+            }
+
+            final int magic = raf.readInt();
+            if (magic != MAGIC) {
+                throw new MapException(file + " is not a terrain file");
+            }
+
+            final int version = raf.readInt();
+            if (version != 1 && version != VERSION) {
+                throw new MapException("Unsupported version " + version +
+                                       " in " + file);
+            }
+
+            width = raf.readInt();
+            height = raf.readInt();
+            if (width <= 0 || height <= 0 ||
+                (long) width * (long) height > Integer.MAX_VALUE)
+            {
+                throw new MapException(String.format("Bad size %dx%d in %s",
+                                                     width, height, file));
+            }
+
+            final long size = (long) width * (long) height;
+
+            long offset = HEADER_BYTES;
+            if (version > 1) {
+                offset = readIndex(raf, (int) size);
+            }
+
+            if (raf.length() < offset + size) {
+                throw new MapException(file + " is truncated");
+            }
+
+            FileChannel chan = raf.getChannel();
+            cells = chan.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        } catch (IOException ioe) {
+            throw new MapException("Cannot read " + file, ioe);
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Convert a text map template to a terrain file.
+     *
+     * @param template map template
+     * @param out terrain file to create
+     *
+     * @throws MapException if the file cannot be written
+     */
+    public static void convert(String[] template, File out)
+        throws MapException
+    {
+        int width = 0;
+        for (int y = 0; y < template.length; y++) {
+            if (template[y] != null && template[y].length() > width) {
+                width = template[y].length();
+            }
+        }
+
+        if (width == 0) {
+            throw new MapException("Map template cannot be empty");
+        }
+
+        byte[] row = new byte[width];
+
+        // count every terrain type and remember where the sparse ones are
+        int[] counts = new int[TERRAIN.length];
+        int[][] where = new int[TERRAIN.length][MAX_INDEXED];
+        for (int y = 0; y < template.length; y++) {
+            fillRow(template[y], row);
+            for (int x = 0; x < width; x++) {
+                final int ord = row[x];
+                if (counts[ord] < MAX_INDEXED) {
+                    where[ord][counts[ord]] = y * width + x;
+                }
+                counts[ord]++;
+            }
+        }
+
+        try {
+            DataOutputStream dout =
+                new DataOutputStream(new BufferedOutputStream(new
+                    FileOutputStream(out)));
+            try {
+                dout.writeInt(MAGIC);
+                dout.writeInt(VERSION);
+                dout.writeInt(width);
+                dout.writeInt(template.length);
+
+                dout.writeInt(TERRAIN.length);
+                for (int i = 0; i < counts.length; i++) {
+                    dout.writeInt(counts[i]);
+                }
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] <= MAX_INDEXED) {
+                        for (int j = 0; j < counts[i]; j++) {
+                            dout.writeInt(where[i][j]);
+                        }
+                    }
+                }
+
+                for (int y = 0; y < template.length; y++) {
+                    fillRow(template[y], row);
+                    dout.write(row);
+                }
+            } finally {
+                dout.close();
+            }
+        } catch (IOException ioe) {
+            throw new MapException("Cannot write " + out, ioe);
+        }
+    }
+
+    /**
+     * Fill in the terrain for a rectangular chunk of the map.
+     *
+     * @param left X coordinate of the leftmost column
+     * @param top Y coordinate of the top row
+     * @param w number of columns
+     * @param h number of rows
+     * @param terrain row-major array of terrain cells to be filled
+     */
+    public void fillChunk(int left, int top, int w, int h, Terrain[] terrain)
+    {
+        int idx = 0;
+        for (int y = top; y < top + h; y++) {
+            for (int x = left; x < left + w; x++) {
+                if (x < width && y < height) {
+                    terrain[idx++] = getTerrain(x, y);
+                } else {
+                    terrain[idx++] = Terrain.UNKNOWN;
+                }
+            }
+        }
+    }
+
+    /**
+     * Convert one line of a text template to terrain ordinals.
+     *
+     * @param line template line (may be <tt>null</tt>)
+     * @param row array to fill, padded with <tt>UNKNOWN</tt>
+     */
+    private static void fillRow(String line, byte[] row)
+    {
+        int x = 0;
+        if (line != null) {
+            for ( ; x < line.length() && x < row.length; x++) {
+                row[x] = (byte) MapCharRepresentation.
+                    getTerrain(line.charAt(x)).ordinal();
+            }
+        }
+        for ( ; x < row.length; x++) {
+            row[x] = (byte) Terrain.UNKNOWN.ordinal();
+        }
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return height
+     */
+    public int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Get the cells covered by a terrain type, using the file's index.
+     *
+     * @param t terrain type
+     *
+     * @return row-major cell numbers (which must not be modified), or
+     *         <tt>null</tt> if the file has no index or the terrain is too
+     *         common to be indexed
+     */
+    int[] getIndexedCells(Terrain t)
+    {
+        if (indexed == null) {
+            return null;
+        }
+
+        return indexed[t.ordinal()];
+    }
+
+    /**
+     * Get the terrain for a point inside the map.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return terrain (<tt>UNKNOWN</tt> if the file contains a bad value)
+     */
+    Terrain getTerrain(int x, int y)
+    {
+        final int ord = cells.get(y * width + x);
+        if (ord < 0 || ord >= TERRAIN.length) {
+            return Terrain.UNKNOWN;
+        }
+
+        return TERRAIN[ord];
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return width
+     */
+    public int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Read the terrain index which follows the header.
+     *
+     * @param raf file positioned just after the header
+     * @param size number of cells
+     *
+     * @return offset of the first cell
+     *
+     * @throws IOException if the index cannot be read
+     * @throws MapException if the index is bad
+     */
+    private long readIndex(RandomAccessFile raf, int size)
+        throws IOException, MapException
+    {
+        final int numTypes = raf.readInt();
+        if (numTypes < 0 || numTypes > 256) {
+            throw new MapException("Bad terrain index in " + file);
+        }
+
+        int[] counts = new int[numTypes];
+        long total = 0;
+        for (int i = 0; i < numTypes; i++) {
+            counts[i] = raf.readInt();
+            if (counts[i] < 0 || counts[i] > size) {
+                throw new MapException("Bad terrain index in " + file);
+            }
+            if (counts[i] <= MAX_INDEXED) {
+                total += counts[i];
+            }
+        }
+
+        byte[] bytes = new byte[(int) total * 4];
+        raf.readFully(bytes);
+
+        // a file written with a different set of terrain types can
+        // still be read, but its index doesn't line up with ours
+        if (numTypes == TERRAIN.length) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+            indexed = new int[numTypes][];
+            for (int i = 0; i < numTypes; i++) {
+                if (counts[i] <= MAX_INDEXED) {
+                    indexed[i] = new int[counts[i]];
+                    for (int j = 0; j < counts[i]; j++) {
+                        indexed[i][j] = buf.getInt();
+                        if (indexed[i][j] < 0 || indexed[i][j] >= size) {
+                            throw new MapException("Bad terrain index in " +
+                                                   file);
+                        }
+                    }
+                }
+            }
+        }
+
+        return HEADER_BYTES + 4L + 4L * numTypes + bytes.length;
+    }
+
+    /**
+     * Read a text map template.
+     *
+     * @param file text file
+     *
+     * @return one string per line
+     *
+     * @throws MapException if the file cannot be read
+     */
+    public static String[] readTemplate(File file)
+        throws MapException
+    {
+        ArrayList<String> lines = new ArrayList<String>();
+        try {
+            BufferedReader rdr = new BufferedReader(new FileReader(file));
+            try {
+                while (true) {
+                    String line = rdr.readLine();
+                    if (line == null) {
+                        break;
+                    }
+                    lines.add(line);
+                }
+            } finally {
+                rdr.close();
+            }
+        } catch (IOException ioe) {
+            throw new MapException("Cannot read " + file, ioe);
+        }
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("TerrainFile[%s %dx%d]", file, width, height);
+    }
+
+    /**
+     * Convert a text map template to a terrain file.
+     *
+     * Usage: TerrainFile template.txt terrain.dat
+     *
+     * @param args command-line arguments
+     *
+     * @throws MapException if there is a problem
+     */
+    public static final void main(String[] args)
+        throws MapException
+    {
+        if (args.length != 2) {
+            System.err.println("Usage: TerrainFile template.txt terrain.dat");
+            System.exit(1);
+        }
+
+        convert(readTemplate(new File(args[0])), new File(args[1]));
+    }
+}
@@ -112,8 +112,7 @@ public class VisibleMap
          */
         public boolean contains(int x, int y)
         {
-            return (x >= 0 && x <= map.getMaxX()) &&
-                (y >= 0 && y <= map.getMaxY());
+            return map.isInBounds(x, y);
         }
 
         /**
@@ -136,26 +135,12 @@ public class VisibleMap
          */
         public boolean isObstructed(int x, int y)
         {
-            try {
-                if (map.isOccupied(x, y)) {
-                    return true;
-                }
-            } catch (MapException me) {
-                return true;
-            }
-
-            Terrain t;
-            try {
-                t = map.getTerrain(x, y);
-            } catch (MapException me) {
-                return true;
-            }
-
-            if (t == Terrain.WALL || t == Terrain.UNKNOWN) {
+            Terrain t = map.tryGetTerrain(x, y);
+            if (t == null || t == Terrain.WALL || t == Terrain.UNKNOWN) {
                 return true;
             }
 
-            return false;
+            return map.tryGetOccupant(x, y) != null;
         }
 
         /**
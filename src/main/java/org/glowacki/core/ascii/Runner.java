@@ -255,14 +255,13 @@ class AsciiController
         while (running) {
             HashMap<ICharacter, ICharacter> npcs =
                 new HashMap<ICharacter, ICharacter>();
+            HashMap<ILevel, ILevel> levels = new HashMap<ILevel, ILevel>();
             for (PlayerCharacter ch : players) {
                 view.drawScreen(ch);
                 int turns = handleInput(ch);
                 while (turns > 0) {
-                    for (ICharacter npc : ch.getLevel().listCharacters()) {
-                        if (!npc.isPlayer()) {
-                            npcs.put(npc, npc);
-                        }
+                    for (ICharacter npc : ch.getLevel().listNonplayers()) {
+                        npcs.put(npc, npc);
                     }
 
                     turns--;
@@ -271,6 +270,15 @@ class AsciiController
 
             for (ICharacter ch : npcs.keySet()) {
                 ch.takeTurn();
+
+                ILevel lvl = ch.getLevel();
+                if (lvl != null) {
+                    levels.put(lvl, lvl);
+                }
+            }
+
+            for (ILevel lvl : levels.keySet()) {
+                lvl.endTurn();
             }
         }
     }
@@ -0,0 +1,169 @@
+package org.glowacki.core.astar;
+
+
+/**
+ * Node base class
+ */
+class BaseNode
+    implements Comparable<INode>, INode
+{
+    private int x;
+    private int y;
+    private double terrainCost;
+    private boolean startNode;
+    private boolean endNode;
+
+    private INode parent;
+
+     // cost of getting from parent node to this node
+    private double parentCost = Double.MIN_VALUE;
+
+    // last node used to compute passthrough cost
+    private INode lastNode;
+    // cost of getting from the start to the goal through this node
+    private double passThroughCost = Double.MIN_VALUE;
+
+    BaseNode(int x, int y)
+    {
+        this(x, y, 1.0);
+    }
+
+    BaseNode(int x, int y, double terrainCost)
+    {
+        this.x = x;
+        this.y = y;
+        this.terrainCost = terrainCost;
+    }
+
+    public void clear()
+    {
+        startNode = false;
+        endNode = false;
+
+        parent = null;
+        parentCost = Double.MIN_VALUE;
+
+        lastNode = null;
+        passThroughCost = Double.MIN_VALUE;
+    }
+
+    public int compareTo(INode node)
+    {
+        if (node == null) {
+            return 1;
+        }
+
+        int val = x - node.getX();
+        if (val == 0) {
+            val = y - node.getY();
+        }
+
+        return val;
+    }
+
+    public boolean equals(INode node)
+    {
+        return compareTo(node) == 0;
+    }
+
+    public INode getParent()
+    {
+        return parent;
+    }
+
+    public double getParentCost()
+    {
+        if (isStart()) {
+            return 0.0;
+        }
+
+        if (Double.compare(parentCost, Double.MIN_VALUE) == 0) {
+            // entering this node costs the same as it does in the game
+            double step = terrainCost;
+            if (parent.getX() != x && parent.getY() != y) {
+                step *= GridPathFinder.DIAGONAL;
+            }
+
+            parentCost = parent.getParentCost() + step;
+        }
+
+        return parentCost;
+    }
+
+    public double getPassThrough(INode goal)
+    {
+        if (isStart()) {
+            return 0.0;
+        }
+
+        if (Double.compare(passThroughCost, Double.MIN_VALUE) == 0 ||
+            lastNode == null || lastNode.getX() != goal.getX() ||
+            lastNode.getY() != goal.getY())
+        {
+            // octile distance over the cheapest terrain never overestimates
+            double localCost = GridPathFinder.MIN_COST *
+                GridPathFinder.octile(x - goal.getX(), y - goal.getY());
+            passThroughCost = localCost + getParentCost();
+            lastNode = goal;
+        }
+
+        return passThroughCost;
+    }
+
+    double getTerrainCost()
+    {
+        return terrainCost;
+    }
+
+    public int getX()
+    {
+        return x;
+    }
+
+    public int getY()
+    {
+        return y;
+    }
+
+    public int hashCode()
+    {
+        return ((x & 0xffff) * 0x1000) + (y & 0xffff);
+    }
+
+    public boolean isEnd()
+    {
+        return endNode;
+    }
+
+    public boolean isStart()
+    {
+        return startNode;
+    }
+
+    public void setEnd()
+    {
+        endNode = true;
+    }
+
+    public void setParent(INode parent)
+    {
+        this.parent = parent;
+        parentCost = Double.MIN_VALUE;
+
+        lastNode = null;
+        passThroughCost = Double.MIN_VALUE;
+    }
+
+    public void setStart()
+    {
+        startNode = true;
+    }
+
+    public String toString()
+    {
+        final String sStr = (startNode ? "*start" : "");
+        final String eStr = (endNode ? "*end" : "");
+
+        return String.format("[%d,%d]%s%s", x, y, sStr, eStr);
+    }
+}
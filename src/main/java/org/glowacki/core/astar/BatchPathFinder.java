@@ -0,0 +1,329 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+
+/**
+ * Answer many path requests at once, optionally spreading the searches
+ * across a thread pool.
+ *
+ * Each task borrows its own <tt>JumpPointPathFinder</tt>, so searches
+ * never share scratch space, and finders are kept between batches so
+ * their arrays are only allocated once per task.
+ *
+ * Searches never touch the map itself, since maps such as
+ * <tt>ChunkedMap</tt> update their caches on every read.  Instead, the
+ * calling thread copies the terrain into a private snapshot which all
+ * the tasks read.  The snapshot is kept between batches, so the finder
+ * must be registered as a listener of the map to learn when it is out
+ * of date.
+ *
+ * Every search is independent and its result is stored by request
+ * index, so the results are the same no matter how many threads run
+ * them.
+ */
+public class BatchPathFinder
+    implements IMapListener
+{
+    private IMap map;
+    private int width;
+
+    private ExecutorService executor;
+    private int numTasks;
+
+    // used to skip requests for unreachable goals
+    private ConnectedComponents components;
+
+    // read-only copy of the map's terrain shared by all the tasks
+    private Map snapshot;
+
+    // finders for the snapshot which aren't being used by a task
+    private List<GridPathFinder> idle = new ArrayList<GridPathFinder>();
+
+    private int numExpanded;
+
+    /**
+     * Create a batch path finder which runs every search on the calling
+     * thread.
+     *
+     * @param map map
+     */
+    public BatchPathFinder(IMap map)
+    {
+        this(map, null, 1);
+    }
+
+    /**
+     * Create a batch path finder.
+     *
+     * @param map map
+     * @param executor thread pool used to run searches (if
+     *                 <tt>null</tt>, searches run on the calling thread)
+     * @param numTasks maximum number of tasks each batch is split into
+     */
+    public BatchPathFinder(IMap map, ExecutorService executor, int numTasks)
+    {
+        if (numTasks < 1) {
+            throw new IllegalArgumentException("Bad number of tasks " +
+                                               numTasks);
+        }
+
+        this.map = map;
+        this.executor = executor;
+        this.numTasks = numTasks;
+
+        width = map.getMaxX() + 1;
+    }
+
+    private synchronized GridPathFinder borrow(Map snapshot)
+    {
+        if (idle.size() == 0) {
+            return new JumpPointPathFinder(snapshot);
+        }
+
+        return idle.remove(idle.size() - 1);
+    }
+
+    /**
+     * Find the best path for each request.
+     *
+     * @param requests path requests
+     *
+     * @return list holding the best path for each request, or
+     *         <tt>null</tt> for any request without a path
+     *
+     * @throws PathException if a request has a bad point, or if the
+     *                       batch is interrupted
+     */
+    public List<DirectionPath> findPaths(List<PathRequest> requests)
+        throws PathException
+    {
+        final int num = requests.size();
+
+        // check every request before any searching starts
+        int[] starts = new int[num];
+        int[] goals = new int[num];
+        for (int i = 0; i < num; i++) {
+            final PathRequest req = requests.get(i);
+            starts[i] = getCell(req.getStart(), "start", i);
+            goals[i] = getCell(req.getGoal(), "end", i);
+
+            if (components != null &&
+                !components.isConnected(starts[i], goals[i]))
+            {
+                goals[i] = -1;
+            }
+        }
+
+        final Map snap = getSnapshot();
+
+        DirectionPath[] results = new DirectionPath[num];
+
+        numExpanded = 0;
+
+        final int tasks = Math.min(numTasks, num);
+        if (executor == null || tasks <= 1) {
+            new Search(snap, starts, goals, results, 0, 1).call();
+        } else {
+            List<Search> list = new ArrayList<Search>(tasks);
+            for (int t = 0; t < tasks; t++) {
+                list.add(new Search(snap, starts, goals, results, t, tasks));
+            }
+
+            try {
+                for (Future<Void> future : executor.invokeAll(list)) {
+                    future.get();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new PathException("Interrupted while finding paths");
+            } catch (ExecutionException ee) {
+                final Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+
+                throw new PathException("Path search failed: " + cause);
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private int getCell(IMapPoint pt, String name, int index)
+        throws PathException
+    {
+        if (!map.isInBounds(pt.getX(), pt.getY())) {
+            final String msg =
+                String.format("Bad %s point [%d,%d] in request #%d", name,
+                              pt.getX(), pt.getY(), index);
+            throw new PathException(msg);
+        }
+
+        return pt.getY() * width + pt.getX();
+    }
+
+    /**
+     * Get the total number of cells expanded by the most recent batch.
+     *
+     * @return number of expanded cells
+     */
+    public int getNumExpanded()
+    {
+        return numExpanded;
+    }
+
+    private synchronized Map getSnapshot()
+        throws PathException
+    {
+        if (snapshot == null) {
+            try {
+                snapshot = Map.copyOf(map);
+            } catch (MapException me) {
+                throw new PathException("Cannot copy map: " +
+                                        me.getMessage());
+            }
+        }
+
+        return snapshot;
+    }
+
+    private synchronized void giveBack(GridPathFinder finder, int expanded)
+    {
+        // finders for an outdated snapshot are dropped
+        if (finder.map == snapshot) {
+            idle.add(finder);
+        }
+        numExpanded += expanded;
+    }
+
+    /**
+     * Ignored, since occupants don't affect the paths.
+     *
+     * @param obj new object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        // do nothing
+    }
+
+    /**
+     * Ignored, since occupants don't affect the paths.
+     *
+     * @param obj moved object
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        // do nothing
+    }
+
+    /**
+     * Ignored, since occupants don't affect the paths.
+     *
+     * @param obj removed object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        // do nothing
+    }
+
+    /**
+     * Use component labels to skip requests for unreachable goals.
+     * The labels are only read by the calling thread.
+     *
+     * @param components component labels, or <tt>null</tt>
+     */
+    public void setComponents(ConnectedComponents components)
+    {
+        this.components = components;
+    }
+
+    /**
+     * Drop the terrain snapshot (and the finders which use it) so the
+     * next batch copies the map again.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public synchronized void terrainChanged(int x, int y)
+    {
+        snapshot = null;
+        idle.clear();
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("BatchPathFinder[%d tasks%s]", numTasks,
+                             executor == null ? ",serial" : "");
+    }
+
+    /**
+     * Search for every <tt>step</tt>th path, starting at <tt>first</tt>.
+     */
+    class Search
+        implements Callable<Void>
+    {
+        private Map snapshot;
+        private int[] starts;
+        private int[] goals;
+        private DirectionPath[] results;
+        private int first;
+        private int step;
+
+        Search(Map snapshot, int[] starts, int[] goals,
+               DirectionPath[] results, int first, int step)
+        {
+            this.snapshot = snapshot;
+            this.starts = starts;
+            this.goals = goals;
+            this.results = results;
+            this.first = first;
+            this.step = step;
+        }
+
+        public Void call()
+        {
+            GridPathFinder finder = borrow(snapshot);
+
+            int expanded = 0;
+            try {
+                for (int i = first; i < results.length; i += step) {
+                    if (goals[i] >= 0) {
+                        results[i] =
+                            finder.findDirectionPath(starts[i], goals[i]);
+                        expanded += finder.getNumExpanded();
+                    }
+                }
+            } finally {
+                giveBack(finder, expanded);
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package org.glowacki.core.astar;
+
+import java.util.Arrays;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.Terrain;
+
+/**
+ * Labels every movable cell of a map with the connected region it
+ * belongs to, so path finders can reject impossible requests without
+ * searching.
+ *
+ * Labels are built with a flood fill and kept up to date as the terrain
+ * changes.  Opening a cell merges the regions around it with a
+ * union-find step.  Closing a cell can only split its region if the
+ * cell's open neighbors aren't connected to each other around it; in
+ * that case the separated pieces are flood filled with new labels,
+ * except for the last piece, which keeps the old one.
+ *
+ * Occupants are ignored, since they move every turn.
+ */
+public class ConnectedComponents
+    implements IMapListener
+{
+    /** Component of cells which cannot be entered */
+    public static final int NONE = -1;
+
+    private IMap map;
+    private int width;
+    private int height;
+
+    // raw label of each cell (use find() to get its component)
+    private int[] label;
+
+    // union-find parent of each label, and size of each component
+    private int[] parent;
+    private int[] size;
+    private int numLabels;
+    private int numComponents;
+
+    // flood fill scratch space
+    private int[] queue;
+    private int[] stamp;
+    private int generation;
+    private int numRelabeled;
+
+    // scratch space for grouping the neighbors of a closed cell
+    private int[] ring = new int[Direction.NUM_COMPASS];
+    private int[] reps = new int[Direction.NUM_COMPASS];
+
+    /**
+     * Label the specified map.
+     *
+     * @param map map
+     */
+    public ConnectedComponents(IMap map)
+    {
+        this.map = map;
+
+        width = map.getMaxX() + 1;
+        height = map.getMaxY() + 1;
+
+        label = new int[width * height];
+        queue = new int[width * height];
+        stamp = new int[width * height];
+
+        build();
+    }
+
+    /**
+     * Label every cell from scratch.
+     */
+    private void build()
+    {
+        Arrays.fill(label, NONE);
+        parent = new int[16];
+        size = new int[16];
+        numLabels = 0;
+        numComponents = 0;
+
+        for (int cell = 0; cell < label.length; cell++) {
+            if (label[cell] == NONE && isMovable(cell)) {
+                fill(cell, newLabel());
+            }
+        }
+
+        numRelabeled = 0;
+    }
+
+    /**
+     * Close a cell, splitting its component if necessary.
+     *
+     * @param cell cell which can no longer be entered
+     */
+    private void close(int cell)
+    {
+        final int root = find(label[cell]);
+        label[cell] = NONE;
+        if (--size[root] == 0) {
+            numComponents--;
+            return;
+        }
+
+        final int numGroups =
+            groupNeighbors(map.getNeighborMask(cell % width, cell / width));
+        if (numGroups <= 1) {
+            // the neighbors are still connected around the cell
+            return;
+        }
+
+        if (numLabels >= label.length) {
+            // too many stale labels; start over
+            build();
+            return;
+        }
+
+        // fill pieces until only one is left unexplored
+        int remaining = numGroups;
+        for (int i = 0; i < numGroups && remaining > 1; i++) {
+            final int start = neighbor(cell, reps[i]);
+            if (find(label[start]) != root) {
+                // reached by an earlier fill
+                continue;
+            }
+
+            // newLabel() may replace the size array
+            final int piece = fill(start, newLabel());
+            size[root] -= piece;
+
+            remaining = 0;
+            for (int j = i + 1; j < numGroups; j++) {
+                if (find(label[neighbor(cell, reps[j])]) == root) {
+                    remaining++;
+                }
+            }
+        }
+
+        if (size[root] == 0) {
+            numComponents--;
+        }
+    }
+
+    /**
+     * Label every cell connected to <tt>start</tt>.
+     *
+     * @param start starting cell
+     * @param id new label
+     *
+     * @return number of cells labeled
+     */
+    private int fill(int start, int id)
+    {
+        generation++;
+        if (generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+
+        int head = 0;
+        int tail = 0;
+
+        stamp[start] = generation;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            final int cell = queue[head++];
+            label[cell] = id;
+
+            int mask = map.getNeighborMask(cell % width, cell / width);
+            while (mask != 0) {
+                final int bit = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+
+                final int next = neighbor(cell, bit);
+                if (stamp[next] != generation) {
+                    stamp[next] = generation;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        size[id] += tail;
+        numRelabeled += tail;
+        return tail;
+    }
+
+    private int find(int id)
+    {
+        while (parent[id] != id) {
+            parent[id] = parent[parent[id]];
+            id = parent[id];
+        }
+
+        return id;
+    }
+
+    /**
+     * Get the component containing a cell.  Component numbers change
+     * when the terrain changes.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return component number, or <tt>NONE</tt> if the cell is outside
+     *         the map or cannot be entered
+     */
+    public int getComponent(int x, int y)
+    {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return NONE;
+        }
+
+        final int id = label[y * width + x];
+        if (id == NONE) {
+            return NONE;
+        }
+
+        return find(id);
+    }
+
+    /**
+     * Get the number of cells in the component containing a cell.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return number of cells, or <tt>0</tt> if the cell cannot be
+     *         entered
+     */
+    public int getComponentSize(int x, int y)
+    {
+        final int comp = getComponent(x, y);
+        if (comp == NONE) {
+            return 0;
+        }
+
+        return size[comp];
+    }
+
+    /**
+     * Get the number of separate regions on the map.
+     *
+     * @return number of components
+     */
+    public int getNumComponents()
+    {
+        return numComponents;
+    }
+
+    /**
+     * Get the number of cells which have been relabeled by flood fills
+     * since the labels were built.
+     *
+     * @return number of relabeled cells
+     */
+    public int getNumRelabeled()
+    {
+        return numRelabeled;
+    }
+
+    /**
+     * Sort the open neighbors of a cell into groups which are connected
+     * to each other without going through the cell.
+     *
+     * @param mask open neighbors
+     *
+     * @return number of groups (one direction from each is in
+     *         <tt>reps</tt>)
+     */
+    private int groupNeighbors(int mask)
+    {
+        for (int i = 0; i < Direction.NUM_COMPASS; i++) {
+            ring[i] = i;
+        }
+
+        for (int i = 0; i < Direction.NUM_COMPASS; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+
+            // compass directions are in clockwise order, so each cell
+            // touches the next one around the ring, and the cells on
+            // either side of a corner touch each other diagonally
+            final int next = (i + 1) % Direction.NUM_COMPASS;
+            if ((mask & (1 << next)) != 0) {
+                joinRing(i, next);
+            }
+
+            final int across = (i + 2) % Direction.NUM_COMPASS;
+            if (Direction.getDx(i) * Direction.getDy(i) == 0 &&
+                (mask & (1 << across)) != 0)
+            {
+                joinRing(i, across);
+            }
+        }
+
+        int num = 0;
+        for (int i = 0; i < Direction.NUM_COMPASS; i++) {
+            if ((mask & (1 << i)) != 0 && findRing(i) == i) {
+                reps[num++] = i;
+            }
+        }
+
+        return num;
+    }
+
+    private int findRing(int i)
+    {
+        while (ring[i] != i) {
+            i = ring[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Are two cells connected?  A starting cell which cannot be entered
+     * is connected to the components of its neighbors.
+     *
+     * @param from starting cell
+     * @param to ending cell
+     *
+     * @return <tt>true</tt> if there may be a path between the cells
+     */
+    boolean isConnected(int from, int to)
+    {
+        if (from == to) {
+            return true;
+        } else if (label[to] == NONE) {
+            return false;
+        }
+
+        final int comp = find(label[to]);
+        if (label[from] != NONE) {
+            return find(label[from]) == comp;
+        }
+
+        int mask = map.getNeighborMask(from % width, from / width);
+        while (mask != 0) {
+            final int bit = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+
+            if (find(label[neighbor(from, bit)]) == comp) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Can <tt>(toX, toY)</tt> be reached from <tt>(fromX, fromY)</tt>,
+     * ignoring occupants?
+     *
+     * @param fromX starting X coordinate
+     * @param fromY starting Y coordinate
+     * @param toX ending X coordinate
+     * @param toY ending Y coordinate
+     *
+     * @return <tt>true</tt> if the points are connected
+     */
+    public boolean isConnected(int fromX, int fromY, int toX, int toY)
+    {
+        if (fromX < 0 || fromX >= width || fromY < 0 || fromY >= height ||
+            toX < 0 || toX >= width || toY < 0 || toY >= height)
+        {
+            return false;
+        }
+
+        return isConnected(fromY * width + fromX, toY * width + toX);
+    }
+
+    private boolean isMovable(int cell)
+    {
+        Terrain t = map.tryGetTerrain(cell % width, cell / width);
+        return t != null && t.isMovable();
+    }
+
+    private void joinRing(int a, int b)
+    {
+        final int ra = findRing(a);
+        final int rb = findRing(b);
+        if (ra != rb) {
+            ring[Math.max(ra, rb)] = Math.min(ra, rb);
+        }
+    }
+
+    private int neighbor(int cell, int bit)
+    {
+        return cell + Direction.getDy(bit) * width + Direction.getDx(bit);
+    }
+
+    private int newLabel()
+    {
+        if (numLabels == parent.length) {
+            parent = Arrays.copyOf(parent, numLabels * 2);
+            size = Arrays.copyOf(size, numLabels * 2);
+        }
+
+        final int id = numLabels++;
+        parent[id] = id;
+        size[id] = 0;
+        numComponents++;
+
+        return id;
+    }
+
+    /**
+     * An object was added to the map; this is ignored.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        // occupants don't change connectivity
+    }
+
+    /**
+     * An object was moved to a new position; this is ignored.
+     *
+     * @param obj object (already at its new position)
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        // occupants don't change connectivity
+    }
+
+    /**
+     * An object was removed from the map; this is ignored.
+     *
+     * @param obj object
+     * @param x X coordinate of the position it was removed from
+     * @param y Y coordinate of the position it was removed from
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        // occupants don't change connectivity
+    }
+
+    /**
+     * Open a cell, merging the components around it.
+     *
+     * @param cell cell which can now be entered
+     */
+    private void open(int cell)
+    {
+        int root = NONE;
+
+        int mask = map.getNeighborMask(cell % width, cell / width);
+        while (mask != 0) {
+            final int bit = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+
+            final int comp = find(label[neighbor(cell, bit)]);
+            if (root == NONE) {
+                root = comp;
+            } else if (comp != root) {
+                root = union(root, comp);
+            }
+        }
+
+        if (root == NONE) {
+            root = newLabel();
+        }
+
+        label[cell] = root;
+        size[root]++;
+    }
+
+    /**
+     * The terrain at the specified position changed.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        final int cell = y * width + x;
+
+        final boolean movable = isMovable(cell);
+        if (movable == (label[cell] != NONE)) {
+            return;
+        }
+
+        if (movable) {
+            open(cell);
+        } else {
+            close(cell);
+        }
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("ConnectedComponents[%dx%d,%d comps]", width,
+                             height, numComponents);
+    }
+
+    private int union(int a, int b)
+    {
+        if (size[a] < size[b]) {
+            final int tmp = a;
+            a = b;
+            b = tmp;
+        }
+
+        parent[b] = a;
+        size[a] += size[b];
+        numComponents--;
+
+        return a;
+    }
+}
@@ -0,0 +1,482 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Cooperative (windowed hierarchical cooperative A*, or WHCA*) path
+ * finder for groups of characters.
+ *
+ * Paths are planned one character at a time through space and time.
+ * Each planned path reserves its cells for the turns it occupies them,
+ * so characters planned later route around (or wait for) the ones
+ * planned earlier instead of walking into them.  Only the next
+ * <tt>window</tt> turns are planned, which keeps the search small; the
+ * true distance to each goal guides the search beyond the window.
+ * Those distances come from a reverse resumable search for each goal,
+ * which only visits the cells the planner asks about, so a goal which
+ * moves every turn costs a short search rather than a pass over the
+ * whole map.
+ *
+ * The owner of the map's clock must call <tt>advance()</tt> once per
+ * turn.  Paths should be replanned every few turns, well before the
+ * window runs out.
+ */
+public class CooperativePathFinder
+    implements IMapListener
+{
+    /** Default number of turns planned ahead */
+    public static final int DEFAULT_WINDOW = 16;
+
+    /** Stop caching goal searches after this many goals */
+    private static final int MAX_SEARCHES = 32;
+
+    private IMap map;
+    private int width;
+    private int numCells;
+
+    private int window;
+    private ReservationTable table;
+
+    // true distance to each goal cell
+    private IntHashMap<ReverseSearch> searches =
+        new IntHashMap<ReverseSearch>();
+    // searches which have been dropped, kept so their arrays are reused
+    private List<ReverseSearch> active = new ArrayList<ReverseSearch>();
+    private List<ReverseSearch> spare = new ArrayList<ReverseSearch>();
+
+    private int numExpanded;
+
+    /**
+     * Create a cooperative path finder which plans
+     * <tt>DEFAULT_WINDOW</tt> turns ahead.
+     *
+     * @param map map
+     */
+    public CooperativePathFinder(IMap map)
+    {
+        this(map, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Create a cooperative path finder.
+     *
+     * @param map map
+     * @param window number of turns planned ahead
+     */
+    public CooperativePathFinder(IMap map, int window)
+    {
+        if (window < 1) {
+            throw new IllegalArgumentException("Bad window " + window);
+        }
+
+        this.map = map;
+        this.window = window;
+
+        width = map.getMaxX() + 1;
+        numCells = width * (map.getMaxY() + 1);
+        if ((long) numCells * (window + 1) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window " + window +
+                                               " is too large for map");
+        }
+
+        table = new ReservationTable(window + 1);
+    }
+
+    /**
+     * Move on to the next turn, dropping the current turn's
+     * reservations.
+     */
+    public void advance()
+    {
+        table.advance();
+    }
+
+    private void dropSearches()
+    {
+        searches.clear();
+        spare.addAll(active);
+        active.clear();
+    }
+
+    /**
+     * Plan a path for a single character, keeping clear of the paths
+     * already planned for others.  Any previous plan for the character
+     * is released first.
+     *
+     * @param owner character (or other object) which will follow the
+     *              path; its current position is the starting point
+     * @param goal goal
+     *
+     * @return one point for each of the next few turns (a repeated
+     *         point means the character waits), or <tt>null</tt> if no
+     *         path could be found
+     *
+     * @throws PathException if the start or goal is bad
+     */
+    public List<IMapPoint> findPath(IMapPoint owner, IMapPoint goal)
+        throws PathException
+    {
+        final int start = getCell(owner, "start");
+        final int end = getCell(goal, "goal");
+
+        table.release(owner);
+
+        return plan(owner, start, end);
+    }
+
+    /**
+     * Plan non-conflicting paths for a group of characters.  Requests
+     * are planned in order, so earlier requests get the better routes.
+     * The starting point of each request is the character which will
+     * follow the path.
+     *
+     * @param requests list of requests
+     *
+     * @return list of windowed paths (see <tt>findPath()</tt>) in the
+     *         same order as the requests
+     *
+     * @throws PathException if any start or goal is bad
+     */
+    public List<List<IMapPoint>> findPaths(List<PathRequest> requests)
+        throws PathException
+    {
+        // check everything before reserving anything
+        int[] starts = new int[requests.size()];
+        int[] ends = new int[requests.size()];
+        for (int i = 0; i < starts.length; i++) {
+            PathRequest req = requests.get(i);
+            starts[i] = getCell(req.getStart(), "start");
+            ends[i] = getCell(req.getGoal(), "goal");
+        }
+
+        for (PathRequest req : requests) {
+            table.release(req.getStart());
+        }
+
+        List<List<IMapPoint>> paths =
+            new ArrayList<List<IMapPoint>>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            paths.add(plan(requests.get(i).getStart(), starts[i], ends[i]));
+        }
+
+        return paths;
+    }
+
+    private int getCell(IMapPoint pt, String name)
+        throws PathException
+    {
+        if (pt == null) {
+            throw new PathException("No " + name + " point");
+        }
+
+        if (!map.isInBounds(pt.getX(), pt.getY())) {
+            throw new PathException("Bad " + name + " point " + pt);
+        }
+
+        return pt.getY() * width + pt.getX();
+    }
+
+    /**
+     * Get the number of cells expanded by the goal searches which are
+     * still in use.
+     *
+     * @return number of expanded cells
+     */
+    int getNumDistanceExpanded()
+    {
+        int total = 0;
+        for (ReverseSearch search : active) {
+            total += search.getNumExpanded();
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of space-time nodes expanded by all searches.
+     *
+     * @return number of expanded nodes
+     */
+    public int getNumExpanded()
+    {
+        return numExpanded;
+    }
+
+    /**
+     * Get the reservation table.
+     *
+     * @return reservations
+     */
+    public ReservationTable getReservations()
+    {
+        return table;
+    }
+
+    /**
+     * Get the search for a goal, starting one from <tt>start</tt> if
+     * the goal is new.
+     */
+    private ReverseSearch getSearch(int goal, int start)
+    {
+        ReverseSearch search = searches.get(goal);
+        if (search == null) {
+            if (searches.size() >= MAX_SEARCHES) {
+                dropSearches();
+            }
+
+            if (spare.isEmpty()) {
+                search = new ReverseSearch(map);
+            } else {
+                search = spare.remove(spare.size() - 1);
+            }
+
+            search.start(goal, start);
+            searches.put(goal, search);
+            active.add(search);
+        }
+
+        return search;
+    }
+
+    /**
+     * Get the number of turns planned ahead.
+     *
+     * @return window size
+     */
+    public int getWindow()
+    {
+        return window;
+    }
+
+    private boolean isBlocked(int cell, int t, Object owner)
+    {
+        if (table.isReserved(cell, table.getTurn() + t, owner)) {
+            return true;
+        }
+
+        if (t == 1) {
+            // whoever is standing there now may not be part of the plan
+            final IMapObject obj =
+                map.tryGetOccupant(cell % width, cell / width);
+            if (obj != null && obj != owner) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Is the object where its plan says it should be?
+     */
+    private boolean isOnPlan(IMapObject obj)
+    {
+        final int cell = obj.getY() * width + obj.getX();
+        final int turn = table.getTurn();
+
+        return table.getOwner(cell, turn) == obj ||
+            table.getOwner(cell, turn + 1) == obj;
+    }
+
+    /**
+     * Ignored.
+     *
+     * @param obj new object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        // do nothing
+    }
+
+    /**
+     * Release the reservations of an object which strayed from its plan.
+     *
+     * @param obj moved object
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        if (!isOnPlan(obj)) {
+            table.release(obj);
+        }
+    }
+
+    /**
+     * Release the reservations of an object which left the map.
+     *
+     * @param obj removed object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        table.release(obj);
+    }
+
+    private List<IMapPoint> plan(Object owner, int start, int goal)
+    {
+        ReverseSearch search = getSearch(goal, start);
+
+        final double h = search.getDistance(start);
+        if (h == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+
+        IntHashMap<RouteNode> nodes = new IntHashMap<RouteNode>();
+        PriorityQueue<RouteNode> open =
+            new PriorityQueue<RouteNode>(64, new RouteNodeComparator());
+
+        RouteNode first = new RouteNode(start, 0.0, h, null);
+        nodes.put(start, first);
+        open.add(first);
+
+        RouteNode last = null;
+        while (!open.isEmpty()) {
+            RouteNode node = open.poll();
+            if (node.closed) {
+                continue;
+            }
+            node.closed = true;
+            numExpanded++;
+
+            final int cell = node.cell % numCells;
+            final int t = node.cell / numCells;
+            if (cell == goal || t == window) {
+                last = node;
+                break;
+            }
+
+            final int x = cell % width;
+            final int y = cell / width;
+
+            // wait in place
+            relax(nodes, open, search, owner, node, cell, t + 1,
+                  GridPathFinder.MIN_COST);
+
+            int mask = map.getNeighborMask(x, y);
+            while (mask != 0) {
+                final int bit = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+
+                final int nx = x + Direction.getDx(bit);
+                final int ny = y + Direction.getDy(bit);
+
+                double cost = map.tryGetTerrain(nx, ny).getCost();
+                if (nx != x && ny != y) {
+                    cost *= GridPathFinder.DIAGONAL;
+                }
+
+                relax(nodes, open, search, owner, node, ny * width + nx,
+                      t + 1, cost);
+            }
+        }
+
+        if (last == null) {
+            return null;
+        }
+
+        List<IMapPoint> path = new ArrayList<IMapPoint>();
+        for (RouteNode node = last; node != null; node = node.parent) {
+            final int cell = node.cell % numCells;
+            final int t = node.cell / numCells;
+
+            // hold each cell for the following turn as well, so nobody
+            // steps into it as it is left (or swaps places with us)
+            table.reserve(cell, table.getTurn() + t, owner);
+            table.reserve(cell, table.getTurn() + t + 1, owner);
+
+            if (node != first) {
+                path.add(new PathPoint(cell % width, cell / width));
+            }
+        }
+
+        Collections.reverse(path);
+
+        // stay put at the goal for the rest of the window
+        final int cell = last.cell % numCells;
+        if (cell == goal) {
+            for (int t = last.cell / numCells + 2; t <= window; t++) {
+                table.reserve(cell, table.getTurn() + t, owner);
+            }
+        }
+
+        return path;
+    }
+
+    private void relax(IntHashMap<RouteNode> nodes,
+                       PriorityQueue<RouteNode> open, ReverseSearch search,
+                       Object owner, RouteNode parent, int cell, int t,
+                       double cost)
+    {
+        if (isBlocked(cell, t, owner)) {
+            return;
+        }
+
+        final double h = search.getDistance(cell);
+        if (h == Double.POSITIVE_INFINITY) {
+            return;
+        }
+
+        final int key = t * numCells + cell;
+        final double gCost = parent.gCost + cost;
+
+        RouteNode node = nodes.get(key);
+        if (node != null) {
+            if (node.closed || node.gCost <= gCost) {
+                return;
+            }
+
+            // the old entry is still queued, so make sure it is skipped
+            node.closed = true;
+        }
+
+        node = new RouteNode(key, gCost, gCost + h, parent);
+        nodes.put(key, node);
+        open.add(node);
+    }
+
+    /**
+     * Drop all of an object's reservations.
+     *
+     * @param owner character (or other object) which owns the
+     *              reservations
+     */
+    public void release(Object owner)
+    {
+        table.release(owner);
+    }
+
+    /**
+     * Forget the cached goal distances.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        dropSearches();
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("CooperativePathFinder[%d turns,%s]", window,
+                             table);
+    }
+}
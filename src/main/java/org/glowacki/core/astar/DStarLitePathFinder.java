@@ -0,0 +1,591 @@
+package org.glowacki.core.astar;
+
+import java.util.Arrays;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.MapEntry;
+
+/**
+ * Incremental path finder using D* Lite.
+ *
+ * The search runs backward from the goal and its results are kept
+ * between steps, so when cells become blocked or free (or their
+ * terrain changes) only the part of the search which depends on them
+ * is redone.  The walker reports its position with <tt>moveStart()</tt>
+ * and asks for one step at a time with <tt>getNextStep()</tt>.
+ *
+ * Blocked cells are tracked by the finder, separately from the map's
+ * terrain, so callers can route around occupants.  Instances are not
+ * thread-safe; use one per walker.
+ */
+public class DStarLitePathFinder
+    implements IMapListener
+{
+    private static final double INFINITY = Double.POSITIVE_INFINITY;
+    /** Keys closer than this are treated as equal */
+    private static final double EPSILON = 1.0E-9;
+
+    private IMap map;
+    private int width;
+    private int height;
+
+    // generation in which each cell was last touched
+    private int[] stamp;
+    private int generation;
+
+    // cost of reaching the goal, and its one-step lookahead
+    private double[] gCost;
+    private double[] rhs;
+
+    // cells whose costs are inconsistent, as a heap ordered by key
+    private double[] key1;
+    private double[] key2;
+    private int[] heap;
+    private int heapSize;
+    // position of each cell in the heap, or -1
+    private int[] heapPos;
+
+    private boolean[] blocked;
+    private int numBlocked;
+
+    private int start = -1;
+    private int goal = -1;
+    // start when the key modifier was last raised
+    private int last;
+    private double keyModifier;
+
+    private int numExpanded;
+
+    /**
+     * Create a path finder for the specified map
+     *
+     * @param map map
+     */
+    public DStarLitePathFinder(IMap map)
+    {
+        this.map = map;
+
+        width = map.getMaxX() + 1;
+        height = map.getMaxY() + 1;
+
+        final int size = width * height;
+        stamp = new int[size];
+        gCost = new double[size];
+        rhs = new double[size];
+        key1 = new double[size];
+        key2 = new double[size];
+        heap = new int[size];
+        heapPos = new int[size];
+        blocked = new boolean[size];
+    }
+
+    /**
+     * Note that a cell's cost has changed, and patch up the search.
+     *
+     * @param cell changed cell
+     */
+    private void cellChanged(int cell)
+    {
+        if (goal < 0) {
+            return;
+        }
+
+        keyModifier += heuristic(last, start);
+        last = start;
+
+        // entering the cell costs something different, so every
+        // neighbor's lookahead may change
+        final int x = cell % width;
+        final int y = cell / width;
+
+        updateVertex(cell);
+
+        int mask = map.getNeighborMask(x, y);
+        while (mask != 0) {
+            final int bit = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+
+            updateVertex((y + Direction.getDy(bit)) * width + x +
+                         Direction.getDx(bit));
+        }
+    }
+
+    private void computeShortestPath()
+    {
+        touch(start);
+
+        while (heapSize > 0) {
+            final int cell = heap[0];
+
+            final double startMin = Math.min(gCost[start], rhs[start]);
+            final double startKey = startMin + keyModifier;
+            if (!isBefore(key1[cell], key2[cell], startKey, startMin) &&
+                rhs[start] == gCost[start])
+            {
+                break;
+            }
+
+            final double min = Math.min(gCost[cell], rhs[cell]);
+            final double newKey = min + heuristic(start, cell) + keyModifier;
+            if (isBefore(key1[cell], key2[cell], newKey, min)) {
+                // the key is out of date
+                key1[cell] = newKey;
+                key2[cell] = min;
+                siftDown(0);
+                continue;
+            }
+
+            remove(cell);
+            numExpanded++;
+
+            if (gCost[cell] > rhs[cell]) {
+                gCost[cell] = rhs[cell];
+            } else {
+                gCost[cell] = INFINITY;
+                updateVertex(cell);
+            }
+
+            final int x = cell % width;
+            final int y = cell / width;
+
+            int mask = map.getNeighborMask(x, y);
+            while (mask != 0) {
+                final int bit = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+
+                updateVertex((y + Direction.getDy(bit)) * width + x +
+                             Direction.getDx(bit));
+            }
+        }
+    }
+
+    /**
+     * Get the cost of stepping into a cell.
+     *
+     * @param from cell being left
+     * @param to cell being entered
+     *
+     * @return step cost, or infinity if the cell is blocked
+     */
+    private double getStepCost(int from, int to)
+    {
+        if (blocked[to]) {
+            return INFINITY;
+        }
+
+        double cost = map.tryGetTerrain(to % width, to / width).getCost();
+        if (from % width != to % width && from / width != to / width) {
+            cost *= GridPathFinder.DIAGONAL;
+        }
+
+        return cost;
+    }
+
+    /**
+     * Get the estimated cost of the rest of the path from the current
+     * start.
+     *
+     * @return cost, or <tt>Double.POSITIVE_INFINITY</tt> if the goal
+     *         cannot be reached
+     */
+    public double getCost()
+    {
+        if (goal < 0) {
+            return INFINITY;
+        }
+
+        computeShortestPath();
+
+        return gCost[start];
+    }
+
+    /**
+     * Get the next step from the current start toward the goal.
+     *
+     * @return next point, or <tt>null</tt> if the start is the goal or
+     *         the goal cannot be reached
+     */
+    public IMapPoint getNextStep()
+    {
+        if (goal < 0 || start == goal) {
+            return null;
+        }
+
+        computeShortestPath();
+
+        final int x = start % width;
+        final int y = start / width;
+
+        double best = INFINITY;
+        int bestCell = -1;
+
+        int mask = map.getNeighborMask(x, y);
+        while (mask != 0) {
+            final int bit = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+
+            final int cell =
+                (y + Direction.getDy(bit)) * width + x + Direction.getDx(bit);
+            if (stamp[cell] != generation) {
+                continue;
+            }
+
+            final double cost = getStepCost(start, cell) + gCost[cell];
+            if (cost < best) {
+                best = cost;
+                bestCell = cell;
+            }
+        }
+
+        if (bestCell < 0) {
+            return null;
+        }
+
+        final int bx = bestCell % width;
+        final int by = bestCell / width;
+        return new MapEntry(bx, by, map.tryGetTerrain(bx, by));
+    }
+
+    /**
+     * Get the number of cells expanded since the path was planned.
+     *
+     * @return number of expanded cells
+     */
+    public int getNumExpanded()
+    {
+        return numExpanded;
+    }
+
+    private double heuristic(int from, int to)
+    {
+        return GridPathFinder.MIN_COST *
+            GridPathFinder.octile(from % width - to % width,
+                                  from / width - to / width);
+    }
+
+    /**
+     * Is the specified cell blocked?
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>true</tt> if the cell has been blocked
+     */
+    public boolean isBlocked(int x, int y)
+    {
+        return map.isInBounds(x, y) && blocked[y * width + x];
+    }
+
+    /**
+     * Compare two keys.  Keys are sums of costs added up in different
+     * orders, so small rounding differences are ignored.
+     *
+     * @param a1 first part of the first key
+     * @param a2 second part of the first key
+     * @param b1 first part of the second key
+     * @param b2 second part of the second key
+     *
+     * @return <tt>true</tt> if the first key is smaller
+     */
+    private static boolean isBefore(double a1, double a2, double b1,
+                                    double b2)
+    {
+        if (a1 < b1 - EPSILON) {
+            return true;
+        } else if (a1 > b1 + EPSILON) {
+            return false;
+        }
+
+        return a2 < b2 - EPSILON;
+    }
+
+    private boolean isBefore(int a, int b)
+    {
+        return isBefore(key1[a], key2[a], key1[b], key2[b]);
+    }
+
+    /**
+     * Move the start of the path.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @throws PathException if the point is not on the map
+     */
+    public void moveStart(int x, int y)
+        throws PathException
+    {
+        if (!map.isInBounds(x, y)) {
+            throw new PathException(String.format("Bad start point [%d,%d]",
+                                                  x, y));
+        }
+
+        start = y * width + x;
+    }
+
+    /**
+     * An object was added to the map; occupants are reported with
+     * <tt>setBlocked()</tt> instead.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        // ignored
+    }
+
+    /**
+     * An object was moved; occupants are reported with
+     * <tt>setBlocked()</tt> instead.
+     *
+     * @param obj object (already at its new position)
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        // ignored
+    }
+
+    /**
+     * An object was removed from the map; occupants are reported with
+     * <tt>setBlocked()</tt> instead.
+     *
+     * @param obj object
+     * @param x X coordinate of the position it was removed from
+     * @param y Y coordinate of the position it was removed from
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        // ignored
+    }
+
+    /**
+     * Plan a new path, forgetting any previous search and blocked cells.
+     *
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public void plan(IMapPoint startPt, IMapPoint endPt)
+        throws PathException
+    {
+        if (!map.isInBounds(endPt.getX(), endPt.getY())) {
+            final String msg =
+                String.format("Bad end point [%d,%d]", endPt.getX(),
+                              endPt.getY());
+            throw new PathException(msg);
+        }
+
+        moveStart(startPt.getX(), startPt.getY());
+
+        generation++;
+        if (generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+
+        if (numBlocked > 0) {
+            Arrays.fill(blocked, false);
+            numBlocked = 0;
+        }
+
+        heapSize = 0;
+        numExpanded = 0;
+        keyModifier = 0.0;
+
+        goal = endPt.getY() * width + endPt.getX();
+        last = start;
+
+        touch(goal);
+        rhs[goal] = 0.0;
+        key1[goal] = heuristic(start, goal);
+        key2[goal] = 0.0;
+        push(goal);
+    }
+
+    private void push(int cell)
+    {
+        heap[heapSize] = cell;
+        heapPos[cell] = heapSize;
+        heapSize++;
+
+        siftUp(heapSize - 1);
+    }
+
+    private void remove(int cell)
+    {
+        final int pos = heapPos[cell];
+        heapPos[cell] = -1;
+
+        heapSize--;
+        if (pos < heapSize) {
+            final int moved = heap[heapSize];
+            heap[pos] = moved;
+            heapPos[moved] = pos;
+
+            siftUp(pos);
+            if (heapPos[moved] == pos) {
+                siftDown(pos);
+            }
+        }
+    }
+
+    /**
+     * Block or unblock a cell, for instance when an occupant is found in
+     * the way or has left.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param value <tt>true</tt> to block the cell
+     */
+    public void setBlocked(int x, int y, boolean value)
+    {
+        if (!map.isInBounds(x, y)) {
+            return;
+        }
+
+        final int cell = y * width + x;
+        if (blocked[cell] == value) {
+            return;
+        }
+
+        blocked[cell] = value;
+        numBlocked += value ? 1 : -1;
+
+        cellChanged(cell);
+    }
+
+    private void siftDown(int i)
+    {
+        final int cell = heap[i];
+        while (true) {
+            final int left = i * 2 + 1;
+            if (left >= heapSize) {
+                break;
+            }
+
+            int child = left;
+            if (left + 1 < heapSize && isBefore(heap[left + 1], heap[left])) {
+                child = left + 1;
+            }
+
+            if (!isBefore(heap[child], cell)) {
+                break;
+            }
+
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+
+    private void siftUp(int i)
+    {
+        final int cell = heap[i];
+        while (i > 0) {
+            final int up = (i - 1) / 2;
+            if (!isBefore(cell, heap[up])) {
+                break;
+            }
+
+            heap[i] = heap[up];
+            heapPos[heap[i]] = i;
+            i = up;
+        }
+
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+
+    /**
+     * The terrain at the specified position changed.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        if (map.isInBounds(x, y)) {
+            cellChanged(y * width + x);
+        }
+    }
+
+    /**
+     * Make sure a cell's costs belong to the current search.
+     *
+     * @param cell cell
+     */
+    private void touch(int cell)
+    {
+        if (stamp[cell] != generation) {
+            stamp[cell] = generation;
+            gCost[cell] = INFINITY;
+            rhs[cell] = INFINITY;
+            heapPos[cell] = -1;
+        }
+    }
+
+    private void updateVertex(int cell)
+    {
+        touch(cell);
+
+        if (cell != goal) {
+            final int x = cell % width;
+            final int y = cell / width;
+
+            double best = INFINITY;
+
+            int mask = map.getNeighborMask(x, y);
+            while (mask != 0) {
+                final int bit = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+
+                final int next = (y + Direction.getDy(bit)) * width + x +
+                    Direction.getDx(bit);
+                if (stamp[next] != generation) {
+                    continue;
+                }
+
+                final double cost = getStepCost(cell, next) + gCost[next];
+                if (cost < best) {
+                    best = cost;
+                }
+            }
+
+            rhs[cell] = best;
+        }
+
+        if (heapPos[cell] >= 0) {
+            remove(cell);
+        }
+
+        if (gCost[cell] != rhs[cell]) {
+            final double min = Math.min(gCost[cell], rhs[cell]);
+            key1[cell] = min + heuristic(start, cell) + keyModifier;
+            key2[cell] = min;
+            push(cell);
+        }
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("DStarLitePathFinder[%dx%d,%d blocked]", width,
+                             height, numBlocked);
+    }
+}
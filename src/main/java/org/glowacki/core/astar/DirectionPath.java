@@ -0,0 +1,453 @@
+package org.glowacki.core.astar;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.UnimplementedError;
+
+/**
+ * Compact path, stored as a starting point and the compass direction
+ * of each step.
+ *
+ * Each step takes a single byte, so long routes are cheap to keep
+ * around.  Paths are immutable, and suffixes share their steps with
+ * the path they were taken from.
+ */
+public class DirectionPath
+    implements Iterable<IMapPoint>
+{
+    private int startX;
+    private int startY;
+
+    // compass direction ordinals; this path uses steps[offset] onward
+    private byte[] steps;
+    private int offset;
+    private int length;
+
+    private int endX;
+    private int endY;
+
+    /**
+     * Create a path.
+     *
+     * @param startX starting X coordinate
+     * @param startY starting Y coordinate
+     * @param steps compass direction ordinals (owned by the new path)
+     */
+    DirectionPath(int startX, int startY, byte[] steps)
+    {
+        this(startX, startY, steps, 0, steps.length);
+    }
+
+    private DirectionPath(int startX, int startY, byte[] steps, int offset,
+                          int length)
+    {
+        this.startX = startX;
+        this.startY = startY;
+        this.steps = steps;
+        this.offset = offset;
+        this.length = length;
+
+        int x = startX;
+        int y = startY;
+        for (int i = offset; i < offset + length; i++) {
+            x += Direction.getDx(steps[i]);
+            y += Direction.getDy(steps[i]);
+        }
+
+        endX = x;
+        endY = y;
+    }
+
+    /**
+     * Create a path which continues with the steps of another path.
+     *
+     * @param next path starting where this one ends
+     *
+     * @return combined path
+     *
+     * @throws PathException if <tt>next</tt> doesn't start at the end
+     *         of this path
+     */
+    public DirectionPath concat(DirectionPath next)
+        throws PathException
+    {
+        if (next.startX != endX || next.startY != endY) {
+            final String msg =
+                String.format("Path starting at [%d,%d] cannot follow path" +
+                              " ending at [%d,%d]", next.startX, next.startY,
+                              endX, endY);
+            throw new PathException(msg);
+        }
+
+        byte[] combined = new byte[length + next.length];
+        System.arraycopy(steps, offset, combined, 0, length);
+        System.arraycopy(next.steps, next.offset, combined, length,
+                         next.length);
+
+        return new DirectionPath(startX, startY, combined);
+    }
+
+    /**
+     * Is this the same path as <tt>obj</tt>?
+     *
+     * @param obj object being compared
+     *
+     * @return <tt>true</tt> if the paths have the same start and steps
+     */
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof DirectionPath)) {
+            return false;
+        }
+
+        DirectionPath path = (DirectionPath) obj;
+        if (path.startX != startX || path.startY != startY ||
+            path.length != length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (path.steps[path.offset + i] != steps[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Build a path from a list of adjacent points.
+     *
+     * @param start starting point
+     * @param points points along the path (not including the start)
+     *
+     * @return new path
+     *
+     * @throws PathException if two consecutive points are not adjacent
+     */
+    public static DirectionPath fromPoints(IMapPoint start,
+                                           List<? extends IMapPoint> points)
+        throws PathException
+    {
+        byte[] steps = new byte[points.size()];
+
+        int x = start.getX();
+        int y = start.getY();
+        for (int i = 0; i < steps.length; i++) {
+            final IMapPoint pt = points.get(i);
+
+            final Direction dir =
+                Direction.fromOffset(pt.getX() - x, pt.getY() - y);
+            if (dir == Direction.UNKNOWN) {
+                final String msg =
+                    String.format("Point [%d,%d] does not follow [%d,%d]",
+                                  pt.getX(), pt.getY(), x, y);
+                throw new PathException(msg);
+            }
+
+            steps[i] = (byte) dir.ordinal();
+            x = pt.getX();
+            y = pt.getY();
+        }
+
+        return new DirectionPath(start.getX(), start.getY(), steps);
+    }
+
+    /**
+     * Get the direction of a step.
+     *
+     * @param index step index
+     *
+     * @return compass direction
+     */
+    public Direction getDirection(int index)
+    {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Bad step #" + index);
+        }
+
+        return Direction.getDirection(steps[offset + index]);
+    }
+
+    /**
+     * Get the final X coordinate.
+     *
+     * @return ending X coordinate
+     */
+    public int getEndX()
+    {
+        return endX;
+    }
+
+    /**
+     * Get the final Y coordinate.
+     *
+     * @return ending Y coordinate
+     */
+    public int getEndY()
+    {
+        return endY;
+    }
+
+    /**
+     * Get the starting X coordinate.
+     *
+     * @return starting X coordinate
+     */
+    public int getStartX()
+    {
+        return startX;
+    }
+
+    /**
+     * Get the starting Y coordinate.
+     *
+     * @return starting Y coordinate
+     */
+    public int getStartY()
+    {
+        return startY;
+    }
+
+    /**
+     * Return a hash code for this path.
+     *
+     * @return hash code
+     */
+    public int hashCode()
+    {
+        int hash = startX * 31 + startY;
+        for (int i = 0; i < length; i++) {
+            hash = hash * 31 + steps[offset + i];
+        }
+        return hash;
+    }
+
+    /**
+     * Get a cursor which walks the path one step at a time.
+     *
+     * @return path cursor
+     */
+    public Cursor iterator()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * Read a path written by <tt>write()</tt>.
+     *
+     * @param in input
+     *
+     * @return path
+     *
+     * @throws IOException if there is a problem
+     */
+    public static DirectionPath read(DataInput in)
+        throws IOException
+    {
+        final int x = in.readInt();
+        final int y = in.readInt();
+        final int len = in.readInt();
+        if (len < 0) {
+            throw new IOException("Bad path length " + len);
+        }
+
+        byte[] steps = new byte[len];
+        in.readFully(steps);
+        for (int i = 0; i < len; i++) {
+            if (steps[i] < 0 || steps[i] >= Direction.NUM_COMPASS) {
+                throw new IOException("Bad direction " + steps[i] +
+                                      " in path step #" + i);
+            }
+        }
+
+        return new DirectionPath(x, y, steps);
+    }
+
+    /**
+     * Get the same path walked backward.
+     *
+     * @return reversed path
+     */
+    public DirectionPath reverse()
+    {
+        final int half = Direction.NUM_COMPASS / 2;
+
+        byte[] reversed = new byte[length];
+        for (int i = 0; i < length; i++) {
+            reversed[length - 1 - i] =
+                (byte) ((steps[offset + i] + half) % Direction.NUM_COMPASS);
+        }
+
+        return new DirectionPath(endX, endY, reversed);
+    }
+
+    /**
+     * Get the number of steps.
+     *
+     * @return number of steps
+     */
+    public int size()
+    {
+        return length;
+    }
+
+    /**
+     * Get the rest of the path after the first <tt>index</tt> steps.
+     * The steps are shared with this path.
+     *
+     * @param index number of steps to skip
+     *
+     * @return remaining path
+     */
+    public DirectionPath suffix(int index)
+    {
+        if (index < 0 || index > length) {
+            throw new IndexOutOfBoundsException("Bad step #" + index);
+        } else if (index == 0) {
+            return this;
+        }
+
+        int x = startX;
+        int y = startY;
+        for (int i = offset; i < offset + index; i++) {
+            x += Direction.getDx(steps[i]);
+            y += Direction.getDy(steps[i]);
+        }
+
+        return new DirectionPath(x, y, steps, offset + index,
+                                 length - index);
+    }
+
+    /**
+     * Get the points along the path.
+     *
+     * @return list of points (not including the starting point)
+     */
+    public List<IMapPoint> toPoints()
+    {
+        List<IMapPoint> list = new ArrayList<IMapPoint>(length);
+        for (IMapPoint pt : this) {
+            list.add(pt);
+        }
+        return list;
+    }
+
+    /**
+     * Write this path.
+     *
+     * @param out output
+     *
+     * @throws IOException if there is a problem
+     */
+    public void write(DataOutput out)
+        throws IOException
+    {
+        out.writeInt(startX);
+        out.writeInt(startY);
+        out.writeInt(length);
+        out.write(steps, offset, length);
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        StringBuilder buf = new StringBuilder("DirectionPath[");
+        buf.append(startX).append(',').append(startY);
+        for (int i = 0; i < length; i++) {
+            buf.append(' ').append(Direction.getDirection(steps[offset + i]));
+        }
+        return buf.append(']').toString();
+    }
+
+    /**
+     * Walks a path one step at a time.
+     */
+    public class Cursor
+        implements Iterator<IMapPoint>
+    {
+        private int pos;
+        private int x = startX;
+        private int y = startY;
+
+        /**
+         * Get the X coordinate reached by the last step.
+         *
+         * @return current X coordinate
+         */
+        public int getX()
+        {
+            return x;
+        }
+
+        /**
+         * Get the Y coordinate reached by the last step.
+         *
+         * @return current Y coordinate
+         */
+        public int getY()
+        {
+            return y;
+        }
+
+        /**
+         * Are there more steps?
+         *
+         * @return <tt>true</tt> if there are more steps
+         */
+        public boolean hasNext()
+        {
+            return pos < length;
+        }
+
+        /**
+         * Get the point reached by the next step.
+         *
+         * @return next point
+         */
+        public IMapPoint next()
+        {
+            nextDirection();
+            return new PathPoint(x, y);
+        }
+
+        /**
+         * Take the next step.
+         *
+         * @return direction of the step
+         */
+        public Direction nextDirection()
+        {
+            if (pos >= length) {
+                throw new NoSuchElementException();
+            }
+
+            final int bit = steps[offset + pos++];
+            x += Direction.getDx(bit);
+            y += Direction.getDy(bit);
+
+            return Direction.getDirection(bit);
+        }
+
+        /**
+         * Unimplemented
+         */
+        public void remove()
+        {
+            throw new UnimplementedError();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Terrain;
+
+/**
+ * Cost of reaching the nearest of a set of goals from every cell on a
+ * map (a "Dijkstra map").
+ *
+ * The field is built with a single search outward from all the goals,
+ * so any number of characters heading for the same goals can share it
+ * and find their next step by looking at their neighbors.  It is
+ * rebuilt lazily, the first time it is used after a goal is added,
+ * removed or moved, or after the terrain changes.
+ *
+ * Occupants are not part of the field, since characters moving around
+ * would otherwise force a rebuild every turn.  Instead, occupied cells
+ * are avoided when choosing the next step.
+ */
+public class DistanceField
+    implements IMapListener
+{
+    private IMap map;
+    private int width;
+
+    private GridPathFinder grid;
+
+    private List<IMapPoint> goals = new ArrayList<IMapPoint>();
+    private boolean dirty = true;
+    private int numBuilt;
+
+    /**
+     * Create an empty distance field for the specified map.
+     *
+     * @param map map
+     */
+    public DistanceField(IMap map)
+    {
+        this.map = map;
+
+        width = map.getMaxX() + 1;
+
+        grid = new GridPathFinder(map);
+    }
+
+    /**
+     * Add a goal.  If the goal is an object on the map, the field follows
+     * it as it moves.
+     *
+     * @param goal goal
+     */
+    public void addGoal(IMapPoint goal)
+    {
+        goals.add(goal);
+        dirty = true;
+    }
+
+    private void build()
+    {
+        grid.startReverse(-1);
+
+        for (IMapPoint goal : goals) {
+            final Terrain t = map.tryGetTerrain(goal.getX(), goal.getY());
+            if (t != null && t.isMovable()) {
+                grid.openGoal(goal.getY() * width + goal.getX());
+            }
+        }
+
+        while (grid.expandReverse() >= 0) {
+            // keep going until every cell has been reached
+        }
+
+        dirty = false;
+        numBuilt++;
+    }
+
+    /**
+     * Remove all goals.
+     */
+    public void clearGoals()
+    {
+        goals.clear();
+        dirty = true;
+    }
+
+    /**
+     * Get the cost of reaching the nearest goal from the specified point.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return cost, or <tt>Double.POSITIVE_INFINITY</tt> if no goal can
+     *         be reached
+     */
+    public double getDistance(int x, int y)
+    {
+        if (!map.isInBounds(x, y)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        if (dirty) {
+            build();
+        }
+
+        return grid.getCost(y * width + x);
+    }
+
+    /**
+     * Get the direction of the next step toward the nearest goal.  Steps
+     * into occupied cells are not considered unless the occupied cell is
+     * a goal, so characters can close in on a goal and route around
+     * each other.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return direction, or <tt>Direction.UNKNOWN</tt> if the point is a
+     *         goal or no unoccupied neighbor is closer to a goal
+     */
+    public Direction getNextStep(int x, int y)
+    {
+        double best = getDistance(x, y);
+        if (best == 0.0 || best == Double.POSITIVE_INFINITY) {
+            return Direction.UNKNOWN;
+        }
+
+        int bestBit = -1;
+
+        int mask = map.getNeighborMask(x, y);
+        while (mask != 0) {
+            final int bit = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+
+            final int nx = x + Direction.getDx(bit);
+            final int ny = y + Direction.getDy(bit);
+
+            final double dist = grid.getCost(ny * width + nx);
+            if (dist < best &&
+                (dist == 0.0 || map.tryGetOccupant(nx, ny) == null))
+            {
+                best = dist;
+                bestBit = bit;
+            }
+        }
+
+        if (bestBit < 0) {
+            return Direction.UNKNOWN;
+        }
+
+        return Direction.getDirection(bestBit);
+    }
+
+    /**
+     * Get the number of goals.
+     *
+     * @return number of goals
+     */
+    public int getNumGoals()
+    {
+        return goals.size();
+    }
+
+    /**
+     * Get the number of times the field has been built.
+     *
+     * @return number of builds
+     */
+    public int getNumBuilt()
+    {
+        return numBuilt;
+    }
+
+    private boolean isGoal(IMapObject obj)
+    {
+        for (int i = 0; i < goals.size(); i++) {
+            if (goals.get(i) == obj) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * An object was added to the map.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        if (isGoal(obj)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * An object was moved to a new position.
+     *
+     * @param obj object (already at its new position)
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        if (isGoal(obj)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * An object was removed from the map.
+     *
+     * @param obj object
+     * @param x X coordinate of the position it was removed from
+     * @param y Y coordinate of the position it was removed from
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        if (isGoal(obj)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Remove a goal.
+     *
+     * @param goal goal
+     *
+     * @return <tt>false</tt> if the goal was not found
+     */
+    public boolean removeGoal(IMapPoint goal)
+    {
+        for (int i = 0; i < goals.size(); i++) {
+            if (goals.get(i) == goal) {
+                goals.remove(i);
+                dirty = true;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The terrain at the specified position changed.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        dirty = true;
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("DistanceField[%d goals,built*%d%s]",
+                             goals.size(), numBuilt, dirty ? ",dirty" : "");
+    }
+}
@@ -0,0 +1,864 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.glowacki.core.BaseCharacter;
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.MapEntry;
+import org.glowacki.core.Terrain;
+
+/**
+ * Reusable A* path finder for a single map.
+ *
+ * All per-cell search state lives in arrays indexed by cell, and each
+ * search bumps a generation number instead of clearing them, so once
+ * the arrays exist the only allocation made by a search is the returned
+ * path.  Instances are not thread-safe; use one per thread.
+ *
+ * Moves cost the destination's terrain cost, multiplied by the square
+ * root of two for diagonal moves, matching the turns a character spends.
+ */
+public class GridPathFinder
+{
+    /** Extra cost of a diagonal step over a straight step */
+    static final double DIAGONAL = BaseCharacter.SQRT_2;
+
+    /** Cheapest movable terrain cost */
+    static final double MIN_COST;
+
+    /** Goal used while searching for the nearest of several goals */
+    static final int ANY_GOAL = -2;
+
+    /**
+     * Nearest-goal searches with more goals than this skip the heuristic,
+     * since checking every goal would cost more than it saves
+     */
+    static final int MAX_HEURISTIC_GOALS = 16;
+
+    static {
+        double min = Double.MAX_VALUE;
+        for (Terrain t : Terrain.values()) {
+            if (t.isMovable() && t.getCost() < min) {
+                min = t.getCost();
+            }
+        }
+        MIN_COST = min;
+    }
+
+    IMap map;
+    int width;
+    int height;
+
+    // generation in which each cell was last reached
+    int[] stamp;
+    int generation;
+
+    // cost from the start
+    double[] gCost;
+    // estimated total cost through the cell
+    double[] fCost;
+    // previous cell on the best known path
+    int[] parent;
+    // has the cell been expanded?
+    boolean[] closed;
+
+    // open cells, as a binary heap ordered by fCost
+    private int[] heap;
+    int heapSize;
+    // position of each open cell in the heap
+    private int[] heapPos;
+
+    int numExpanded;
+
+    // expanded cell with the lowest estimated cost to the goal
+    private int bestCell;
+    private double bestEstimate;
+
+    // used to reject requests for unreachable goals
+    private ConnectedComponents components;
+
+    // goals of the current nearest-goal search, either as a list of
+    // cells (also marked in goalStamp) or as a test
+    private int[] goalCells = new int[MAX_HEURISTIC_GOALS];
+    private int numGoals;
+    private int[] goalStamp;
+    private int goalGeneration;
+    private IPathGoal goalTest;
+
+    // cell a reverse search is heading for, or -1
+    private int reverseTarget = -1;
+
+    // plain A* searches stay inside these bounds
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    /**
+     * Create a path finder for the specified map
+     *
+     * @param map map
+     */
+    public GridPathFinder(IMap map)
+    {
+        this.map = map;
+
+        width = map.getMaxX() + 1;
+        height = map.getMaxY() + 1;
+
+        final int size = width * height;
+        stamp = new int[size];
+        gCost = new double[size];
+        fCost = new double[size];
+        parent = new int[size];
+        closed = new boolean[size];
+        heap = new int[size];
+        heapPos = new int[size];
+
+        clearBounds();
+    }
+
+    /**
+     * Let searches use the entire map.
+     */
+    void clearBounds()
+    {
+        setBounds(0, 0, width - 1, height - 1);
+    }
+
+    private IMapPoint createPoint(int cell)
+    {
+        final int x = cell % width;
+        final int y = cell / width;
+
+        return new MapEntry(x, y, map.tryGetTerrain(x, y));
+    }
+
+    /**
+     * Get the octile distance between two cells.
+     *
+     * @param from starting cell
+     * @param to ending cell
+     *
+     * @return octile distance
+     */
+    double distance(int from, int to)
+    {
+        return octile(from % width - to % width, from / width - to / width);
+    }
+
+    /**
+     * Find the best path from <tt>startPt</tt> to <tt>endPt</tt>.
+     *
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @return list of points in the path (not including the starting
+     *         point), or <tt>null</tt> if there is no path
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public List<IMapPoint> findBestPath(IMapPoint startPt, IMapPoint endPt)
+        throws PathException
+    {
+        return findPath(getCell(startPt, "start"), getCell(endPt, "end"));
+    }
+
+    /**
+     * Find the best path from <tt>startPt</tt> to <tt>endPt</tt> as a
+     * list of directions.
+     *
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @return best path, or <tt>null</tt> if there is no path
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public DirectionPath findDirectionPath(IMapPoint startPt,
+                                           IMapPoint endPt)
+        throws PathException
+    {
+        return findDirectionPath(getCell(startPt, "start"),
+                                 getCell(endPt, "end"));
+    }
+
+    /**
+     * Find the best path between two cells as a list of directions.
+     *
+     * @param start starting cell
+     * @param goal goal cell
+     *
+     * @return best path, or <tt>null</tt> if there is no path
+     */
+    DirectionPath findDirectionPath(int start, int goal)
+    {
+        if (isUnreachable(start, goal) || !search(start, goal)) {
+            return null;
+        }
+
+        return getDirectionPath(start, goal);
+    }
+
+    /**
+     * Find the cheapest path from <tt>startPt</tt> to any of the goals
+     * in a single search.
+     *
+     * @param startPt starting point
+     * @param goals candidate goals
+     *
+     * @return path to the nearest goal, or <tt>null</tt> if no goal can
+     *         be reached
+     *
+     * @throws PathException if the starting point or a goal is bad
+     */
+    public DirectionPath findNearestPath(IMapPoint startPt,
+                                         Iterable<? extends IMapPoint> goals)
+        throws PathException
+    {
+        final int start = getCell(startPt, "start");
+
+        if (goalStamp == null) {
+            goalStamp = new int[stamp.length];
+        }
+
+        goalGeneration++;
+        if (goalGeneration == 0) {
+            Arrays.fill(goalStamp, 0);
+            goalGeneration = 1;
+        }
+
+        numGoals = 0;
+        for (IMapPoint pt : goals) {
+            final int cell = getCell(pt, "goal");
+            if (goalStamp[cell] == goalGeneration ||
+                (components != null && !components.isConnected(start, cell)))
+            {
+                continue;
+            }
+
+            goalStamp[cell] = goalGeneration;
+            if (numGoals == goalCells.length) {
+                goalCells = Arrays.copyOf(goalCells, numGoals * 2);
+            }
+            goalCells[numGoals++] = cell;
+        }
+
+        if (numGoals == 0) {
+            nextGeneration();
+            return null;
+        }
+
+        return findNearestPath(start);
+    }
+
+    /**
+     * Find the cheapest path from <tt>startPt</tt> to any cell accepted
+     * by <tt>goal</tt>.  Since the goals aren't known in advance, this
+     * is a plain Dijkstra search.
+     *
+     * @param startPt starting point
+     * @param goal goal test
+     *
+     * @return path to the nearest goal, or <tt>null</tt> if no goal can
+     *         be reached
+     *
+     * @throws PathException if the starting point is bad
+     */
+    public DirectionPath findNearestPath(IMapPoint startPt, IPathGoal goal)
+        throws PathException
+    {
+        final int start = getCell(startPt, "start");
+
+        goalTest = goal;
+        try {
+            return findNearestPath(start);
+        } finally {
+            goalTest = null;
+        }
+    }
+
+    private DirectionPath findNearestPath(int start)
+    {
+        startSearch(start, ANY_GOAL);
+        if (resume(ANY_GOAL, Integer.MAX_VALUE) != PathSearch.Status.FOUND) {
+            return null;
+        }
+
+        return getDirectionPath(start, bestCell);
+    }
+
+    /**
+     * Find the best path between two cells.
+     *
+     * @param start starting cell
+     * @param goal goal cell
+     *
+     * @return list of points in the path (not including the starting
+     *         point), or <tt>null</tt> if there is no path
+     */
+    List<IMapPoint> findPath(int start, int goal)
+    {
+        if (isUnreachable(start, goal) || !search(start, goal)) {
+            return null;
+        }
+
+        // parents may be several steps away along a straight or
+        // diagonal line, so fill in the cells in between
+        List<IMapPoint> bestList = new ArrayList<IMapPoint>();
+        for (int cell = goal; cell != start; cell = parent[cell]) {
+            final int px = parent[cell] % width;
+            final int py = parent[cell] / width;
+
+            int x = cell % width;
+            int y = cell / width;
+
+            final int dx = Integer.signum(px - x);
+            final int dy = Integer.signum(py - y);
+            while (x != px || y != py) {
+                bestList.add(createPoint(y * width + x));
+                x += dx;
+                y += dy;
+            }
+        }
+
+        Collections.reverse(bestList);
+
+        return bestList;
+    }
+
+    /**
+     * Get the cell for a point.
+     *
+     * @param pt point
+     * @param name name used in the error message
+     *
+     * @return cell
+     *
+     * @throws PathException if the point is outside the map
+     */
+    int getCell(IMapPoint pt, String name)
+        throws PathException
+    {
+        if (!map.isInBounds(pt.getX(), pt.getY())) {
+            final String msg =
+                String.format("Bad %s point [%d,%d]", name, pt.getX(),
+                              pt.getY());
+            throw new PathException(msg);
+        }
+
+        return pt.getY() * width + pt.getX();
+    }
+
+    /**
+     * Get the cost of reaching a cell in the most recent search.
+     *
+     * @param cell cell
+     *
+     * @return cost, or <tt>Double.POSITIVE_INFINITY</tt> if the cell
+     *         was not reached
+     */
+    double getCost(int cell)
+    {
+        if (stamp[cell] != generation) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return gCost[cell];
+    }
+
+    /**
+     * Expand the next cell of a reverse search.  Since the search works
+     * outward from the goals, each step costs the terrain of the cell
+     * being expanded, which is the cell stepped into when walking toward
+     * a goal.
+     *
+     * @return expanded cell, or <tt>-1</tt> if every cell which can
+     *         reach a goal has been expanded
+     */
+    int expandReverse()
+    {
+        if (heapSize == 0) {
+            return -1;
+        }
+
+        final int cell = pop();
+
+        closed[cell] = true;
+        numExpanded++;
+
+        final int x = cell % width;
+        final int y = cell / width;
+
+        final double cost = map.tryGetTerrain(x, y).getCost();
+
+        int mask = map.getNeighborMask(x, y);
+        while (mask != 0) {
+            final int bit = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+
+            final int nx = x + Direction.getDx(bit);
+            final int ny = y + Direction.getDy(bit);
+
+            double step = cost;
+            if (nx != x && ny != y) {
+                step *= DIAGONAL;
+            }
+
+            open(ny * width + nx, cell, gCost[cell] + step, reverseTarget);
+        }
+
+        return cell;
+    }
+
+    /**
+     * Build the path to a cell reached by the most recent search.
+     *
+     * @param start starting cell
+     * @param end cell reached by the search
+     *
+     * @return path from <tt>start</tt> to <tt>end</tt>
+     */
+    DirectionPath getDirectionPath(int start, int end)
+    {
+        // parents may be several steps away along a straight or
+        // diagonal line, so every step in between is counted
+        int len = 0;
+        for (int cell = end; cell != start; cell = parent[cell]) {
+            len += Math.max(Math.abs(parent[cell] % width - cell % width),
+                            Math.abs(parent[cell] / width - cell / width));
+        }
+
+        byte[] steps = new byte[len];
+        for (int cell = end; cell != start; cell = parent[cell]) {
+            final int dx = cell % width - parent[cell] % width;
+            final int dy = cell / width - parent[cell] / width;
+
+            final Direction dir =
+                Direction.fromOffset(Integer.signum(dx), Integer.signum(dy));
+            for (int i = Math.max(Math.abs(dx), Math.abs(dy)); i > 0; i--) {
+                steps[--len] = (byte) dir.ordinal();
+            }
+        }
+
+        return new DirectionPath(start % width, start / width, steps);
+    }
+
+    /**
+     * Get the expanded cell with the lowest estimated cost to the goal.
+     *
+     * @return best cell
+     */
+    int getBestCell()
+    {
+        return bestCell;
+    }
+
+    /**
+     * Get the number of cells expanded by the most recent search.
+     *
+     * @return number of expanded cells
+     */
+    public int getNumExpanded()
+    {
+        return numExpanded;
+    }
+
+    /**
+     * Estimate the cost of moving between two cells.
+     *
+     * @param from starting cell
+     * @param to ending cell
+     *
+     * @return estimated cost (never more than the actual cost)
+     */
+    double heuristic(int from, int to)
+    {
+        if (to == ANY_GOAL) {
+            if (goalTest != null || numGoals > MAX_HEURISTIC_GOALS) {
+                return 0.0;
+            }
+
+            // estimate the cost to the nearest goal
+            double best = Double.MAX_VALUE;
+            for (int i = 0; i < numGoals; i++) {
+                best = Math.min(best, distance(from, goalCells[i]));
+            }
+            return MIN_COST * best;
+        } else if (to < 0) {
+            // no goal, so this is a plain Dijkstra search
+            return 0.0;
+        }
+
+        return MIN_COST * distance(from, to);
+    }
+
+    private boolean isBefore(int a, int b)
+    {
+        if (fCost[a] != fCost[b]) {
+            return fCost[a] < fCost[b];
+        }
+
+        // prefer the cell closer to the goal
+        return gCost[a] > gCost[b];
+    }
+
+    /**
+     * Has a cell been expanded by the most recent search?
+     *
+     * @param cell cell
+     *
+     * @return <tt>true</tt> if the cell's cost is final
+     */
+    boolean isClosed(int cell)
+    {
+        return stamp[cell] == generation && closed[cell];
+    }
+
+    private boolean isGoal(int cell)
+    {
+        if (goalTest != null) {
+            return goalTest.isGoal(cell % width, cell / width);
+        }
+
+        return goalStamp[cell] == goalGeneration;
+    }
+
+    /**
+     * Can the component labels rule out a path between two cells?
+     * If so, the previous search is forgotten, as if a search had
+     * failed without expanding anything.
+     *
+     * @param start starting cell
+     * @param goal goal cell
+     *
+     * @return <tt>true</tt> if there is no path
+     */
+    private boolean isUnreachable(int start, int goal)
+    {
+        if (components == null || components.isConnected(start, goal)) {
+            return false;
+        }
+
+        nextGeneration();
+        return true;
+    }
+
+    /**
+     * If the component labels rule out a path between two cells, forget
+     * the previous search and leave the start as the best cell, as if a
+     * search had failed without expanding anything.
+     *
+     * @param start starting cell
+     * @param goal goal cell
+     *
+     * @return <tt>true</tt> if there is no path
+     */
+    boolean rejectUnreachable(int start, int goal)
+    {
+        if (!isUnreachable(start, goal)) {
+            return false;
+        }
+
+        bestCell = start;
+        return true;
+    }
+
+    void nextGeneration()
+    {
+        generation++;
+        if (generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+
+        heapSize = 0;
+        numExpanded = 0;
+    }
+
+    /**
+     * Get the length of the shortest unobstructed path across an offset,
+     * counting diagonal steps as the square root of two.
+     *
+     * @param dx X offset
+     * @param dy Y offset
+     *
+     * @return octile distance
+     */
+    static double octile(int dx, int dy)
+    {
+        dx = Math.abs(dx);
+        dy = Math.abs(dy);
+
+        if (dx < dy) {
+            return dx * DIAGONAL + (dy - dx);
+        }
+
+        return dy * DIAGONAL + (dx - dy);
+    }
+
+    /**
+     * Add a cell to the open set, or lower the cost of a cell which is
+     * already open.
+     *
+     * @param cell cell being reached
+     * @param from previous cell
+     * @param cost cost of reaching <tt>cell</tt> from the start
+     * @param goal goal cell
+     */
+    void open(int cell, int from, double cost, int goal)
+    {
+        if (stamp[cell] != generation) {
+            stamp[cell] = generation;
+            closed[cell] = false;
+        } else if (closed[cell] || cost >= gCost[cell]) {
+            return;
+        } else {
+            // already open; reposition it
+            gCost[cell] = cost;
+            fCost[cell] = cost + heuristic(cell, goal);
+            parent[cell] = from;
+            siftUp(heapPos[cell]);
+            return;
+        }
+
+        gCost[cell] = cost;
+        fCost[cell] = cost + heuristic(cell, goal);
+        parent[cell] = from;
+        push(cell);
+    }
+
+    /**
+     * Add a goal to the reverse search started by
+     * <tt>startReverse()</tt>.
+     *
+     * @param cell goal cell
+     */
+    void openGoal(int cell)
+    {
+        open(cell, -1, 0.0, reverseTarget);
+    }
+
+    int pop()
+    {
+        final int first = heap[0];
+
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPos[heap[0]] = 0;
+            siftDown(0);
+        }
+
+        return first;
+    }
+
+    private void push(int cell)
+    {
+        heap[heapSize] = cell;
+        heapPos[cell] = heapSize;
+        heapSize++;
+
+        siftUp(heapSize - 1);
+    }
+
+    /**
+     * Continue the plain A* search started by <tt>startSearch()</tt>.
+     *
+     * @param goal goal cell
+     * @param maxExpanded maximum number of cells to expand
+     *
+     * @return <tt>IN_PROGRESS</tt> if the budget ran out first
+     */
+    PathSearch.Status resume(int goal, int maxExpanded)
+    {
+        int budget = maxExpanded;
+        while (heapSize > 0) {
+            if (budget-- <= 0) {
+                return PathSearch.Status.IN_PROGRESS;
+            }
+
+            final int cell = pop();
+            if (cell == goal || (goal == ANY_GOAL && isGoal(cell))) {
+                bestCell = cell;
+                return PathSearch.Status.FOUND;
+            }
+
+            closed[cell] = true;
+            numExpanded++;
+
+            // the estimated cost of the rest of the path
+            final double estimate = fCost[cell] - gCost[cell];
+            if (estimate < bestEstimate) {
+                bestCell = cell;
+                bestEstimate = estimate;
+            }
+
+            final int x = cell % width;
+            final int y = cell / width;
+
+            int mask = map.getNeighborMask(x, y);
+            while (mask != 0) {
+                final int bit = Integer.numberOfTrailingZeros(mask);
+                mask &= mask - 1;
+
+                final int nx = x + Direction.getDx(bit);
+                final int ny = y + Direction.getDy(bit);
+                if (nx < minX || nx > maxX || ny < minY || ny > maxY) {
+                    continue;
+                }
+
+                double cost = map.tryGetTerrain(nx, ny).getCost();
+                if (nx != x && ny != y) {
+                    cost *= DIAGONAL;
+                }
+
+                open(ny * width + nx, cell, gCost[cell] + cost, goal);
+            }
+        }
+
+        return PathSearch.Status.NO_PATH;
+    }
+
+    /**
+     * Run the search.  If <tt>goal</tt> is negative, every cell which
+     * can be reached is visited and <tt>getCost()</tt> reports the cost
+     * of reaching each one.
+     *
+     * @param start starting cell
+     * @param goal goal cell
+     *
+     * @return <tt>true</tt> if the goal was reached
+     */
+    boolean search(int start, int goal)
+    {
+        startSearch(start, goal);
+
+        return resume(goal, Integer.MAX_VALUE) == PathSearch.Status.FOUND;
+    }
+
+    /**
+     * Restrict plain A* searches to a rectangle.
+     *
+     * @param minX leftmost column
+     * @param minY top row
+     * @param maxX rightmost column
+     * @param maxY bottom row
+     */
+    void setBounds(int minX, int minY, int maxX, int maxY)
+    {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Use component labels to reject requests for unreachable goals
+     * without searching.  The labels must be kept up to date with the
+     * map.
+     *
+     * @param components component labels, or <tt>null</tt>
+     */
+    public void setComponents(ConnectedComponents components)
+    {
+        this.components = components;
+    }
+
+    private void siftDown(int i)
+    {
+        final int cell = heap[i];
+        while (true) {
+            final int left = i * 2 + 1;
+            if (left >= heapSize) {
+                break;
+            }
+
+            int child = left;
+            if (left + 1 < heapSize && isBefore(heap[left + 1], heap[left])) {
+                child = left + 1;
+            }
+
+            if (!isBefore(heap[child], cell)) {
+                break;
+            }
+
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+
+    private void siftUp(int i)
+    {
+        final int cell = heap[i];
+        while (i > 0) {
+            final int up = (i - 1) / 2;
+            if (!isBefore(cell, heap[up])) {
+                break;
+            }
+
+            heap[i] = heap[up];
+            heapPos[heap[i]] = i;
+            i = up;
+        }
+
+        heap[i] = cell;
+        heapPos[cell] = i;
+    }
+
+    /**
+     * Reset the search state for a search outward from a set of goals,
+     * which are added with <tt>openGoal()</tt>.  Cells are then expanded
+     * one at a time by <tt>expandReverse()</tt>, and the cost of each
+     * expanded cell is the cost of walking from it to the nearest goal.
+     *
+     * @param target cell the search is heading for, or <tt>-1</tt> to
+     *               work outward evenly in every direction
+     */
+    void startReverse(int target)
+    {
+        nextGeneration();
+        reverseTarget = target;
+    }
+
+    /**
+     * Reset the search state and open the starting cell.
+     *
+     * @param start starting cell
+     * @param goal goal cell
+     */
+    void startSearch(int start, int goal)
+    {
+        nextGeneration();
+
+        stamp[start] = generation;
+        gCost[start] = 0.0;
+        fCost[start] = heuristic(start, goal);
+        parent[start] = -1;
+        closed[start] = false;
+        push(start);
+
+        bestCell = start;
+        bestEstimate = fCost[start];
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("%s[%dx%d,gen#%d]", getClass().getSimpleName(),
+                             width, height, generation);
+    }
+}
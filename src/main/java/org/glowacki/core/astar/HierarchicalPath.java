@@ -0,0 +1,125 @@
+package org.glowacki.core.astar;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.UnimplementedError;
+
+/**
+ * Route found by <tt>HierarchicalPathFinder</tt>.
+ *
+ * The route is stored as the cells where it crosses cluster borders,
+ * and the steps between one crossing and the next are only worked out
+ * when the walker reaches them.  If the map changes so a segment can no
+ * longer be crossed, the path ends early and <tt>isBroken()</tt> returns
+ * <tt>true</tt>.
+ */
+public class HierarchicalPath
+    implements Iterator<IMapPoint>
+{
+    private HierarchicalPathFinder finder;
+    private int[] route;
+    private int nextWaypoint;
+
+    private List<IMapPoint> segment;
+    private int segmentPos;
+
+    private boolean broken;
+
+    /**
+     * Create a path.
+     *
+     * @param finder finder used to work out each segment
+     * @param route cells to pass through, starting with the first cell
+     */
+    HierarchicalPath(HierarchicalPathFinder finder, int[] route)
+    {
+        this.finder = finder;
+        this.route = route;
+
+        nextWaypoint = 1;
+    }
+
+    /**
+     * Get the number of cells the route passes through, including the
+     * start and goal.
+     *
+     * @return number of waypoints
+     */
+    public int getNumWaypoints()
+    {
+        return route.length;
+    }
+
+    /**
+     * Are there more steps?
+     *
+     * @return <tt>true</tt> if there are more steps
+     */
+    public boolean hasNext()
+    {
+        while (!broken && (segment == null || segmentPos >= segment.size()))
+        {
+            if (nextWaypoint >= route.length) {
+                return false;
+            }
+
+            segment = finder.refine(route[nextWaypoint - 1],
+                                    route[nextWaypoint]);
+            segmentPos = 0;
+            nextWaypoint++;
+
+            if (segment == null) {
+                broken = true;
+            }
+        }
+
+        return !broken;
+    }
+
+    /**
+     * Did the path end early because the map changed?
+     *
+     * @return <tt>true</tt> if a segment could not be crossed
+     */
+    public boolean isBroken()
+    {
+        return broken;
+    }
+
+    /**
+     * Get the next step.
+     *
+     * @return next point
+     */
+    public IMapPoint next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return segment.get(segmentPos++);
+    }
+
+    /**
+     * Unimplemented
+     */
+    public void remove()
+    {
+        throw new UnimplementedError();
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("HierarchicalPath[%d of %d waypoints%s]",
+                             nextWaypoint - 1, route.length,
+                             (broken ? ",broken" : ""));
+    }
+}
@@ -0,0 +1,734 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Hierarchical (HPA*) path finder.
+ *
+ * The map is divided into square clusters.  Wherever open cells face each
+ * other across a cluster border, the pair becomes an entrance, and the
+ * cost of travelling between each pair of entrances inside a cluster is
+ * precomputed.  Long routes are found on this small abstract graph and
+ * only turned into steps one cluster at a time, as they are walked.
+ *
+ * The finder listens to the map, and a terrain change only causes the
+ * affected clusters to be rebuilt (just before the next search).
+ * Routes are close to, but not always exactly, the shortest path.
+ */
+public class HierarchicalPathFinder
+    implements IMapListener
+{
+    /** Default cluster width and height */
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    /** Open runs longer than this get an entrance at each end */
+    private static final int MAX_SINGLE_ENTRANCE = 6;
+
+    private static final int[] NO_CELLS = new int[0];
+
+    private IMap map;
+    private int width;
+    private int height;
+
+    private int clusterSize;
+    private int clustersAcross;
+    private int clustersDown;
+
+    private Cluster[] clusters;
+    // entrance cell pairs across the right and lower border of each cluster
+    private int[][] rightBorders;
+    private int[][] lowerBorders;
+    private boolean[] dirtyRight;
+    private boolean[] dirtyLower;
+    private boolean dirty;
+
+    // used to search inside clusters
+    private GridPathFinder local;
+
+    // used to reject requests for unreachable goals
+    private ConnectedComponents components;
+
+    private int numRebuilt;
+
+    /**
+     * Create a hierarchical path finder with the default cluster size.
+     *
+     * @param map map
+     */
+    public HierarchicalPathFinder(IMap map)
+    {
+        this(map, DEFAULT_CLUSTER_SIZE);
+    }
+
+    /**
+     * Create a hierarchical path finder.  The caller is responsible for
+     * adding it to the map's listeners so terrain changes are noticed.
+     *
+     * @param map map
+     * @param clusterSize cluster width and height
+     */
+    public HierarchicalPathFinder(IMap map, int clusterSize)
+    {
+        if (clusterSize < 2) {
+            throw new IllegalArgumentException("Bad cluster size " +
+                                               clusterSize);
+        }
+
+        this.map = map;
+        this.clusterSize = clusterSize;
+
+        width = map.getMaxX() + 1;
+        height = map.getMaxY() + 1;
+
+        clustersAcross = (width + clusterSize - 1) / clusterSize;
+        clustersDown = (height + clusterSize - 1) / clusterSize;
+
+        final int num = clustersAcross * clustersDown;
+        clusters = new Cluster[num];
+        rightBorders = new int[num][];
+        lowerBorders = new int[num][];
+        dirtyRight = new boolean[num];
+        dirtyLower = new boolean[num];
+
+        for (int i = 0; i < num; i++) {
+            final int left = (i % clustersAcross) * clusterSize;
+            final int top = (i / clustersAcross) * clusterSize;
+            clusters[i] =
+                new Cluster(left, top, Math.min(left + clusterSize, width) - 1,
+                            Math.min(top + clusterSize, height) - 1);
+            dirtyRight[i] = true;
+            dirtyLower[i] = true;
+        }
+        dirty = true;
+
+        local = new GridPathFinder(map);
+    }
+
+    /**
+     * Find the entrances along one cluster border.
+     *
+     * @param firstCell first cell on the near side of the border
+     * @param step offset between successive cells along the border
+     * @param across offset from a near cell to the cell facing it
+     * @param len length of the border
+     *
+     * @return entrance cell pairs
+     */
+    private int[] buildBorder(int firstCell, int step, int across, int len)
+    {
+        List<Integer> list = new ArrayList<Integer>();
+
+        int runStart = -1;
+        for (int i = 0; i <= len; i++) {
+            final int cell = firstCell + i * step;
+
+            final boolean open = i < len && isOpen(cell) &&
+                isOpen(cell + across);
+            if (open && runStart < 0) {
+                runStart = i;
+            } else if (!open && runStart >= 0) {
+                final int runEnd = i - 1;
+                if (runEnd - runStart + 1 <= MAX_SINGLE_ENTRANCE) {
+                    final int mid = firstCell + ((runStart + runEnd) / 2) * step;
+                    list.add(mid);
+                    list.add(mid + across);
+                } else {
+                    final int a = firstCell + runStart * step;
+                    final int b = firstCell + runEnd * step;
+                    list.add(a);
+                    list.add(a + across);
+                    list.add(b);
+                    list.add(b + across);
+                }
+                runStart = -1;
+            }
+        }
+
+        if (list.size() == 0) {
+            return NO_CELLS;
+        }
+
+        int[] pairs = new int[list.size()];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = list.get(i);
+        }
+
+        return pairs;
+    }
+
+    /**
+     * Rebuild one cluster's entrances and the costs between them.
+     *
+     * @param idx cluster index
+     */
+    private void buildCluster(int idx)
+    {
+        final int cx = idx % clustersAcross;
+        final int cy = idx / clustersAcross;
+
+        List<Integer> cells = new ArrayList<Integer>();
+        List<Integer> partners = new ArrayList<Integer>();
+
+        addEntrances(cells, partners, rightBorders[idx], 0);
+        addEntrances(cells, partners, lowerBorders[idx], 0);
+        if (cx > 0) {
+            addEntrances(cells, partners, rightBorders[idx - 1], 1);
+        }
+        if (cy > 0) {
+            addEntrances(cells, partners,
+                         lowerBorders[idx - clustersAcross], 1);
+        }
+
+        Cluster cluster = clusters[idx];
+        cluster.setEntrances(cells, partners);
+
+        final int num = cluster.nodes.length;
+        cluster.costs = new double[num * num];
+
+        local.setBounds(cluster.left, cluster.top, cluster.right,
+                        cluster.bottom);
+        for (int i = 0; i < num; i++) {
+            local.search(cluster.nodes[i], -1);
+            for (int j = 0; j < num; j++) {
+                cluster.costs[i * num + j] = local.getCost(cluster.nodes[j]);
+            }
+        }
+        local.clearBounds();
+
+        numRebuilt++;
+    }
+
+    /**
+     * Add one side of a border's entrances to a cluster's lists.
+     *
+     * @param cells entrance cells
+     * @param partners cells facing each entrance
+     * @param pairs entrance cell pairs
+     * @param side 0 for the near side of the border, 1 for the far side
+     */
+    private static void addEntrances(List<Integer> cells,
+                                     List<Integer> partners, int[] pairs,
+                                     int side)
+    {
+        for (int i = 0; i < pairs.length; i += 2) {
+            cells.add(pairs[i + side]);
+            partners.add(pairs[i + 1 - side]);
+        }
+    }
+
+    private int clusterOf(int cell)
+    {
+        return ((cell / width) / clusterSize) * clustersAcross +
+            (cell % width) / clusterSize;
+    }
+
+    /**
+     * Find the best route from <tt>startPt</tt> to <tt>endPt</tt> and
+     * return every step.
+     *
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @return list of points in the path (not including the starting
+     *         point), or <tt>null</tt> if there is no path
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public List<IMapPoint> findBestPath(IMapPoint startPt, IMapPoint endPt)
+        throws PathException
+    {
+        HierarchicalPath path = findPath(startPt, endPt);
+        if (path == null) {
+            return null;
+        }
+
+        List<IMapPoint> list = new ArrayList<IMapPoint>();
+        while (path.hasNext()) {
+            list.add(path.next());
+        }
+
+        if (path.isBroken()) {
+            return null;
+        }
+
+        return list;
+    }
+
+    /**
+     * Find the best route from <tt>startPt</tt> to <tt>endPt</tt>.
+     * Steps are only worked out as the path is walked.
+     *
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @return path, or <tt>null</tt> if there is no path
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public HierarchicalPath findPath(IMapPoint startPt, IMapPoint endPt)
+        throws PathException
+    {
+        if (!map.isInBounds(startPt.getX(), startPt.getY())) {
+            final String msg =
+                String.format("Bad start point [%d,%d]", startPt.getX(),
+                              startPt.getY());
+            throw new PathException(msg);
+        }
+
+        if (!map.isInBounds(endPt.getX(), endPt.getY())) {
+            final String msg =
+                String.format("Bad end point [%d,%d]", endPt.getX(),
+                              endPt.getY());
+            throw new PathException(msg);
+        }
+
+        final int start = startPt.getY() * width + startPt.getX();
+        final int goal = endPt.getY() * width + endPt.getX();
+        if (components != null && !components.isConnected(start, goal)) {
+            return null;
+        }
+
+        rebuild();
+
+        final int startIdx = clusterOf(start);
+        final int goalIdx = clusterOf(goal);
+
+        // stay inside the cluster if possible
+        if (startIdx == goalIdx) {
+            Cluster cluster = clusters[startIdx];
+            local.setBounds(cluster.left, cluster.top, cluster.right,
+                            cluster.bottom);
+            final boolean found = local.search(start, goal);
+            local.clearBounds();
+
+            if (found) {
+                return new HierarchicalPath(this, new int[] { start, goal });
+            }
+        }
+
+        int[] route = findRoute(start, startIdx, goal, goalIdx);
+        if (route == null) {
+            return null;
+        }
+
+        return new HierarchicalPath(this, route);
+    }
+
+    /**
+     * Search the abstract graph.
+     *
+     * @param start starting cell
+     * @param startIdx index of starting cluster
+     * @param goal goal cell
+     * @param goalIdx index of goal cluster
+     *
+     * @return cells to pass through (including start and goal), or
+     *         <tt>null</tt> if there is no route
+     */
+    private int[] findRoute(int start, int startIdx, int goal, int goalIdx)
+    {
+        Cluster startCluster = clusters[startIdx];
+        Cluster goalCluster = clusters[goalIdx];
+
+        // cost from the start to each entrance of its cluster
+        double[] startCosts = searchCluster(startCluster, start);
+        // (approximate) cost from each entrance of the goal cluster
+        double[] goalCosts = searchCluster(goalCluster, goal);
+
+        IntHashMap<RouteNode> nodes = new IntHashMap<RouteNode>();
+        PriorityQueue<RouteNode> opened =
+            new PriorityQueue<RouteNode>(64, new RouteNodeComparator());
+
+        RouteNode startNode = new RouteNode(start, 0.0, 0.0, null);
+        RouteNode goalNode = null;
+
+        for (int i = 0; i < startCluster.nodes.length; i++) {
+            relax(nodes, opened, startNode, startCluster.nodes[i],
+                  startCosts[i], goal);
+        }
+
+        while (!opened.isEmpty()) {
+            RouteNode node = opened.poll();
+            if (node == goalNode) {
+                break;
+            } else if (node.closed || nodes.get(node.cell) != node) {
+                // already expanded, superseded or an old goal candidate
+                continue;
+            }
+
+            node.closed = true;
+
+            final int idx = clusterOf(node.cell);
+            Cluster cluster = clusters[idx];
+            final int pos = cluster.indexOf(node.cell);
+
+            if (idx == goalIdx &&
+                goalCosts[pos] != Double.POSITIVE_INFINITY)
+            {
+                final double cost = node.gCost + goalCosts[pos];
+                if (goalNode == null || cost < goalNode.gCost) {
+                    goalNode = new RouteNode(goal, cost, cost, node);
+                    opened.add(goalNode);
+                }
+            }
+
+            final int num = cluster.nodes.length;
+            for (int j = 0; j < num; j++) {
+                final double cost = cluster.costs[pos * num + j];
+                if (j != pos && cost != Double.POSITIVE_INFINITY) {
+                    relax(nodes, opened, node, cluster.nodes[j],
+                          node.gCost + cost, goal);
+                }
+            }
+
+            for (int partner : cluster.partners[pos]) {
+                relax(nodes, opened, node, partner,
+                      node.gCost + map.tryGetTerrain(partner % width,
+                                                     partner / width)
+                      .getCost(), goal);
+            }
+        }
+
+        if (goalNode == null) {
+            return null;
+        }
+
+        int len = 1;
+        for (RouteNode n = goalNode; n.parent != null; n = n.parent) {
+            len++;
+        }
+
+        int[] route = new int[len];
+        for (RouteNode n = goalNode; n != null; n = n.parent) {
+            route[--len] = n.cell;
+        }
+
+        return route;
+    }
+
+    /**
+     * Get the cluster width and height.
+     *
+     * @return cluster size
+     */
+    public int getClusterSize()
+    {
+        return clusterSize;
+    }
+
+    /**
+     * Get the number of cluster rebuilds since this finder was created.
+     *
+     * @return number of clusters rebuilt
+     */
+    public int getNumRebuilt()
+    {
+        return numRebuilt;
+    }
+
+    private boolean isOpen(int cell)
+    {
+        Terrain t = map.tryGetTerrain(cell % width, cell / width);
+        return t != null && t.isMovable();
+    }
+
+    /**
+     * Mark the cluster holding a cell (and any border the cell is on)
+     * as needing to be rebuilt.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    private void markDirty(int x, int y)
+    {
+        final int cx = x / clusterSize;
+        final int cy = y / clusterSize;
+        final int idx = cy * clustersAcross + cx;
+
+        clusters[idx].dirty = true;
+
+        if (x % clusterSize == clusterSize - 1 && cx < clustersAcross - 1) {
+            dirtyRight[idx] = true;
+        } else if (x % clusterSize == 0 && cx > 0) {
+            dirtyRight[idx - 1] = true;
+        }
+
+        if (y % clusterSize == clusterSize - 1 && cy < clustersDown - 1) {
+            dirtyLower[idx] = true;
+        } else if (y % clusterSize == 0 && cy > 0) {
+            dirtyLower[idx - clustersAcross] = true;
+        }
+
+        dirty = true;
+    }
+
+    /**
+     * An object was added to the map; occupants are ignored.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        // occupants don't affect routes
+    }
+
+    /**
+     * An object was moved; occupants are ignored.
+     *
+     * @param obj object
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        // occupants don't affect routes
+    }
+
+    /**
+     * An object was removed from the map; occupants are ignored.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        // occupants don't affect routes
+    }
+
+    /**
+     * Rebuild everything which has been marked dirty.
+     */
+    private void rebuild()
+    {
+        if (!dirty) {
+            return;
+        }
+
+        for (int idx = 0; idx < clusters.length; idx++) {
+            final int cx = idx % clustersAcross;
+            final int cy = idx / clustersAcross;
+            Cluster cluster = clusters[idx];
+
+            if (dirtyRight[idx]) {
+                if (cx == clustersAcross - 1) {
+                    rightBorders[idx] = NO_CELLS;
+                } else {
+                    rightBorders[idx] =
+                        buildBorder(cluster.top * width + cluster.right,
+                                    width, 1,
+                                    cluster.bottom - cluster.top + 1);
+                    clusters[idx + 1].dirty = true;
+                }
+                cluster.dirty = true;
+                dirtyRight[idx] = false;
+            }
+
+            if (dirtyLower[idx]) {
+                if (cy == clustersDown - 1) {
+                    lowerBorders[idx] = NO_CELLS;
+                } else {
+                    lowerBorders[idx] =
+                        buildBorder(cluster.bottom * width + cluster.left,
+                                    1, width,
+                                    cluster.right - cluster.left + 1);
+                    clusters[idx + clustersAcross].dirty = true;
+                }
+                cluster.dirty = true;
+                dirtyLower[idx] = false;
+            }
+        }
+
+        for (int idx = 0; idx < clusters.length; idx++) {
+            if (clusters[idx].dirty) {
+                buildCluster(idx);
+                clusters[idx].dirty = false;
+            }
+        }
+
+        dirty = false;
+    }
+
+    /**
+     * Work out the steps between two neighboring route cells.
+     *
+     * @param from starting cell
+     * @param to ending cell
+     *
+     * @return steps (not including the starting cell), or <tt>null</tt>
+     *         if the map has changed so there is no longer a way through
+     */
+    List<IMapPoint> refine(int from, int to)
+    {
+        Cluster a = clusters[clusterOf(from)];
+        Cluster b = clusters[clusterOf(to)];
+
+        local.setBounds(Math.min(a.left, b.left), Math.min(a.top, b.top),
+                        Math.max(a.right, b.right),
+                        Math.max(a.bottom, b.bottom));
+        try {
+            return local.findPath(from, to);
+        } finally {
+            local.clearBounds();
+        }
+    }
+
+    private void relax(IntHashMap<RouteNode> nodes,
+                       PriorityQueue<RouteNode> opened, RouteNode from,
+                       int cell, double cost, int goal)
+    {
+        if (cost == Double.POSITIVE_INFINITY) {
+            return;
+        }
+
+        RouteNode prev = nodes.get(cell);
+        if (prev != null && (prev.closed || cost >= prev.gCost)) {
+            return;
+        }
+
+        RouteNode node =
+            new RouteNode(cell, cost, cost + local.heuristic(cell, goal),
+                          from);
+        nodes.put(cell, node);
+        opened.add(node);
+    }
+
+    /**
+     * Find the cost of travelling from a cell to each entrance of its
+     * cluster.
+     *
+     * @param cluster cluster
+     * @param cell starting cell
+     *
+     * @return cost for each entrance
+     */
+    private double[] searchCluster(Cluster cluster, int cell)
+    {
+        local.setBounds(cluster.left, cluster.top, cluster.right,
+                        cluster.bottom);
+        local.search(cell, -1);
+        local.clearBounds();
+
+        double[] costs = new double[cluster.nodes.length];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = local.getCost(cluster.nodes[i]);
+        }
+
+        return costs;
+    }
+
+    /**
+     * Use component labels to reject requests for unreachable goals
+     * without searching.
+     *
+     * @param components component labels, or <tt>null</tt>
+     */
+    public void setComponents(ConnectedComponents components)
+    {
+        this.components = components;
+    }
+
+    /**
+     * Terrain changed, so the surrounding cluster must be rebuilt.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        markDirty(x, y);
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("HierarchicalPathFinder[%dx%d clusters of %d]",
+                             clustersAcross, clustersDown, clusterSize);
+    }
+
+    /**
+     * Entrances inside one cluster.
+     */
+    static class Cluster
+    {
+        int left;
+        int top;
+        int right;
+        int bottom;
+
+        // entrance cells
+        int[] nodes = NO_CELLS;
+        // cells across the border from each entrance
+        int[][] partners = new int[0][];
+        // cost between each pair of entrances (row-major)
+        double[] costs = new double[0];
+
+        boolean dirty = true;
+
+        Cluster(int left, int top, int right, int bottom)
+        {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        int indexOf(int cell)
+        {
+            for (int i = 0; i < nodes.length; i++) {
+                if (nodes[i] == cell) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        void setEntrances(List<Integer> cells, List<Integer> across)
+        {
+            // merge duplicate cells (corners can face two borders)
+            List<Integer> unique = new ArrayList<Integer>();
+            for (Integer cell : cells) {
+                if (!unique.contains(cell)) {
+                    unique.add(cell);
+                }
+            }
+
+            nodes = new int[unique.size()];
+            partners = new int[nodes.length][];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = unique.get(i);
+
+                int num = 0;
+                for (Integer cell : cells) {
+                    if (cell.intValue() == nodes[i]) {
+                        num++;
+                    }
+                }
+
+                partners[i] = new int[num];
+                num = 0;
+                for (int j = 0; j < cells.size(); j++) {
+                    if (cells.get(j).intValue() == nodes[i]) {
+                        partners[i][num++] = across.get(j);
+                    }
+                }
+            }
+        }
+    }
+}
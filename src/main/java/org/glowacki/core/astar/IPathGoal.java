@@ -0,0 +1,17 @@
+package org.glowacki.core.astar;
+
+/**
+ * Decide which cells can end a nearest-goal search.
+ */
+public interface IPathGoal
+{
+    /**
+     * Does reaching this cell end the search?
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return <tt>true</tt> if the cell is a goal
+     */
+    boolean isGoal(int x, int y);
+}
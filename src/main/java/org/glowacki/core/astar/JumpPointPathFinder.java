@@ -0,0 +1,295 @@
+package org.glowacki.core.astar;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMap;
+import org.glowacki.core.Terrain;
+
+/**
+ * Jump Point Search path finder.
+ *
+ * On maps where every movable cell costs the same, only "jump points"
+ * (cells where an obstacle forces a change of direction, plus the goal)
+ * are added to the open set, and runs of open floor between them are
+ * skipped over.  Paths cost the same as those found by A*.
+ *
+ * If the map holds movable terrain with differing costs (such as water)
+ * the search falls back to plain A*.  The map is only checked before the
+ * first search; after that, the owner must pass on terrain changes
+ * through <tt>terrainChanged()</tt>.  Once a differently-priced cell
+ * appears, the finder stays on plain A*.
+ */
+public class JumpPointPathFinder
+    extends GridPathFinder
+{
+    /** Bit for each (dy + 1) * 3 + (dx + 1) offset */
+    private static final int[] OFFSET_BIT = new int[9];
+
+    static {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                OFFSET_BIT[(dy + 1) * 3 + dx + 1] =
+                    Direction.fromOffset(dx, dy).getBit();
+            }
+        }
+    }
+
+    /** Uniform cost before the map has been checked */
+    private static final double UNCHECKED = -2.0;
+    /** Uniform cost if movable terrain costs differ */
+    private static final double MIXED = -1.0;
+
+    private double uniformCost = UNCHECKED;
+    private boolean usedJumps;
+
+    /**
+     * Create a path finder for the specified map
+     *
+     * @param map map
+     */
+    public JumpPointPathFinder(IMap map)
+    {
+        super(map);
+    }
+
+    /**
+     * Find the uniform cost of movable terrain on this map.
+     *
+     * @return terrain cost, or <tt>MIXED</tt> if movable terrain costs
+     *         differ
+     */
+    private double findUniformCost()
+    {
+        double cost = MIXED;
+        for (Terrain t : Terrain.values()) {
+            if (!t.isMovable() || (cost >= 0.0 && t.getCost() == cost)) {
+                continue;
+            }
+
+            if (map.find(t) != null) {
+                if (cost >= 0.0) {
+                    return MIXED;
+                }
+
+                cost = t.getCost();
+            }
+        }
+
+        return cost;
+    }
+
+    /**
+     * Get the uniform cost of movable terrain on this map.
+     *
+     * @return terrain cost, or <tt>MIXED</tt> if movable terrain costs
+     *         differ
+     */
+    private double getUniformCost()
+    {
+        if (uniformCost == UNCHECKED) {
+            uniformCost = findUniformCost();
+        }
+
+        return uniformCost;
+    }
+
+    /**
+     * Is there a movable cell at the specified offset?
+     *
+     * @param mask neighbor mask
+     * @param dx X offset
+     * @param dy Y offset
+     *
+     * @return <tt>true</tt> if the neighbor can be entered
+     */
+    private static boolean isOpen(int mask, int dx, int dy)
+    {
+        return (mask & OFFSET_BIT[(dy + 1) * 3 + dx + 1]) != 0;
+    }
+
+    /**
+     * Search in a straight line for the next jump point.
+     *
+     * @param x starting X coordinate
+     * @param y starting Y coordinate
+     * @param dx X direction
+     * @param dy Y direction
+     * @param goal goal cell
+     *
+     * @return jump point cell, or -1 if the search ran into an obstacle
+     */
+    private int jump(int x, int y, int dx, int dy, int goal)
+    {
+        int mask = map.getNeighborMask(x, y);
+        while (isOpen(mask, dx, dy)) {
+            x += dx;
+            y += dy;
+
+            final int cell = y * width + x;
+            if (cell == goal) {
+                return cell;
+            }
+
+            mask = map.getNeighborMask(x, y);
+            if (dx != 0 && dy != 0) {
+                if ((isOpen(mask, -dx, dy) && !isOpen(mask, -dx, 0)) ||
+                    (isOpen(mask, dx, -dy) && !isOpen(mask, 0, -dy)))
+                {
+                    return cell;
+                }
+
+                if (jump(x, y, dx, 0, goal) >= 0 ||
+                    jump(x, y, 0, dy, goal) >= 0)
+                {
+                    return cell;
+                }
+            } else if (dx != 0) {
+                if ((isOpen(mask, dx, 1) && !isOpen(mask, 0, 1)) ||
+                    (isOpen(mask, dx, -1) && !isOpen(mask, 0, -1)))
+                {
+                    return cell;
+                }
+            } else {
+                if ((isOpen(mask, 1, dy) && !isOpen(mask, 1, 0)) ||
+                    (isOpen(mask, -1, dy) && !isOpen(mask, -1, 0)))
+                {
+                    return cell;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the directions worth searching from a cell, given the direction
+     * it was reached from.
+     *
+     * @param mask neighbor mask of the cell
+     * @param dx X direction of travel (0 for the starting cell)
+     * @param dy Y direction of travel (0 for the starting cell)
+     *
+     * @return mask of directions to search
+     */
+    private static int prune(int mask, int dx, int dy)
+    {
+        if (dx == 0 && dy == 0) {
+            return mask;
+        }
+
+        int dirs = 0;
+        if (dx != 0 && dy != 0) {
+            dirs |= OFFSET_BIT[4 + dx] | OFFSET_BIT[4 + dy * 3] |
+                OFFSET_BIT[(dy + 1) * 3 + dx + 1];
+            if (!isOpen(mask, -dx, 0)) {
+                dirs |= OFFSET_BIT[(dy + 1) * 3 - dx + 1];
+            }
+            if (!isOpen(mask, 0, -dy)) {
+                dirs |= OFFSET_BIT[(-dy + 1) * 3 + dx + 1];
+            }
+        } else if (dx != 0) {
+            dirs |= OFFSET_BIT[4 + dx];
+            if (!isOpen(mask, 0, 1)) {
+                dirs |= OFFSET_BIT[6 + dx + 1];
+            }
+            if (!isOpen(mask, 0, -1)) {
+                dirs |= OFFSET_BIT[dx + 1];
+            }
+        } else {
+            dirs |= OFFSET_BIT[4 + dy * 3];
+            if (!isOpen(mask, 1, 0)) {
+                dirs |= OFFSET_BIT[(dy + 1) * 3 + 2];
+            }
+            if (!isOpen(mask, -1, 0)) {
+                dirs |= OFFSET_BIT[(dy + 1) * 3];
+            }
+        }
+
+        return dirs & mask;
+    }
+
+    /**
+     * Run the search, jumping over open space if all movable terrain
+     * costs the same.
+     *
+     * @param start starting cell
+     * @param goal goal cell
+     *
+     * @return <tt>true</tt> if the goal was reached
+     */
+    boolean search(int start, int goal)
+    {
+        final double cost = getUniformCost();
+        if (cost < 0.0) {
+            usedJumps = false;
+            return super.search(start, goal);
+        }
+
+        usedJumps = true;
+        startSearch(start, goal);
+
+        while (heapSize > 0) {
+            final int cell = pop();
+            if (cell == goal) {
+                return true;
+            }
+
+            closed[cell] = true;
+            numExpanded++;
+
+            final int x = cell % width;
+            final int y = cell / width;
+
+            int dx = 0;
+            int dy = 0;
+            if (parent[cell] >= 0) {
+                dx = Integer.signum(x - parent[cell] % width);
+                dy = Integer.signum(y - parent[cell] / width);
+            }
+
+            int dirs = prune(map.getNeighborMask(x, y), dx, dy);
+            while (dirs != 0) {
+                final int bit = Integer.numberOfTrailingZeros(dirs);
+                dirs &= dirs - 1;
+
+                final int next = jump(x, y, Direction.getDx(bit),
+                                      Direction.getDy(bit), goal);
+                if (next >= 0) {
+                    open(next, cell, gCost[cell] + cost * distance(cell, next),
+                         goal);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Note a terrain change.  A movable cell whose cost differs from
+     * the rest of the map switches the finder to plain A*.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        if (uniformCost < 0.0) {
+            // not checked yet, or already mixed
+            return;
+        }
+
+        Terrain t = map.tryGetTerrain(x, y);
+        if (t != null && t.isMovable() && t.getCost() != uniformCost) {
+            uniformCost = MIXED;
+        }
+    }
+
+    /**
+     * Did the most recent search use jump points?
+     *
+     * @return <tt>false</tt> if the search fell back to A*
+     */
+    public boolean usedJumpPoints()
+    {
+        return usedJumps;
+    }
+}
@@ -6,158 +6,11 @@ import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
+import org.glowacki.core.Direction;
 import org.glowacki.core.IMapPoint;
 import org.glowacki.core.IMap;
 import org.glowacki.core.MapEntry;
 
-/**
- * Node base class
- */
-class BaseNode
-    implements Comparable<INode>, INode
-{
-    private int x;
-    private int y;
-    private boolean startNode;
-    private boolean endNode;
-
-    private INode parent;
-
-     // cost of getting from parent node to this node
-    private double parentCost = Double.MIN_VALUE;
-
-    // last node used to compute passthrough cost
-    private INode lastNode;
-    // cost of getting from the start to the goal through this node
-    private double passThroughCost = Double.MIN_VALUE;
-
-    BaseNode(int x, int y)
-    {
-        this.x = x;
-        this.y = y;
-    }
-
-    public void clear()
-    {
-        startNode = false;
-        endNode = false;
-
-        parent = null;
-        parentCost = Double.MIN_VALUE;
-
-        lastNode = null;
-        passThroughCost = Double.MIN_VALUE;
-    }
-
-    public int compareTo(INode node)
-    {
-        if (node == null) {
-            return 1;
-        }
-
-        int val = x - node.getX();
-        if (val == 0) {
-            val = y - node.getY();
-        }
-
-        return val;
-    }
-
-    public boolean equals(INode node)
-    {
-        return compareTo(node) == 0;
-    }
-
-    public INode getParent()
-    {
-        return parent;
-    }
-
-    public double getParentCost()
-    {
-        if (isStart()) {
-            return 0.0;
-        }
-
-        if (Double.compare(parentCost, Double.MIN_VALUE) == 0) {
-            parentCost = 1.0 + .5 * (parent.getParentCost() - 1.0);
-        }
-
-        return parentCost;
-    }
-
-    public double getPassThrough(INode goal)
-    {
-        if (isStart()) {
-            return 0.0;
-        }
-
-        if (Double.compare(passThroughCost, Double.MIN_VALUE) == 0 ||
-            lastNode == null || lastNode.getX() != goal.getX() ||
-            lastNode.getY() != goal.getY())
-        {
-            double localCost = 1.0 * (Math.abs(x - goal.getX()) +
-                                      Math.abs(y - goal.getY()));
-            passThroughCost = localCost + getParentCost();
-            lastNode = goal;
-        }
-
-        return passThroughCost;
-    }
-
-    public int getX()
-    {
-        return x;
-    }
-
-    public int getY()
-    {
-        return y;
-    }
-
-    public int hashCode()
-    {
-        return ((x & 0xffff) * 0x1000) + (y & 0xffff);
-    }
-
-    public boolean isEnd()
-    {
-        return endNode;
-    }
-
-    public boolean isStart()
-    {
-        return startNode;
-    }
-
-    public void setEnd()
-    {
-        endNode = true;
-    }
-
-    public void setParent(INode parent)
-    {
-        this.parent = parent;
-        parentCost = Double.MIN_VALUE;
-
-        lastNode = null;
-        passThroughCost = Double.MIN_VALUE;
-    }
-
-    public void setStart()
-    {
-        startNode = true;
-    }
-
-    public String toString()
-    {
-        final String sStr = (startNode ? "*start" : "");
-        final String eStr = (endNode ? "*end" : "");
-
-        return String.format("[%d,%d]%s%s", x, y, sStr, eStr);
-    }
-}
-
 /**
  * A map node
  */
@@ -168,7 +21,7 @@ class MapNode
 
     MapNode(MapEntry entry)
     {
-        super(entry.getX(), entry.getY());
+        super(entry.getX(), entry.getY(), entry.getTerrain().getCost());
 
         this.entry = entry;
     }
@@ -185,8 +38,12 @@ class MapNode
 public class MapPathFinder
     extends PathFinder
 {
+    private IMap map;
     private MapNode[][] nodes;
 
+    // used to reject requests for unreachable goals
+    private ConnectedComponents components;
+
     /**
      * Create a path finder for the specified map
      *
@@ -194,6 +51,8 @@ public class MapPathFinder
      */
     public MapPathFinder(IMap map)
     {
+        this.map = map;
+
         nodes = new MapNode[map.getMaxX() + 1][map.getMaxY() + 1];
 
         for (MapEntry entry : map.getEntries()) {
@@ -210,6 +69,11 @@ public class MapPathFinder
      */
     public INode createTempNode(INode node)
     {
+        if (node instanceof BaseNode) {
+            return new BaseNode(node.getX(), node.getY(),
+                                ((BaseNode) node).getTerrainCost());
+        }
+
         return new BaseNode(node.getX(), node.getY());
     }
 
@@ -244,6 +108,13 @@ public class MapPathFinder
             throw new PathException(msg);
         }
 
+        if (components != null &&
+            !components.isConnected(startPt.getX(), startPt.getY(),
+                                    endPt.getX(), endPt.getY()))
+        {
+            return null;
+        }
+
         MapNode start = nodes[startPt.getX()][startPt.getY()];
         MapNode end = nodes[endPt.getX()][endPt.getY()];
 
@@ -295,27 +166,38 @@ public class MapPathFinder
         }
 
         Set<INode> sorted = new TreeSet<INode>();
-        for (int x = node.getX() - 1; x <= node.getX() + 1; x++) {
-            for (int y = node.getY() - 1; y <= node.getY() + 1; y++) {
-                if (x < 0 || x >= nodes.length ||
-                    y < 0 || y >= nodes[x].length)
-                {
-                    continue;
-                }
 
-                if (x == node.getX() && y == node.getY()) {
-                    continue;
-                }
+        int mask = map.getNeighborMask(node.getX(), node.getY());
+        while (mask != 0) {
+            final int bit = Integer.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
 
-                MapEntry entry = nodes[x][y].getEntry();
-                if (!entry.getTerrain().isMovable()) {
-                    continue;
-                }
-
-                sorted.add(nodes[x][y]);
-            }
+            sorted.add(nodes[node.getX() + Direction.getDx(bit)]
+                       [node.getY() + Direction.getDy(bit)]);
         }
 
         return sorted;
     }
+
+    /**
+     * Map nodes use real terrain costs and an octile estimate which
+     * never overestimates, so expanded nodes never need to be reopened.
+     *
+     * @return <tt>true</tt>
+     */
+    public boolean isConsistent()
+    {
+        return true;
+    }
+
+    /**
+     * Use component labels to reject requests for unreachable goals
+     * without searching.
+     *
+     * @param components component labels, or <tt>null</tt>
+     */
+    public void setComponents(ConnectedComponents components)
+    {
+        this.components = components;
+    }
 }
@@ -0,0 +1,382 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Least-recently-used cache of the paths found on a single map.
+ *
+ * Each cached path is indexed by the cells it covers, so a terrain
+ * change on a path only throws away the paths which are affected.
+ * Terrain which becomes passable may open a shortcut, so it also throws
+ * away any path which could possibly be improved by going through the
+ * changed cell.
+ *
+ * Occupants are ignored, just as they are by the searches which fill
+ * the cache; a character following a cached path should use a
+ * <tt>ReplanningPath</tt> to step around anyone in the way.
+ *
+ * A request which starts on a cached path and shares its goal is
+ * answered with the rest of that path, without searching.  Paths are
+ * kept as <tt>DirectionPath</tt>s, so each cached step costs a byte.
+ */
+public class PathCache
+    implements IMapListener
+{
+    /** Default maximum number of cached paths */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private IMap map;
+    private int width;
+    private int capacity;
+
+    private JumpPointPathFinder finder;
+
+    // least recently used entries come first
+    private LinkedHashMap<Long, Entry> entries =
+        new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+    // entries which cover each cell
+    private IntHashMap<List<Entry>> byCell = new IntHashMap<List<Entry>>();
+
+    private int numHits;
+    private int numSuffixHits;
+    private int numMisses;
+    private int numInvalidated;
+
+    /**
+     * Create a path cache with the default capacity.
+     *
+     * @param map map
+     */
+    public PathCache(IMap map)
+    {
+        this(map, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a path cache.
+     *
+     * @param map map
+     * @param capacity maximum number of cached paths
+     */
+    public PathCache(IMap map, int capacity)
+    {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Bad capacity " + capacity);
+        }
+
+        this.map = map;
+        this.capacity = capacity;
+
+        width = map.getMaxX() + 1;
+
+        finder = new JumpPointPathFinder(map);
+    }
+
+    private void add(int start, int goal, DirectionPath path, double cost)
+    {
+        Entry entry = new Entry(start, goal, path, cost, width);
+        entries.put(key(start, goal), entry);
+
+        for (int i = 0; i < entry.cells.length; i++) {
+            List<Entry> list = byCell.get(entry.cells[i]);
+            if (list == null) {
+                list = new ArrayList<Entry>(2);
+                byCell.put(entry.cells[i], list);
+            }
+            list.add(entry);
+        }
+
+        if (entries.size() > capacity) {
+            Iterator<Entry> iter = entries.values().iterator();
+            Entry eldest = iter.next();
+            iter.remove();
+            unindex(eldest);
+        }
+    }
+
+    /**
+     * Remove all cached paths.  The hit and miss counts are not reset.
+     */
+    public void clear()
+    {
+        entries.clear();
+        byCell.clear();
+    }
+
+    /**
+     * Find the best path from <tt>startPt</tt> to <tt>endPt</tt>, using a
+     * cached path if possible.
+     *
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @return best path, or <tt>null</tt> if there is no path
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public DirectionPath findPath(IMapPoint startPt, IMapPoint endPt)
+        throws PathException
+    {
+        if (!map.isInBounds(startPt.getX(), startPt.getY()) ||
+            !map.isInBounds(endPt.getX(), endPt.getY()))
+        {
+            // let the path finder complain
+            return finder.findDirectionPath(startPt, endPt);
+        }
+
+        final int start = startPt.getY() * width + startPt.getX();
+        final int goal = endPt.getY() * width + endPt.getX();
+
+        Entry entry = entries.get(key(start, goal));
+        if (entry != null) {
+            numHits++;
+            return entry.path;
+        }
+
+        // look for a cached path to the same goal which passes through
+        // the starting point
+        List<Entry> list = byCell.get(start);
+        if (list != null) {
+            for (Entry e : list) {
+                if (e.goal == goal) {
+                    // move it to the end of the LRU list
+                    entries.get(key(e.start, e.goal));
+
+                    numHits++;
+                    numSuffixHits++;
+                    return e.path.suffix(e.indexOf(start));
+                }
+            }
+        }
+
+        numMisses++;
+
+        DirectionPath path = finder.findDirectionPath(start, goal);
+        if (path == null) {
+            return null;
+        }
+
+        add(start, goal, path, finder.getCost(goal));
+        return path;
+    }
+
+    /**
+     * Get the number of requests answered from the cache.
+     *
+     * @return number of hits
+     */
+    public int getNumHits()
+    {
+        return numHits;
+    }
+
+    /**
+     * Get the number of cached paths thrown away because of map changes.
+     *
+     * @return number of invalidated paths
+     */
+    public int getNumInvalidated()
+    {
+        return numInvalidated;
+    }
+
+    /**
+     * Get the number of requests which needed a search.
+     *
+     * @return number of misses
+     */
+    public int getNumMisses()
+    {
+        return numMisses;
+    }
+
+    /**
+     * Get the number of hits which started partway along a cached path.
+     *
+     * @return number of suffix hits
+     */
+    public int getNumSuffixHits()
+    {
+        return numSuffixHits;
+    }
+
+    private void invalidate(Entry entry)
+    {
+        entries.remove(key(entry.start, entry.goal));
+        unindex(entry);
+        numInvalidated++;
+    }
+
+    private static long key(int start, int goal)
+    {
+        return ((long) start << 32) | (goal & 0xffffffffL);
+    }
+
+    /**
+     * Ignored, since occupants don't affect the cached paths.
+     *
+     * @param obj object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        // do nothing
+    }
+
+    /**
+     * Ignored, since occupants don't affect the cached paths.
+     *
+     * @param obj object (already at its new position)
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        // do nothing
+    }
+
+    /**
+     * Ignored, since occupants don't affect the cached paths.
+     *
+     * @param obj object
+     * @param x X coordinate of the position it was removed from
+     * @param y Y coordinate of the position it was removed from
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        // do nothing
+    }
+
+    /**
+     * Use component labels to answer requests for unreachable goals
+     * without searching.
+     *
+     * @param components component labels, or <tt>null</tt>
+     */
+    public void setComponents(ConnectedComponents components)
+    {
+        finder.setComponents(components);
+    }
+
+    /**
+     * Get the number of cached paths.
+     *
+     * @return number of paths
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * The terrain at the specified position changed.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        finder.terrainChanged(x, y);
+
+        final int cell = y * width + x;
+
+        List<Entry> list = byCell.get(cell);
+        if (list != null) {
+            for (Entry entry : new ArrayList<Entry>(list)) {
+                invalidate(entry);
+            }
+        }
+
+        Terrain t = map.tryGetTerrain(x, y);
+        if (t == null || !t.isMovable() || entries.size() == 0) {
+            return;
+        }
+
+        // the cell may be a new shortcut; drop any path which might be
+        // longer than the shortest possible path through the cell
+        for (Entry entry : new ArrayList<Entry>(entries.values())) {
+            final double bound = GridPathFinder.MIN_COST *
+                (finder.distance(entry.start, cell) +
+                 finder.distance(cell, entry.goal));
+            if (bound < entry.cost) {
+                invalidate(entry);
+            }
+        }
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("PathCache[%d/%d paths,%d hits,%d misses]",
+                             entries.size(), capacity, numHits, numMisses);
+    }
+
+    private void unindex(Entry entry)
+    {
+        for (int i = 0; i < entry.cells.length; i++) {
+            List<Entry> list = byCell.get(entry.cells[i]);
+            if (list != null) {
+                list.remove(entry);
+                if (list.size() == 0) {
+                    byCell.remove(entry.cells[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A cached path.
+     */
+    static class Entry
+    {
+        int start;
+        int goal;
+        // starting cell followed by the cells along the path
+        int[] cells;
+        DirectionPath path;
+        double cost;
+
+        Entry(int start, int goal, DirectionPath path, double cost,
+              int width)
+        {
+            this.start = start;
+            this.goal = goal;
+            this.path = path;
+            this.cost = cost;
+
+            cells = new int[path.size() + 1];
+            cells[0] = start;
+
+            int i = 1;
+            for (IMapPoint pt : path) {
+                cells[i++] = pt.getY() * width + pt.getX();
+            }
+        }
+
+        int indexOf(int cell)
+        {
+            for (int i = 0; i < cells.length; i++) {
+                if (cells[i] == cell) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+    }
+}
@@ -4,14 +4,179 @@ package org.glowacki.core.astar;
  * Adapted from http://memoization.com/2008/11/30/a-star-algorithm-in-java/
  */
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * Indexed binary heap of open nodes, ordered by pass-through cost.
+ *
+ * Nodes with equal costs come out most-recently-updated first, which
+ * matches the order the original list-based search used.
+ */
+class NodeHeap
+{
+    private INode[] nodes = new INode[64];
+    private double[] costs = new double[64];
+    private long[] stamps = new long[64];
+    private int size;
+    private long nextStamp;
+
+    private HashMap<INode, Integer> index = new HashMap<INode, Integer>();
+
+    boolean contains(INode node)
+    {
+        return index.containsKey(node);
+    }
+
+    private boolean isBefore(int a, int b)
+    {
+        if (costs[a] != costs[b]) {
+            return costs[a] < costs[b];
+        }
+
+        return stamps[a] > stamps[b];
+    }
+
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Add a node, or change the cost of a node which is already queued.
+     *
+     * @param node node
+     * @param cost pass-through cost
+     */
+    void put(INode node, double cost)
+    {
+        Integer pos = index.get(node);
+
+        int i;
+        if (pos != null) {
+            i = pos.intValue();
+        } else {
+            if (size == nodes.length) {
+                final int len = size * 2;
+
+                INode[] tmpNodes = new INode[len];
+                System.arraycopy(nodes, 0, tmpNodes, 0, size);
+                nodes = tmpNodes;
+
+                double[] tmpCosts = new double[len];
+                System.arraycopy(costs, 0, tmpCosts, 0, size);
+                costs = tmpCosts;
+
+                long[] tmpStamps = new long[len];
+                System.arraycopy(stamps, 0, tmpStamps, 0, size);
+                stamps = tmpStamps;
+            }
+
+            i = size++;
+            nodes[i] = node;
+        }
+
+        costs[i] = cost;
+        stamps[i] = nextStamp++;
+
+        siftDown(siftUp(i));
+    }
+
+    INode removeFirst()
+    {
+        INode first = nodes[0];
+        index.remove(first);
+
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+        nodes[size] = null;
+
+        return first;
+    }
+
+    private void move(int from, int to)
+    {
+        nodes[to] = nodes[from];
+        costs[to] = costs[from];
+        stamps[to] = stamps[from];
+        index.put(nodes[to], to);
+    }
+
+    private int siftDown(int i)
+    {
+        while (true) {
+            final int left = i * 2 + 1;
+            if (left >= size) {
+                break;
+            }
+
+            int child = left;
+            if (left + 1 < size && isBefore(left + 1, left)) {
+                child = left + 1;
+            }
+
+            if (!isBefore(child, i)) {
+                break;
+            }
+
+            swap(i, child);
+            i = child;
+        }
+
+        index.put(nodes[i], i);
+        return i;
+    }
+
+    private int siftUp(int i)
+    {
+        while (i > 0) {
+            final int parent = (i - 1) / 2;
+            if (!isBefore(i, parent)) {
+                break;
+            }
+
+            swap(i, parent);
+            i = parent;
+        }
+
+        index.put(nodes[i], i);
+        return i;
+    }
+
+    private void swap(int a, int b)
+    {
+        INode tmpNode = nodes[a];
+        nodes[a] = nodes[b];
+        nodes[b] = tmpNode;
+
+        double tmpCost = costs[a];
+        costs[a] = costs[b];
+        costs[b] = tmpCost;
+
+        long tmpStamp = stamps[a];
+        stamps[a] = stamps[b];
+        stamps[b] = tmpStamp;
+
+        index.put(nodes[a], a);
+    }
+}
+
 /**
  * Find a path.
+ *
+ * Open nodes are kept in an indexed binary heap and closed nodes in a
+ * hash set, so each expansion costs O(log n) rather than a scan of every
+ * open and closed node.
  */
 public abstract class PathFinder
 {
+    private int numExpanded;
+
     /**
      * Create a temporary copy of a node
      *
@@ -21,21 +186,6 @@ public abstract class PathFinder
      */
     public abstract INode createTempNode(INode node);
 
-    private static INode findBestPassThrough(List<INode> list, INode goal)
-        throws PathException
-    {
-        INode best = null;
-        for (INode node : list) {
-            if (best == null ||
-                node.getPassThrough(goal) < best.getPassThrough(goal))
-            {
-                best = node;
-            }
-        }
-
-        return best;
-    }
-
     /**
      * Find the best path from <tt>start</tt> to <tt>goal</tt>.
      *
@@ -49,22 +199,26 @@ public abstract class PathFinder
     public List<INode> findBestPath(INode start, INode goal)
         throws PathException
     {
-        List<INode> opened = new ArrayList<INode>();
-        List<INode> closed = new ArrayList<INode>();
+        numExpanded = 0;
+
+        final boolean consistent = isConsistent();
+
+        NodeHeap opened = new NodeHeap();
+        Set<INode> closed = new HashSet<INode>();
 
         for (INode adjacency : getAdjacencies(start)) {
             adjacency.setParent(start);
             if (!adjacency.isStart()) {
-                opened.add(adjacency);
+                opened.put(adjacency, adjacency.getPassThrough(goal));
             }
         }
         closed.add(start);
 
         boolean found = false;
-        while (!found && opened.size() > 0) {
-            INode best = findBestPassThrough(opened, goal);
-            opened.remove(best);
+        while (!opened.isEmpty()) {
+            INode best = opened.removeFirst();
             closed.add(best);
+            numExpanded++;
             if (best.isEnd()) {
                 found = true;
                 break;
@@ -72,17 +226,12 @@ public abstract class PathFinder
 
             Set<INode> neighbors = getAdjacencies(best);
             for (INode neighbor : neighbors) {
-                if (opened.contains(neighbor)) {
-                    INode tmpNode = createTempNode(neighbor);
-                    tmpNode.setParent(best);
-                    if (tmpNode.getPassThrough(goal) >=
-                        neighbor.getPassThrough(goal))
-                    {
-                        continue;
-                    }
+                final boolean isClosed = closed.contains(neighbor);
+                if (isClosed && consistent) {
+                    continue;
                 }
 
-                if (closed.contains(neighbor)) {
+                if (isClosed || opened.contains(neighbor)) {
                     INode tmpNode = createTempNode(neighbor);
                     tmpNode.setParent(best);
                     if (tmpNode.getPassThrough(goal) >=
@@ -94,9 +243,8 @@ public abstract class PathFinder
 
                 neighbor.setParent(best);
 
-                opened.remove(neighbor);
                 closed.remove(neighbor);
-                opened.add(0, neighbor);
+                opened.put(neighbor, neighbor.getPassThrough(goal));
             }
         }
 
@@ -125,4 +273,26 @@ public abstract class PathFinder
      */
     public abstract Set<INode> getAdjacencies(INode node)
         throws PathException;
+
+    /**
+     * Get the number of nodes expanded by the most recent search.
+     *
+     * @return number of expanded nodes
+     */
+    public int getNumExpanded()
+    {
+        return numExpanded;
+    }
+
+    /**
+     * Is the pass-through estimate consistent, so that a node's cost can
+     * never improve once it has been expanded?  If so, expanded nodes are
+     * not revisited.
+     *
+     * @return <tt>false</tt> unless a subclass knows better
+     */
+    public boolean isConsistent()
+    {
+        return false;
+    }
 }
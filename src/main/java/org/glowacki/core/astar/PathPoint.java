@@ -0,0 +1,34 @@
+package org.glowacki.core.astar;
+
+import org.glowacki.core.IMapPoint;
+
+/**
+ * Point along a direction path
+ */
+class PathPoint
+    implements IMapPoint
+{
+    private int x;
+    private int y;
+
+    PathPoint(int x, int y)
+    {
+        this.x = x;
+        this.y = y;
+    }
+
+    public int getX()
+    {
+        return x;
+    }
+
+    public int getY()
+    {
+        return y;
+    }
+
+    public String toString()
+    {
+        return String.format("[%d,%d]", x, y);
+    }
+}
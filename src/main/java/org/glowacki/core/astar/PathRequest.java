@@ -0,0 +1,55 @@
+package org.glowacki.core.astar;
+
+import org.glowacki.core.IMapPoint;
+
+/**
+ * A single query in a batch of path requests.
+ */
+public class PathRequest
+{
+    private IMapPoint start;
+    private IMapPoint goal;
+
+    /**
+     * Create a path request.
+     *
+     * @param start starting point
+     * @param goal ending point
+     */
+    public PathRequest(IMapPoint start, IMapPoint goal)
+    {
+        this.start = start;
+        this.goal = goal;
+    }
+
+    /**
+     * Get the ending point.
+     *
+     * @return goal
+     */
+    public IMapPoint getGoal()
+    {
+        return goal;
+    }
+
+    /**
+     * Get the starting point.
+     *
+     * @return start
+     */
+    public IMapPoint getStart()
+    {
+        return start;
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("PathRequest[%d,%d->%d,%d]", start.getX(),
+                             start.getY(), goal.getX(), goal.getY());
+    }
+}
@@ -0,0 +1,243 @@
+package org.glowacki.core.astar;
+
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+
+/**
+ * A* search which can be run a little at a time, so a long search can
+ * be spread over several turns without stalling any one of them.
+ *
+ * Each call to <tt>expand()</tt> or <tt>run()</tt> picks up where the
+ * previous one stopped.  Until the search finishes,
+ * <tt>getPartialPath()</tt> returns the path to the cell which looks
+ * closest to the goal, which can be followed while the search goes on.
+ *
+ * A search spread over several turns can outlive the terrain it was
+ * working with, so it should be registered as a listener of its map.
+ * Any terrain change then starts the search over, since costs worked
+ * out before the change may no longer hold.
+ */
+public class PathSearch
+    implements IMapListener
+{
+    /** State of a search */
+    public enum Status { IN_PROGRESS, FOUND, NO_PATH };
+
+    /** Number of cells expanded between clock checks in <tt>run()</tt> */
+    private static final int CLOCK_INTERVAL = 64;
+
+    private GridPathFinder finder;
+    private int start;
+    private int goal;
+
+    private Status status;
+    private DirectionPath path;
+
+    /**
+     * Start a search with its own path finder.
+     *
+     * @param map map
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public PathSearch(IMap map, IMapPoint startPt, IMapPoint endPt)
+        throws PathException
+    {
+        this(new GridPathFinder(map), startPt, endPt);
+    }
+
+    /**
+     * Start a search which reuses an existing path finder's scratch
+     * space.  The finder must not be used for anything else until this
+     * search is finished or abandoned.
+     *
+     * @param finder path finder
+     * @param startPt starting point
+     * @param endPt ending point
+     *
+     * @throws PathException if the start or end point is bad
+     */
+    public PathSearch(GridPathFinder finder, IMapPoint startPt,
+                      IMapPoint endPt)
+        throws PathException
+    {
+        this.finder = finder;
+
+        start = finder.getCell(startPt, "start");
+        goal = finder.getCell(endPt, "end");
+
+        begin();
+    }
+
+    private void begin()
+    {
+        path = null;
+
+        if (finder.rejectUnreachable(start, goal)) {
+            status = Status.NO_PATH;
+        } else {
+            finder.startSearch(start, goal);
+            status = Status.IN_PROGRESS;
+        }
+    }
+
+    /**
+     * Continue the search for at most <tt>maxExpanded</tt> cells.
+     *
+     * @param maxExpanded maximum number of cells to expand
+     *
+     * @return search status
+     */
+    public Status expand(int maxExpanded)
+    {
+        if (status == Status.IN_PROGRESS) {
+            status = finder.resume(goal, maxExpanded);
+            if (status == Status.FOUND) {
+                path = finder.getDirectionPath(start, goal);
+            }
+        }
+
+        return status;
+    }
+
+    /**
+     * Get the number of cells expanded so far.
+     *
+     * @return number of expanded cells
+     */
+    public int getNumExpanded()
+    {
+        return finder.getNumExpanded();
+    }
+
+    /**
+     * Get the best path found so far.  Before the search is finished
+     * (or if there is no path) this leads to the expanded cell with the
+     * lowest estimated cost to the goal.
+     *
+     * @return complete or partial path
+     */
+    public DirectionPath getPartialPath()
+    {
+        if (path != null) {
+            return path;
+        }
+
+        return finder.getDirectionPath(start, finder.getBestCell());
+    }
+
+    /**
+     * Get the completed path.
+     *
+     * @return best path, or <tt>null</tt> if the search is not finished
+     *         or there is no path
+     */
+    public DirectionPath getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Get the search status.
+     *
+     * @return search status
+     */
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * Is the search finished?
+     *
+     * @return <tt>true</tt> if a path was found or ruled out
+     */
+    public boolean isDone()
+    {
+        return status != Status.IN_PROGRESS;
+    }
+
+    /**
+     * Ignored, since occupants don't affect the search.
+     *
+     * @param obj new object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectInserted(IMapObject obj, int x, int y)
+    {
+        // do nothing
+    }
+
+    /**
+     * Ignored, since occupants don't affect the search.
+     *
+     * @param obj moved object
+     * @param oldX previous X coordinate
+     * @param oldY previous Y coordinate
+     */
+    public void objectMoved(IMapObject obj, int oldX, int oldY)
+    {
+        // do nothing
+    }
+
+    /**
+     * Ignored, since occupants don't affect the search.
+     *
+     * @param obj removed object
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void objectRemoved(IMapObject obj, int x, int y)
+    {
+        // do nothing
+    }
+
+    /**
+     * Continue the search for at most <tt>maxNanos</tt> nanoseconds.
+     * The clock is only checked every few expansions, so the limit may
+     * be overrun slightly.
+     *
+     * @param maxNanos time budget in nanoseconds
+     *
+     * @return search status
+     */
+    public Status run(long maxNanos)
+    {
+        final long deadline = System.nanoTime() + maxNanos;
+        while (expand(CLOCK_INTERVAL) == Status.IN_PROGRESS &&
+               System.nanoTime() < deadline)
+        {
+            // keep going
+        }
+
+        return status;
+    }
+
+    /**
+     * Start the search over, dropping any costs (or path) worked out
+     * with the old terrain.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     */
+    public void terrainChanged(int x, int y)
+    {
+        begin();
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("PathSearch[%d->%d,%s,%d expanded]", start,
+                             goal, status, getNumExpanded());
+    }
+}
@@ -0,0 +1,256 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapObject;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.UnimplementedError;
+
+/**
+ * Path which steers around occupants.
+ *
+ * Steps are taken from the original route until one of them is
+ * occupied, or until a <tt>HierarchicalPath</tt> route breaks because
+ * the map changed.  From then on a <tt>DStarLitePathFinder</tt> plans each
+ * step toward the original goal, treating the occupied cells it runs
+ * into as blocked.  Cells are unblocked again once their occupants
+ * leave, and only the affected part of the search is redone each time.
+ *
+ * Callers which move by direction should use <tt>nextDirection()</tt>,
+ * which follows a <tt>DirectionPath</tt> route without building a point
+ * for each step.
+ */
+public class ReplanningPath
+    implements Iterator<IMapPoint>
+{
+    private IMap map;
+    private IMapPoint walker;
+    private IMapPoint goal;
+
+    private Iterator<IMapPoint> route;
+    // set if the route is a compact direction path
+    private DirectionPath.Cursor cursor;
+    // step taken from the route which turned out to be occupied
+    private boolean hasPending;
+    private int pendingX;
+    private int pendingY;
+
+    private DStarLitePathFinder finder;
+    private boolean replanning;
+    private List<IMapPoint> blockedCells = new ArrayList<IMapPoint>();
+    private int numReplans;
+
+    private boolean hasStep;
+    private int nextX;
+    private int nextY;
+
+    /**
+     * Create a path.
+     *
+     * @param map map
+     * @param walker object following the path
+     * @param goal final point of the path
+     * @param route original route (not including the starting point)
+     * @param finder finder for <tt>map</tt> used to plan detours
+     */
+    public ReplanningPath(IMap map, IMapPoint walker, IMapPoint goal,
+                          Iterator<IMapPoint> route,
+                          DStarLitePathFinder finder)
+    {
+        this.map = map;
+        this.walker = walker;
+        this.goal = goal;
+        this.route = route;
+        this.finder = finder;
+
+        if (route instanceof DirectionPath.Cursor) {
+            cursor = (DirectionPath.Cursor) route;
+        }
+    }
+
+    private void block(int x, int y)
+    {
+        finder.setBlocked(x, y, true);
+        blockedCells.add(new PathPoint(x, y));
+    }
+
+    /**
+     * Get the number of times the original route was abandoned.
+     *
+     * @return <tt>0</tt> if the original route has been followed
+     */
+    public int getNumReplans()
+    {
+        return numReplans;
+    }
+
+    /**
+     * Are there more steps?
+     *
+     * @return <tt>true</tt> if there are more steps
+     */
+    public boolean hasNext()
+    {
+        if (hasStep) {
+            return true;
+        }
+
+        if (!replanning) {
+            if (!hasPending && route.hasNext()) {
+                if (cursor != null) {
+                    cursor.nextDirection();
+                    pendingX = cursor.getX();
+                    pendingY = cursor.getY();
+                } else {
+                    final IMapPoint pt = route.next();
+                    pendingX = pt.getX();
+                    pendingY = pt.getY();
+                }
+                hasPending = true;
+            } else if (!hasPending && !isBroken(route)) {
+                return false;
+            }
+
+            if (hasPending && !isOccupied(pendingX, pendingY)) {
+                setStep(pendingX, pendingY);
+                hasPending = false;
+                return true;
+            }
+
+            // the route is blocked or broken; plan a way around
+            try {
+                finder.plan(walker, goal);
+            } catch (PathException pe) {
+                return false;
+            }
+
+            blockedCells.clear();
+            if (hasPending) {
+                block(pendingX, pendingY);
+            }
+
+            hasPending = false;
+            route = null;
+            cursor = null;
+            replanning = true;
+            numReplans++;
+        }
+
+        try {
+            finder.moveStart(walker.getX(), walker.getY());
+        } catch (PathException pe) {
+            return false;
+        }
+
+        // reopen cells whose occupants have left
+        for (int i = blockedCells.size() - 1; i >= 0; i--) {
+            final IMapPoint pt = blockedCells.get(i);
+            if (!isOccupied(pt.getX(), pt.getY())) {
+                finder.setBlocked(pt.getX(), pt.getY(), false);
+                blockedCells.remove(i);
+            }
+        }
+
+        while (true) {
+            IMapPoint step = finder.getNextStep();
+            if (step == null) {
+                return false;
+            }
+
+            if (!isOccupied(step.getX(), step.getY())) {
+                setStep(step.getX(), step.getY());
+                return true;
+            }
+
+            block(step.getX(), step.getY());
+        }
+    }
+
+    private static boolean isBroken(Iterator<IMapPoint> route)
+    {
+        return route instanceof HierarchicalPath &&
+            ((HierarchicalPath) route).isBroken();
+    }
+
+    private boolean isOccupied(int x, int y)
+    {
+        final IMapObject obj = map.tryGetOccupant(x, y);
+        return obj != null && obj != walker;
+    }
+
+    /**
+     * Get the next step.  A step found by <tt>hasNext()</tt> which has
+     * since been occupied is replaced.
+     *
+     * @return next point
+     */
+    public IMapPoint next()
+    {
+        takeStep();
+        return new PathPoint(nextX, nextY);
+    }
+
+    /**
+     * Get the direction of the next step from the walker's current
+     * position.  A step found by <tt>hasNext()</tt> which has since been
+     * occupied is replaced.
+     *
+     * @return compass direction, or <tt>Direction.UNKNOWN</tt> if the
+     *         walker is no longer next to the path
+     */
+    public Direction nextDirection()
+    {
+        takeStep();
+        return Direction.fromOffset(nextX - walker.getX(),
+                                    nextY - walker.getY());
+    }
+
+    /**
+     * Unimplemented
+     */
+    public void remove()
+    {
+        throw new UnimplementedError();
+    }
+
+    private void setStep(int x, int y)
+    {
+        nextX = x;
+        nextY = y;
+        hasStep = true;
+    }
+
+    private void takeStep()
+    {
+        if (hasStep && isOccupied(nextX, nextY)) {
+            if (!replanning) {
+                pendingX = nextX;
+                pendingY = nextY;
+                hasPending = true;
+            }
+            hasStep = false;
+        }
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        hasStep = false;
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("ReplanningPath[->%d,%d%s]", goal.getX(),
+                             goal.getY(), replanning ? ",replanning" : "");
+    }
+}
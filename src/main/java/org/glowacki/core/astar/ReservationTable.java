@@ -0,0 +1,218 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.glowacki.core.util.IntHashMap;
+
+/**
+ * Space-time reservations for the next few turns.
+ *
+ * Each reservation claims a cell for a single turn.  Only turns inside
+ * the window (from the current turn to <tt>window</tt> turns ahead) can
+ * be reserved, and the reservations for a turn are dropped once that
+ * turn is over.
+ */
+public class ReservationTable
+{
+    private int window;
+    private int turn;
+
+    // owner of each reserved cell, for turn <tt>t</tt> at t % slots.size()
+    private List<IntHashMap<Object>> slots;
+
+    // turns and cells reserved by each owner
+    private IdentityHashMap<Object, List<Long>> owners =
+        new IdentityHashMap<Object, List<Long>>();
+
+    private int numReserved;
+
+    /**
+     * Create a reservation table.
+     *
+     * @param window number of turns past the current turn which can be
+     *               reserved
+     */
+    public ReservationTable(int window)
+    {
+        if (window < 1) {
+            throw new IllegalArgumentException("Bad window " + window);
+        }
+
+        this.window = window;
+
+        slots = new ArrayList<IntHashMap<Object>>(window + 1);
+        for (int i = 0; i <= window; i++) {
+            slots.add(new IntHashMap<Object>());
+        }
+    }
+
+    /**
+     * Move on to the next turn, dropping the current turn's
+     * reservations.
+     */
+    public void advance()
+    {
+        IntHashMap<Object> slot = getSlot(turn);
+        numReserved -= slot.size();
+        slot.clear();
+
+        turn++;
+    }
+
+    /**
+     * Get the owner of a cell's reservation.
+     *
+     * @param cell cell
+     * @param time turn
+     *
+     * @return owner, or <tt>null</tt> if the cell is free or the turn is
+     *         outside the window
+     */
+    public Object getOwner(int cell, int time)
+    {
+        if (!isInWindow(time)) {
+            return null;
+        }
+
+        return getSlot(time).get(cell);
+    }
+
+    private IntHashMap<Object> getSlot(int time)
+    {
+        return slots.get(time % slots.size());
+    }
+
+    /**
+     * Get the current turn.
+     *
+     * @return turn number
+     */
+    public int getTurn()
+    {
+        return turn;
+    }
+
+    /**
+     * Get the number of turns past the current turn which can be
+     * reserved.
+     *
+     * @return window size
+     */
+    public int getWindow()
+    {
+        return window;
+    }
+
+    private boolean isInWindow(int time)
+    {
+        return time >= turn && time <= turn + window;
+    }
+
+    /**
+     * Is a cell reserved by someone else?
+     *
+     * @param cell cell
+     * @param time turn
+     * @param owner object asking
+     *
+     * @return <tt>true</tt> if another owner holds the cell for that turn
+     */
+    public boolean isReserved(int cell, int time, Object owner)
+    {
+        final Object obj = getOwner(cell, time);
+        return obj != null && obj != owner;
+    }
+
+    private static long key(int cell, int time)
+    {
+        return ((long) time << 32) | (cell & 0xffffffffL);
+    }
+
+    /**
+     * Drop all of an owner's reservations.
+     *
+     * @param owner owner
+     */
+    public void release(Object owner)
+    {
+        List<Long> list = owners.remove(owner);
+        if (list == null) {
+            return;
+        }
+
+        for (Long key : list) {
+            final int time = (int) (key >>> 32);
+            if (!isInWindow(time)) {
+                // already dropped
+                continue;
+            }
+
+            final int cell = (int) (long) key;
+
+            IntHashMap<Object> slot = getSlot(time);
+            if (slot.get(cell) == owner) {
+                slot.remove(cell);
+                numReserved--;
+            }
+        }
+    }
+
+    /**
+     * Reserve a cell for a turn.
+     *
+     * @param cell cell
+     * @param time turn
+     * @param owner object making the reservation
+     *
+     * @return <tt>false</tt> if the turn is outside the window or the
+     *         cell is already reserved by someone else
+     */
+    public boolean reserve(int cell, int time, Object owner)
+    {
+        if (!isInWindow(time)) {
+            return false;
+        }
+
+        IntHashMap<Object> slot = getSlot(time);
+
+        final Object obj = slot.get(cell);
+        if (obj != null) {
+            return obj == owner;
+        }
+
+        slot.put(cell, owner);
+        numReserved++;
+
+        List<Long> list = owners.get(owner);
+        if (list == null) {
+            list = new ArrayList<Long>();
+            owners.put(owner, list);
+        }
+        list.add(key(cell, time));
+
+        return true;
+    }
+
+    /**
+     * Get the number of reservations.
+     *
+     * @return number of reserved cells across all turns in the window
+     */
+    public int size()
+    {
+        return numReserved;
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("ReservationTable[turn %d+%d,%d reserved]",
+                             turn, window, numReserved);
+    }
+}
@@ -0,0 +1,106 @@
+package org.glowacki.core.astar;
+
+import org.glowacki.core.IMap;
+import org.glowacki.core.Terrain;
+
+/**
+ * Cost of walking to a single goal, found on demand by a reverse
+ * resumable A* (RRA*) search.
+ *
+ * The search runs backward from the goal toward the first character
+ * heading there, and stops as soon as that character's cell is
+ * expanded.  Asking about a cell which has not been expanded yet
+ * resumes the search until it is, so only the cells a planner actually
+ * looks at (mostly those near the route) are ever visited.
+ */
+class ReverseSearch
+{
+    private IMap map;
+    private int width;
+
+    private GridPathFinder grid;
+    private int goal = -1;
+
+    /**
+     * Create an idle search for the specified map.
+     *
+     * @param map map
+     */
+    ReverseSearch(IMap map)
+    {
+        this.map = map;
+
+        width = map.getMaxX() + 1;
+
+        grid = new GridPathFinder(map);
+    }
+
+    /**
+     * Get the cost of walking from a cell to the goal.
+     *
+     * @param cell cell
+     *
+     * @return cost, or <tt>Double.POSITIVE_INFINITY</tt> if the goal
+     *         cannot be reached from the cell
+     */
+    double getDistance(int cell)
+    {
+        while (!grid.isClosed(cell)) {
+            if (grid.expandReverse() < 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+
+        return grid.getCost(cell);
+    }
+
+    /**
+     * Get the goal cell.
+     *
+     * @return goal cell, or <tt>-1</tt> if the search has not started
+     */
+    int getGoal()
+    {
+        return goal;
+    }
+
+    /**
+     * Get the number of cells expanded since the search started.
+     *
+     * @return number of expanded cells
+     */
+    int getNumExpanded()
+    {
+        return grid.getNumExpanded();
+    }
+
+    /**
+     * Forget any previous search and start a new one.
+     *
+     * @param goal goal cell
+     * @param start cell of the first character heading for the goal
+     */
+    void start(int goal, int start)
+    {
+        this.goal = goal;
+
+        grid.startReverse(start);
+
+        final Terrain t = map.tryGetTerrain(goal % width, goal / width);
+        if (t != null && t.isMovable()) {
+            grid.openGoal(goal);
+        }
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("ReverseSearch[%d,%d,expanded*%d]",
+                             goal % width, goal / width,
+                             grid.getNumExpanded());
+    }
+}
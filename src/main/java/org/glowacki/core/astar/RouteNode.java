@@ -0,0 +1,23 @@
+package org.glowacki.core.astar;
+
+/**
+ * Abstract graph node used while searching for a route.  A new node is
+ * queued each time a cheaper way to a cell is found, and superseded
+ * nodes are skipped when they come off the queue.
+ */
+class RouteNode
+{
+    int cell;
+    double gCost;
+    double fCost;
+    RouteNode parent;
+    boolean closed;
+
+    RouteNode(int cell, double gCost, double fCost, RouteNode parent)
+    {
+        this.cell = cell;
+        this.gCost = gCost;
+        this.fCost = fCost;
+        this.parent = parent;
+    }
+}
@@ -0,0 +1,15 @@
+package org.glowacki.core.astar;
+
+import java.util.Comparator;
+
+/**
+ * Order route nodes by estimated total cost.
+ */
+class RouteNodeComparator
+    implements Comparator<RouteNode>
+{
+    public int compare(RouteNode a, RouteNode b)
+    {
+        return Double.compare(a.fCost, b.fCost);
+    }
+}
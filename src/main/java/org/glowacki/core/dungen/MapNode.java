@@ -35,15 +35,10 @@ public class MapNode
     private boolean tempNode;
     private RoomType type;
 
-    private INode parent;
-
-     // cost of getting from parent node to this node
-    private double parentCost = Double.MIN_VALUE;
-
-    // last node used to compute passthrough cost
-    private INode lastNode;
-    // cost of getting from the start to the goal through this node
-    private double passThroughCost = Double.MIN_VALUE;
+    // finder which holds this node's path state, and this node's slot
+    // in the finder's state arrays
+    private RoomFinder finder;
+    private int slot;
 
     /**
      * Create a map node
@@ -98,6 +93,18 @@ public class MapNode
         type = RoomType.EMPTY;
     }
 
+    /**
+     * Keep this node's path state in a finder's arrays.
+     *
+     * @param finder path finder
+     * @param slot index of this node's state
+     */
+    void bind(RoomFinder finder, int slot)
+    {
+        this.finder = finder;
+        this.slot = slot;
+    }
+
     /**
      * Clear this node
      */
@@ -105,11 +112,9 @@ public class MapNode
     {
         endPt = EndPoint.NONE;
 
-        parent = null;
-        parentCost = Double.MIN_VALUE;
-
-        lastNode = null;
-        passThroughCost = Double.MIN_VALUE;
+        if (finder != null) {
+            finder.clearState(slot);
+        }
     }
 
     /**
@@ -168,7 +173,11 @@ public class MapNode
      */
     public INode getParent()
     {
-        return parent;
+        if (finder == null) {
+            return null;
+        }
+
+        return finder.getParent(slot);
     }
 
     /**
@@ -180,12 +189,17 @@ public class MapNode
     {
         if (isStart()) {
             return 0.0;
-        } else if (parent == null) {
+        }
+
+        final INode parent = getParent();
+        if (parent == null) {
             return 999.0;
         }
 
+        double parentCost = finder.getParentCost(slot);
         if (Double.compare(parentCost, Double.MIN_VALUE) == 0) {
             parentCost = 1.0 + .5 * (parent.getParentCost() - 1.0);
+            finder.setParentCost(slot, parentCost);
         }
 
         return parentCost;
@@ -207,10 +221,14 @@ public class MapNode
             return 0.0;
         }
 
-        if (Double.compare(passThroughCost, Double.MIN_VALUE) == 0 ||
-            lastNode == null || lastNode.getX() != goal.getX() ||
-            lastNode.getY() != goal.getY())
-        {
+        final int goalSlot = finder == null ? -1 : finder.getSlot(goal);
+
+        double passThroughCost = Double.MIN_VALUE;
+        if (goalSlot >= 0) {
+            passThroughCost = finder.getPassThrough(slot, goalSlot);
+        }
+
+        if (Double.compare(passThroughCost, Double.MIN_VALUE) == 0) {
             double localCost = 1.0 * (Math.abs(x - goal.getX()) +
                                       Math.abs(y - goal.getY()));
 
@@ -220,7 +238,7 @@ public class MapNode
             } else if (type == RoomType.EMPTY) {
                 extraCost = 5.0;
             } else if (isWall()) {
-                MapNode p = (MapNode) parent;
+                MapNode p = (MapNode) getParent();
                 if (p != null && (p.isWall() || p.isDoor())) {
                     extraCost = 20.0;
                 } else {
@@ -231,7 +249,9 @@ public class MapNode
             }
 
             passThroughCost = localCost + extraCost + getParentCost();
-            lastNode = goal;
+            if (goalSlot >= 0) {
+                finder.setPassThrough(slot, goalSlot, passThroughCost);
+            }
         }
 
         return passThroughCost;
@@ -342,6 +362,18 @@ public class MapNode
             type == RoomType.UPSTAIRS;
     }
 
+    /**
+     * Is this node's path state kept by the specified finder?
+     *
+     * @param f path finder
+     *
+     * @return <tt>true</tt> if this node is bound to <tt>f</tt>
+     */
+    boolean isSearchedBy(RoomFinder f)
+    {
+        return finder == f;
+    }
+
     /**
      * Is this a starting node?
      *
@@ -378,6 +410,7 @@ public class MapNode
     public void setParent(INode node)
         throws MapNodeException
     {
+        final INode parent = getParent();
         if (!tempNode && parent != null &&
             (parent.getX() != node.getX() || parent.getY() != node.getY()) &&
             (isAncestor(this, node) || isAncestor(node, this)))
@@ -387,11 +420,14 @@ public class MapNode
                                          " would create a loop");
         }
 
-        parent = node;
-        parentCost = Double.MIN_VALUE;
+        final int parentSlot = finder == null ? -1 : finder.getSlot(node);
+        if (parentSlot < 0) {
+            throw new MapNodeException("Cannot set " + toString() +
+                                       " parent to " + node +
+                                       " outside a search");
+        }
 
-        lastNode = null;
-        passThroughCost = Double.MIN_VALUE;
+        finder.setParent(slot, parentSlot);
     }
 
     /**
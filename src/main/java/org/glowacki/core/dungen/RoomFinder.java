@@ -1,6 +1,7 @@
 package org.glowacki.core.dungen;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -11,11 +12,33 @@ import org.glowacki.core.astar.PathFinder;
 
 /**
  * Find a path on the specified map.
+ *
+ * The path state of every node (parent and cached costs) is kept here
+ * in primitive arrays indexed by node, rather than in the nodes.  Each
+ * entry is stamped with the search which wrote it, so starting a search
+ * costs nothing and stale entries are reset the first time they are
+ * read.  The last entry belongs to the current temporary node.
  */
 public class RoomFinder
     extends PathFinder
 {
     private MapNode[][] nodes;
+    private int height;
+    private int tempSlot;
+
+    // bumped for each search so stale node state is cleared lazily,
+    // only on the nodes the search touches
+    private int[] stamp;
+    private int generation;
+
+    // slot of each node's parent, or -1
+    private int[] parent;
+    // cost of getting from the parent to the node
+    private double[] parentCost;
+    // slot of the goal used to compute the pass-through cost, or -1
+    private int[] lastGoal;
+    // cost of getting from the start to the goal through the node
+    private double[] passThroughCost;
 
     /**
      * Create a path finder for the specified map
@@ -25,6 +48,41 @@ public class RoomFinder
     public RoomFinder(MapNode[][] map)
     {
         nodes = map;
+
+        height = map.length == 0 ? 0 : map[0].length;
+        tempSlot = map.length * height;
+
+        final int size = tempSlot + 1;
+        stamp = new int[size];
+        parent = new int[size];
+        parentCost = new double[size];
+        lastGoal = new int[size];
+        passThroughCost = new double[size];
+
+        bindNodes();
+    }
+
+    private void bindNodes()
+    {
+        for (int x = 0; x < nodes.length; x++) {
+            for (int y = 0; y < height; y++) {
+                nodes[x][y].bind(this, x * height + y);
+            }
+        }
+    }
+
+    /**
+     * Forget a node's path state.
+     *
+     * @param slot node's slot
+     */
+    void clearState(int slot)
+    {
+        stamp[slot] = generation;
+        parent[slot] = -1;
+        parentCost[slot] = Double.MIN_VALUE;
+        lastGoal[slot] = -1;
+        passThroughCost[slot] = Double.MIN_VALUE;
     }
 
     /**
@@ -40,6 +98,8 @@ public class RoomFinder
         if (node instanceof MapNode) {
             m.setType(((MapNode) node).getType());
         }
+        m.bind(this, tempSlot);
+        clearState(tempSlot);
         return m;
     }
 
@@ -75,15 +135,16 @@ public class RoomFinder
             throw new GeneratorException(msg);
         }
 
-        for (int x = 0; x < nodes.length; x++) {
-            for (int y = 0; y < nodes[x].length; y++) {
-                nodes[x][y].clear();
-            }
-        }
+        nextGeneration();
 
         MapNode start = nodes[startPt.getX()][startPt.getY()];
         MapNode end = nodes[endPt.getX()][endPt.getY()];
 
+        // another finder may have taken over the nodes
+        if (!start.isSearchedBy(this)) {
+            bindNodes();
+        }
+
         start.setEndPoint(MapNode.EndPoint.START);
         end.setEndPoint(MapNode.EndPoint.END);
 
@@ -147,6 +208,139 @@ public class RoomFinder
         return sorted;
     }
 
+    /**
+     * Get a node's parent.
+     *
+     * @param slot node's slot
+     *
+     * @return parent, or <tt>null</tt>
+     */
+    MapNode getParent(int slot)
+    {
+        touch(slot);
+
+        final int p = parent[slot];
+        if (p < 0) {
+            return null;
+        }
+
+        return nodes[p / height][p % height];
+    }
+
+    /**
+     * Get a node's cached parent cost.
+     *
+     * @param slot node's slot
+     *
+     * @return parent cost, or <tt>Double.MIN_VALUE</tt> if not cached
+     */
+    double getParentCost(int slot)
+    {
+        touch(slot);
+        return parentCost[slot];
+    }
+
+    /**
+     * Get a node's cached pass-through cost.
+     *
+     * @param slot node's slot
+     * @param goal goal's slot
+     *
+     * @return pass-through cost, or <tt>Double.MIN_VALUE</tt> if there
+     *         is no cost cached for this goal
+     */
+    double getPassThrough(int slot, int goal)
+    {
+        touch(slot);
+        if (lastGoal[slot] != goal) {
+            return Double.MIN_VALUE;
+        }
+
+        return passThroughCost[slot];
+    }
+
+    /**
+     * Get the slot for a node's position.
+     *
+     * @param node node
+     *
+     * @return slot, or <tt>-1</tt> if the node is off the map
+     */
+    int getSlot(INode node)
+    {
+        final int x = node.getX();
+        final int y = node.getY();
+        if (x < 0 || x >= nodes.length || y < 0 || y >= height) {
+            return -1;
+        }
+
+        return x * height + y;
+    }
+
+    /**
+     * Start a new search generation.  If the counter wraps around, every
+     * stamp is cleared so no state can be mistaken for a current one.
+     */
+    private void nextGeneration()
+    {
+        generation++;
+        if (generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Set a node's parent, forgetting its cached costs.
+     *
+     * @param slot node's slot
+     * @param p parent's slot
+     */
+    void setParent(int slot, int p)
+    {
+        stamp[slot] = generation;
+        parent[slot] = p;
+        parentCost[slot] = Double.MIN_VALUE;
+        lastGoal[slot] = -1;
+        passThroughCost[slot] = Double.MIN_VALUE;
+    }
+
+    /**
+     * Cache a node's parent cost.
+     *
+     * @param slot node's slot
+     * @param cost parent cost
+     */
+    void setParentCost(int slot, double cost)
+    {
+        touch(slot);
+        parentCost[slot] = cost;
+    }
+
+    /**
+     * Cache a node's pass-through cost.
+     *
+     * @param slot node's slot
+     * @param goal goal's slot
+     * @param cost pass-through cost
+     */
+    void setPassThrough(int slot, int goal, double cost)
+    {
+        touch(slot);
+        lastGoal[slot] = goal;
+        passThroughCost[slot] = cost;
+    }
+
+    /**
+     * Reset a node's state if it was left over from an earlier search.
+     */
+    private void touch(int slot)
+    {
+        if (stamp[slot] != generation) {
+            clearState(slot);
+        }
+    }
+
 private INode prevNode;
 private void drawCosts(INode node)
     throws PathException
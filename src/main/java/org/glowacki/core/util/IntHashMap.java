@@ -0,0 +1,251 @@
+package org.glowacki.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressed hash table which maps non-negative <tt>int</tt> keys
+ * to objects without boxing the keys.
+ *
+ * @param <V> value type
+ */
+public class IntHashMap<V>
+{
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * Create an empty table.
+     */
+    public IntHashMap()
+    {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Create an empty table sized for the expected number of entries.
+     *
+     * @param expected expected number of entries
+     */
+    public IntHashMap(int expected)
+    {
+        int cap = MIN_CAPACITY;
+        while (cap < expected * 2) {
+            cap <<= 1;
+        }
+
+        allocate(cap);
+    }
+
+    private void allocate(int cap)
+    {
+        keys = new int[cap];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[cap];
+        mask = cap - 1;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear()
+    {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    /**
+     * Is there an entry for the specified key?
+     *
+     * @param key key
+     *
+     * @return <tt>true</tt> if the key is present
+     */
+    public boolean containsKey(int key)
+    {
+        return find(key) >= 0;
+    }
+
+    private int find(int key)
+    {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the value associated with the key.
+     *
+     * @param key key
+     *
+     * @return <tt>null</tt> if the key is not present
+     */
+    public V get(int key)
+    {
+        final int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        return valueAt(slot);
+    }
+
+    private static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Is this table empty?
+     *
+     * @return <tt>true</tt> if there are no entries
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Associate the value with the key.
+     *
+     * @param key non-negative key
+     * @param value value (cannot be <tt>null</tt>)
+     *
+     * @return previous value or <tt>null</tt>
+     */
+    public V put(int key, V value)
+    {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key " + key +
+                                               " cannot be negative");
+        } else if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                V old = valueAt(slot);
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+
+        if (size * 2 > keys.length) {
+            resize(keys.length << 1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove the entry for the specified key.
+     *
+     * @param key key
+     *
+     * @return removed value or <tt>null</tt>
+     */
+    public V remove(int key)
+    {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        V old = valueAt(slot);
+
+        // shift later entries in the probe sequence back into the hole
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != EMPTY) {
+            final int home = hash(keys[next]) & mask;
+            final boolean movable;
+            if (hole <= next) {
+                movable = home <= hole || home > next;
+            } else {
+                movable = home <= hole && home > next;
+            }
+
+            if (movable) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        keys[hole] = EMPTY;
+        values[hole] = null;
+        size--;
+
+        return old;
+    }
+
+    private void resize(int cap)
+    {
+        final int[] oldKeys = keys;
+        final Object[] oldValues = values;
+
+        allocate(cap);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return number of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Return a debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        return String.format("IntHashMap[%d/%d]", size, keys.length);
+    }
+
+    /**
+     * Values are only ever stored through <tt>put()</tt>, so every
+     * non-null slot holds a <tt>V</tt>.
+     */
+    @SuppressWarnings("unchecked")
+    private V valueAt(int slot)
+    {
+        return (V) values[slot];
+    }
+}
@@ -264,6 +264,57 @@ public class BaseCharacterTest
         } while (dir != Direction.LEFT);
     }
 
+    public void testTryMove()
+        throws CoreException
+    {
+        MyCharacter ch = new MyCharacter("t", 1, 2, 3, 4);
+
+        assertEquals("Should not move without a level", -1,
+                     ch.tryMove(Direction.RIGHT));
+
+        MockMap map = new MockMap(3, 3);
+        map.setTerrain(Terrain.FLOOR);
+
+        MockLevel lvl = new MockLevel("move", map);
+
+        Direction dir = Direction.LEFT;
+        do {
+            int x = 0;
+            int y = 0;
+
+            ch.setPosition(x, y);
+            ch.setLevel(lvl);
+
+            int expTurns = -1;
+            switch (dir) {
+            case RIGHT:
+                x++;
+                expTurns = 3;
+                break;
+            case RIGHT_DOWN:
+                x++;
+                y++;
+                expTurns = 4;
+                break;
+            case DOWN:
+                y++;
+                expTurns = 2;
+                break;
+            default:
+                break;
+            }
+
+            assertEquals("Bad " + dir + " number of turns", expTurns,
+                         ch.tryMove(dir));
+            assertEquals("Bad " + dir + " X", x, ch.getX());
+            assertEquals("Bad " + dir + " Y", y, ch.getY());
+            dir = dir.next();
+        } while (dir != Direction.LEFT);
+
+        assertEquals("Should not climb with tryMove", -1,
+                     ch.tryMove(Direction.CLIMB));
+    }
+
     public void testMove()
         throws CoreException
     {
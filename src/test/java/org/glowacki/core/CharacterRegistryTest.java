@@ -0,0 +1,113 @@
+package org.glowacki.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.test.MockCharacter;
+
+public class CharacterRegistryTest
+    extends TestCase
+{
+    public CharacterRegistryTest(String name)
+    {
+        super(name);
+    }
+
+    private static List<ICharacter> list(Iterable<ICharacter> iter)
+    {
+        List<ICharacter> list = new ArrayList<ICharacter>();
+        for (ICharacter ch : iter) {
+            list.add(ch);
+        }
+        return list;
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(CharacterRegistryTest.class);
+    }
+
+    public void testAddRemove()
+    {
+        CharacterRegistry reg = new CharacterRegistry();
+
+        MockCharacter npc1 = new MockCharacter("npc1");
+        MockCharacter plyr = new MockCharacter("plyr", true);
+        MockCharacter npc2 = new MockCharacter("npc2");
+
+        assertTrue("Could not add npc1", reg.add(npc1));
+        assertTrue("Could not add player", reg.add(plyr));
+        assertTrue("Could not add npc2", reg.add(npc2));
+        assertFalse("Added duplicate", reg.add(npc1));
+
+        assertEquals("Bad size", 3, reg.size());
+        assertEquals("Bad number of players", 1, reg.getNumberOfPlayers());
+        assertEquals("Bad number of nonplayers", 2,
+                     reg.getNumberOfNonplayers());
+        assertSame("Bad lookup", npc2, reg.get(npc2.getId()));
+        assertTrue("Missing player", reg.contains(plyr));
+
+        List<ICharacter> all = list(reg);
+        assertEquals("Bad list size", 3, all.size());
+        assertSame("Player should be first", plyr, all.get(0));
+        assertSame("Bad second entry", npc1, all.get(1));
+        assertSame("Bad third entry", npc2, all.get(2));
+
+        assertEquals("Bad player list", 1, list(reg.listPlayers()).size());
+        assertEquals("Bad nonplayer list", 2,
+                     list(reg.listNonplayers()).size());
+
+        assertTrue("Could not remove npc1", reg.remove(npc1));
+        assertFalse("Removed npc1 twice", reg.remove(npc1));
+        assertFalse("npc1 is still registered", reg.contains(npc1));
+        assertNull("npc1 is still registered", reg.get(npc1.getId()));
+        assertEquals("Bad size", 2, reg.size());
+    }
+
+    public void testRemoveDuringIteration()
+    {
+        CharacterRegistry reg = new CharacterRegistry();
+
+        MockCharacter[] chars = new MockCharacter[6];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = new MockCharacter("ch" + i, i == 0);
+            reg.add(chars[i]);
+        }
+
+        List<ICharacter> seen = new ArrayList<ICharacter>();
+        for (ICharacter ch : reg) {
+            seen.add(ch);
+            if (ch == chars[1]) {
+                // remove the current character and the one after it
+                reg.remove(chars[1]);
+                reg.remove(chars[2]);
+            } else if (ch == chars[3]) {
+                // remove the last character
+                reg.remove(chars[5]);
+            }
+        }
+
+        assertEquals("Bad number of characters seen", 4, seen.size());
+        assertSame("Bad first", chars[0], seen.get(0));
+        assertSame("Bad second", chars[1], seen.get(1));
+        assertSame("Bad third", chars[3], seen.get(2));
+        assertSame("Bad fourth", chars[4], seen.get(3));
+
+        Iterator<ICharacter> iter = reg.listNonplayers().iterator();
+        assertSame("Bad first nonplayer", chars[3], iter.next());
+        reg.remove(chars[4]);
+        assertFalse("Removed character was returned", iter.hasNext());
+        assertEquals("Bad size", 2, reg.size());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,275 @@
+package org.glowacki.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.test.MockMapObject;
+
+class CountingChunkSource
+    implements IChunkSource
+{
+    private int fills;
+
+    public void fillChunk(int left, int top, int width, int height,
+                          Terrain[] terrain)
+    {
+        fills++;
+
+        int idx = 0;
+        for (int y = top; y < top + height; y++) {
+            for (int x = left; x < left + width; x++) {
+                if (x % 5 == 0 && y % 3 == 0) {
+                    terrain[idx++] = Terrain.WALL;
+                } else {
+                    terrain[idx++] = Terrain.FLOOR;
+                }
+            }
+        }
+    }
+
+    int getFills()
+    {
+        return fills;
+    }
+}
+
+public class ChunkedMapTest
+    extends TestCase
+{
+    public ChunkedMapTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ChunkedMapTest.class);
+    }
+
+    public void testBadCreate()
+    {
+        IChunkSource src = new ConstantChunkSource(Terrain.FLOOR);
+
+        try {
+            new ChunkedMap(0, 10, 4, src);
+            fail("Should not be able to create empty map");
+        } catch (MapException me) {
+            // expect this to fail
+        }
+
+        try {
+            new ChunkedMap(10, 10, 12, 4, src);
+            fail("Should not be able to use non-power-of-two chunks");
+        } catch (MapException me) {
+            // expect this to fail
+        }
+
+        try {
+            new ChunkedMap(10, 10, 0, src);
+            fail("Should not be able to use empty chunk budget");
+        } catch (MapException me) {
+            // expect this to fail
+        }
+
+        try {
+            new ChunkedMap(10, 10, 4, null);
+            fail("Should not be able to use null source");
+        } catch (MapException me) {
+            // expect this to fail
+        }
+    }
+
+    public void testHuge()
+        throws CoreException
+    {
+        final int size = 16384;
+
+        ChunkedMap map = new ChunkedMap(size, size, 16,
+                                        new CountingChunkSource());
+        assertEquals("Bad max X", size - 1, map.getMaxX());
+        assertEquals("Bad max Y", size - 1, map.getMaxY());
+
+        assertEquals("Bad terrain", Terrain.WALL,
+                     map.getTerrain(size - 4, size - 4));
+        assertEquals("Bad terrain", Terrain.FLOOR,
+                     map.getTerrain(size - 1, size - 1));
+        assertEquals("Bad terrain", Terrain.FLOOR, map.getTerrain(8000, 1));
+        assertEquals("Bad number of chunks", 2, map.getResidentChunks());
+
+        try {
+            map.getTerrain(size, 0);
+            fail("Should not be able to get terrain outside the map");
+        } catch (MapException me) {
+            // expect this to fail
+        }
+    }
+
+    public void testEviction()
+        throws CoreException
+    {
+        CountingChunkSource src = new CountingChunkSource();
+
+        ChunkedMap map = new ChunkedMap(64, 64, 8, 4, src);
+
+        MockMapObject obj = new MockMapObject("obj");
+        map.insertObject(obj, 1, 1);
+
+        for (int i = 0; i < 3; i++) {
+            for (int y = 0; y <= map.getMaxY(); y++) {
+                for (int x = 0; x <= map.getMaxX(); x++) {
+                    final boolean wall = x % 5 == 0 && y % 3 == 0;
+                    assertEquals("Bad terrain at " + x + "," + y,
+                                 wall ? Terrain.WALL : Terrain.FLOOR,
+                                 map.getTerrain(x, y));
+                }
+            }
+        }
+
+        assertEquals("Bad number of resident chunks", 4,
+                     map.getResidentChunks());
+        assertEquals("Bad number of loads", src.getFills(),
+                     map.getLoadCount());
+        assertTrue("Chunks should have been evicted",
+                   map.getEvictionCount() > 0);
+        assertEquals("Loads and evictions don't match",
+                     map.getLoadCount() - map.getEvictionCount(),
+                     map.getResidentChunks());
+
+        // the occupied chunk must not have been reloaded
+        final int fills = src.getFills();
+        assertEquals("Bad occupant", obj, map.getOccupant(1, 1));
+        assertEquals("Occupied chunk was evicted", fills, src.getFills());
+
+        // moving the object into another chunk releases the old one
+        map.moveTo(obj, 9, 1);
+        assertEquals("Bad X", 9, obj.getX());
+        assertNull("Old cell is still occupied", map.getOccupant(1, 1));
+        assertEquals("Bad occupant", obj, map.getOccupant(9, 1));
+
+        map.removeObject(obj);
+        assertNull("Object was not removed", map.tryGetOccupant(9, 1));
+    }
+
+    public void testFindIndex()
+        throws CoreException
+    {
+        CountingChunkSource src = new CountingChunkSource();
+        ChunkedMap map = new ChunkedMap(32, 32, 8, 1, src);
+
+        assertNull("Should not find missing terrain",
+                   map.find(Terrain.WATER));
+        assertEquals("First search should load every chunk", 16,
+                     map.getLoadCount());
+
+        assertNull("Should not find missing terrain",
+                   map.find(Terrain.WATER));
+        assertEquals("Second search should not load anything", 16,
+                     map.getLoadCount());
+
+        map.setTerrain(21, 19, Terrain.UPSTAIRS);
+        map.setTerrain(18, 17, Terrain.UPSTAIRS);
+        final int loads = map.getLoadCount();
+
+        int num = 0;
+        for (MapEntry entry : map.findAll(Terrain.UPSTAIRS)) {
+            if (num == 0) {
+                assertEquals("Bad X", 18, entry.getX());
+                assertEquals("Bad Y", 17, entry.getY());
+            } else {
+                assertEquals("Bad X", 21, entry.getX());
+                assertEquals("Bad Y", 19, entry.getY());
+            }
+            num++;
+        }
+        assertEquals("Bad number of staircases", 2, num);
+        assertEquals("Search loaded unchanged chunks", loads,
+                     map.getLoadCount());
+
+        IMapPoint pt = map.enterDown(new MockMapObject("obj"));
+        assertEquals("Bad X", 18, pt.getX());
+        assertEquals("Bad Y", 17, pt.getY());
+        assertEquals("Entering loaded unchanged chunks", loads,
+                     map.getLoadCount());
+
+        int walls = 0;
+        for (MapEntry entry : map.findAll(Terrain.WALL)) {
+            assertEquals("Bad terrain at " + entry, Terrain.WALL,
+                         map.getTerrain(entry.getX(), entry.getY()));
+            walls++;
+        }
+        assertEquals("Bad number of walls", 7 * 11, walls);
+    }
+
+    public void testSetTerrain()
+        throws CoreException
+    {
+        ChunkedMap map =
+            new ChunkedMap(32, 32, 8, 1, new CountingChunkSource());
+
+        map.setTerrain(3, 3, Terrain.UPSTAIRS);
+
+        // load every other chunk
+        for (int y = 0; y <= map.getMaxY(); y += 8) {
+            for (int x = 0; x <= map.getMaxX(); x += 8) {
+                map.getTerrain(x, y);
+            }
+        }
+
+        assertEquals("Changed terrain was lost", Terrain.UPSTAIRS,
+                     map.getTerrain(3, 3));
+
+        MockMapObject obj = new MockMapObject("obj");
+        IMapPoint pt = map.enterDown(obj);
+        assertEquals("Bad X", 3, pt.getX());
+        assertEquals("Bad Y", 3, pt.getY());
+
+        try {
+            map.setTerrain(3, 3, Terrain.WALL);
+            fail("Should not be able to wall in an occupant");
+        } catch (OccupiedException oe) {
+            // expect this to fail
+        }
+    }
+
+    public void testTemplate()
+        throws CoreException
+    {
+        final String[] template = new String[] {
+            "------",
+            "|....|                  ----------",
+            "|....+#######           |.....>..|",
+            "|.<..|      ############+......~.|",
+            "|....|                  |......~~|",
+            "------                  ----------",
+        };
+
+        Map flat = new Map(template);
+        ChunkedMap map =
+            new ChunkedMap(flat.getMaxX() + 1, flat.getMaxY() + 1, 4, 2,
+                           new TemplateChunkSource(template));
+
+        assertEquals("Bad picture", flat.getPicture(), map.getPicture());
+
+        int num = 0;
+        for (MapEntry entry : map.getEntries()) {
+            Terrain expected = flat.getTerrain(entry.getX(), entry.getY());
+            assertEquals("Bad terrain at " + entry, expected,
+                         entry.getTerrain());
+            num++;
+        }
+        assertEquals("Bad number of entries",
+                     (flat.getMaxX() + 1) * (flat.getMaxY() + 1), num);
+
+        MapEntry down = map.find(Terrain.DOWNSTAIRS);
+        assertNotNull("Cannot find down staircase", down);
+        assertEquals("Bad X", 30, down.getX());
+        assertEquals("Bad Y", 2, down.getY());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
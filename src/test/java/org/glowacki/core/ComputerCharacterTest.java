@@ -50,6 +50,44 @@ public class ComputerCharacterTest
                    ch.toString().startsWith(expStr));
     }
 
+    public void testMeanderFarFromPlayer()
+        throws CoreException
+    {
+        StringBuilder buf = new StringBuilder("|<");
+        for (int i = 0; i < 60; i++) {
+            buf.append('.');
+        }
+        buf.append('|');
+
+        final String row = buf.toString();
+        final String border = row.replaceAll(".", "-");
+
+        Level lvl =
+            new Level("far", new Map(new String[] { border, row, border }));
+
+        PlayerCharacter player = new PlayerCharacter("player", 1, 2, 3, 4);
+        lvl.enterDown(player);
+
+        MockRandom random = new MockRandom();
+        random.addDouble(0.111);
+
+        ComputerCharacter ch = new ComputerCharacter(random, 1, 2, 10, 10);
+        ch.setLevel(lvl, 50, 1);
+
+        // wake up
+        random.addDouble(0.01);
+        ch.takeTurn();
+
+        // wander without noticing the distant player
+        random.addDouble(0.5);
+        random.add(0);
+        ch.takeTurn();
+        assertTrue("Should be meandering, not " + ch,
+                   ch.toString().endsWith("MEANDER"));
+        assertEquals("Player distance field should not be built", 0,
+                     lvl.getPlayerDistanceField().getNumBuilt());
+    }
+
     public void testMove2D()
         throws CoreException
     {
@@ -90,6 +128,62 @@ public class ComputerCharacterTest
         } while (dir != Direction.LEFT);
     }
 
+    public void testPursuit()
+        throws CoreException
+    {
+        final String[] template = new String[] {
+            "------------",
+            "|<.........|",
+            "|..........|",
+            "------------",
+        };
+
+        Level lvl = new Level("pursuit", new Map(template));
+
+        PlayerCharacter player = new PlayerCharacter("player", 1, 2, 3, 4);
+        lvl.enterDown(player);
+
+        MockRandom random = new MockRandom();
+        random.addDouble(0.111);
+
+        ComputerCharacter ch = new ComputerCharacter(random, 1, 2, 10, 10);
+        ch.setLevel(lvl, 5, 2);
+
+        // wake up
+        random.addDouble(0.01);
+        ch.takeTurn();
+        assertTrue("Should be meandering, not " + ch,
+                   ch.toString().endsWith("MEANDER"));
+
+        // notice the nearby player
+        random.addDouble(0.5);
+        ch.takeTurn();
+        assertTrue("Should be in pursuit, not " + ch,
+                   ch.toString().endsWith("IN_PURSUIT"));
+
+        // the chase follows a cooperative plan
+        ch.takeTurn();
+        assertTrue("Chase should reserve its path",
+                   lvl.getCooperativePathFinder().getReservations().size() >
+                   0);
+
+        // close in, then wait next to the player
+        for (int i = 0; i < 4; i++) {
+            lvl.endTurn();
+            ch.takeTurn();
+        }
+        assertEquals("Bad X coordinate", 2, ch.getX());
+        assertEquals("Bad Y coordinate", 1, ch.getY());
+
+        // lose the trail once the player is gone
+        lvl.exit(player);
+        ch.takeTurn();
+        assertTrue("Should be meandering, not " + ch,
+                   ch.toString().endsWith("MEANDER"));
+        assertEquals("Lost chase should release its path", 0,
+                     lvl.getCooperativePathFinder().getReservations().size());
+    }
+
     public void testUnimplemented()
         throws CoreException
     {
@@ -0,0 +1,60 @@
+package org.glowacki.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class DirectionTest
+    extends TestCase
+{
+    public DirectionTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(DirectionTest.class);
+    }
+
+    public void testOffsets()
+    {
+        for (int bit = 0; bit < Direction.NUM_COMPASS; bit++) {
+            Direction dir = Direction.getDirection(bit);
+            assertEquals("Bad bit for " + dir, 1 << bit, dir.getBit());
+            assertEquals("Bad X offset for " + dir, dir.getDx(),
+                         Direction.getDx(bit));
+            assertEquals("Bad Y offset for " + dir, dir.getDy(),
+                         Direction.getDy(bit));
+            assertSame("Bad direction for offset", dir,
+                       Direction.fromOffset(dir.getDx(), dir.getDy()));
+
+            Direction opp = dir.opposite();
+            assertEquals("Bad opposite X for " + dir, -dir.getDx(),
+                         opp.getDx());
+            assertEquals("Bad opposite Y for " + dir, -dir.getDy(),
+                         opp.getDy());
+            assertSame("Bad next for " + dir,
+                       Direction.getDirection(bit + 1), dir.next());
+        }
+
+        assertEquals("Bad LEFT_UP X", -1, Direction.LEFT_UP.getDx());
+        assertEquals("Bad LEFT_UP Y", -1, Direction.LEFT_UP.getDy());
+        assertEquals("Bad RIGHT_DOWN X", 1, Direction.RIGHT_DOWN.getDx());
+        assertEquals("Bad RIGHT_DOWN Y", 1, Direction.RIGHT_DOWN.getDy());
+
+        assertSame("Bad zero offset", Direction.UNKNOWN,
+                   Direction.fromOffset(0, 0));
+        assertSame("Bad long offset", Direction.UNKNOWN,
+                   Direction.fromOffset(2, 0));
+        assertEquals("Bad CLIMB bit", 0, Direction.CLIMB.getBit());
+        assertSame("Bad CLIMB opposite", Direction.CLIMB,
+                   Direction.CLIMB.opposite());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
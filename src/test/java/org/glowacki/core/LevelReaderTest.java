@@ -0,0 +1,118 @@
+package org.glowacki.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class LevelReaderTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "------",
+        "|....|                  ----------",
+        "|....+#######           |.....>..|",
+        "|.<..|      ############+......~.|",
+        "|....|                  |......~~|",
+        "------                  ----------",
+    };
+
+    public LevelReaderTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(LevelReaderTest.class);
+    }
+
+    public void testBadInput()
+        throws CoreException
+    {
+        try {
+            Map.load(new ByteArrayInputStream(new byte[0]));
+            fail("Should not be able to load empty stream");
+        } catch (MapException me) {
+            assertEquals("Bad exception message", "No level found",
+                         me.getMessage());
+        }
+
+        try {
+            Map.load(new ByteArrayInputStream("junk data".getBytes()));
+            fail("Should not be able to load junk");
+        } catch (MapException me) {
+            // expect this to fail
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LevelWriter(out).write("foo", new Map(TEMPLATE), null);
+
+        byte[] data = out.toByteArray();
+        byte[] truncated = Arrays.copyOf(data, data.length - 3);
+        try {
+            Map.load(new ByteArrayInputStream(truncated));
+            fail("Should not be able to load truncated level");
+        } catch (MapException me) {
+            assertEquals("Bad exception message", "Level foo is truncated",
+                         me.getMessage());
+        }
+    }
+
+    public void testRoundTrip()
+        throws CoreException
+    {
+        Map orig = new Map(TEMPLATE);
+
+        Properties meta = new Properties();
+        meta.setProperty("depth", "3");
+        meta.setProperty("theme", "caves");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LevelWriter wrtr = new LevelWriter(out);
+        wrtr.write("first", orig, meta);
+        wrtr.write(new Level("second", new Map(new String[] { "<.>" })));
+        wrtr.close();
+
+        LevelReader rdr =
+            new LevelReader(new ByteArrayInputStream(out.toByteArray()));
+
+        Level lvl = rdr.readLevel();
+        assertNotNull("Didn't read first level", lvl);
+        assertEquals("Bad name", "first", lvl.getName());
+        assertEquals("Bad picture", orig.getPicture(), lvl.getPicture());
+        assertEquals("Bad metadata", meta, rdr.getMetadata());
+
+        assertEquals("Bad number of up staircases", 1,
+                     rdr.getUpStairs().length);
+        assertEquals("Bad up X", 2, rdr.getUpStairs()[0].getX());
+        assertEquals("Bad up Y", 3, rdr.getUpStairs()[0].getY());
+        assertEquals("Bad number of down staircases", 1,
+                     rdr.getDownStairs().length);
+        assertEquals("Bad down X", 30, rdr.getDownStairs()[0].getX());
+
+        Map map = rdr.readMap();
+        assertNotNull("Didn't read second level", map);
+        assertEquals("Bad name", "second", rdr.getName());
+        assertEquals("Bad picture", "<.>", map.getPicture());
+        assertTrue("Should not have metadata", rdr.getMetadata().isEmpty());
+        assertEquals("Bad down staircase", 2,
+                     map.find(Terrain.DOWNSTAIRS).getX());
+
+        assertNull("Read too many levels", rdr.readLevel());
+        rdr.close();
+
+        Level first = Level.load(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("Bad name", "first", first.getName());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
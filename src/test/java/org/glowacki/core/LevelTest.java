@@ -308,6 +308,50 @@ public class LevelTest
                      0, lvl.getNumberOfPlayerCharacters());
     }
 
+    public void testNearby()
+        throws CoreException
+    {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            buf.append('.');
+        }
+
+        String[] template = new String[20];
+        for (int i = 0; i < template.length; i++) {
+            template[i] = buf.toString();
+        }
+        template[1] = ".<" + template[1].substring(2);
+
+        Level lvl = new Level("nearby", new Map(template));
+
+        MockCharacter near = new MockCharacter("near");
+        lvl.enterDown(near);
+        lvl.moveTo(near, 5, 4);
+
+        MockCharacter far = new MockCharacter("far");
+        lvl.enterDown(far);
+        lvl.moveTo(far, 30, 15);
+
+        assertEquals("Bad nearby count", 1,
+                     lvl.charactersWithin(3, 3, 3).size());
+        assertSame("Bad nearby character", near,
+                   lvl.charactersWithin(3, 3, 3).get(0));
+        assertEquals("Bad count for large radius", 2,
+                     lvl.charactersWithin(3, 3, 50).size());
+        assertEquals("Bad rectangle count", 1,
+                     lvl.charactersInRect(20, 10, 39, 19).size());
+
+        lvl.moveTo(far, 4, 4);
+        assertEquals("Moved character not found", 2,
+                     lvl.charactersWithin(3, 3, 3).size());
+        assertEquals("Moved character still found", 0,
+                     lvl.charactersInRect(20, 10, 39, 19).size());
+
+        lvl.exit(near);
+        assertEquals("Removed character still found", 1,
+                     lvl.charactersWithin(3, 3, 3).size());
+    }
+
     public static void main(String[] args)
     {
         TestRunner.run(suite());
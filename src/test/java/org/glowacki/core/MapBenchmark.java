@@ -0,0 +1,143 @@
+package org.glowacki.core;
+
+/**
+ * Compare memory use and throughput of <tt>Map</tt> against the original
+ * object-per-cell <tt>EntryArrayMap</tt>.
+ *
+ * Usage: MapBenchmark [width [height [rounds]]]
+ */
+public class MapBenchmark
+{
+    private static final int DEFAULT_SIZE = 1000;
+    private static final int DEFAULT_ROUNDS = 5;
+
+    private static String[] buildTemplate(int width, int height)
+    {
+        String[] template = new String[height];
+
+        StringBuilder buf = new StringBuilder(width);
+        for (int y = 0; y < height; y++) {
+            buf.setLength(0);
+            for (int x = 0; x < width; x++) {
+                if (y == 0 || y == height - 1 || x == 0 || x == width - 1) {
+                    buf.append('-');
+                } else if (x % 17 == 0 && y % 5 != 0) {
+                    buf.append('|');
+                } else if (x == 1 && y == 1) {
+                    buf.append('<');
+                } else if (x == width - 2 && y == height - 2) {
+                    buf.append('>');
+                } else if ((x + y) % 31 == 0) {
+                    buf.append('~');
+                } else {
+                    buf.append('.');
+                }
+            }
+            template[y] = buf.toString();
+        }
+
+        return template;
+    }
+
+    private static long usedMemory()
+    {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ie) {
+                // ignore interrupts
+            }
+        }
+
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long scanMap(Map map)
+        throws MapException
+    {
+        long sum = 0;
+        for (int y = 0; y <= map.getMaxY(); y++) {
+            for (int x = 0; x <= map.getMaxX(); x++) {
+                sum += map.getTerrain(x, y).ordinal();
+            }
+        }
+        return sum;
+    }
+
+    private static long scanMap(EntryArrayMap map)
+        throws MapException
+    {
+        long sum = 0;
+        for (int y = 0; y <= map.getMaxY(); y++) {
+            for (int x = 0; x <= map.getMaxX(); x++) {
+                sum += map.getTerrain(x, y).ordinal();
+            }
+        }
+        return sum;
+    }
+
+    private static void report(String name, long bytes, long buildNanos,
+                               long scanNanos, long cells)
+    {
+        System.out.format("%-14s %8.1f MB  build %7.1f ms" +
+                          "  scan %6.2f ns/cell%n", name,
+                          bytes / (1024.0 * 1024.0), buildNanos / 1.0E6,
+                          (double) scanNanos / (double) cells);
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command-line arguments
+     *
+     * @throws MapException if there is a problem
+     */
+    public static void main(String[] args)
+        throws MapException
+    {
+        final int width =
+            (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE);
+        final int height =
+            (args.length > 1 ? Integer.parseInt(args[1]) : width);
+        final int rounds =
+            (args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ROUNDS);
+
+        final String[] template = buildTemplate(width, height);
+        final long cells = (long) width * (long) height;
+
+        System.out.format("%dx%d map, %d rounds%n", width, height, rounds);
+
+        long checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            long base = usedMemory();
+            long start = System.nanoTime();
+            EntryArrayMap oldMap = new EntryArrayMap(template);
+            long built = System.nanoTime();
+            long oldBytes = usedMemory() - base;
+            long scanStart = System.nanoTime();
+            checksum += scanMap(oldMap);
+            long scanned = System.nanoTime();
+            report("EntryArrayMap", oldBytes, built - start,
+                   scanned - scanStart, cells);
+            oldMap = null;
+
+            base = usedMemory();
+            start = System.nanoTime();
+            Map newMap = new Map(template);
+            built = System.nanoTime();
+            long newBytes = usedMemory() - base;
+            scanStart = System.nanoTime();
+            checksum -= scanMap(newMap);
+            scanned = System.nanoTime();
+            report("Map", newBytes, built - start, scanned - scanStart,
+                   cells);
+            newMap = null;
+        }
+
+        if (checksum != 0) {
+            throw new Error("Maps returned different terrain");
+        }
+    }
+}
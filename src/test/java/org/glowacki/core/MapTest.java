@@ -6,76 +6,7 @@ import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 
 import org.glowacki.core.test.MapBuilder;
-
-class MockMapObject
-    implements IMapObject
-{
-    private String name;
-    private int x;
-    private int y;
-
-    MockMapObject(String name)
-    {
-        this.name = name;
-
-        clearPosition();
-    }
-
-    /**
-     * Clear the object's position.
-     */
-    public void clearPosition()
-    {
-        x = -1;
-        y = -1;
-    }
-
-    /**
-     * Return object's name.
-     *
-     * @return name
-     */
-    public String getName()
-    {
-        return name;
-    }
-    /**
-     * Get this point's X coordinate.
-     *
-     * @return X coordinate
-     */
-    public int getX()
-    {
-        return x;
-    }
-
-    /**
-     * Get this point's Y coordinate.
-     *
-     * @return Y coordinate
-     */
-    public int getY()
-    {
-        return y;
-    }
-
-    /**
-     * Set the object's position.
-     *
-     * @param x x coordinate
-     * @param y y coordinate
-     */
-    public void setPosition(int x, int y)
-    {
-        this.x = x;
-        this.y = y;
-    }
-
-    public String toString()
-    {
-        return String.format("%s[%d,%d]", name, x, y);
-    }
-}
+import org.glowacki.core.test.MockMapObject;
 
 public class MapTest
     extends TestCase
@@ -598,7 +529,322 @@ public class MapTest
 
         Map tmap = new Map(map);
 
+        MockMapObject obj = new MockMapObject("obj");
+        tmap.insertObject(obj, 1, 1);
+
+        int num = 0;
         for (MapEntry e : tmap.getEntries()) {
+            assertEquals("Bad terrain for " + e,
+                         tmap.getTerrain(e.getX(), e.getY()), e.getTerrain());
+            if (e.getX() == 1 && e.getY() == 1) {
+                assertEquals("Bad occupant for " + e, obj, e.getObject());
+            } else {
+                assertNull("Unexpected occupant for " + e, e.getObject());
+            }
+            num++;
+        }
+
+        assertEquals("Bad number of entries",
+                     (tmap.getMaxX() + 1) * (tmap.getMaxY() + 1), num);
+
+        MapEntry down = tmap.find(Terrain.DOWNSTAIRS);
+        assertNotNull("Cannot find down staircase", down);
+        assertEquals("Bad down staircase X", 2, down.getX());
+        assertEquals("Bad down staircase Y", 1, down.getY());
+        assertNull("Should not find up staircase", tmap.find(Terrain.UPSTAIRS));
+    }
+
+    public void testFindAll()
+        throws CoreException
+    {
+        final String[] map = new String[] {
+            "-----+---",
+            "|..~.+.>|",
+            "|<.~~...|",
+            "----+----",
+        };
+
+        Map tmap = new Map(map);
+
+        final Terrain[] types = new Terrain[] {
+            Terrain.DOOR, Terrain.WATER, Terrain.WALL, Terrain.UPSTAIRS,
+            Terrain.TUNNEL,
+        };
+
+        for (Terrain t : types) {
+            int num = 0;
+            int prev = -1;
+            for (MapEntry e : tmap.findAll(t)) {
+                assertEquals("Bad terrain at " + e, t, e.getTerrain());
+                final int idx = e.getY() * (tmap.getMaxX() + 1) + e.getX();
+                assertTrue("Entries out of order at " + e, idx > prev);
+                prev = idx;
+                num++;
+            }
+
+            assertEquals("Bad count for " + t, tmap.getTerrainCount(t), num);
+        }
+
+        assertEquals("Bad number of doors", 3,
+                     tmap.getTerrainCount(Terrain.DOOR));
+        assertEquals("Bad number of tunnels", 0,
+                     tmap.getTerrainCount(Terrain.TUNNEL));
+    }
+
+    public void testCopyOf()
+        throws CoreException
+    {
+        final String[] template = new String[] {
+            "-----+---",
+            "|..~.+.>|",
+            "|<.~~...|",
+            "----+----",
+        };
+
+        ChunkedMap src =
+            new ChunkedMap(9, 4, 4, 1, new TemplateChunkSource(template));
+
+        Map copy = Map.copyOf(src);
+        assertEquals("Bad picture", src.getPicture(), copy.getPicture());
+        for (int y = 0; y <= copy.getMaxY(); y++) {
+            for (int x = 0; x <= copy.getMaxX(); x++) {
+                assertEquals("Bad neighbor mask at " + x + "," + y,
+                             src.getNeighborMask(x, y),
+                             copy.getNeighborMask(x, y));
+            }
+        }
+        assertEquals("Bad number of doors", 3,
+                     copy.getTerrainCount(Terrain.DOOR));
+
+        // the copy is independent of the original
+        src.setTerrain(7, 1, Terrain.FLOOR);
+        assertEquals("Copy should keep its own terrain", Terrain.DOWNSTAIRS,
+                     copy.getTerrain(7, 1));
+    }
+
+    public void testSetTerrain()
+        throws CoreException
+    {
+        final String[] map = new String[] {
+            "------",
+            "|.<..|",
+            "|...>|",
+            "------",
+        };
+
+        Map tmap = new Map(map);
+
+        MapEntry up = tmap.find(Terrain.UPSTAIRS);
+        assertEquals("Bad up staircase X", 2, up.getX());
+        assertEquals("Bad up staircase Y", 1, up.getY());
+
+        tmap.setTerrain(1, 1, Terrain.UPSTAIRS);
+        up = tmap.find(Terrain.UPSTAIRS);
+        assertEquals("Bad new up staircase X", 1, up.getX());
+        assertEquals("Bad up staircase count", 2,
+                     tmap.getTerrainCount(Terrain.UPSTAIRS));
+
+        tmap.setTerrain(1, 1, Terrain.FLOOR);
+        tmap.setTerrain(2, 1, Terrain.FLOOR);
+        assertNull("Should not find up staircase",
+                   tmap.find(Terrain.UPSTAIRS));
+        assertEquals("Bad terrain", Terrain.FLOOR, tmap.getTerrain(2, 1));
+
+        MockMapObject obj = new MockMapObject("obj");
+        tmap.insertObject(obj, 3, 2);
+
+        try {
+            tmap.setTerrain(3, 2, Terrain.WALL);
+            fail("Should not be able to wall in an occupant");
+        } catch (CoreException ce) {
+            // expect this to fail
+        }
+
+        tmap.setTerrain(3, 2, Terrain.WATER);
+        assertEquals("Bad terrain", Terrain.WATER, tmap.getTerrain(3, 2));
+
+        try {
+            tmap.setTerrain(99, 2, Terrain.FLOOR);
+            fail("Should not be able to set terrain outside the map");
+        } catch (CoreException ce) {
+            // expect this to fail
+        }
+    }
+
+    public void testLargeIndex()
+        throws CoreException
+    {
+        final int size = 100;
+
+        String[] map = new String[size];
+        StringBuilder buf = new StringBuilder();
+        for (int y = 0; y < size; y++) {
+            buf.setLength(0);
+            for (int x = 0; x < size; x++) {
+                if (x == 90 && y == 95) {
+                    buf.append('>');
+                } else {
+                    buf.append('.');
+                }
+            }
+            map[y] = buf.toString();
+        }
+
+        Map tmap = new Map(map);
+
+        MapEntry down = tmap.find(Terrain.DOWNSTAIRS);
+        assertEquals("Bad down staircase X", 90, down.getX());
+        assertEquals("Bad down staircase Y", 95, down.getY());
+
+        tmap.setTerrain(5, 5, Terrain.WALL);
+        MapEntry floor = tmap.find(Terrain.FLOOR);
+        assertEquals("Bad first floor", 0, floor.getX());
+
+        int num = 0;
+        for (MapEntry e : tmap.findAll(Terrain.FLOOR)) {
+            num++;
+        }
+        assertEquals("Bad floor count", size * size - 2, num);
+        assertEquals("Bad floor total", num,
+                     tmap.getTerrainCount(Terrain.FLOOR));
+    }
+
+    public void testNeighborMask()
+        throws CoreException
+    {
+        final String[] map = new String[] {
+            "-----",
+            "|...|",
+            "|.<.|",
+            "-----",
+        };
+
+        Map tmap = new Map(map);
+
+        final int above = Direction.LEFT_UP.getBit() | Direction.UP.getBit() |
+            Direction.RIGHT_UP.getBit();
+        assertEquals("Bad center mask", 0xff & ~above,
+                     tmap.getNeighborMask(2, 1));
+        assertEquals("Bad corner mask",
+                     Direction.RIGHT.getBit() | Direction.RIGHT_DOWN.getBit() |
+                     Direction.DOWN.getBit(), tmap.getNeighborMask(1, 1));
+        assertEquals("Bad outer corner mask", Direction.RIGHT_DOWN.getBit(),
+                     tmap.getNeighborMask(0, 0));
+        assertEquals("Bad out-of-bounds mask", 0,
+                     tmap.getNeighborMask(-1, 0));
+
+        tmap.setTerrain(2, 2, Terrain.WALL);
+        assertEquals("Wall not removed from mask", 0,
+                     tmap.getNeighborMask(1, 1) &
+                     Direction.RIGHT_DOWN.getBit());
+
+        tmap.setTerrain(2, 3, Terrain.FLOOR);
+        tmap.setTerrain(2, 2, Terrain.WATER);
+
+        // compare every cached mask with the neighbors' terrain
+        for (int y = 0; y <= tmap.getMaxY(); y++) {
+            for (int x = 0; x <= tmap.getMaxX(); x++) {
+                int expected = 0;
+                for (Direction dir : Direction.values()) {
+                    Terrain t = tmap.tryGetTerrain(x + dir.getDx(),
+                                                   y + dir.getDy());
+                    if (dir.getBit() != 0 && t != null && t.isMovable()) {
+                        expected |= dir.getBit();
+                    }
+                }
+
+                assertEquals("Bad mask for [" + x + "," + y + "]", expected,
+                             tmap.getNeighborMask(x, y));
+            }
+        }
+    }
+
+    public void testPictureCache()
+        throws CoreException
+    {
+        final String[] map = new String[] {
+            "-----",
+            "|...|",
+            "|.<.|",
+            "-----",
+        };
+
+        Map tmap = new Map(map);
+
+        String pic = tmap.getPicture();
+        assertEquals("Bad picture", "-----\n|...|\n|.<.|\n-----", pic);
+        assertSame("Unchanged picture was rebuilt", pic, tmap.getPicture());
+
+        MockMapObject obj = new MockMapObject("obj");
+        tmap.insertObject(obj, 1, 1);
+        assertSame("Occupant changed picture", pic, tmap.getPicture());
+
+        tmap.setTerrain(2, 1, Terrain.WALL);
+        tmap.setTerrain(3, 1, Terrain.WALL);
+        assertEquals("Bad picture", "-----\n|.---\n|.<.|\n-----",
+                     tmap.getPicture());
+
+        tmap.setTerrain(3, 1, Terrain.WATER);
+        assertEquals("Bad picture", "-----\n|.|~|\n|.<.|\n-----",
+                     tmap.getPicture());
+    }
+
+    public void testTryMethods()
+        throws CoreException
+    {
+        final String[] map = new String[] {
+            "-----",
+            "|..~|",
+            "|.-.|",
+            "-----",
+        };
+
+        Map tmap = new Map(map);
+
+        assertFalse("(-1,0) should be out of bounds", tmap.isInBounds(-1, 0));
+        assertFalse("(5,0) should be out of bounds", tmap.isInBounds(5, 0));
+        assertFalse("(0,4) should be out of bounds", tmap.isInBounds(0, 4));
+        assertTrue("(4,3) should be in bounds", tmap.isInBounds(4, 3));
+
+        assertNull("Terrain outside map", tmap.tryGetTerrain(-1, 2));
+        assertNull("Terrain outside map", tmap.tryGetTerrain(2, 99));
+        assertEquals("Bad terrain", Terrain.WATER, tmap.tryGetTerrain(3, 1));
+        assertNull("Occupant outside map", tmap.tryGetOccupant(99, 1));
+
+        MockMapObject a = new MockMapObject("a");
+        MockMapObject b = new MockMapObject("b");
+
+        assertEquals("Bad insert", MoveStatus.OK, tmap.tryMoveTo(a, 1, 1));
+        assertEquals("Bad occupant", a, tmap.tryGetOccupant(1, 1));
+        assertEquals("Bad insert", MoveStatus.OK, tmap.tryMoveTo(b, 1, 2));
+
+        assertEquals("Should be occupied", MoveStatus.OCCUPIED,
+                     tmap.tryMoveDirection(a, Direction.DOWN));
+        assertEquals("Should be blocked", MoveStatus.BLOCKED,
+                     tmap.tryMoveDirection(a, Direction.RIGHT_DOWN));
+        assertEquals("Should be blocked by wall", MoveStatus.BLOCKED,
+                     tmap.tryMoveDirection(a, Direction.UP));
+        assertEquals("Bad position after failed moves", 1, a.getX());
+        assertEquals("Bad position after failed moves", 1, a.getY());
+
+        assertEquals("Should move", MoveStatus.OK,
+                     tmap.tryMoveDirection(a, Direction.RIGHT));
+        assertEquals("Bad X after move", 2, a.getX());
+        assertNull("Old position is still occupied",
+                   tmap.tryGetOccupant(1, 1));
+
+        MockMapObject c = new MockMapObject("c");
+        c.setPosition(3, 2);
+        assertEquals("Should not be on map", MoveStatus.NOT_ON_MAP,
+                     tmap.tryMoveTo(c, 3, 1));
+
+        try {
+            tmap.moveDirection(a, Direction.DOWN);
+            fail("Should not be able to move onto a wall");
+        } catch (CoreException ce) {
+            assertEquals("Bad exception message",
+                         "Terrain WALL at [2,2] is not movable",
+                         ce.getMessage());
         }
     }
 
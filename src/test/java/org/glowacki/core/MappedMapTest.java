@@ -0,0 +1,222 @@
+package org.glowacki.core;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.test.MockMapObject;
+
+public class MappedMapTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "------",
+        "|....|                  ----------",
+        "|....+#######           |.....>..|",
+        "|.<..|      ############+......~.|",
+        "|....|                  |......~~|",
+        "------                  ----------",
+    };
+
+    private File tmpFile;
+
+    public MappedMapTest(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+        throws IOException
+    {
+        tmpFile = File.createTempFile("terrain", ".dat");
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(MappedMapTest.class);
+    }
+
+    protected void tearDown()
+    {
+        tmpFile.delete();
+    }
+
+    public void testBadFile()
+        throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        out.write("not a terrain file".getBytes());
+        out.close();
+
+        try {
+            new MappedMap(tmpFile);
+            fail("Should not be able to open bad file");
+        } catch (MapException me) {
+            assertEquals("Bad exception message",
+                         tmpFile + " is not a terrain file", me.getMessage());
+        }
+
+        try {
+            new MappedMap(new File(tmpFile.getPath() + ".missing"));
+            fail("Should not be able to open missing file");
+        } catch (MapException me) {
+            assertNotNull("Missing cause", me.getCause());
+        }
+    }
+
+    public void testChunkSource()
+        throws CoreException
+    {
+        TerrainFile.convert(TEMPLATE, tmpFile);
+
+        TerrainFile tfile = new TerrainFile(tmpFile);
+        ChunkedMap map = new ChunkedMap(tfile.getWidth(), tfile.getHeight(),
+                                        4, 2, tfile);
+
+        assertEquals("Bad picture", new Map(TEMPLATE).getPicture(),
+                     map.getPicture());
+    }
+
+    public void testConvert()
+        throws CoreException
+    {
+        TerrainFile.convert(TEMPLATE, tmpFile);
+
+        Map flat = new Map(TEMPLATE);
+        MappedMap map = new MappedMap(tmpFile);
+
+        assertEquals("Bad max X", flat.getMaxX(), map.getMaxX());
+        assertEquals("Bad max Y", flat.getMaxY(), map.getMaxY());
+        assertEquals("Bad picture", flat.getPicture(), map.getPicture());
+
+        for (int y = 0; y <= flat.getMaxY(); y++) {
+            for (int x = 0; x <= flat.getMaxX(); x++) {
+                assertEquals("Bad terrain at " + x + "," + y,
+                             flat.getTerrain(x, y), map.getTerrain(x, y));
+            }
+        }
+
+        MockMapObject obj = new MockMapObject("obj");
+        IMapPoint pt = map.enterDown(obj);
+        assertEquals("Bad X", 2, pt.getX());
+        assertEquals("Bad Y", 3, pt.getY());
+
+        map.moveTo(obj, 3, 3);
+        assertEquals("Bad occupant", obj, map.getOccupant(3, 3));
+        assertNull("Old cell is still occupied", map.getOccupant(2, 3));
+
+        try {
+            map.moveTo(obj, 5, 3);
+            fail("Should not be able to move into a wall");
+        } catch (MapException me) {
+            // expect this to fail
+        }
+
+        map.removeObject(obj);
+        assertFalse("Object was not removed", map.isOccupied(3, 3));
+    }
+
+    private static void assertFindAll(IMap expected, IMap actual)
+    {
+        for (Terrain t : Terrain.values()) {
+            Iterator<MapEntry> iter = actual.findAll(t).iterator();
+            for (MapEntry entry : expected.findAll(t)) {
+                assertTrue("Missing " + t + " at " + entry, iter.hasNext());
+
+                MapEntry found = iter.next();
+                assertEquals("Bad " + t + " X", entry.getX(), found.getX());
+                assertEquals("Bad " + t + " Y", entry.getY(), found.getY());
+            }
+            assertFalse("Extra " + t + " entries", iter.hasNext());
+        }
+    }
+
+    public void testIndex()
+        throws CoreException
+    {
+        // enough floor that it is too common to be indexed
+        List<String> lines = new ArrayList<String>();
+        for (int y = 0; y < 30; y++) {
+            StringBuilder buf = new StringBuilder();
+            for (int x = 0; x < 30; x++) {
+                if (y == 21 && x == 17) {
+                    buf.append('>');
+                } else if (y == 4 && x == 9) {
+                    buf.append('<');
+                } else if (x == 0 || x == 29 || y == 0 || y == 29) {
+                    buf.append('|');
+                } else {
+                    buf.append('.');
+                }
+            }
+            lines.add(buf.toString());
+        }
+        String[] template = lines.toArray(new String[lines.size()]);
+
+        TerrainFile.convert(template, tmpFile);
+
+        TerrainFile tfile = new TerrainFile(tmpFile);
+        assertNull("Floor should not be indexed",
+                   tfile.getIndexedCells(Terrain.FLOOR));
+        assertEquals("Water should be indexed", 0,
+                     tfile.getIndexedCells(Terrain.WATER).length);
+
+        int[] cells = tfile.getIndexedCells(Terrain.DOWNSTAIRS);
+        assertEquals("Bad number of down staircases", 1, cells.length);
+        assertEquals("Bad down staircase", 21 * 30 + 17, cells[0]);
+
+        MappedMap map = new MappedMap(tfile);
+        assertFindAll(new Map(template), map);
+
+        IMapPoint pt = map.enterDown(new MockMapObject("obj"));
+        assertEquals("Bad X", 9, pt.getX());
+        assertEquals("Bad Y", 4, pt.getY());
+
+        MapEntry entry = map.find(Terrain.UPSTAIRS);
+        assertNotNull("Indexed entry should show its occupant",
+                      entry.getObject());
+    }
+
+    public void testVersion1()
+        throws CoreException, IOException
+    {
+        Map flat = new Map(TEMPLATE);
+        final int width = flat.getMaxX() + 1;
+        final int height = flat.getMaxY() + 1;
+
+        DataOutputStream out =
+            new DataOutputStream(new FileOutputStream(tmpFile));
+        out.writeInt(TerrainFile.MAGIC);
+        out.writeInt(1);
+        out.writeInt(width);
+        out.writeInt(height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                out.write(flat.getTerrain(x, y).ordinal());
+            }
+        }
+        out.close();
+
+        TerrainFile tfile = new TerrainFile(tmpFile);
+        assertNull("Version 1 file should not have an index",
+                   tfile.getIndexedCells(Terrain.UPSTAIRS));
+
+        MappedMap map = new MappedMap(tfile);
+        assertEquals("Bad picture", flat.getPicture(), map.getPicture());
+        assertFindAll(flat, map);
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -592,6 +592,79 @@ public class PlayerCharacterTest
         runPath(ch, 2, 1, 1, 2, 1);
     }
 
+    public void testMovePathAroundOccupant()
+        throws CoreException
+    {
+        final String[] template = new String[] {
+            "---------",
+            "|<......|",
+            "|.......|",
+            "---------",
+        };
+
+        Level lvl = new Level("detour", new Map(template));
+
+        PlayerCharacter ch = new PlayerCharacter("foo", 1, 2, 10, 10);
+        lvl.enterDown(ch);
+
+        MockCharacter blocker = new MockCharacter("blocker");
+        lvl.getMap().insertObject(blocker, 4, 1);
+
+        ch.buildPath(new PlayerPoint(7, 1));
+
+        int moves = 0;
+        while (ch.hasPath()) {
+            ch.movePath();
+            moves++;
+
+            assertFalse("Walked through blocker",
+                        ch.getX() == blocker.getX() &&
+                        ch.getY() == blocker.getY());
+        }
+
+        assertEquals("Bad number of moves", 6, moves);
+        assertEquals("Bad final X", 7, ch.getX());
+        assertEquals("Bad final Y", 1, ch.getY());
+    }
+
+    public void testSetLevelDropsReplanner()
+        throws CoreException
+    {
+        final String[] template = new String[] {
+            "-------",
+            "|<...>|",
+            "-------",
+        };
+
+        final int[] listeners = new int[1];
+        Map map = new Map(template) {
+                public void addListener(IMapListener listener)
+                {
+                    listeners[0]++;
+                    super.addListener(listener);
+                }
+
+                public void removeListener(IMapListener listener)
+                {
+                    listeners[0]--;
+                    super.removeListener(listener);
+                }
+            };
+
+        Level lvl = new Level("old", map);
+
+        PlayerCharacter ch = new PlayerCharacter("foo", 1, 2, 10, 10);
+        lvl.enterDown(ch);
+
+        // the level's own finders stay registered, but not the replanner
+        ch.buildPath(new PlayerPoint(4, 1));
+        final int before = listeners[0];
+
+        ch.setLevel(new Level("new", new Map(template)));
+        assertEquals("Old map should not keep the replanner", before - 1,
+                     listeners[0]);
+    }
+
     public static void main(String[] args)
     {
         TestRunner.run(suite());
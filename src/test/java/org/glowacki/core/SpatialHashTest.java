@@ -0,0 +1,102 @@
+package org.glowacki.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.test.MockMapObject;
+
+public class SpatialHashTest
+    extends TestCase
+{
+    public SpatialHashTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(SpatialHashTest.class);
+    }
+
+    public void testRandom()
+    {
+        final int width = 100;
+        final int height = 60;
+
+        SpatialHash hash = new SpatialHash(width, height, 7);
+
+        java.util.Random random = new java.util.Random(1234L);
+
+        MockMapObject[] objs = new MockMapObject[300];
+        for (int i = 0; i < objs.length; i++) {
+            objs[i] = new MockMapObject("obj" + i);
+            objs[i].setPosition(random.nextInt(width),
+                                random.nextInt(height));
+            hash.add(objs[i], objs[i].getX(), objs[i].getY());
+        }
+        assertEquals("Bad size", objs.length, hash.size());
+
+        for (int i = 0; i < objs.length; i += 3) {
+            final int oldX = objs[i].getX();
+            final int oldY = objs[i].getY();
+            objs[i].setPosition(random.nextInt(width),
+                                random.nextInt(height));
+            hash.move(objs[i], oldX, oldY);
+        }
+
+        for (int i = 1; i < objs.length; i += 10) {
+            assertTrue("Could not remove " + objs[i],
+                       hash.remove(objs[i], objs[i].getX(), objs[i].getY()));
+            objs[i] = null;
+        }
+
+        List<IMapObject> found = new ArrayList<IMapObject>();
+        for (int n = 0; n < 50; n++) {
+            final int x = random.nextInt(width);
+            final int y = random.nextInt(height);
+            final int radius = random.nextInt(20);
+
+            int expected = 0;
+            for (int i = 0; i < objs.length; i++) {
+                if (objs[i] != null) {
+                    final int dx = objs[i].getX() - x;
+                    final int dy = objs[i].getY() - y;
+                    if (dx * dx + dy * dy <= radius * radius) {
+                        expected++;
+                    }
+                }
+            }
+
+            found.clear();
+            assertEquals("Bad count near " + x + "," + y, expected,
+                         hash.findWithin(x, y, radius, found));
+            assertEquals("Bad result size", expected, found.size());
+
+            int inRect = 0;
+            for (int i = 0; i < objs.length; i++) {
+                if (objs[i] != null && objs[i].getX() >= x - radius &&
+                    objs[i].getX() <= x + radius &&
+                    objs[i].getY() >= y - radius &&
+                    objs[i].getY() <= y + radius)
+                {
+                    inRect++;
+                }
+            }
+
+            found.clear();
+            assertEquals("Bad rectangle count", inRect,
+                         hash.findInRect(x - radius, y - radius, x + radius,
+                                         y + radius, found));
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
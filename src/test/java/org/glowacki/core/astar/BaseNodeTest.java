@@ -1,5 +1,7 @@
 package org.glowacki.core.astar;
 
+import org.glowacki.core.Terrain;
+
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -18,6 +20,31 @@ public class BaseNodeTest
         return new TestSuite(BaseNodeTest.class);
     }
 
+    public void testCosts()
+        throws PathException
+    {
+        BaseNode start = new BaseNode(0, 0);
+        start.setStart();
+
+        BaseNode diag = new BaseNode(1, 1);
+        diag.setParent(start);
+        assertEquals("Bad diagonal cost", GridPathFinder.DIAGONAL,
+                     diag.getParentCost(), 0.00001);
+
+        BaseNode water = new BaseNode(2, 1, Terrain.WATER.getCost());
+        water.setParent(diag);
+        assertEquals("Bad water cost",
+                     GridPathFinder.DIAGONAL + Terrain.WATER.getCost(),
+                     water.getParentCost(), 0.00001);
+
+        BaseNode goal = new BaseNode(5, 3);
+        assertEquals("Bad pass-through cost",
+                     water.getParentCost() + 2.0 * GridPathFinder.DIAGONAL +
+                     1.0, water.getPassThrough(goal), 0.00001);
+
+        assertEquals("Start should be free", 0.0, start.getParentCost());
+    }
+
     public void testSimple()
     {
         BaseNode parent = new BaseNode(15, 15);
@@ -0,0 +1,202 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.ChunkedMap;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.TemplateChunkSource;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class BatchPathFinderTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "-----------",
+        "|.........|",
+        "|.-------.|",
+        "|.|.....|.|",
+        "|.|.....|.|",
+        "|.-------.|",
+        "|.........|",
+        "-----------",
+    };
+
+    public BatchPathFinderTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(BatchPathFinderTest.class);
+    }
+
+    public void testBadRequest()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        List<PathRequest> requests = new ArrayList<PathRequest>();
+        requests.add(new PathRequest(point(1, 1), point(9, 6)));
+        requests.add(new PathRequest(point(1, 1), point(1, 99)));
+
+        BatchPathFinder batch = new BatchPathFinder(map);
+        try {
+            batch.findPaths(requests);
+            fail("Bad end point should fail");
+        } catch (PathException pe) {
+            // expected
+        }
+
+        try {
+            new BatchPathFinder(map, null, 0);
+            fail("Should not be able to create a finder without tasks");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    private static List<DirectionPath> findEach(Map map,
+                                                List<PathRequest> requests)
+        throws PathException
+    {
+        JumpPointPathFinder single = new JumpPointPathFinder(map);
+
+        List<DirectionPath> list = new ArrayList<DirectionPath>();
+        for (PathRequest req : requests) {
+            list.add(single.findDirectionPath(req.getStart(),
+                                              req.getGoal()));
+        }
+
+        return list;
+    }
+
+    private static List<PathRequest> randomRequests(int size, Random rand)
+    {
+        List<PathRequest> requests = new ArrayList<PathRequest>();
+        for (int i = 0; i < 50; i++) {
+            IMapPoint start =
+                point(rand.nextInt(size - 2) + 1, rand.nextInt(size - 2) + 1);
+            IMapPoint goal =
+                point(rand.nextInt(size - 2) + 1, rand.nextInt(size - 2) + 1);
+            requests.add(new PathRequest(start, goal));
+        }
+
+        return requests;
+    }
+
+    public void testChunkedMap()
+        throws MapException
+    {
+        final int size = 40;
+
+        Random rand = new Random(123);
+
+        String[] template = PathFinderBenchmark.buildTemplate(size, rand);
+        Map flat = new Map(template);
+
+        // only two chunks are cached, so reads keep evicting chunks
+        ChunkedMap map = new ChunkedMap(size, size, 8, 2,
+                                        new TemplateChunkSource(template));
+
+        List<PathRequest> requests = randomRequests(size, rand);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            BatchPathFinder batch = new BatchPathFinder(map, pool, 4);
+            map.addListener(batch);
+
+            assertEquals("Bad paths", findEach(flat, requests),
+                         batch.findPaths(requests));
+
+            // block a cell on one of the paths
+            DirectionPath path = null;
+            for (DirectionPath p : findEach(flat, requests)) {
+                if (p != null && p.size() > 2) {
+                    path = p;
+                    break;
+                }
+            }
+            assertNotNull("No path long enough to block", path);
+
+            IMapPoint pt = path.toPoints().get(1);
+            flat.setTerrain(pt.getX(), pt.getY(), Terrain.WALL);
+            map.setTerrain(pt.getX(), pt.getY(), Terrain.WALL);
+
+            assertEquals("Bad paths after terrain change",
+                         findEach(flat, requests),
+                         batch.findPaths(requests));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testMatchesSingle()
+        throws MapException
+    {
+        final int size = 40;
+
+        Random rand = new Random(99);
+
+        String[] template = PathFinderBenchmark.buildTemplate(size, rand);
+        Map map = new Map(template);
+
+        List<PathRequest> requests = randomRequests(size, rand);
+        List<DirectionPath> expected = findEach(map, requests);
+
+        assertEquals("Bad serial paths", expected,
+                     new BatchPathFinder(map).findPaths(requests));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int tasks = 1; tasks <= 8; tasks++) {
+                BatchPathFinder batch =
+                    new BatchPathFinder(map, pool, tasks);
+
+                // run twice so reused finders are checked as well
+                assertEquals("Bad paths with " + tasks + " tasks", expected,
+                             batch.findPaths(requests));
+                assertEquals("Bad paths with " + tasks + " tasks", expected,
+                             batch.findPaths(requests));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testUnreachable()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        List<PathRequest> requests = new ArrayList<PathRequest>();
+        requests.add(new PathRequest(point(1, 1), point(4, 3)));
+        requests.add(new PathRequest(point(1, 1), point(9, 6)));
+
+        BatchPathFinder batch = new BatchPathFinder(map);
+        batch.setComponents(new ConnectedComponents(map));
+
+        List<DirectionPath> paths = batch.findPaths(requests);
+        assertNull("Path into a closed room should not exist", paths.get(0));
+        assertNotNull("Corridor path should exist", paths.get(1));
+        assertEquals("Bad path length", 12, paths.get(1).size());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,175 @@
+package org.glowacki.core.astar;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class ConnectedComponentsTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "-----------",
+        "|.........|",
+        "|.-------.|",
+        "|.|.....|.|",
+        "|.|.....|.|",
+        "|.-------.|",
+        "|.........|",
+        "-----------",
+    };
+
+    public ConnectedComponentsTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ConnectedComponentsTest.class);
+    }
+
+    public void testBasic()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        ConnectedComponents comps = new ConnectedComponents(map);
+        map.addListener(comps);
+
+        assertEquals("Bad number of components", 2, comps.getNumComponents());
+        assertEquals("Bad corridor size", 26, comps.getComponentSize(1, 1));
+        assertEquals("Bad room size", 10, comps.getComponentSize(4, 3));
+        assertEquals("Wall should not be in a component",
+                     ConnectedComponents.NONE, comps.getComponent(0, 0));
+        assertEquals("Wall should have no size", 0,
+                     comps.getComponentSize(0, 0));
+        assertEquals("Outside should not be in a component",
+                     ConnectedComponents.NONE, comps.getComponent(-1, 0));
+
+        assertTrue("Corridor should be connected",
+                   comps.isConnected(1, 1, 9, 6));
+        assertFalse("Room should not be connected",
+                    comps.isConnected(1, 1, 4, 3));
+        assertFalse("Wall should not be reachable",
+                    comps.isConnected(1, 1, 2, 2));
+        assertTrue("Wall should reach its neighbors",
+                   comps.isConnected(2, 2, 1, 1));
+
+        // cutting the corridor on both sides splits it
+        map.setTerrain(5, 1, Terrain.WALL);
+        assertEquals("Bad number of components", 2, comps.getNumComponents());
+        map.setTerrain(5, 6, Terrain.WALL);
+        assertEquals("Bad number of components", 3, comps.getNumComponents());
+        assertFalse("Corridor should be split",
+                    comps.isConnected(1, 1, 9, 1));
+        assertEquals("Bad piece size", 12, comps.getComponentSize(1, 1));
+        assertEquals("Bad piece size", 12, comps.getComponentSize(9, 1));
+
+        // opening a door joins the room to one piece
+        map.setTerrain(3, 2, Terrain.DOOR);
+        assertEquals("Bad number of components", 2, comps.getNumComponents());
+        assertEquals("Bad piece size", 23, comps.getComponentSize(4, 3));
+        assertEquals("Bad component", comps.getComponent(1, 1),
+                     comps.getComponent(4, 3));
+
+        // a cell in the middle of the room can't split it
+        final int relabeled = comps.getNumRelabeled();
+        map.setTerrain(5, 3, Terrain.WALL);
+        assertEquals("Bad piece size", 22, comps.getComponentSize(4, 3));
+        assertEquals("Closing a room cell should not flood fill", relabeled,
+                     comps.getNumRelabeled());
+    }
+
+    public void testIncremental()
+        throws MapException
+    {
+        final int size = 24;
+
+        Random rand = new Random(321);
+
+        String[] template = PathFinderBenchmark.buildTemplate(size, rand);
+        Map map = new Map(template);
+
+        ConnectedComponents comps = new ConnectedComponents(map);
+        map.addListener(comps);
+
+        for (int n = 0; n < 300; n++) {
+            final int x = rand.nextInt(size - 2) + 1;
+            final int y = rand.nextInt(size - 2) + 1;
+            if (map.getTerrain(x, y).isMovable()) {
+                map.setTerrain(x, y, Terrain.WALL);
+            } else {
+                map.setTerrain(x, y, Terrain.FLOOR);
+            }
+
+            ConnectedComponents fresh = new ConnectedComponents(map);
+            assertEquals("Bad number of components after change #" + n,
+                         fresh.getNumComponents(), comps.getNumComponents());
+
+            for (int i = 0; i < 20; i++) {
+                final int ax = rand.nextInt(size);
+                final int ay = rand.nextInt(size);
+                final int bx = rand.nextInt(size);
+                final int by = rand.nextInt(size);
+
+                assertEquals("Bad connection after change #" + n,
+                             fresh.isConnected(ax, ay, bx, by),
+                             comps.isConnected(ax, ay, bx, by));
+                assertEquals("Bad size after change #" + n,
+                             fresh.getComponentSize(ax, ay),
+                             comps.getComponentSize(ax, ay));
+            }
+        }
+    }
+
+    public void testPathFinders()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        ConnectedComponents comps = new ConnectedComponents(map);
+        map.addListener(comps);
+
+        GridPathFinder grid = new GridPathFinder(map);
+        assertNull("Path into a closed room should not exist",
+                   grid.findBestPath(point(1, 1), point(4, 3)));
+        assertTrue("Search should have explored the corridor",
+                   grid.getNumExpanded() > 0);
+
+        grid.setComponents(comps);
+        assertNull("Path into a closed room should not exist",
+                   grid.findBestPath(point(1, 1), point(4, 3)));
+        assertEquals("Unreachable goal should not be searched", 0,
+                     grid.getNumExpanded());
+        assertNotNull("Corridor path should exist",
+                      grid.findDirectionPath(point(1, 1), point(9, 6)));
+
+        MapPathFinder astar = new MapPathFinder(map);
+        astar.setComponents(comps);
+        assertNull("Path into a closed room should not exist",
+                   astar.findBestPath(point(1, 1), point(4, 3)));
+
+        HierarchicalPathFinder hpa = new HierarchicalPathFinder(map, 4);
+        hpa.setComponents(comps);
+        assertNull("Path into a closed room should not exist",
+                   hpa.findPath(point(1, 1), point(4, 3)));
+
+        map.setTerrain(4, 2, Terrain.DOOR);
+        assertNotNull("Path through the door should exist",
+                      grid.findBestPath(point(1, 1), point(4, 3)));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
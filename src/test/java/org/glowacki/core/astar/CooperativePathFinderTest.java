@@ -0,0 +1,272 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+class Agent
+    implements IMapPoint
+{
+    int x;
+    int y;
+
+    Agent(int x, int y)
+    {
+        this.x = x;
+        this.y = y;
+    }
+
+    public int getX()
+    {
+        return x;
+    }
+
+    public int getY()
+    {
+        return y;
+    }
+
+    public String toString()
+    {
+        return "Agent@" + x + "," + y;
+    }
+}
+
+public class CooperativePathFinderTest
+    extends TestCase
+{
+    private static final String[] CORRIDOR = new String[] {
+        "-----------",
+        "|.........|",
+        "|----.----|",
+        "-----------",
+    };
+
+    public CooperativePathFinderTest(String name)
+    {
+        super(name);
+    }
+
+    private static void assertNoConflicts(Agent[] agents, int[] oldX,
+                                          int[] oldY)
+    {
+        for (int i = 0; i < agents.length; i++) {
+            for (int j = i + 1; j < agents.length; j++) {
+                assertFalse("Agents " + i + " and " + j + " collided",
+                            agents[i].x == agents[j].x &&
+                            agents[i].y == agents[j].y);
+                assertFalse("Agents " + i + " and " + j + " swapped",
+                            agents[i].x == oldX[j] &&
+                            agents[i].y == oldY[j] &&
+                            agents[j].x == oldX[i] &&
+                            agents[j].y == oldY[i]);
+            }
+        }
+    }
+
+    /**
+     * Walk agents along their windowed plans, replanning every turn.
+     */
+    private static int simulate(CooperativePathFinder finder,
+                                Agent[] agents, IMapPoint[] goals,
+                                int maxTurns)
+        throws PathException
+    {
+        List<PathRequest> requests = new ArrayList<PathRequest>();
+        for (int i = 0; i < agents.length; i++) {
+            requests.add(new PathRequest(agents[i], goals[i]));
+        }
+
+        int[] oldX = new int[agents.length];
+        int[] oldY = new int[agents.length];
+
+        for (int turn = 0; turn < maxTurns; turn++) {
+            boolean done = true;
+            for (int i = 0; i < agents.length; i++) {
+                if (agents[i].x != goals[i].getX() ||
+                    agents[i].y != goals[i].getY())
+                {
+                    done = false;
+                    break;
+                }
+            }
+            if (done) {
+                return turn;
+            }
+
+            List<List<IMapPoint>> paths = finder.findPaths(requests);
+            for (int i = 0; i < agents.length; i++) {
+                oldX[i] = agents[i].x;
+                oldY[i] = agents[i].y;
+
+                List<IMapPoint> path = paths.get(i);
+                assertNotNull("No path for agent " + i + " on turn " + turn,
+                              path);
+                if (path.size() > 0) {
+                    assertTrue("Step is not adjacent",
+                               Math.abs(path.get(0).getX() - oldX[i]) <= 1 &&
+                               Math.abs(path.get(0).getY() - oldY[i]) <= 1);
+
+                    agents[i].x = path.get(0).getX();
+                    agents[i].y = path.get(0).getY();
+                }
+            }
+
+            assertNoConflicts(agents, oldX, oldY);
+
+            finder.advance();
+        }
+
+        fail("Agents did not reach their goals in " + maxTurns + " turns");
+        return -1;
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(CooperativePathFinderTest.class);
+    }
+
+    public void testBadPoint()
+        throws MapException
+    {
+        Map map = new Map(CORRIDOR);
+
+        CooperativePathFinder finder = new CooperativePathFinder(map);
+        try {
+            finder.findPath(new Agent(1, 1), point(1, 99));
+            fail("Bad goal should fail");
+        } catch (PathException pe) {
+            // expected
+        }
+
+        try {
+            new CooperativePathFinder(map, 0);
+            fail("Should not be able to create a finder without a window");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testCrossing()
+        throws MapException
+    {
+        Map map = new Map(CORRIDOR);
+
+        Agent[] agents = new Agent[] { new Agent(1, 1), new Agent(9, 1) };
+        IMapPoint[] goals = new IMapPoint[] { point(9, 1), point(1, 1) };
+
+        CooperativePathFinder finder = new CooperativePathFinder(map);
+        final int turns = simulate(finder, agents, goals, 40);
+
+        // the first agent walks straight through, while the second
+        // ducks into the side pocket and waits for it to pass
+        assertTrue("Took " + turns + " turns", turns < 20);
+    }
+
+    public void testGoalReserved()
+        throws MapException
+    {
+        Map map = new Map(CORRIDOR);
+
+        Agent parked = new Agent(4, 1);
+        Agent walker = new Agent(1, 1);
+
+        CooperativePathFinder finder = new CooperativePathFinder(map, 8);
+        List<IMapPoint> path = finder.findPath(parked, point(4, 1));
+        assertNotNull("No path for agent at its goal", path);
+        assertEquals("Agent at its goal should not move", 0, path.size());
+
+        path = finder.findPath(walker, point(9, 1));
+        assertNotNull("No path for walker", path);
+        for (IMapPoint pt : path) {
+            assertFalse("Walker stepped onto parked agent",
+                        pt.getX() == 4 && pt.getY() == 1);
+        }
+
+        // once released, the corridor is clear again
+        finder.release(parked);
+        path = finder.findPath(walker, point(9, 1));
+        assertEquals("Bad path length", 8, path.size());
+    }
+
+    public void testMovingGoal()
+        throws MapException, PathException
+    {
+        final int size = 100;
+
+        String[] template = new String[size];
+        StringBuilder buf = new StringBuilder();
+        for (int y = 0; y < size; y++) {
+            buf.setLength(0);
+            for (int x = 0; x < size; x++) {
+                if (y == 0 || y == size - 1 || x == 0 || x == size - 1) {
+                    buf.append('-');
+                } else {
+                    buf.append('.');
+                }
+            }
+            template[y] = buf.toString();
+        }
+
+        Map map = new Map(template);
+
+        CooperativePathFinder finder = new CooperativePathFinder(map, 8);
+
+        Agent agent = new Agent(10, 50);
+        for (int goalX = 30; goalX < 40; goalX++) {
+            final int before = finder.getNumDistanceExpanded();
+
+            List<IMapPoint> path = finder.findPath(agent, point(goalX, 50));
+            assertNotNull("No path to " + goalX, path);
+            assertEquals("Bad first step toward " + goalX, agent.x + 1,
+                         path.get(0).getX());
+
+            // each new goal should only search near the route, rather
+            // than across the whole map
+            final int expanded = finder.getNumDistanceExpanded() - before;
+            assertTrue("Expanded " + expanded + " cells for goal " + goalX,
+                       expanded < size * size / 10);
+
+            agent.x = path.get(0).getX();
+            agent.y = path.get(0).getY();
+            finder.advance();
+        }
+    }
+
+    public void testSinglePath()
+        throws MapException
+    {
+        Map map = new Map(CORRIDOR);
+
+        CooperativePathFinder finder = new CooperativePathFinder(map, 4);
+
+        Agent agent = new Agent(1, 1);
+        List<IMapPoint> path = finder.findPath(agent, point(9, 1));
+        assertNotNull("No path", path);
+        assertEquals("Path should stop at the window", 4, path.size());
+        assertEquals("Bad last point", 5, path.get(3).getX());
+
+        assertTrue("Path should be reserved",
+                   finder.getReservations().isReserved(5 + 11, 4,
+                                                        new Object()));
+
+        finder.release(agent);
+        assertEquals("Release left reservations", 0,
+                     finder.getReservations().size());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,183 @@
+package org.glowacki.core.astar;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class DStarLitePathFinderTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "-----------",
+        "|.........|",
+        "|.-------.|",
+        "|.|.....|.|",
+        "|.|.....|.|",
+        "|.-------.|",
+        "|.........|",
+        "-----------",
+    };
+
+    private static final double EPSILON = 0.0001;
+
+    public DStarLitePathFinderTest(String name)
+    {
+        super(name);
+    }
+
+    private static double getGridCost(Map map, int sx, int sy, int gx,
+                                      int gy)
+    {
+        GridPathFinder grid = new GridPathFinder(map);
+
+        final int width = map.getMaxX() + 1;
+        final int goal = gy * width + gx;
+        if (!grid.search(sy * width + sx, goal)) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return grid.getCost(goal);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(DStarLitePathFinderTest.class);
+    }
+
+    public void testBlocked()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        DStarLitePathFinder finder = new DStarLitePathFinder(map);
+        finder.plan(point(1, 1), point(9, 1));
+
+        assertEquals("Bad cost", 8.0, finder.getCost(), EPSILON);
+        IMapPoint step = finder.getNextStep();
+        assertEquals("Bad step X", 2, step.getX());
+        assertEquals("Bad step Y", 1, step.getY());
+
+        // walk two steps, then find the corridor blocked
+        finder.moveStart(3, 1);
+        finder.setBlocked(5, 1, true);
+        assertTrue("Cell should be blocked", finder.isBlocked(5, 1));
+
+        Map walls = new Map(TEMPLATE);
+        walls.setTerrain(5, 1, Terrain.WALL);
+        assertEquals("Bad detour cost", getGridCost(walls, 3, 1, 9, 1),
+                     finder.getCost(), EPSILON);
+        step = finder.getNextStep();
+        assertEquals("Bad detour X", 2, step.getX());
+        assertEquals("Bad detour Y", 1, step.getY());
+
+        // the blocker leaves
+        finder.setBlocked(5, 1, false);
+        assertFalse("Cell should not be blocked", finder.isBlocked(5, 1));
+        assertEquals("Bad cost", 6.0, finder.getCost(), EPSILON);
+
+        // both ways blocked
+        finder.setBlocked(5, 1, true);
+        finder.setBlocked(1, 4, true);
+        assertEquals("Goal should be unreachable", Double.POSITIVE_INFINITY,
+                     finder.getCost());
+        assertNull("Should be no step", finder.getNextStep());
+
+        // a new plan forgets the blocked cells
+        finder.plan(point(3, 1), point(9, 1));
+        assertFalse("Cell should not be blocked", finder.isBlocked(5, 1));
+        assertEquals("Bad cost", 6.0, finder.getCost(), EPSILON);
+
+        try {
+            finder.plan(point(1, 1), point(20, 1));
+            fail("Bad goal should fail");
+        } catch (PathException pe) {
+            // expected
+        }
+    }
+
+    public void testMatchesSearch()
+        throws MapException
+    {
+        final int size = 40;
+
+        Random rand = new Random(123);
+
+        for (int n = 0; n < 10; n++) {
+            String[] template = PathFinderBenchmark.buildTemplate(size, rand);
+
+            Map map = new Map(template);
+            Map walls = new Map(template);
+
+            // walk between opposite corners
+            IMapPoint start = point(1, 1);
+            IMapPoint goal = point(size - 2, size - 2);
+            for (Map m : new Map[] { map, walls }) {
+                m.setTerrain(start.getX(), start.getY(), Terrain.FLOOR);
+                m.setTerrain(goal.getX(), goal.getY(), Terrain.FLOOR);
+            }
+
+            DStarLitePathFinder finder = new DStarLitePathFinder(map);
+            finder.plan(start, goal);
+
+            int x = start.getX();
+            int y = start.getY();
+            while (x != goal.getX() || y != goal.getY()) {
+                assertEquals("Bad cost from [" + x + "," + y + "]",
+                             getGridCost(walls, x, y, goal.getX(),
+                                         goal.getY()),
+                             finder.getCost(), EPSILON);
+
+                IMapPoint step = finder.getNextStep();
+                if (step == null) {
+                    break;
+                }
+
+                // every few steps, something wanders into the path
+                if (rand.nextInt(3) == 0 &&
+                    (step.getX() != goal.getX() || step.getY() != goal.getY()))
+                {
+                    finder.setBlocked(step.getX(), step.getY(), true);
+                    walls.setTerrain(step.getX(), step.getY(), Terrain.WALL);
+                    continue;
+                }
+
+                x = step.getX();
+                y = step.getY();
+                finder.moveStart(x, y);
+            }
+        }
+    }
+
+    public void testTerrainChange()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        DStarLitePathFinder finder = new DStarLitePathFinder(map);
+        map.addListener(finder);
+        finder.plan(point(1, 1), point(1, 6));
+
+        assertEquals("Bad cost", 5.0, finder.getCost(), EPSILON);
+
+        map.setTerrain(1, 3, Terrain.WALL);
+        assertEquals("Bad cost", getGridCost(map, 1, 1, 1, 6),
+                     finder.getCost(), EPSILON);
+
+        map.setTerrain(1, 3, Terrain.WATER);
+        assertEquals("Bad cost", 5.2, finder.getCost(), EPSILON);
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,196 @@
+package org.glowacki.core.astar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class DirectionPathTest
+    extends TestCase
+{
+    public DirectionPathTest(String name)
+    {
+        super(name);
+    }
+
+    private static void assertPoints(List<IMapPoint> expected,
+                                     DirectionPath path)
+    {
+        List<IMapPoint> actual = path.toPoints();
+        assertEquals("Bad path length", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Bad X for step #" + i, expected.get(i).getX(),
+                         actual.get(i).getX());
+            assertEquals("Bad Y for step #" + i, expected.get(i).getY(),
+                         actual.get(i).getY());
+        }
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(DirectionPathTest.class);
+    }
+
+    public void testBasic()
+        throws PathException
+    {
+        List<IMapPoint> points = new ArrayList<IMapPoint>();
+        points.add(point(3, 2));
+        points.add(point(4, 3));
+        points.add(point(4, 4));
+
+        DirectionPath path = DirectionPath.fromPoints(point(2, 2), points);
+        assertEquals("Bad size", 3, path.size());
+        assertEquals("Bad start X", 2, path.getStartX());
+        assertEquals("Bad start Y", 2, path.getStartY());
+        assertEquals("Bad end X", 4, path.getEndX());
+        assertEquals("Bad end Y", 4, path.getEndY());
+        assertEquals("Bad direction", Direction.RIGHT, path.getDirection(0));
+        assertEquals("Bad direction", Direction.RIGHT_DOWN,
+                     path.getDirection(1));
+        assertEquals("Bad direction", Direction.DOWN, path.getDirection(2));
+        assertPoints(points, path);
+
+        DirectionPath.Cursor cursor = path.iterator();
+        assertEquals("Bad direction", Direction.RIGHT,
+                     cursor.nextDirection());
+        assertEquals("Bad cursor X", 3, cursor.getX());
+        assertEquals("Bad cursor Y", 2, cursor.getY());
+        IMapPoint pt = cursor.next();
+        assertEquals("Bad X", 4, pt.getX());
+        assertEquals("Bad Y", 3, pt.getY());
+
+        DirectionPath tail = path.suffix(1);
+        assertEquals("Bad suffix start X", 3, tail.getStartX());
+        assertPoints(points.subList(1, points.size()), tail);
+        assertEquals("Empty suffix should end at the goal", 0,
+                     path.suffix(path.size()).size());
+
+        points.add(point(6, 4));
+        try {
+            DirectionPath.fromPoints(point(2, 2), points);
+            fail("Gap in points should fail");
+        } catch (PathException pe) {
+            // expected
+        }
+    }
+
+    public void testConcatAndReverse()
+        throws PathException
+    {
+        List<IMapPoint> points = new ArrayList<IMapPoint>();
+        points.add(point(1, 0));
+        points.add(point(2, 1));
+        DirectionPath first = DirectionPath.fromPoints(point(0, 0), points);
+
+        points.clear();
+        points.add(point(2, 2));
+        DirectionPath second = DirectionPath.fromPoints(point(2, 1), points);
+
+        DirectionPath both = first.concat(second);
+        assertEquals("Bad size", 3, both.size());
+        assertEquals("Bad end X", 2, both.getEndX());
+        assertEquals("Bad end Y", 2, both.getEndY());
+
+        DirectionPath back = both.reverse();
+        assertEquals("Bad start X", 2, back.getStartX());
+        assertEquals("Bad start Y", 2, back.getStartY());
+        assertEquals("Bad direction", Direction.UP, back.getDirection(0));
+        assertEquals("Bad direction", Direction.LEFT_UP,
+                     back.getDirection(1));
+        assertEquals("Bad direction", Direction.LEFT, back.getDirection(2));
+        assertEquals("Reversing twice should be a no-op", both,
+                     back.reverse());
+
+        // suffixes share steps, but concatenate like any other path
+        assertEquals("Bad concatenation", both,
+                     both.suffix(0).concat(both.suffix(3)));
+
+        try {
+            second.concat(first);
+            fail("Disconnected paths should not be concatenated");
+        } catch (PathException pe) {
+            // expected
+        }
+    }
+
+    public void testFinder()
+        throws MapException
+    {
+        final int size = 30;
+
+        Random rand = new Random(17);
+
+        String[] template = PathFinderBenchmark.buildTemplate(size, rand);
+        Map map = new Map(template);
+
+        JumpPointPathFinder jps = new JumpPointPathFinder(map);
+        for (int i = 0; i < 20; i++) {
+            IMapPoint start =
+                point(rand.nextInt(size - 2) + 1, rand.nextInt(size - 2) + 1);
+            IMapPoint goal =
+                point(rand.nextInt(size - 2) + 1, rand.nextInt(size - 2) + 1);
+
+            List<IMapPoint> list = jps.findBestPath(start, goal);
+            DirectionPath path = jps.findDirectionPath(start, goal);
+            if (list == null) {
+                assertNull("Found unexpected path", path);
+                continue;
+            }
+
+            assertPoints(list, path);
+            assertEquals("Bad path", DirectionPath.fromPoints(start, list),
+                         path);
+        }
+    }
+
+    public void testSerialize()
+        throws IOException, PathException
+    {
+        List<IMapPoint> points = new ArrayList<IMapPoint>();
+        points.add(point(6, 4));
+        points.add(point(6, 3));
+        points.add(point(5, 2));
+        DirectionPath path =
+            DirectionPath.fromPoints(point(5, 5), points).suffix(1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        path.write(new DataOutputStream(bytes));
+        assertEquals("Bad serialized size", 12 + path.size(), bytes.size());
+
+        byte[] data = bytes.toByteArray();
+        DataInputStream in =
+            new DataInputStream(new ByteArrayInputStream(data));
+        assertEquals("Bad copy", path, DirectionPath.read(in));
+
+        data[data.length - 1] = (byte) Direction.NUM_COMPASS;
+        in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            DirectionPath.read(in);
+            fail("Bad direction should fail");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
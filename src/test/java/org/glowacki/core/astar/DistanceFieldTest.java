@@ -0,0 +1,183 @@
+package org.glowacki.core.astar;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.BaseCharacter;
+import org.glowacki.core.CoreException;
+import org.glowacki.core.Direction;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapEntry;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.test.MockCharacter;
+
+public class DistanceFieldTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "-----------",
+        "|.........|",
+        "|.-------.|",
+        "|.|.....|.|",
+        "|.|.....|.|",
+        "|.-------.|",
+        "|.........|",
+        "-----------",
+    };
+
+    private static final String[] ROOM = new String[] {
+        "-------",
+        "|.....|",
+        "|.....|",
+        "|.....|",
+        "-------",
+    };
+
+    private static final double EPSILON = 0.0001;
+
+    public DistanceFieldTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(DistanceFieldTest.class);
+    }
+
+    public void testDistances()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        DistanceField field = new DistanceField(map);
+        assertEquals("Empty field should be unreachable",
+                     Double.POSITIVE_INFINITY, field.getDistance(1, 1));
+
+        field.addGoal(new MapEntry(1, 1, Terrain.FLOOR));
+
+        assertEquals("Bad goal distance", 0.0, field.getDistance(1, 1));
+        assertEquals("Bad distance", 3.0, field.getDistance(4, 1), EPSILON);
+        assertEquals("Bad distance", 5.0, field.getDistance(1, 6), EPSILON);
+        assertEquals("Bad distance", 10.0 + BaseCharacter.SQRT_2,
+                     field.getDistance(9, 5), EPSILON);
+        assertEquals("Wall should be unreachable",
+                     Double.POSITIVE_INFINITY, field.getDistance(2, 2));
+        assertEquals("Closed room should be unreachable",
+                     Double.POSITIVE_INFINITY, field.getDistance(4, 3));
+        assertEquals("Outside point should be unreachable",
+                     Double.POSITIVE_INFINITY, field.getDistance(-1, 3));
+
+        assertEquals("Bad step", Direction.LEFT, field.getNextStep(4, 1));
+        assertEquals("Bad step", Direction.UP, field.getNextStep(1, 6));
+        assertEquals("Goal should have no step", Direction.UNKNOWN,
+                     field.getNextStep(1, 1));
+        assertEquals("Closed room should have no step", Direction.UNKNOWN,
+                     field.getNextStep(4, 3));
+
+        // a second goal only shortens distances
+        field.addGoal(new MapEntry(9, 6, Terrain.FLOOR));
+        assertEquals("Bad distance", 1.0, field.getDistance(9, 5), EPSILON);
+        assertEquals("Bad distance", 3.0, field.getDistance(4, 1), EPSILON);
+        assertEquals("Bad number of goals", 2, field.getNumGoals());
+
+        field.clearGoals();
+        assertEquals("Cleared field should be unreachable",
+                     Double.POSITIVE_INFINITY, field.getDistance(4, 1));
+    }
+
+    public void testFollowGoal()
+        throws CoreException
+    {
+        Map map = new Map(ROOM);
+
+        MockCharacter player = new MockCharacter("player", true);
+        map.insertObject(player, 1, 2);
+
+        MockCharacter other = new MockCharacter("other");
+        map.insertObject(other, 5, 1);
+
+        DistanceField field = new DistanceField(map);
+        map.addListener(field);
+        field.addGoal(player);
+
+        assertEquals("Bad distance", 4.0, field.getDistance(5, 2), EPSILON);
+        assertEquals("Bad distance", 3.0 + BaseCharacter.SQRT_2,
+                     field.getDistance(5, 3), EPSILON);
+        assertEquals("Field should be built once", 1, field.getNumBuilt());
+
+        // moving other objects doesn't affect the field
+        map.moveTo(other, 4, 1);
+        assertEquals("Bad distance", 4.0, field.getDistance(5, 2), EPSILON);
+        assertEquals("Field should not be rebuilt", 1, field.getNumBuilt());
+
+        map.moveTo(player, 5, 3);
+        assertEquals("Bad distance", 1.0, field.getDistance(5, 2), EPSILON);
+        assertEquals("Bad distance", 0.0, field.getDistance(5, 3));
+        assertEquals("Field should be rebuilt", 2, field.getNumBuilt());
+
+        // a step onto an occupied goal is allowed
+        assertEquals("Bad step", Direction.DOWN, field.getNextStep(5, 2));
+
+        assertTrue("Goal was not removed", field.removeGoal(player));
+        assertFalse("Goal was removed twice", field.removeGoal(player));
+        assertEquals("Field should be empty",
+                     Double.POSITIVE_INFINITY, field.getDistance(5, 2));
+    }
+
+    public void testOccupied()
+        throws CoreException
+    {
+        Map map = new Map(ROOM);
+
+        DistanceField field = new DistanceField(map);
+        map.addListener(field);
+        field.addGoal(new MapEntry(1, 2, Terrain.FLOOR));
+
+        assertEquals("Bad step", Direction.LEFT, field.getNextStep(3, 2));
+
+        MockCharacter blocker = new MockCharacter("blocker");
+        map.insertObject(blocker, 2, 2);
+
+        Direction dir = field.getNextStep(3, 2);
+        assertTrue("Step should go around blocker, not " + dir,
+                   dir == Direction.LEFT_UP || dir == Direction.LEFT_DOWN);
+        assertEquals("Field should not be rebuilt for occupants", 1,
+                     field.getNumBuilt());
+
+        // surround the goal
+        map.insertObject(new MockCharacter("up"), 2, 1);
+        map.insertObject(new MockCharacter("down"), 2, 3);
+        assertEquals("Blocked character should wait", Direction.UNKNOWN,
+                     field.getNextStep(3, 2));
+    }
+
+    public void testTerrainChange()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        DistanceField field = new DistanceField(map);
+        map.addListener(field);
+        field.addGoal(new MapEntry(1, 1, Terrain.FLOOR));
+
+        assertEquals("Bad distance", 4.0, field.getDistance(5, 1), EPSILON);
+
+        map.setTerrain(3, 1, Terrain.WALL);
+        assertEquals("Bad distance", 16.0 + 3.0 * BaseCharacter.SQRT_2,
+                     field.getDistance(5, 1), EPSILON);
+
+        map.setTerrain(1, 3, Terrain.WALL);
+        assertEquals("Sealed corridor should be unreachable",
+                     Double.POSITIVE_INFINITY, field.getDistance(5, 1));
+        assertEquals("Bad number of builds", 3, field.getNumBuilt());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,216 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class GridPathFinderTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "-----------",
+        "|.........|",
+        "|.-------.|",
+        "|.|.....|.|",
+        "|.|.....|.|",
+        "|.-------.|",
+        "|.........|",
+        "-----------",
+    };
+
+    public GridPathFinderTest(String name)
+    {
+        super(name);
+    }
+
+    private static void assertValidPath(Map map, IMapPoint start,
+                                        IMapPoint goal, List<IMapPoint> path)
+        throws MapException
+    {
+        int px = start.getX();
+        int py = start.getY();
+        for (IMapPoint pt : path) {
+            assertTrue("Bad step from [" + px + "," + py + "] to " + pt,
+                       Math.abs(pt.getX() - px) <= 1 &&
+                       Math.abs(pt.getY() - py) <= 1);
+            assertTrue("Path crosses " + pt,
+                       map.getTerrain(pt.getX(), pt.getY()).isMovable());
+            px = pt.getX();
+            py = pt.getY();
+        }
+        assertEquals("Bad final X", goal.getX(), px);
+        assertEquals("Bad final Y", goal.getY(), py);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(GridPathFinderTest.class);
+    }
+
+    public void testBadPoints()
+        throws MapException
+    {
+        GridPathFinder pf = new GridPathFinder(new Map(TEMPLATE));
+
+        try {
+            pf.findBestPath(point(-1, 1), point(1, 1));
+            fail("Should not accept bad start point");
+        } catch (PathException pe) {
+            // expect this to fail
+        }
+
+        try {
+            pf.findBestPath(point(1, 1), point(1, 99));
+            fail("Should not accept bad end point");
+        } catch (PathException pe) {
+            // expect this to fail
+        }
+    }
+
+    public void testNearest()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+        map.setTerrain(9, 6, Terrain.DOWNSTAIRS);
+        map.setTerrain(6, 1, Terrain.DOWNSTAIRS);
+        map.setTerrain(5, 4, Terrain.DOWNSTAIRS);
+
+        GridPathFinder pf = new GridPathFinder(map);
+
+        DirectionPath path =
+            pf.findNearestPath(point(1, 2), map.findAll(Terrain.DOWNSTAIRS));
+        assertNotNull("No path found", path);
+        assertEquals("Bad goal X", 6, path.getEndX());
+        assertEquals("Bad goal Y", 1, path.getEndY());
+        assertEquals("Bad path length", 5, path.size());
+
+        path = pf.findNearestPath(point(1, 2), new IPathGoal() {
+                public boolean isGoal(int x, int y)
+                {
+                    return x == 9;
+                }
+            });
+        assertNotNull("No path found", path);
+        assertEquals("Bad goal X", 9, path.getEndX());
+        assertEquals("Bad path length", 8, path.size());
+
+        List<IMapPoint> goals = new ArrayList<IMapPoint>();
+        goals.add(point(5, 4));
+        assertNull("Path into a closed room should not exist",
+                   pf.findNearestPath(point(1, 2), goals));
+
+        pf.setComponents(new ConnectedComponents(map));
+        assertNull("Path into a closed room should not exist",
+                   pf.findNearestPath(point(1, 2), goals));
+        assertEquals("Unreachable goals should not be searched", 0,
+                     pf.getNumExpanded());
+
+        goals.add(point(1, 2));
+        assertEquals("Starting on a goal should be an empty path", 0,
+                     pf.findNearestPath(point(1, 2), goals).size());
+
+        goals.add(point(99, 99));
+        try {
+            pf.findNearestPath(point(1, 2), goals);
+            fail("Bad goal should fail");
+        } catch (PathException pe) {
+            // expected
+        }
+    }
+
+    public void testNearestMatchesSingle()
+        throws MapException
+    {
+        final int size = 40;
+
+        Random rand = new Random(5);
+
+        Map map = new Map(PathFinderBenchmark.buildTemplate(size, rand));
+
+        GridPathFinder pf = new GridPathFinder(map);
+        for (int n = 0; n < 10; n++) {
+            IMapPoint start =
+                point(rand.nextInt(size - 2) + 1, rand.nextInt(size - 2) + 1);
+
+            // use enough goals to test searches with and without the
+            // heuristic
+            List<IMapPoint> goals = new ArrayList<IMapPoint>();
+            final int numGoals = (n % 2 == 0 ? 3 : 30);
+            for (int i = 0; i < numGoals; i++) {
+                goals.add(point(rand.nextInt(size - 2) + 1,
+                                rand.nextInt(size - 2) + 1));
+            }
+
+            double best = Double.POSITIVE_INFINITY;
+            for (IMapPoint goal : goals) {
+                if (pf.findDirectionPath(start, goal) != null) {
+                    final int cell = goal.getY() * size + goal.getX();
+                    best = Math.min(best, pf.getCost(cell));
+                }
+            }
+
+            DirectionPath path = pf.findNearestPath(start, goals);
+            if (best == Double.POSITIVE_INFINITY) {
+                assertNull("Found unexpected path", path);
+                continue;
+            }
+
+            assertNotNull("No path found", path);
+            final int cell = path.getEndY() * size + path.getEndX();
+            assertEquals("Bad nearest cost", best, pf.getCost(cell), 0.0001);
+        }
+    }
+
+    public void testPaths()
+        throws MapException, PathException
+    {
+        Map map = new Map(TEMPLATE);
+        GridPathFinder pf = new GridPathFinder(map);
+
+        IMapPoint start = point(1, 1);
+        IMapPoint goal = point(9, 6);
+
+        List<IMapPoint> path = pf.findBestPath(start, goal);
+        assertNotNull("No path found", path);
+        assertEquals("Bad path length", 12, path.size());
+        assertValidPath(map, start, goal, path);
+
+        // the enclosed room is unreachable
+        assertNull("Found path into closed room",
+                   pf.findBestPath(start, point(5, 3)));
+
+        assertEquals("Path to start should be empty", 0,
+                     pf.findBestPath(start, start).size());
+
+        // opening a door changes the next search
+        map.setTerrain(5, 2, Terrain.DOOR);
+        path = pf.findBestPath(start, point(5, 3));
+        assertNotNull("No path through new door", path);
+        assertValidPath(map, start, point(5, 3), path);
+
+        // lots of searches should reuse the same state
+        for (int i = 0; i < 1000; i++) {
+            path = pf.findBestPath(goal, start);
+            assertNotNull("No return path", path);
+        }
+        assertValidPath(map, goal, start, path);
+        assertTrue("No cells were expanded", pf.getNumExpanded() > 0);
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
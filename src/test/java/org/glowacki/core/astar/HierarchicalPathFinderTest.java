@@ -0,0 +1,139 @@
+package org.glowacki.core.astar;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapEntry;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.getCost;
+import static org.glowacki.core.test.PathUtil.randomFloor;
+
+public class HierarchicalPathFinderTest
+    extends TestCase
+{
+    public HierarchicalPathFinderTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(HierarchicalPathFinderTest.class);
+    }
+
+    public void testRandomMap()
+        throws MapException, PathException
+    {
+        Random rand = new Random(97531L);
+
+        Map map = new Map(PathFinderBenchmark.buildTemplate(100, rand));
+
+        GridPathFinder astar = new GridPathFinder(map);
+        HierarchicalPathFinder hpa = new HierarchicalPathFinder(map, 10);
+        map.addListener(hpa);
+
+        int astarFound = 0;
+        int hpaFound = 0;
+        for (int i = 0; i < 50; i++) {
+            IMapPoint start = randomFloor(map, rand);
+            IMapPoint goal = randomFloor(map, rand);
+
+            List<IMapPoint> aPath = astar.findBestPath(start, goal);
+            List<IMapPoint> hPath = hpa.findBestPath(start, goal);
+            if (aPath == null) {
+                assertNull("Found impossible path", hPath);
+                continue;
+            }
+
+            astarFound++;
+            if (hPath == null) {
+                continue;
+            }
+
+            hpaFound++;
+
+            final double best = getCost(map, start, aPath);
+            final double cost = getCost(map, start, hPath);
+            assertTrue("Path from " + start + " to " + goal + " costs " +
+                       cost + ", best is " + best, cost < best * 1.5 + 1.0);
+
+            IMapPoint last = hPath.get(hPath.size() - 1);
+            assertEquals("Bad final X", goal.getX(), last.getX());
+            assertEquals("Bad final Y", goal.getY(), last.getY());
+        }
+
+        assertTrue("Only found " + hpaFound + " of " + astarFound + " paths",
+                   hpaFound * 10 >= astarFound * 9);
+    }
+
+    public void testTerrainChange()
+        throws MapException, PathException
+    {
+        final int size = 40;
+
+        // two open halves joined by a single gap in the middle wall
+        String[] template = new String[size];
+        StringBuilder buf = new StringBuilder();
+        for (int y = 0; y < size; y++) {
+            buf.setLength(0);
+            for (int x = 0; x < size; x++) {
+                if (y == 0 || y == size - 1 || x == 0 || x == size - 1) {
+                    buf.append('-');
+                } else if (x == size / 2 && y != 5) {
+                    buf.append('|');
+                } else {
+                    buf.append('.');
+                }
+            }
+            template[y] = buf.toString();
+        }
+
+        Map map = new Map(template);
+
+        HierarchicalPathFinder hpa = new HierarchicalPathFinder(map, 8);
+        map.addListener(hpa);
+
+        IMapPoint start = new MapEntry(2, 35, Terrain.FLOOR);
+        IMapPoint goal = new MapEntry(37, 35, Terrain.FLOOR);
+
+        HierarchicalPath path = hpa.findPath(start, goal);
+        assertNotNull("No path found", path);
+        assertTrue("Expected several waypoints",
+                   path.getNumWaypoints() > 2);
+
+        final int built = hpa.getNumRebuilt();
+        assertEquals("Bad initial build", 25, built);
+
+        // move the gap to the bottom of the wall
+        map.setTerrain(size / 2, 5, Terrain.WALL);
+        map.setTerrain(size / 2, 35, Terrain.DOOR);
+
+        List<IMapPoint> list = hpa.findBestPath(start, goal);
+        assertNotNull("No path through new door", list);
+        assertTrue("Path is too long (" + list.size() + " steps)",
+                   list.size() < 40);
+        assertTrue("Rebuilt too many clusters (" +
+                   (hpa.getNumRebuilt() - built) + ")",
+                   hpa.getNumRebuilt() - built <= 6);
+
+        // the old path should no longer get through
+        while (path.hasNext()) {
+            path.next();
+        }
+        assertTrue("Old path should be broken", path.isBroken());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
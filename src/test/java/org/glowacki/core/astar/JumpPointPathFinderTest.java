@@ -0,0 +1,161 @@
+package org.glowacki.core.astar;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapEntry;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.getCost;
+import static org.glowacki.core.test.PathUtil.randomFloor;
+
+public class JumpPointPathFinderTest
+    extends TestCase
+{
+    public JumpPointPathFinderTest(String name)
+    {
+        super(name);
+    }
+
+    private static void compareFinders(Map map, Random rand,
+                                       boolean expectJumps)
+        throws MapException, PathException
+    {
+        GridPathFinder astar = new GridPathFinder(map);
+        JumpPointPathFinder jps = new JumpPointPathFinder(map);
+
+        for (int i = 0; i < 50; i++) {
+            IMapPoint start = randomFloor(map, rand);
+            IMapPoint goal = randomFloor(map, rand);
+
+            List<IMapPoint> aPath = astar.findBestPath(start, goal);
+            List<IMapPoint> jPath = jps.findBestPath(start, goal);
+            assertEquals("Jump points " + (expectJumps ? "not " : "") +
+                         "used", expectJumps, jps.usedJumpPoints());
+
+            if (aPath == null) {
+                assertNull("Found impossible path", jPath);
+                continue;
+            }
+
+            assertNotNull("Did not find path from " + start + " to " + goal,
+                          jPath);
+            assertEquals("Bad path cost from " + start + " to " + goal,
+                         getCost(map, start, aPath),
+                         getCost(map, start, jPath), 0.0001);
+
+            IMapPoint last = jPath.get(jPath.size() - 1);
+            assertEquals("Bad final X", goal.getX(), last.getX());
+            assertEquals("Bad final Y", goal.getY(), last.getY());
+        }
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(JumpPointPathFinderTest.class);
+    }
+
+    public void testFallback()
+        throws MapException, PathException
+    {
+        Random rand = new Random(2468L);
+
+        Map map = new Map(PathFinderBenchmark.buildTemplate(40, rand));
+        map.setTerrain(20, 20, Terrain.WATER);
+
+        compareFinders(map, rand, false);
+    }
+
+    public void testOpenRoom()
+        throws MapException, PathException
+    {
+        final int size = 60;
+
+        String[] template = new String[size];
+        StringBuilder buf = new StringBuilder();
+        for (int y = 0; y < size; y++) {
+            buf.setLength(0);
+            for (int x = 0; x < size; x++) {
+                if (y == 0 || y == size - 1 || x == 0 || x == size - 1) {
+                    buf.append('-');
+                } else {
+                    buf.append('.');
+                }
+            }
+            template[y] = buf.toString();
+        }
+
+        Map map = new Map(template);
+
+        GridPathFinder astar = new GridPathFinder(map);
+        JumpPointPathFinder jps = new JumpPointPathFinder(map);
+
+        IMapPoint start = new MapEntry(1, 1, Terrain.FLOOR);
+        IMapPoint goal = new MapEntry(size - 2, size - 10, Terrain.FLOOR);
+
+        List<IMapPoint> aPath = astar.findBestPath(start, goal);
+        List<IMapPoint> jPath = jps.findBestPath(start, goal);
+
+        assertEquals("Bad path cost", getCost(map, start, aPath),
+                     getCost(map, start, jPath), 0.0001);
+        assertTrue("Expected far fewer expansions (A* " +
+                   astar.getNumExpanded() + ", JPS " +
+                   jps.getNumExpanded() + ")",
+                   jps.getNumExpanded() * 10 < astar.getNumExpanded());
+    }
+
+    public void testRandomMaps()
+        throws MapException, PathException
+    {
+        Random rand = new Random(1357L);
+
+        for (int i = 0; i < 5; i++) {
+            Map map = new Map(PathFinderBenchmark.buildTemplate(40, rand));
+            compareFinders(map, rand, true);
+        }
+    }
+
+    public void testTerrainChanged()
+        throws MapException, PathException
+    {
+        Map map = new Map(PathFinderBenchmark.buildTemplate(30,
+                                                           new Random(5L)));
+
+        IMapPoint start = new MapEntry(1, 1, Terrain.FLOOR);
+        IMapPoint goal = new MapEntry(28, 28, Terrain.FLOOR);
+
+        JumpPointPathFinder jps = new JumpPointPathFinder(map);
+        jps.findBestPath(start, goal);
+        assertTrue("Floor-only map should use jump points",
+                   jps.usedJumpPoints());
+
+        // the terrain is only checked once, so the finder keeps jumping
+        // until it hears about the change
+        map.setTerrain(15, 15, Terrain.WATER);
+        jps.findBestPath(start, goal);
+        assertTrue("Finder should not rescan the map",
+                   jps.usedJumpPoints());
+
+        jps.terrainChanged(15, 15);
+        jps.findBestPath(start, goal);
+        assertFalse("Water should force plain A*", jps.usedJumpPoints());
+
+        // a fresh finder sees the water straight away
+        JumpPointPathFinder fresh = new JumpPointPathFinder(map);
+        fresh.findBestPath(start, goal);
+        assertFalse("Water should force plain A*", fresh.usedJumpPoints());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,133 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.glowacki.core.IMap;
+
+/**
+ * <tt>MapPathFinder</tt> using the original list-based search, kept as
+ * a baseline for <tt>PathFinderBenchmark</tt>.
+ */
+public class ListMapPathFinder
+    extends MapPathFinder
+{
+    private int numExpanded;
+
+    /**
+     * Create a path finder for the specified map
+     *
+     * @param map map
+     */
+    public ListMapPathFinder(IMap map)
+    {
+        super(map);
+    }
+
+    private static INode findBestPassThrough(List<INode> list, INode goal)
+        throws PathException
+    {
+        INode best = null;
+        for (INode node : list) {
+            if (best == null ||
+                node.getPassThrough(goal) < best.getPassThrough(goal))
+            {
+                best = node;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Find the best path from <tt>start</tt> to <tt>goal</tt>.
+     *
+     * @param start starting node
+     * @param goal target node
+     *
+     * @return list of nodes indicating the path
+     *
+     * @throws PathException if there is a problem
+     */
+    public List<INode> findBestPath(INode start, INode goal)
+        throws PathException
+    {
+        numExpanded = 0;
+
+        List<INode> opened = new ArrayList<INode>();
+        List<INode> closed = new ArrayList<INode>();
+
+        for (INode adjacency : getAdjacencies(start)) {
+            adjacency.setParent(start);
+            if (!adjacency.isStart()) {
+                opened.add(adjacency);
+            }
+        }
+        closed.add(start);
+
+        boolean found = false;
+        while (!found && opened.size() > 0) {
+            INode best = findBestPassThrough(opened, goal);
+            opened.remove(best);
+            closed.add(best);
+            numExpanded++;
+            if (best.isEnd()) {
+                found = true;
+                break;
+            }
+
+            Set<INode> neighbors = getAdjacencies(best);
+            for (INode neighbor : neighbors) {
+                if (opened.contains(neighbor)) {
+                    INode tmpNode = createTempNode(neighbor);
+                    tmpNode.setParent(best);
+                    if (tmpNode.getPassThrough(goal) >=
+                        neighbor.getPassThrough(goal))
+                    {
+                        continue;
+                    }
+                }
+
+                if (closed.contains(neighbor)) {
+                    INode tmpNode = createTempNode(neighbor);
+                    tmpNode.setParent(best);
+                    if (tmpNode.getPassThrough(goal) >=
+                        neighbor.getPassThrough(goal))
+                    {
+                        continue;
+                    }
+                }
+
+                neighbor.setParent(best);
+
+                opened.remove(neighbor);
+                closed.remove(neighbor);
+                opened.add(0, neighbor);
+            }
+        }
+
+        if (!found) {
+            return null;
+        }
+
+        List<INode> bestList = new ArrayList<INode>();
+        INode best = goal;
+        while (best != null && !best.isStart()) {
+            bestList.add(best);
+            best = best.getParent();
+        }
+
+        return bestList;
+    }
+
+    /**
+     * Get the number of nodes expanded by the most recent search.
+     *
+     * @return number of expanded nodes
+     */
+    public int getNumExpanded()
+    {
+        return numExpanded;
+    }
+}
@@ -0,0 +1,192 @@
+package org.glowacki.core.astar;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.CoreException;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.test.MockCharacter;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class PathCacheTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "-----------",
+        "|.........|",
+        "|.-------.|",
+        "|.|.....|.|",
+        "|.|.....|.|",
+        "|.-------.|",
+        "|.........|",
+        "-----------",
+    };
+
+    public PathCacheTest(String name)
+    {
+        super(name);
+    }
+
+    private static void assertCounts(PathCache cache, int hits, int misses)
+    {
+        assertEquals("Bad number of hits", hits, cache.getNumHits());
+        assertEquals("Bad number of misses", misses, cache.getNumMisses());
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PathCacheTest.class);
+    }
+
+    public void testEviction()
+        throws CoreException
+    {
+        Map map = new Map(TEMPLATE);
+
+        PathCache cache = new PathCache(map, 2);
+        cache.findPath(point(1, 1), point(9, 1));
+        cache.findPath(point(1, 1), point(1, 6));
+        assertEquals("Bad cache size", 2, cache.size());
+
+        // touch the first path so the second one is evicted
+        cache.findPath(point(1, 1), point(9, 1));
+        cache.findPath(point(9, 6), point(1, 6));
+        assertEquals("Bad cache size", 2, cache.size());
+        assertCounts(cache, 1, 3);
+
+        cache.findPath(point(1, 1), point(9, 1));
+        assertCounts(cache, 2, 3);
+        cache.findPath(point(1, 1), point(1, 6));
+        assertCounts(cache, 2, 4);
+
+        try {
+            new PathCache(map, 0);
+            fail("Should not be able to create an empty cache");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testHits()
+        throws CoreException
+    {
+        Map map = new Map(TEMPLATE);
+
+        PathCache cache = new PathCache(map);
+
+        DirectionPath path = cache.findPath(point(1, 1), point(9, 6));
+        assertNotNull("No path found", path);
+        assertEquals("Bad path length", 12, path.size());
+        assertCounts(cache, 0, 1);
+
+        assertSame("Cached path was not returned", path,
+                   cache.findPath(point(1, 1), point(9, 6)));
+        assertCounts(cache, 1, 1);
+
+        // start partway along the cached path
+        IMapPoint mid = path.toPoints().get(4);
+        DirectionPath tail = cache.findPath(mid, point(9, 6));
+        assertEquals("Bad tail", path.suffix(5), tail);
+        assertCounts(cache, 2, 1);
+        assertEquals("Bad number of suffix hits", 1,
+                     cache.getNumSuffixHits());
+
+        // a different goal still needs a search
+        cache.findPath(mid, point(9, 1));
+        assertCounts(cache, 2, 2);
+        assertEquals("Bad cache size", 2, cache.size());
+
+        assertNull("Path into a closed room should not exist",
+                   cache.findPath(point(1, 1), point(4, 3)));
+        assertCounts(cache, 2, 3);
+
+        try {
+            cache.findPath(point(-1, 1), point(9, 6));
+            fail("Bad start point should fail");
+        } catch (PathException pe) {
+            // expected
+        }
+
+        cache.clear();
+        assertEquals("Cache should be empty", 0, cache.size());
+    }
+
+    public void testOccupant()
+        throws CoreException
+    {
+        Map map = new Map(TEMPLATE);
+
+        PathCache cache = new PathCache(map);
+        map.addListener(cache);
+
+        DirectionPath path = cache.findPath(point(1, 1), point(9, 1));
+        cache.findPath(point(1, 6), point(9, 6));
+
+        // walking along a path doesn't invalidate it
+        MockCharacter walker = new MockCharacter("walker");
+        map.insertObject(walker, 1, 1);
+        IMapPoint step = path.iterator().next();
+        map.moveTo(walker, step.getX(), step.getY());
+        assertEquals("Bad cache size", 2, cache.size());
+
+        // neither does stepping onto one from outside, or appearing on
+        // one, since detours are left to the walker
+        MockCharacter blocker = new MockCharacter("blocker");
+        map.insertObject(blocker, 1, 5);
+        map.moveTo(blocker, 2, 6);
+        map.insertObject(new MockCharacter("other"), 5, 1);
+        assertEquals("Bad cache size", 2, cache.size());
+        assertEquals("Bad number of invalidated paths", 0,
+                     cache.getNumInvalidated());
+
+        final int hits = cache.getNumHits();
+        assertSame("Occupied path should still be cached", path,
+                   cache.findPath(point(1, 1), point(9, 1)));
+        assertEquals("Bad number of hits", hits + 1, cache.getNumHits());
+
+        // nor does leaving
+        map.removeObject(walker);
+        assertEquals("Bad cache size", 2, cache.size());
+    }
+
+    public void testTerrainChange()
+        throws CoreException
+    {
+        Map map = new Map(TEMPLATE);
+
+        PathCache cache = new PathCache(map);
+        map.addListener(cache);
+
+        cache.findPath(point(1, 1), point(1, 6));
+        cache.findPath(point(9, 1), point(9, 6));
+
+        // only the path through the new wall is dropped
+        map.setTerrain(1, 3, Terrain.WALL);
+        assertEquals("Bad cache size", 1, cache.size());
+
+        DirectionPath detour =
+            cache.findPath(point(1, 1), point(1, 6));
+        assertEquals("Bad detour length", 19, detour.size());
+        assertCounts(cache, 0, 3);
+
+        // reopening the wall is a shortcut for the detour, but can't
+        // improve the other path
+        map.setTerrain(1, 3, Terrain.FLOOR);
+        assertEquals("Bad cache size", 1, cache.size());
+
+        DirectionPath path = cache.findPath(point(1, 1), point(1, 6));
+        assertEquals("Bad path length", 5, path.size());
+        cache.findPath(point(9, 1), point(9, 6));
+        assertCounts(cache, 1, 4);
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,185 @@
+package org.glowacki.core.astar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.randomFloor;
+
+/**
+ * Compare expansions and latency of <tt>GridPathFinder</tt>,
+ * <tt>JumpPointPathFinder</tt>, <tt>HierarchicalPathFinder</tt> and the
+ * heap-based
+ * <tt>MapPathFinder</tt> against the original list-based search, and
+ * time <tt>BatchPathFinder</tt> with one thread per core.
+ *
+ * Usage: PathFinderBenchmark [size [queries [seed]]]
+ */
+public class PathFinderBenchmark
+{
+    private static final int DEFAULT_SIZE = 200;
+    private static final int DEFAULT_QUERIES = 20;
+
+    /**
+     * Build a mostly open map with scattered pillars.
+     *
+     * @param size width and height
+     * @param rand random number generator
+     *
+     * @return map template
+     */
+    static String[] buildTemplate(int size, Random rand)
+    {
+        String[] template = new String[size];
+
+        StringBuilder buf = new StringBuilder(size);
+        for (int y = 0; y < size; y++) {
+            buf.setLength(0);
+            for (int x = 0; x < size; x++) {
+                if (y == 0 || y == size - 1 || x == 0 || x == size - 1) {
+                    buf.append('-');
+                } else if (rand.nextInt(100) < 15) {
+                    buf.append('|');
+                } else {
+                    buf.append('.');
+                }
+            }
+            template[y] = buf.toString();
+        }
+
+        return template;
+    }
+
+    private static void report(String name, long expanded, long nanos,
+                               int queries, int found)
+    {
+        System.out.format("%-19s %10d expansions  %9.2f ms/query" +
+                          "  (%d of %d found)%n", name, expanded,
+                          nanos / 1.0E6 / queries, found, queries);
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args command-line arguments
+     *
+     * @throws MapException if there is a problem
+     * @throws PathException if there is a problem
+     */
+    public static void main(String[] args)
+        throws MapException, PathException
+    {
+        final int size =
+            (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE);
+        final int queries =
+            (args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_QUERIES);
+        final long seed =
+            (args.length > 2 ? Long.parseLong(args[2]) : 12345L);
+
+        Random rand = new Random(seed);
+
+        Map map = new Map(buildTemplate(size, rand));
+
+        IMapPoint[] starts = new IMapPoint[queries];
+        IMapPoint[] goals = new IMapPoint[queries];
+        for (int i = 0; i < queries; i++) {
+            starts[i] = randomFloor(map, rand);
+            goals[i] = randomFloor(map, rand);
+        }
+
+        System.out.format("%dx%d map, %d queries%n", size, size, queries);
+
+        PathFinder[] finders = new PathFinder[] {
+            new ListMapPathFinder(map), new MapPathFinder(map),
+        };
+
+        GridPathFinder[] grids = new GridPathFinder[] {
+            new GridPathFinder(map), new JumpPointPathFinder(map),
+        };
+
+        for (GridPathFinder grid : grids) {
+            long gridExpanded = 0;
+            int gridFound = 0;
+
+            final long gridStart = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                if (grid.findBestPath(starts[i], goals[i]) != null) {
+                    gridFound++;
+                }
+                gridExpanded += grid.getNumExpanded();
+            }
+
+            report(grid.getClass().getSimpleName(), gridExpanded,
+                   System.nanoTime() - gridStart, queries, gridFound);
+        }
+
+        List<PathRequest> requests = new ArrayList<PathRequest>(queries);
+        for (int i = 0; i < queries; i++) {
+            requests.add(new PathRequest(starts[i], goals[i]));
+        }
+
+        final int cores = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(cores);
+        try {
+            BatchPathFinder batch = new BatchPathFinder(map, pool, cores);
+
+            int batchFound = 0;
+
+            final long batchStart = System.nanoTime();
+            for (DirectionPath path : batch.findPaths(requests)) {
+                if (path != null) {
+                    batchFound++;
+                }
+            }
+
+            report("Batch/" + cores + " threads", batch.getNumExpanded(),
+                   System.nanoTime() - batchStart, queries, batchFound);
+        } finally {
+            pool.shutdown();
+        }
+
+        final long buildStart = System.nanoTime();
+        HierarchicalPathFinder hpa = new HierarchicalPathFinder(map);
+        hpa.findPath(starts[0], starts[0]);
+        System.out.format("HierarchicalPathFinder graph built in %.2f ms%n",
+                          (System.nanoTime() - buildStart) / 1.0E6);
+
+        int hpaFound = 0;
+
+        final long hpaStart = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            if (hpa.findBestPath(starts[i], goals[i]) != null) {
+                hpaFound++;
+            }
+        }
+
+        report("HierarchicalPath", 0, System.nanoTime() - hpaStart, queries,
+               hpaFound);
+
+        for (PathFinder pf : finders) {
+            MapPathFinder mpf = (MapPathFinder) pf;
+
+            long expanded = 0;
+            int found = 0;
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < queries; i++) {
+                List<IMapPoint> path = mpf.findBestPath(starts[i], goals[i]);
+                if (path != null) {
+                    found++;
+                }
+                expanded += pf.getNumExpanded();
+            }
+            final long elapsed = System.nanoTime() - start;
+
+            report(pf.getClass().getSimpleName(), expanded, elapsed, queries,
+                   found);
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package org.glowacki.core.astar;
 
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
 import org.glowacki.core.UnimplementedError;
+import org.glowacki.core.util.Random;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import junit.framework.Test;
@@ -10,6 +16,9 @@ import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
 
+import static org.glowacki.core.test.PathUtil.getCost;
+import static org.glowacki.core.test.PathUtil.randomFloor;
+
 class MyNode
     implements INode
 {
@@ -156,6 +165,64 @@ public class PathFinderTest
         pf.findBestPath(start, goal);
     }
 
+    public void testMatchesListSearch()
+        throws MapException, PathException
+    {
+        Random rand = new Random(4321L);
+
+        Map map = new Map(PathFinderBenchmark.buildTemplate(40, rand));
+
+        for (int i = 0; i < 100; i++) {
+            IMapPoint pt = randomFloor(map, rand);
+            map.setTerrain(pt.getX(), pt.getY(), Terrain.WATER);
+        }
+
+        MapPathFinder heapFinder = new MapPathFinder(map);
+        MapPathFinder listFinder = new ListMapPathFinder(map);
+        GridPathFinder gridFinder = new GridPathFinder(map);
+
+        for (int i = 0; i < 20; i++) {
+            IMapPoint start = randomFloor(map, rand);
+            IMapPoint goal = randomFloor(map, rand);
+
+            List<IMapPoint> heapPath = heapFinder.findBestPath(start, goal);
+            List<IMapPoint> listPath = listFinder.findBestPath(start, goal);
+
+            if (listPath == null) {
+                assertNull("Heap search found impossible path", heapPath);
+                continue;
+            }
+
+            assertNotNull("Heap search did not find path", heapPath);
+
+            // each step must be a single move onto movable terrain
+            int px = start.getX();
+            int py = start.getY();
+            for (IMapPoint pt : heapPath) {
+                assertTrue("Bad step from [" + px + "," + py + "] to " + pt,
+                           Math.abs(pt.getX() - px) <= 1 &&
+                           Math.abs(pt.getY() - py) <= 1);
+                assertTrue("Path crosses " + pt,
+                           map.getTerrain(pt.getX(), pt.getY()).isMovable());
+                px = pt.getX();
+                py = pt.getY();
+            }
+            assertEquals("Bad final X", goal.getX(), px);
+            assertEquals("Bad final Y", goal.getY(), py);
+
+            assertTrue("No nodes were expanded",
+                       heapFinder.getNumExpanded() > 0);
+
+            final double cost = getCost(map, start, heapPath);
+            assertEquals("List search found a different cost", cost,
+                         getCost(map, start, listPath), 0.0001);
+            assertEquals("Grid search found a different cost", cost,
+                         getCost(map, start,
+                                 gridFinder.findBestPath(start, goal)),
+                         0.0001);
+        }
+    }
+
     public static void main(String[] args)
     {
         TestRunner.run(suite());
@@ -0,0 +1,173 @@
+package org.glowacki.core.astar;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.Random;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class PathSearchTest
+    extends TestCase
+{
+    private static final String[] TEMPLATE = new String[] {
+        "-----------",
+        "|.........|",
+        "|.-------.|",
+        "|.|.....|.|",
+        "|.|.....|.|",
+        "|.-------.|",
+        "|.........|",
+        "-----------",
+    };
+
+    public PathSearchTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(PathSearchTest.class);
+    }
+
+    public void testBudget()
+        throws MapException
+    {
+        final int size = 60;
+
+        Random rand = new Random(7);
+
+        String[] template = PathFinderBenchmark.buildTemplate(size, rand);
+        Map map = new Map(template);
+        map.setTerrain(1, 1, Terrain.FLOOR);
+        map.setTerrain(size - 2, size - 2, Terrain.FLOOR);
+
+        IMapPoint start = point(1, 1);
+        IMapPoint goal = point(size - 2, size - 2);
+
+        GridPathFinder grid = new GridPathFinder(map);
+        DirectionPath expected = grid.findDirectionPath(start, goal);
+        assertNotNull("No path found", expected);
+        final int total = grid.getNumExpanded();
+
+        PathSearch search = new PathSearch(map, start, goal);
+        assertFalse("Search should not be done", search.isDone());
+        assertEquals("Partial path should start empty", 0,
+                     search.getPartialPath().size());
+
+        int calls = 0;
+        int lastDist = Integer.MAX_VALUE;
+        while (search.expand(10) == PathSearch.Status.IN_PROGRESS) {
+            calls++;
+            assertEquals("Bad number of expanded cells", calls * 10,
+                         search.getNumExpanded());
+            assertNull("Path should not be complete", search.getPath());
+
+            // the partial path never moves away from the goal
+            DirectionPath partial = search.getPartialPath();
+            assertEquals("Bad partial start", 1, partial.getStartX());
+            final int dist =
+                Math.max(goal.getX() - partial.getEndX(),
+                         goal.getY() - partial.getEndY());
+            assertTrue("Partial path moved away from goal", dist <= lastDist);
+            lastDist = dist;
+        }
+
+        assertEquals("Bad status", PathSearch.Status.FOUND,
+                     search.getStatus());
+        assertTrue("Search should be done", search.isDone());
+        assertEquals("Bad number of expanded cells", total,
+                     search.getNumExpanded());
+        assertEquals("Bad path", expected, search.getPath());
+        assertSame("Partial path should be the full path", search.getPath(),
+                   search.getPartialPath());
+
+        // more work is a no-op
+        assertEquals("Bad status", PathSearch.Status.FOUND,
+                     search.expand(10));
+
+        search = new PathSearch(grid, start, goal);
+        while (search.run(1000000L) == PathSearch.Status.IN_PROGRESS) {
+            // keep going
+        }
+        assertEquals("Bad timed path", expected, search.getPath());
+    }
+
+    public void testNoPath()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        PathSearch search = new PathSearch(map, point(1, 1), point(4, 3));
+        assertEquals("Bad status", PathSearch.Status.NO_PATH,
+                     search.expand(Integer.MAX_VALUE));
+        assertNull("Path into a closed room should not exist",
+                   search.getPath());
+        assertNotNull("Partial path should exist", search.getPartialPath());
+
+        GridPathFinder grid = new GridPathFinder(map);
+        grid.setComponents(new ConnectedComponents(map));
+
+        search = new PathSearch(grid, point(1, 1), point(4, 3));
+        assertTrue("Unreachable search should be done", search.isDone());
+        assertEquals("Unreachable goal should not be searched", 0,
+                     search.getNumExpanded());
+        assertEquals("Partial path should be empty", 0,
+                     search.getPartialPath().size());
+
+        try {
+            new PathSearch(map, point(1, 1), point(99, 3));
+            fail("Bad end point should fail");
+        } catch (PathException pe) {
+            // expected
+        }
+    }
+
+    public void testTerrainChanged()
+        throws MapException
+    {
+        Map map = new Map(TEMPLATE);
+
+        IMapPoint start = point(1, 1);
+        IMapPoint goal = point(9, 6);
+
+        PathSearch search = new PathSearch(map, start, goal);
+        map.addListener(search);
+
+        search.expand(4);
+        assertFalse("Search should not be done", search.isDone());
+
+        // close the right side, so the way round is down the left
+        map.setTerrain(9, 3, Terrain.WALL);
+        assertEquals("Search should restart", 0, search.getNumExpanded());
+
+        search.expand(Integer.MAX_VALUE);
+        assertEquals("Bad status", PathSearch.Status.FOUND,
+                     search.getStatus());
+        assertEquals("Bad path after change",
+                     new GridPathFinder(map).findDirectionPath(start, goal),
+                     search.getPath());
+        assertEquals("Path should go down the left side", Direction.DOWN,
+                     search.getPath().getDirection(0));
+
+        // a finished search starts over as well
+        map.setTerrain(1, 3, Terrain.WALL);
+        assertFalse("Search should restart", search.isDone());
+        assertNull("Old path should be dropped", search.getPath());
+        assertEquals("Bad status", PathSearch.Status.NO_PATH,
+                     search.expand(Integer.MAX_VALUE));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,197 @@
+package org.glowacki.core.astar;
+
+import java.util.Iterator;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import org.glowacki.core.Direction;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.Map;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+
+import static org.glowacki.core.test.PathUtil.point;
+
+public class ReplanningPathTest
+    extends TestCase
+{
+    private static final int SIZE = 40;
+
+    public ReplanningPathTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Two open halves joined by a single gap in the middle wall.
+     */
+    private static String[] buildTemplate()
+    {
+        String[] template = new String[SIZE];
+        StringBuilder buf = new StringBuilder();
+        for (int y = 0; y < SIZE; y++) {
+            buf.setLength(0);
+            for (int x = 0; x < SIZE; x++) {
+                if (y == 0 || y == SIZE - 1 || x == 0 || x == SIZE - 1) {
+                    buf.append('-');
+                } else if (x == SIZE / 2 && y != 5) {
+                    buf.append('|');
+                } else {
+                    buf.append('.');
+                }
+            }
+            template[y] = buf.toString();
+        }
+
+        return template;
+    }
+
+    private static void step(Map map, Walker walker, IMapPoint pt)
+        throws MapException
+    {
+        assertTrue("Bad step from " + walker + " to " + pt,
+                   Math.abs(pt.getX() - walker.x) <= 1 &&
+                   Math.abs(pt.getY() - walker.y) <= 1);
+        assertTrue("Stepped onto " + pt,
+                   map.getTerrain(pt.getX(), pt.getY()).isMovable());
+
+        walker.x = pt.getX();
+        walker.y = pt.getY();
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ReplanningPathTest.class);
+    }
+
+    public void testBrokenRoute()
+        throws MapException, PathException
+    {
+        Map map = new Map(buildTemplate());
+
+        HierarchicalPathFinder hpa = new HierarchicalPathFinder(map, 8);
+        map.addListener(hpa);
+
+        DStarLitePathFinder dstar = new DStarLitePathFinder(map);
+        map.addListener(dstar);
+
+        Walker walker = new Walker(2, 35);
+        IMapPoint goal = point(37, 35);
+
+        Iterator<IMapPoint> route = hpa.findPath(walker, goal);
+        assertNotNull("No route", route);
+
+        ReplanningPath path =
+            new ReplanningPath(map, walker, goal, route, dstar);
+        for (int i = 0; i < 3; i++) {
+            assertTrue("Path ended early", path.hasNext());
+            step(map, walker, path.next());
+        }
+
+        // move the gap to the bottom of the wall, breaking the route
+        map.setTerrain(SIZE / 2, 5, Terrain.WALL);
+        map.setTerrain(SIZE / 2, 35, Terrain.DOOR);
+
+        int steps = 0;
+        while (path.hasNext()) {
+            step(map, walker, path.next());
+            assertTrue("Too many steps", ++steps < 200);
+        }
+
+        assertEquals("Did not reach goal X", goal.getX(), walker.x);
+        assertEquals("Did not reach goal Y", goal.getY(), walker.y);
+        assertEquals("Bad number of replans", 1, path.getNumReplans());
+    }
+
+    public void testNextDirection()
+        throws MapException, PathException
+    {
+        Map map = new Map(buildTemplate());
+
+        Walker walker = new Walker(2, 35);
+        IMapPoint goal = point(12, 30);
+
+        DirectionPath route =
+            new GridPathFinder(map).findDirectionPath(walker, goal);
+        assertNotNull("No route", route);
+
+        ReplanningPath path =
+            new ReplanningPath(map, walker, goal, route.iterator(),
+                               new DStarLitePathFinder(map));
+        for (int i = 0; i < route.size(); i++) {
+            assertTrue("Path ended early", path.hasNext());
+
+            Direction dir = path.nextDirection();
+            assertEquals("Bad direction #" + i, route.getDirection(i), dir);
+
+            walker.x += dir.getDx();
+            walker.y += dir.getDy();
+        }
+
+        assertFalse("Path should be done", path.hasNext());
+        assertEquals("Did not reach goal X", goal.getX(), walker.x);
+        assertEquals("Did not reach goal Y", goal.getY(), walker.y);
+    }
+
+    public void testUnbrokenRoute()
+        throws MapException, PathException
+    {
+        Map map = new Map(buildTemplate());
+
+        HierarchicalPathFinder hpa = new HierarchicalPathFinder(map, 8);
+        map.addListener(hpa);
+
+        Walker walker = new Walker(2, 35);
+        IMapPoint goal = point(37, 35);
+
+        ReplanningPath path =
+            new ReplanningPath(map, walker, goal, hpa.findPath(walker, goal),
+                               new DStarLitePathFinder(map));
+        while (path.hasNext()) {
+            step(map, walker, path.next());
+        }
+
+        assertEquals("Did not reach goal X", goal.getX(), walker.x);
+        assertEquals("Did not reach goal Y", goal.getY(), walker.y);
+        assertEquals("Should not have replanned", 0, path.getNumReplans());
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+
+    /**
+     * Point which follows the path.
+     */
+    static class Walker
+        implements IMapPoint
+    {
+        int x;
+        int y;
+
+        Walker(int x, int y)
+        {
+            this.x = x;
+            this.y = y;
+        }
+
+        public int getX()
+        {
+            return x;
+        }
+
+        public int getY()
+        {
+            return y;
+        }
+
+        public String toString()
+        {
+            return "Walker@" + x + "," + y;
+        }
+    }
+}
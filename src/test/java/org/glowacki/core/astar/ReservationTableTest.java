@@ -0,0 +1,85 @@
+package org.glowacki.core.astar;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class ReservationTableTest
+    extends TestCase
+{
+    public ReservationTableTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(ReservationTableTest.class);
+    }
+
+    public void testAdvance()
+    {
+        final Object owner = "owner";
+
+        ReservationTable table = new ReservationTable(4);
+        for (int t = 0; t <= 4; t++) {
+            assertTrue("Could not reserve turn " + t,
+                       table.reserve(7, t, owner));
+        }
+        assertFalse("Turn past the window should not be reservable",
+                    table.reserve(7, 5, owner));
+        assertEquals("Bad number of reservations", 5, table.size());
+
+        table.advance();
+        assertEquals("Bad turn", 1, table.getTurn());
+        assertEquals("Bad number of reservations", 4, table.size());
+        assertNull("Past turn should be dropped", table.getOwner(7, 0));
+        assertEquals("Bad owner", owner, table.getOwner(7, 1));
+
+        // the dropped slot is reused for the newest turn
+        assertNull("Newest turn should be free", table.getOwner(7, 5));
+        assertTrue("Could not reserve newest turn",
+                   table.reserve(7, 5, owner));
+
+        table.release(owner);
+        assertEquals("Release left reservations", 0, table.size());
+    }
+
+    public void testRelease()
+    {
+        final Object first = "first";
+        final Object second = "second";
+
+        ReservationTable table = new ReservationTable(8);
+        assertTrue("Could not reserve", table.reserve(3, 2, first));
+        assertTrue("Could not reserve", table.reserve(4, 2, first));
+        assertTrue("Repeated reservation should succeed",
+                   table.reserve(3, 2, first));
+        assertFalse("Reserved cell should not be available",
+                    table.reserve(3, 2, second));
+
+        assertTrue("Cell should be reserved for others",
+                   table.isReserved(3, 2, second));
+        assertFalse("Cell should not be reserved against its owner",
+                    table.isReserved(3, 2, first));
+        assertFalse("Other turn should be free",
+                    table.isReserved(3, 3, second));
+
+        table.release(first);
+        assertEquals("Release left reservations", 0, table.size());
+        assertFalse("Released cell should be free",
+                    table.isReserved(3, 2, second));
+        assertTrue("Could not reserve released cell",
+                   table.reserve(3, 2, second));
+
+        // releasing again must not disturb the new owner
+        table.release(first);
+        assertEquals("Bad owner", second, table.getOwner(3, 2));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}
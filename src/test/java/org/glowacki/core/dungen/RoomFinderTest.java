@@ -0,0 +1,97 @@
+package org.glowacki.core.dungen;
+
+import java.util.List;
+
+import org.glowacki.core.astar.PathException;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class RoomFinderTest
+{
+    private static final int WIDTH = 12;
+    private static final int HEIGHT = 7;
+
+    private static MapNode[][] buildMap()
+    {
+        MapNode[][] map = new MapNode[WIDTH][HEIGHT];
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                map[x][y] = new MapNode(x, y);
+                if (x == 6 && y != 3) {
+                    map[x][y].setType(RoomType.WALL);
+                } else {
+                    map[x][y].setType(RoomType.FLOOR);
+                }
+            }
+        }
+
+        return map;
+    }
+
+    private static List<MapNode> find(RoomFinder finder, MapNode[][] map,
+                                      int fx, int fy, int tx, int ty)
+        throws GeneratorException, PathException
+    {
+        return finder.findBestPath(map[fx][fy], map[tx][ty]);
+    }
+
+    @Test
+    public void testBadPoint()
+        throws PathException
+    {
+        MapNode[][] map = buildMap();
+
+        RoomFinder finder = new RoomFinder(map);
+        try {
+            finder.findBestPath(new MapNode(-1, 0), map[0][0]);
+            fail("Bad start point should fail");
+        } catch (GeneratorException ge) {
+            assertNotNull("Message is null", ge.getMessage());
+        }
+
+        try {
+            finder.findBestPath(map[0][0], new MapNode(0, HEIGHT));
+            fail("Bad end point should fail");
+        } catch (GeneratorException ge) {
+            assertNotNull("Message is null", ge.getMessage());
+        }
+    }
+
+    @Test
+    public void testReuse()
+        throws GeneratorException, PathException
+    {
+        final int[][] queries = new int[][] {
+            { 0, 0, 11, 6 },
+            { 11, 6, 0, 0 },
+            { 2, 5, 9, 1 },
+            { 9, 1, 2, 5 },
+            { 0, 0, 11, 6 },
+            { 5, 3, 7, 3 },
+        };
+
+        MapNode[][] map = buildMap();
+        RoomFinder finder = new RoomFinder(map);
+
+        for (int[] q : queries) {
+            List<MapNode> path = find(finder, map, q[0], q[1], q[2], q[3]);
+            assertNotNull("No path from " + q[0] + "," + q[1], path);
+
+            // leftover state from earlier searches must not matter
+            MapNode[][] fresh = buildMap();
+            List<MapNode> expected =
+                find(new RoomFinder(fresh), fresh, q[0], q[1], q[2], q[3]);
+            assertEquals("Bad path from " + q[0] + "," + q[1], expected,
+                         path);
+
+            // path is listed from the end back toward the start
+            assertEquals("Bad end X", q[2], path.get(0).getX());
+            assertEquals("Bad end Y", q[3], path.get(0).getY());
+            for (MapNode node : path) {
+                assertFalse("Path should not keep its end markers",
+                            node.isStart() || node.isEnd());
+            }
+        }
+    }
+}
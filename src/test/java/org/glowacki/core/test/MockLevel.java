@@ -12,6 +12,11 @@ import org.glowacki.core.Level;
 import org.glowacki.core.MapException;
 import org.glowacki.core.Terrain;
 import org.glowacki.core.UnimplementedError;
+import org.glowacki.core.astar.ConnectedComponents;
+import org.glowacki.core.astar.CooperativePathFinder;
+import org.glowacki.core.astar.DistanceField;
+import org.glowacki.core.astar.HierarchicalPathFinder;
+import org.glowacki.core.astar.PathCache;
 
 public class MockLevel
     implements ILevel
@@ -22,6 +27,11 @@ public class MockLevel
     private ILevel nextLevel;
 
     private boolean occupied;
+    private ConnectedComponents components;
+    private CooperativePathFinder groupFinder;
+    private HierarchicalPathFinder pathFinder;
+    private DistanceField playerField;
+    private PathCache pathCache;
 
     public MockLevel(String name, IMap map)
     {
@@ -35,6 +45,24 @@ public class MockLevel
         // do nothing
     }
 
+    public List<ICharacter> charactersInRect(int minX, int minY, int maxX,
+                                             int maxY)
+    {
+        throw new UnimplementedError();
+    }
+
+    public List<ICharacter> charactersWithin(int x, int y, int radius)
+    {
+        throw new UnimplementedError();
+    }
+
+    public void endTurn()
+    {
+        if (groupFinder != null) {
+            groupFinder.advance();
+        }
+    }
+
     public IMapPoint enterDown(ICharacter ch)
         throws CoreException
     {
@@ -74,6 +102,46 @@ public class MockLevel
         throw new UnimplementedError();
     }
 
+    public Iterable<ICharacter> listNonplayers()
+    {
+        throw new UnimplementedError();
+    }
+
+    public Iterable<ICharacter> listPlayers()
+    {
+        throw new UnimplementedError();
+    }
+
+    public ConnectedComponents getComponents()
+    {
+        if (components == null) {
+            components = new ConnectedComponents(map);
+            map.addListener(components);
+        }
+
+        return components;
+    }
+
+    public CooperativePathFinder getCooperativePathFinder()
+    {
+        if (groupFinder == null) {
+            groupFinder = new CooperativePathFinder(map);
+            map.addListener(groupFinder);
+        }
+
+        return groupFinder;
+    }
+
+    public HierarchicalPathFinder getHierarchicalPathFinder()
+    {
+        if (pathFinder == null) {
+            pathFinder = new HierarchicalPathFinder(map);
+            map.addListener(pathFinder);
+        }
+
+        return pathFinder;
+    }
+
     public IMap getMap()
     {
         return map;
@@ -127,6 +195,26 @@ public class MockLevel
         throw new UnimplementedError();
     }
 
+    public PathCache getPathCache()
+    {
+        if (pathCache == null) {
+            pathCache = new PathCache(map);
+            map.addListener(pathCache);
+        }
+
+        return pathCache;
+    }
+
+    public DistanceField getPlayerDistanceField()
+    {
+        if (playerField == null) {
+            playerField = new DistanceField(map);
+            map.addListener(playerField);
+        }
+
+        return playerField;
+    }
+
     public ILevel getPreviousLevel()
     {
         return prevLevel;
@@ -142,6 +230,15 @@ public class MockLevel
         return map.getTerrain(x, y);
     }
 
+    public boolean isInBounds(int x, int y)
+    {
+        if (map == null) {
+            throw new Error("Map has not been set");
+        }
+
+        return map.isInBounds(x, y);
+    }
+
     public boolean isOccupied(int x, int y)
         throws MapException
     {
@@ -173,4 +270,13 @@ public class MockLevel
     {
         prevLevel = lvl;
     }
+
+    public Terrain tryGetTerrain(int x, int y)
+    {
+        if (map == null) {
+            throw new Error("Map has not been set");
+        }
+
+        return map.tryGetTerrain(x, y);
+    }
 }
@@ -5,10 +5,12 @@ import java.util.List;
 
 import org.glowacki.core.Direction;
 import org.glowacki.core.IMap;
+import org.glowacki.core.IMapListener;
 import org.glowacki.core.IMapObject;
 import org.glowacki.core.IMapPoint;
 import org.glowacki.core.MapEntry;
 import org.glowacki.core.MapException;
+import org.glowacki.core.MoveStatus;
 import org.glowacki.core.Terrain;
 import org.glowacki.core.UnimplementedError;
 
@@ -49,6 +51,7 @@ public class MockMap
     private MapPoint upStaircase;
     private MapPoint downStaircase;
     private List<MapEntry> entries;
+    private List<IMapListener> listeners = new ArrayList<IMapListener>();
 
     public MockMap(int maxX, int maxY)
     {
@@ -56,6 +59,11 @@ public class MockMap
         this.maxY = maxY;
     }
 
+    public void addListener(IMapListener listener)
+    {
+        listeners.add(listener);
+    }
+
     /**
      * Add this object to the map at the up staircase.
      *
@@ -73,6 +81,9 @@ public class MockMap
         }
 
         obj.setPosition(upStaircase.getX(), upStaircase.getY());
+        for (IMapListener l : listeners) {
+            l.objectInserted(obj, obj.getX(), obj.getY());
+        }
 
         return upStaircase;
     }
@@ -94,6 +105,9 @@ public class MockMap
         }
 
         obj.setPosition(downStaircase.getX(), downStaircase.getY());
+        for (IMapListener l : listeners) {
+            l.objectInserted(obj, obj.getX(), obj.getY());
+        }
 
         return downStaircase;
     }
@@ -106,6 +120,33 @@ public class MockMap
      * @return null if the terrain cannot be found on this level
      */
     public MapEntry find(Terrain t)
+    {
+        if (t == Terrain.UPSTAIRS && upStaircase != null) {
+            return new MapEntry(upStaircase.getX(), upStaircase.getY(), t);
+        } else if (t == Terrain.DOWNSTAIRS && downStaircase != null) {
+            return new MapEntry(downStaircase.getX(), downStaircase.getY(),
+                                t);
+        }
+
+        for (int y = 0; y <= maxY; y++) {
+            for (int x = 0; x <= maxX; x++) {
+                if (tryGetTerrain(x, y) == t) {
+                    return new MapEntry(x, y, t);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Iterate through all occurrences of the specified terrain.
+     *
+     * @param t terrain to find
+     *
+     * @return iterator of matching entries
+     */
+    public Iterable<MapEntry> findAll(Terrain t)
     {
         throw new UnimplementedError();
     }
@@ -170,6 +211,24 @@ public class MockMap
         throw new UnimplementedError();
     }
 
+    public int getNeighborMask(int x, int y)
+    {
+        if (!isInBounds(x, y)) {
+            return 0;
+        }
+
+        int mask = 0;
+        for (int bit = 0; bit < Direction.NUM_COMPASS; bit++) {
+            Terrain t = tryGetTerrain(x + Direction.getDx(bit),
+                                      y + Direction.getDy(bit));
+            if (t != null && t.isMovable()) {
+                mask |= 1 << bit;
+            }
+        }
+
+        return mask;
+    }
+
     /**
      * Get a graphic representation of this level.
      *
@@ -211,6 +270,14 @@ public class MockMap
         throws MapException
     {
         obj.setPosition(x, y);
+        for (IMapListener l : listeners) {
+            l.objectInserted(obj, x, y);
+        }
+    }
+
+    public boolean isInBounds(int x, int y)
+    {
+        return x >= 0 && x <= maxX && y >= 0 && y <= maxY;
     }
 
     /**
@@ -271,7 +338,7 @@ public class MockMap
     public void moveTo(IMapObject obj, int x, int y)
         throws MapException
     {
-        obj.setPosition(x, y);
+        tryMoveTo(obj, x, y);
     }
 
 
@@ -282,10 +349,21 @@ public class MockMap
      *
      * @throws MapException if there is a problem
      */
+    public void removeListener(IMapListener listener)
+    {
+        listeners.remove(listener);
+    }
+
     public void removeObject(IMapObject obj)
         throws MapException
     {
+        final int oldX = obj.getX();
+        final int oldY = obj.getY();
+
         obj.setPosition(-1, -1);
+        for (IMapListener l : listeners) {
+            l.objectRemoved(obj, oldX, oldY);
+        }
     }
 
     public void setDownStaircase(int x, int y)
@@ -302,4 +380,50 @@ public class MockMap
     {
         terrain = t;
     }
+
+    public IMapObject tryGetOccupant(int x, int y)
+    {
+        return null;
+    }
+
+    public Terrain tryGetTerrain(int x, int y)
+    {
+        if (!isInBounds(x, y)) {
+            return null;
+        }
+
+        try {
+            return getTerrain(x, y);
+        } catch (MapException me) {
+            return null;
+        }
+    }
+
+    public MoveStatus tryMoveDirection(IMapObject obj, Direction dir)
+    {
+        try {
+            moveDirection(obj, dir);
+        } catch (MapException me) {
+            return MoveStatus.OUT_OF_BOUNDS;
+        }
+
+        return MoveStatus.OK;
+    }
+
+    public MoveStatus tryMoveTo(IMapObject obj, int x, int y)
+    {
+        final int oldX = obj.getX();
+        final int oldY = obj.getY();
+
+        obj.setPosition(x, y);
+        for (IMapListener l : listeners) {
+            if (oldX < 0 || oldY < 0) {
+                l.objectInserted(obj, x, y);
+            } else {
+                l.objectMoved(obj, oldX, oldY);
+            }
+        }
+
+        return MoveStatus.OK;
+    }
 }
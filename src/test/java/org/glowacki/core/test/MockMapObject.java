@@ -0,0 +1,73 @@
+package org.glowacki.core.test;
+
+import org.glowacki.core.IMapObject;
+
+public class MockMapObject
+    implements IMapObject
+{
+    private String name;
+    private int x;
+    private int y;
+
+    public MockMapObject(String name)
+    {
+        this.name = name;
+
+        clearPosition();
+    }
+
+    /**
+     * Clear the object's position.
+     */
+    public void clearPosition()
+    {
+        x = -1;
+        y = -1;
+    }
+
+    /**
+     * Return object's name.
+     *
+     * @return name
+     */
+    public String getName()
+    {
+        return name;
+    }
+    /**
+     * Get this point's X coordinate.
+     *
+     * @return X coordinate
+     */
+    public int getX()
+    {
+        return x;
+    }
+
+    /**
+     * Get this point's Y coordinate.
+     *
+     * @return Y coordinate
+     */
+    public int getY()
+    {
+        return y;
+    }
+
+    /**
+     * Set the object's position.
+     *
+     * @param x x coordinate
+     * @param y y coordinate
+     */
+    public void setPosition(int x, int y)
+    {
+        this.x = x;
+        this.y = y;
+    }
+
+    public String toString()
+    {
+        return String.format("%s[%d,%d]", name, x, y);
+    }
+}
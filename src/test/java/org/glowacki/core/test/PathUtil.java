@@ -0,0 +1,92 @@
+package org.glowacki.core.test;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.glowacki.core.BaseCharacter;
+import org.glowacki.core.IMap;
+import org.glowacki.core.IMapPoint;
+import org.glowacki.core.MapEntry;
+import org.glowacki.core.MapException;
+import org.glowacki.core.Terrain;
+import org.glowacki.core.util.IRandom;
+
+/**
+ * Helpers shared by the path-finding tests.
+ */
+public abstract class PathUtil
+{
+    /**
+     * Check that a path only takes single steps across movable terrain
+     * and add up its cost.
+     *
+     * @param map map
+     * @param start starting point (not part of the path)
+     * @param path list of points
+     *
+     * @return total cost, counting diagonal steps as the square root of
+     *         two times the terrain cost
+     */
+    public static double getCost(IMap map, IMapPoint start,
+                                 List<IMapPoint> path)
+        throws MapException
+    {
+        double total = 0.0;
+
+        int px = start.getX();
+        int py = start.getY();
+        for (IMapPoint pt : path) {
+            Assert.assertTrue("Bad step from [" + px + "," + py + "] to " +
+                              pt, Math.abs(pt.getX() - px) <= 1 &&
+                              Math.abs(pt.getY() - py) <= 1);
+
+            Terrain t = map.getTerrain(pt.getX(), pt.getY());
+            Assert.assertTrue("Path crosses " + pt, t.isMovable());
+
+            double cost = t.getCost();
+            if (pt.getX() != px && pt.getY() != py) {
+                cost *= BaseCharacter.SQRT_2;
+            }
+            total += cost;
+
+            px = pt.getX();
+            py = pt.getY();
+        }
+
+        return total;
+    }
+
+    /**
+     * Create a floor point.
+     *
+     * @param x X coordinate
+     * @param y Y coordinate
+     *
+     * @return new point
+     */
+    public static IMapPoint point(int x, int y)
+    {
+        return new MapEntry(x, y, Terrain.FLOOR);
+    }
+
+    /**
+     * Pick a random movable point.
+     *
+     * @param map map
+     * @param rand random number generator
+     *
+     * @return movable point
+     */
+    public static MapEntry randomFloor(IMap map, IRandom rand)
+        throws MapException
+    {
+        while (true) {
+            final int x = rand.nextInt(map.getMaxX() + 1);
+            final int y = rand.nextInt(map.getMaxY() + 1);
+            if (map.getTerrain(x, y).isMovable()) {
+                return new MapEntry(x, y, map.getTerrain(x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.glowacki.core.util;
+
+import java.util.HashMap;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+public class IntHashMapTest
+    extends TestCase
+{
+    public IntHashMapTest(String name)
+    {
+        super(name);
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(IntHashMapTest.class);
+    }
+
+    public void testBasic()
+    {
+        IntHashMap<String> map = new IntHashMap<String>();
+        assertTrue("New map should be empty", map.isEmpty());
+        assertNull("Unexpected value", map.get(12));
+
+        assertNull("Unexpected previous value", map.put(12, "a"));
+        assertEquals("Bad value", "a", map.get(12));
+        assertEquals("Bad previous value", "a", map.put(12, "b"));
+        assertEquals("Bad size", 1, map.size());
+        assertTrue("Key should be present", map.containsKey(12));
+
+        assertEquals("Bad removed value", "b", map.remove(12));
+        assertNull("Removed value still present", map.get(12));
+        assertTrue("Map should be empty", map.isEmpty());
+        assertNull("Removed missing value", map.remove(12));
+    }
+
+    public void testBadPut()
+    {
+        IntHashMap<String> map = new IntHashMap<String>();
+
+        try {
+            map.put(-1, "x");
+            fail("Should not be able to add negative key");
+        } catch (IllegalArgumentException iae) {
+            // expect this to fail
+        }
+
+        try {
+            map.put(1, null);
+            fail("Should not be able to add null value");
+        } catch (IllegalArgumentException iae) {
+            // expect this to fail
+        }
+    }
+
+    public void testChurn()
+    {
+        IntHashMap<Integer> map = new IntHashMap<Integer>();
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+
+        java.util.Random random = new java.util.Random(12345L);
+        for (int i = 0; i < 20000; i++) {
+            final int key = random.nextInt(500) * 64;
+            if (random.nextBoolean()) {
+                assertEquals("Bad put result for " + key,
+                             expected.put(key, i), map.put(key, i));
+            } else {
+                assertEquals("Bad remove result for " + key,
+                             expected.remove(key), map.remove(key));
+            }
+            assertEquals("Bad size", expected.size(), map.size());
+        }
+
+        for (int key = 0; key < 500 * 64; key++) {
+            assertEquals("Bad value for " + key, expected.get(key),
+                         map.get(key));
+        }
+
+        map.clear();
+        assertTrue("Cleared map should be empty", map.isEmpty());
+        assertNull("Cleared map has value", map.get(0));
+    }
+
+    public static void main(String[] args)
+    {
+        TestRunner.run(suite());
+    }
+}